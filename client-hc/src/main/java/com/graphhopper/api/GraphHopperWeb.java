@@ -261,6 +261,8 @@ public class GraphHopperWeb {
             requestJson.putArray("snap_preventions").addAll(createStringList(ghRequest.getSnapPreventions()));
         if (!ghRequest.getPathDetails().isEmpty())
             requestJson.putArray("details").addAll(createStringList(ghRequest.getPathDetails()));
+        if (!ghRequest.getFields().isEmpty())
+            requestJson.putArray(Parameters.Routing.FIELDS).addAll(createStringList(ghRequest.getFields()));
 
         requestJson.put("locale", ghRequest.getLocale().toString());
         if (!ghRequest.getProfile().isEmpty())
@@ -330,6 +332,10 @@ public class GraphHopperWeb {
             url += "&" + Parameters.Details.PATH_DETAILS + "=" + details;
         }
 
+        for (String field : ghRequest.getFields()) {
+            url += "&" + Parameters.Routing.FIELDS + "=" + field;
+        }
+
         // append *all* point hints if at least one is not empty
         if (ghRequest.getPointHints().stream().anyMatch(h -> !h.isEmpty()))
             for (String hint : ghRequest.getPointHints())
@@ -18,16 +18,25 @@
 package com.graphhopper;
 
 import com.bedatadriven.jackson.datatype.jts.JtsModule;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.CRPProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.reader.dem.*;
 import com.graphhopper.reader.osm.OSMReader;
+import com.graphhopper.reader.osm.OSMWayIdStorage;
 import com.graphhopper.reader.osm.conditional.DateRangeParser;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHPreparationHandler;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.crp.CRPCustomization;
+import com.graphhopper.routing.crp.CRPPartition;
+import com.graphhopper.routing.crp.CRPPreparationHandler;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
 import com.graphhopper.routing.lm.LMPreparationHandler;
@@ -35,12 +44,18 @@ import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
 import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks.PrepareJob;
+import com.graphhopper.routing.timedependent.SpeedProfileReader;
+import com.graphhopper.routing.timedependent.SpeedProfileStorage;
+import com.graphhopper.routing.traffic.TrafficFeed;
+import com.graphhopper.routing.traffic.TrafficOverlay;
+import com.graphhopper.routing.traffic.TrafficSnapshot;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.*;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.routing.weighting.custom.MemoizedSpeedAndPriority;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
@@ -62,10 +77,16 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.graphhopper.util.GHUtility.readCountries;
 import static com.graphhopper.util.Helper.*;
+import static com.graphhopper.util.Parameters.Algorithms.AltRoute;
 import static com.graphhopper.util.Parameters.Algorithms.RoundTrip;
 
 /**
@@ -104,17 +125,47 @@ public class GraphHopper {
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    // for vector tiles
+    private int[] simplifiedRoadZooms = new int[0];
+    private SimplifiedRoadNetwork simplifiedRoadNetwork;
+    private List<String> memoizedProfiles = Collections.emptyList();
+    private Map<String, MemoizedSpeedAndPriority> memoized = Collections.emptyMap();
+    // shared by all requests, created on first use
+    private ExecutorService viaLegExecutor;
+    private ExecutorService alternativeRouteExecutor;
+    // for traffic
+    private boolean trafficEnabled = false;
+    private String trafficFeedFile = "";
+    private int trafficFeedIntervalSeconds = 60;
+    private int trafficThreads = 1;
+    private TrafficOverlay trafficOverlay;
+    private ScheduledExecutorService trafficFeedExecutor;
+    // for time-dependent routing
+    private String speedProfilesFile = "";
+    private SpeedProfileStorage speedProfiles;
     // for prepare
     private int minNetworkSize = 200;
 
     // preparation handlers
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
+    private final CRPPreparationHandler crpPreparationHandler = new CRPPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    private CRPPartition crpPartition;
+    private Map<String, CRPCustomization> crpCustomizations = Collections.emptyMap();
 
     // for data reader
     private String osmFile;
+    private boolean storeOSMWayIds = false;
+    private List<String> changeFiles = Collections.emptyList();
+    private OSMWayIdStorage osmWayIds;
+    // true if change files modified the edges of an existing graph, so the data derived from the edges has to be updated
+    private boolean edgesChanged = false;
+    // true if change files moved nodes of the edges, so the location index has to be created again
+    private boolean geometryChanged = false;
+    // the profiles whose weights changed, so their preparations have to be updated
+    private Set<String> changedProfiles = Collections.emptySet();
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private FlagEncoderFactory flagEncoderFactory = new DefaultFlagEncoderFactory();
     private VehicleTagParserFactory vehicleTagParserFactory = new DefaultVehicleTagParserFactory();
@@ -181,6 +232,55 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Stores the speed and priority of the specified custom profiles for every edge, see MemoizedSpeedAndPriority
+     */
+    public GraphHopper setMemoizedProfiles(String... profiles) {
+        ensureNotLoaded();
+        memoizedProfiles = Arrays.asList(profiles);
+        return this;
+    }
+
+    /**
+     * Enables the traffic speeds that can be changed at runtime without a new preparation, see TrafficOverlay
+     */
+    public GraphHopper setTrafficEnabled(boolean trafficEnabled) {
+        ensureNotLoaded();
+        this.trafficEnabled = trafficEnabled;
+        return this;
+    }
+
+    /**
+     * Reads the speed profiles of the edges for requests with a departure time from this file after the import, see
+     * SpeedProfileReader for the format. The profiles are read again when the name or the modification date of the
+     * file changes.
+     */
+    public GraphHopper setSpeedProfilesFile(String speedProfilesFile) {
+        ensureNotLoaded();
+        this.speedProfilesFile = speedProfilesFile;
+        return this;
+    }
+
+    /**
+     * Stores the OSM way of every edge during the import, which is required to apply OSM change files later
+     */
+    public GraphHopper setStoreOSMWayIds(boolean storeOSMWayIds) {
+        ensureNotLoaded();
+        this.storeOSMWayIds = storeOSMWayIds;
+        return this;
+    }
+
+    /**
+     * Applies these OSM change files (.osc or .osc.gz) to the graph when it is imported or loaded. Every file is
+     * applied only once and only tag changes and deletions of existing ways are supported, files with other changes
+     * are rejected, see OSMReader.applyChanges
+     */
+    public GraphHopper setChangeFiles(String... changeFiles) {
+        ensureNotLoaded();
+        this.changeFiles = Arrays.asList(changeFiles);
+        return this;
+    }
+
     public GraphHopper setMinNetworkSize(int minNetworkSize) {
         ensureNotLoaded();
         this.minNetworkSize = minNetworkSize;
@@ -325,10 +425,11 @@ public class GraphHopper {
 
     /**
      * @return a mapping between profile names and according CH preparations. The map will be empty before loading
-     * or import.
+     * or import. If traffic is enabled the CH graphs of the current traffic snapshot are returned, see
+     * {@link TrafficSnapshot#getCHGraphs()}.
      */
     public Map<String, RoutingCHGraph> getCHGraphs() {
-        return chGraphs;
+        return trafficOverlay == null ? chGraphs : trafficOverlay.getSnapshot().getCHGraphs();
     }
 
     /**
@@ -339,6 +440,36 @@ public class GraphHopper {
         return landmarks;
     }
 
+    /**
+     * @return a mapping between profile names and according CRP customizations. The map will be empty before loading
+     * or import.
+     */
+    public Map<String, CRPCustomization> getCRPCustomizations() {
+        return crpCustomizations;
+    }
+
+    /**
+     * @return the generalized road network for vector tiles with a low zoom or null if no zoom levels were configured
+     * via prepare.simplified_roads.zooms
+     */
+    public SimplifiedRoadNetwork getSimplifiedRoadNetwork() {
+        return simplifiedRoadNetwork;
+    }
+
+    /**
+     * @return the traffic overlay to change the traffic speeds at runtime or null if traffic.enabled is false
+     */
+    public TrafficOverlay getTrafficOverlay() {
+        return trafficOverlay;
+    }
+
+    /**
+     * @return the speed profiles for requests with a departure time or null if there is no speed profiles file
+     */
+    public SpeedProfileStorage getSpeedProfiles() {
+        return speedProfiles;
+    }
+
     /**
      * The location index created from the graph.
      *
@@ -451,6 +582,10 @@ public class GraphHopper {
         String tmpOsmFile = ghConfig.getString("datareader.file", "");
         if (!isEmpty(tmpOsmFile))
             osmFile = tmpOsmFile;
+        storeOSMWayIds = ghConfig.getBool("datareader.store_way_ids", storeOSMWayIds);
+        String changeFilesString = ghConfig.getString("datareader.change_files", "");
+        if (!changeFilesString.isEmpty())
+            changeFiles = Arrays.stream(changeFilesString.split(",")).map(String::trim).collect(Collectors.toList());
 
         String graphHopperFolder = ghConfig.getString("graph.location", "");
         if (isEmpty(graphHopperFolder) && isEmpty(ghLocation)) {
@@ -513,9 +648,10 @@ public class GraphHopper {
         // optimizable prepare
         minNetworkSize = ghConfig.getInt("prepare.min_network_size", minNetworkSize);
 
-        // prepare CH&LM
+        // prepare CH&LM&CRP
         chPreparationHandler.init(ghConfig);
         lmPreparationHandler.init(ghConfig);
+        crpPreparationHandler.init(ghConfig);
 
         // osm import
         osmReaderConfig.setParseWayNames(ghConfig.getBool("datareader.instructions", osmReaderConfig.isParseWayNames()));
@@ -527,11 +663,36 @@ public class GraphHopper {
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
         maxRegionSearch = ghConfig.getInt("index.max_region_search", maxRegionSearch);
 
+        // vector tiles
+        String zoomsString = ghConfig.getString("prepare.simplified_roads.zooms", "");
+        simplifiedRoadZooms = zoomsString.isEmpty() ? new int[0]
+                : Arrays.stream(zoomsString.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+
+        String memoizedString = ghConfig.getString("prepare.memoized_profiles", "");
+        memoizedProfiles = memoizedString.isEmpty() ? Collections.emptyList()
+                : Arrays.stream(memoizedString.split(",")).map(String::trim).collect(Collectors.toList());
+
+        // traffic
+        trafficEnabled = ghConfig.getBool("traffic.enabled", trafficEnabled);
+        trafficFeedFile = ghConfig.getString("traffic.feed_file", trafficFeedFile);
+        trafficFeedIntervalSeconds = ghConfig.getInt("traffic.feed_interval", trafficFeedIntervalSeconds);
+        trafficThreads = ghConfig.getInt("traffic.threads", trafficThreads);
+        if (!trafficFeedFile.isEmpty() && !trafficEnabled)
+            throw new IllegalArgumentException("traffic.feed_file requires traffic.enabled: true");
+        if (trafficFeedIntervalSeconds < 1)
+            throw new IllegalArgumentException("traffic.feed_interval must be at least one second, but was " + trafficFeedIntervalSeconds);
+
+        // time-dependent routing
+        speedProfilesFile = ghConfig.getString("time_dependent.speed_profiles_file", speedProfilesFile);
+
         // routing
         routerConfig.setMaxVisitedNodes(ghConfig.getInt(Routing.INIT_MAX_VISITED_NODES, routerConfig.getMaxVisitedNodes()));
         routerConfig.setMaxRoundTripRetries(ghConfig.getInt(RoundTrip.INIT_MAX_RETRIES, routerConfig.getMaxRoundTripRetries()));
         routerConfig.setNonChMaxWaypointDistance(ghConfig.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, routerConfig.getNonChMaxWaypointDistance()));
         routerConfig.setInstructionsEnabled(ghConfig.getBool(Routing.INIT_INSTRUCTIONS, routerConfig.isInstructionsEnabled()));
+        routerConfig.setViaLegThreads(ghConfig.getInt(Routing.INIT_VIA_LEG_THREADS, routerConfig.getViaLegThreads()));
+        routerConfig.setAlternativeRouteThreads(ghConfig.getInt(AltRoute.INIT_THREADS, routerConfig.getAlternativeRouteThreads()));
+        routerConfig.setAlternativeRouteMaxTimeMillis(ghConfig.getLong(AltRoute.INIT_MAX_TIME_MS, routerConfig.getAlternativeRouteMaxTimeMillis()));
         int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, lmPreparationHandler.getLandmarks()));
         if (activeLandmarkCount > lmPreparationHandler.getLandmarks())
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
@@ -711,6 +872,7 @@ public class GraphHopper {
             }
             ensureWriteAccess();
             importOSM();
+            applyChangeFiles();
             cleanUp();
             postImport();
             postProcessing(closeEarly);
@@ -738,6 +900,31 @@ public class GraphHopper {
             throw new IllegalStateException("Couldn't load from existing folder: " + ghLocation
                     + " but also cannot use file for DataReader as it wasn't specified!");
 
+        if (storeOSMWayIds && sortGraph)
+            throw new IllegalArgumentException("datareader.store_way_ids cannot be used with graph.do_sort, because sorting changes the edge ids");
+
+        logger.info("start creating graph from " + osmFile);
+        OSMReader reader = createOSMReader().setFile(_getOSMFile());
+        if (storeOSMWayIds) {
+            osmWayIds = new OSMWayIdStorage(ghStorage.getDirectory()).create(1000);
+            reader.setWayIdStorage(osmWayIds);
+        }
+        logger.info("using " + ghStorage.toString() + ", memory:" + getMemInfo());
+        ghStorage.create(100);
+        try {
+            reader.readGraph();
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot read file " + getOSMFile(), ex);
+        }
+        if (osmWayIds != null)
+            osmWayIds.flush();
+        DateFormat f = createFormatter();
+        ghStorage.getProperties().put("datareader.import.date", f.format(new Date()));
+        if (reader.getDataDate() != null)
+            ghStorage.getProperties().put("datareader.data.date", f.format(reader.getDataDate()));
+    }
+
+    private OSMReader createOSMReader() {
         List<CustomArea> customAreas = readCountries();
         if (isEmpty(customAreasDirectory)) {
             logger.info("No custom areas are used, custom_areas.directory not given");
@@ -753,22 +940,165 @@ public class GraphHopper {
             logger.info("Applying rules for the following countries: {}", countryRuleFactory.getCountryToRuleMap().keySet());
         }
 
-        logger.info("start creating graph from " + osmFile);
-        OSMReader reader = new OSMReader(ghStorage.getBaseGraph(), encodingManager, osmParsers, osmReaderConfig).setFile(_getOSMFile()).
+        return new OSMReader(ghStorage.getBaseGraph(), encodingManager, osmParsers, osmReaderConfig).
                 setAreaIndex(areaIndex).
                 setElevationProvider(eleProvider).
                 setCountryRuleFactory(countryRuleFactory);
-        logger.info("using " + ghStorage.toString() + ", memory:" + getMemInfo());
-        ghStorage.create(100);
+    }
+
+    /**
+     * Applies the configured OSM change files that were not applied to this graph yet. The applied files are stored
+     * by their canonical path, so different files with the same name, like the minutely diffs of different days, are
+     * all applied.
+     *
+     * @return the flags the changed edges had before the first file was applied and the edges whose geometry changed
+     */
+    protected OSMReader.AppliedChanges applyChangeFiles() {
+        Set<String> applied = new LinkedHashSet<>();
+        String appliedString = ghStorage.getProperties().get("datareader.change_files");
+        if (!appliedString.isEmpty())
+            applied.addAll(Arrays.asList(appliedString.split(File.pathSeparator)));
+        List<File> pending = changeFiles.stream().map(f -> toCanonicalFile(new File(f))).
+                filter(f -> !applied.contains(f.getPath())).collect(Collectors.toList());
+        OSMReader.AppliedChanges changes = new OSMReader.AppliedChanges();
+        if (pending.isEmpty())
+            return changes;
+
+        ensureWriteAccess();
+        if (osmWayIds == null) {
+            osmWayIds = new OSMWayIdStorage(ghStorage.getDirectory());
+            if (!osmWayIds.loadExisting())
+                throw new IllegalStateException("datareader.change_files requires the OSM way ids of the edges, "
+                        + "import the graph again with datareader.store_way_ids: true");
+        }
+        OSMReader reader = createOSMReader().setWayIdStorage(osmWayIds);
+        for (File file : pending) {
+            if (!file.exists())
+                throw new IllegalArgumentException("OSM change file does not exist: " + file.getAbsolutePath());
+            OSMReader.AppliedChanges fileChanges = reader.applyChanges(file);
+            for (IntObjectCursor<IntsRef> cursor : fileChanges.getPreviousFlags()) {
+                if (!changes.getPreviousFlags().containsKey(cursor.key))
+                    changes.getPreviousFlags().put(cursor.key, cursor.value);
+            }
+            changes.getChangedGeometries().addAll(fileChanges.getChangedGeometries());
+            applied.add(file.getPath());
+            ghStorage.getProperties().put("datareader.change_files", String.join(File.pathSeparator, applied));
+        }
+        osmWayIds.flush();
+        return changes;
+    }
+
+    private static File toCanonicalFile(File file) {
         try {
-            reader.readGraph();
-        } catch (IOException ex) {
-            throw new RuntimeException("Cannot read file " + getOSMFile(), ex);
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Updates everything that depends on the edges after change files were applied to an existing graph. If the
+     * geometry of edges changed the location index is created again in the following postProcessing. Only the
+     * profiles whose weight or time changed on any of the changed edges are updated: their subnetworks are determined
+     * again here, and their landmarks, memoized values and CRP customizations are prepared again in the following
+     * postProcessing, just like CH, which keeps the previous node ordering.
+     */
+    private void prepareChangedEdges(OSMReader.AppliedChanges changes) {
+        IntObjectMap<IntsRef> previousFlags = changes.getPreviousFlags();
+        if (previousFlags.isEmpty() && changes.getChangedGeometries().isEmpty())
+            return;
+        edgesChanged = true;
+        geometryChanged = !changes.getChangedGeometries().isEmpty();
+        changedProfiles = findChangedProfiles(previousFlags, changes.getChangedGeometries());
+        logger.info("Edges with changed flags: " + nf(previousFlags.size()) + ", with changed geometry: "
+                + nf(changes.getChangedGeometries().size()) + ", profiles to prepare again: " + changedProfiles);
+
+        // the changed edges got new flags without the subnetworks, so we keep them for the profiles that did not change
+        List<BooleanEncodedValue> changedSubnetworkEncs = new ArrayList<>(), keptSubnetworkEncs = new ArrayList<>();
+        for (String profile : profilesByName.keySet())
+            (changedProfiles.contains(profile) ? changedSubnetworkEncs : keptSubnetworkEncs).add(encodingManager.getBooleanEncodedValue(Subnetwork.key(profile)));
+        for (IntObjectCursor<IntsRef> cursor : previousFlags) {
+            EdgeIteratorState edge = ghStorage.getEdgeIteratorState(cursor.key, Integer.MIN_VALUE);
+            for (BooleanEncodedValue subnetworkEnc : keptSubnetworkEncs)
+                edge.set(subnetworkEnc, subnetworkEnc.getBool(false, cursor.value));
+        }
+        if (changedProfiles.isEmpty())
+            return;
+
+        AllEdgesIterator iter = ghStorage.getAllEdges();
+        while (iter.next()) {
+            for (BooleanEncodedValue subnetworkEnc : changedSubnetworkEncs)
+                iter.set(subnetworkEnc, false);
+        }
+        List<Profile> profiles = changedProfiles.stream().map(profilesByName::get).collect(Collectors.toList());
+        PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(ghStorage.getBaseGraph(), buildSubnetworkRemovalJobs(profiles));
+        preparation.setMinNetworkSize(minNetworkSize);
+        preparation.doWork();
+
+        if (lmPreparationHandler.isEnabled()) {
+            // profiles that use the landmarks of another profile need landmarks that match their new weights
+            Set<String> lmPreparations = lmPreparationHandler.getLMProfiles().stream().filter(p -> changedProfiles.contains(p.getProfile())).
+                    map(p -> p.usesOtherPreparation() ? p.getPreparationProfile() : p.getProfile()).collect(Collectors.toSet());
+            List<LMProfile> lmProfiles = lmPreparationHandler.getLMProfiles().stream().filter(p -> lmPreparations.contains(p.getProfile())).collect(Collectors.toList());
+            lmPreparationHandler.remove(createLMConfigs(lmProfiles), ghStorage.getDirectory());
+        }
+        if (chPreparationHandler.isEnabled()) {
+            List<CHProfile> chProfiles = chPreparationHandler.getCHProfiles().stream().filter(p -> changedProfiles.contains(p.getProfile())).collect(Collectors.toList());
+            chPreparationHandler.removeKeepingNodeOrderings(ghStorage.getBaseGraph(), createCHConfigs(chProfiles));
+        }
+    }
+
+    /**
+     * @return the names of the profiles whose weight or time changed on any of the given edges in any direction
+     */
+    private Set<String> findChangedProfiles(IntObjectMap<IntsRef> previousFlags, IntHashSet changedGeometries) {
+        List<Weighting> weightings = new ArrayList<>();
+        for (Profile profile : profilesByName.values())
+            weightings.add(createWeightingFactory().createWeighting(profile, new PMap(), true));
+        double[] previousValues = new double[4 * weightings.size()], values = new double[previousValues.length];
+        Set<String> result = new LinkedHashSet<>();
+        for (IntObjectCursor<IntsRef> cursor : previousFlags) {
+            EdgeIteratorState edge = ghStorage.getEdgeIteratorState(cursor.key, Integer.MIN_VALUE);
+            IntsRef flags = IntsRef.deepCopyOf(edge.getFlags());
+            calcWeightsAndTimes(weightings, edge, values);
+            edge.setFlags(cursor.value);
+            calcWeightsAndTimes(weightings, edge, previousValues);
+            edge.setFlags(flags);
+            int i = 0;
+            for (String profile : profilesByName.keySet()) {
+                for (int j = i; j < i + 4; j++) {
+                    if (values[j] != previousValues[j])
+                        result.add(profile);
+                }
+                i += 4;
+            }
+            if (result.size() == profilesByName.size())
+                break;
+        }
+        // a new distance changes the weight of every profile that can use the edge
+        for (IntCursor cursor : changedGeometries) {
+            if (result.size() == profilesByName.size())
+                break;
+            calcWeightsAndTimes(weightings, ghStorage.getEdgeIteratorState(cursor.value, Integer.MIN_VALUE), values);
+            int i = 0;
+            for (String profile : profilesByName.keySet()) {
+                if (Double.isFinite(values[i]) || Double.isFinite(values[i + 2]))
+                    result.add(profile);
+                i += 4;
+            }
+        }
+        return result;
+    }
+
+    private static void calcWeightsAndTimes(List<Weighting> weightings, EdgeIteratorState edge, double[] values) {
+        int i = 0;
+        for (Weighting weighting : weightings) {
+            for (boolean reverse : new boolean[]{false, true}) {
+                double weight = weighting.calcEdgeWeightWithAccess(edge, reverse);
+                values[i++] = weight;
+                values[i++] = Double.isFinite(weight) ? weighting.calcEdgeMillis(edge, reverse) : 0;
+            }
         }
-        DateFormat f = createFormatter();
-        ghStorage.getProperties().put("datareader.import.date", f.format(new Date()));
-        if (reader.getDataDate() != null)
-            ghStorage.getProperties().put("datareader.data.date", f.format(reader.getDataDate()));
     }
 
     private List<CustomArea> readCustomAreas() {
@@ -865,7 +1195,10 @@ public class GraphHopper {
                         + "\nGraph: " + storedProfiles
                         + "\nChange configuration to match the graph or delete " + ghStorage.getDirectory().getLocation());
 
+            prepareChangedEdges(applyChangeFiles());
             postProcessing(false);
+            if (edgesChanged)
+                flush();
             directory.loadMMap();
             setFullyLoaded();
             return true;
@@ -921,6 +1254,13 @@ public class GraphHopper {
                 throw new IllegalArgumentException("CH profile references unknown profile '" + chProfile.getProfile() + "'");
             }
         }
+        Set<String> crpProfileSet = new LinkedHashSet<>(crpPreparationHandler.getCRPProfiles().size());
+        for (CRPProfile crpProfile : crpPreparationHandler.getCRPProfiles()) {
+            if (!crpProfileSet.add(crpProfile.getProfile()))
+                throw new IllegalArgumentException("Duplicate CRP reference to profile '" + crpProfile.getProfile() + "'");
+            if (!profilesByName.containsKey(crpProfile.getProfile()))
+                throw new IllegalArgumentException("CRP profile references unknown profile '" + crpProfile.getProfile() + "'");
+        }
         Map<String, LMProfile> lmProfileMap = new LinkedHashMap<>(lmPreparationHandler.getLMProfiles().size());
         for (LMProfile lmProfile : lmPreparationHandler.getLMProfiles()) {
             LMProfile previous = lmProfileMap.put(lmProfile.getProfile(), lmProfile);
@@ -948,14 +1288,18 @@ public class GraphHopper {
         return chPreparationHandler;
     }
 
+    public final CRPPreparationHandler getCRPPreparationHandler() {
+        return crpPreparationHandler;
+    }
+
     private List<CHConfig> createCHConfigs(List<CHProfile> chProfiles) {
         List<CHConfig> chConfigs = new ArrayList<>();
         for (CHProfile chProfile : chProfiles) {
             Profile profile = profilesByName.get(chProfile.getProfile());
             if (profile.isTurnCosts()) {
-                chConfigs.add(CHConfig.edgeBased(profile.getName(), createWeighting(profile, new PMap())));
+                chConfigs.add(CHConfig.edgeBased(profile.getName(), createWeightingFactory().createWeighting(profile, new PMap(), false)));
             } else {
-                chConfigs.add(CHConfig.nodeBased(profile.getName(), createWeighting(profile, new PMap())));
+                chConfigs.add(CHConfig.nodeBased(profile.getName(), createWeightingFactory().createWeighting(profile, new PMap(), false)));
             }
         }
         return chConfigs;
@@ -976,7 +1320,7 @@ public class GraphHopper {
             // turn costs, see discussion in #1960
             // Running the preparation without turn costs is also useful to allow e.g. changing the u_turn_costs per
             // request (we have to use the minimum weight settings (= no turn costs) for the preparation)
-            Weighting weighting = createWeighting(profile, new PMap(), true);
+            Weighting weighting = createWeightingFactory().createWeighting(profile, new PMap(), true);
             lmConfigs.add(new LMConfig(profile.getName(), weighting));
         }
         return lmConfigs;
@@ -990,6 +1334,11 @@ public class GraphHopper {
     protected void postProcessing(boolean closeEarly) {
         initLocationIndex();
         importPublicTransit();
+        if (simplifiedRoadZooms.length > 0)
+            loadOrPrepareSimplifiedRoads();
+
+        if (!memoizedProfiles.isEmpty())
+            loadOrPrepareMemoized();
 
         if (closeEarly) {
             boolean includesCustomProfiles = profilesByName.values().stream().anyMatch(p -> p instanceof CustomProfile);
@@ -1008,6 +1357,71 @@ public class GraphHopper {
 
         if (chPreparationHandler.isEnabled())
             loadOrPrepareCH(closeEarly);
+
+        if (crpPreparationHandler.isEnabled())
+            loadOrPrepareCRP();
+
+        if (!speedProfilesFile.isEmpty())
+            loadOrPrepareSpeedProfiles();
+
+        if (trafficEnabled)
+            initTrafficOverlay();
+    }
+
+    protected void loadOrPrepareSpeedProfiles() {
+        File file = new File(speedProfilesFile);
+        String fileDate = String.valueOf(file.lastModified());
+        SpeedProfileStorage storage = new SpeedProfileStorage(ghStorage.getDirectory());
+        if (storage.loadExisting()) {
+            String storedFile = ghStorage.getProperties().get("time_dependent.speed_profiles_file");
+            String storedDate = ghStorage.getProperties().get("time_dependent.speed_profiles_file.date");
+            if (storedFile.equals(speedProfilesFile) && storedDate.equals(fileDate)) {
+                speedProfiles = storage;
+                return;
+            }
+            if (!allowWrites || !file.exists())
+                throw new IllegalStateException("The speed profiles were read from " + storedFile + " (modified: " + storedDate
+                        + "), but time_dependent.speed_profiles_file is " + speedProfilesFile + " (modified: " + fileDate
+                        + "). Writes must be allowed and the file must exist to read the speed profiles again.");
+            logger.info("speed profiles file changed from " + storedFile + " (modified: " + storedDate + ") to "
+                    + speedProfilesFile + " (modified: " + fileDate + "), reading it again");
+            storage.remove();
+            storage = new SpeedProfileStorage(ghStorage.getDirectory());
+        }
+        ensureWriteAccess();
+        StopWatch sw = new StopWatch().start();
+        storage.create(ghStorage.getEdges());
+        SpeedProfileReader.read(file.toPath(), storage);
+        storage.flush();
+        ghStorage.getProperties().put("time_dependent.speed_profiles_file", speedProfilesFile);
+        ghStorage.getProperties().put("time_dependent.speed_profiles_file.date", fileDate);
+        ghStorage.getProperties().flush();
+        logger.info("read " + storage.getProfileCount() + " distinct speed profiles from " + speedProfilesFile + " in " + sw.stop().getSeconds() + "s");
+        speedProfiles = storage;
+    }
+
+    /**
+     * Creates the traffic overlay for all profiles and starts reading the traffic feed file, if configured
+     */
+    protected void initTrafficOverlay() {
+        if (!crpCustomizations.isEmpty())
+            logger.warn("CRP is not used for routing, because traffic is enabled and the CRP cliques are not customized for the traffic speeds");
+        trafficOverlay = new TrafficOverlay(ghStorage.getBaseGraph()).setThreads(trafficThreads);
+        for (Map.Entry<String, RoutingCHGraph> entry : chGraphs.entrySet())
+            trafficOverlay.addCHProfile(entry.getKey(), (RoutingCHGraphImpl) entry.getValue());
+        if (!trafficFeedFile.isEmpty()) {
+            TrafficFeed feed = new TrafficFeed(trafficOverlay, Paths.get(trafficFeedFile));
+            // the first read happens before the first request
+            feed.run();
+            synchronized (this) {
+                trafficFeedExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "traffic-feed");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                trafficFeedExecutor.scheduleWithFixedDelay(feed, trafficFeedIntervalSeconds, trafficFeedIntervalSeconds, TimeUnit.SECONDS);
+            }
+        }
     }
 
     protected void importPublicTransit() {
@@ -1034,12 +1448,18 @@ public class GraphHopper {
         return createWeighting(profile, hints, false);
     }
 
+    /**
+     * Creates the weighting of the profile for the given request hints. If traffic is enabled the weighting uses the
+     * traffic speeds of the current snapshot, see {@link TrafficSnapshot#wrap}. The preparations use the weightings
+     * of the {@link #createWeightingFactory() weighting factory}, which never include traffic.
+     */
     public final Weighting createWeighting(Profile profile, PMap hints, boolean disableTurnCosts) {
-        return createWeightingFactory().createWeighting(profile, hints, disableTurnCosts);
+        Weighting weighting = createWeightingFactory().createWeighting(profile, hints, disableTurnCosts);
+        return trafficOverlay == null ? weighting : trafficOverlay.getSnapshot().wrap(weighting);
     }
 
     protected WeightingFactory createWeightingFactory() {
-        return new DefaultWeightingFactory(ghStorage.getBaseGraph(), getEncodingManager());
+        return new DefaultWeightingFactory(ghStorage.getBaseGraph(), getEncodingManager(), memoized);
     }
 
     public GHResponse route(GHRequest request) {
@@ -1054,8 +1474,53 @@ public class GraphHopper {
         if (locationIndex == null)
             throw new IllegalStateException("Location index not initialized");
 
-        return doCreateRouter(ghStorage, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
+        WeightingFactory weightingFactory = createWeightingFactory();
+        Map<String, RoutingCHGraph> routerCHGraphs = chGraphs;
+        // the shortcuts customized for the traffic speeds can miss routes
+        boolean chFallback = false;
+        if (trafficOverlay != null) {
+            // all weightings and CH graphs of a request use the same traffic snapshot
+            TrafficSnapshot snapshot = trafficOverlay.getSnapshot();
+            WeightingFactory baseWeightingFactory = weightingFactory;
+            weightingFactory = (profile, hints, disableTurnCosts) -> snapshot.wrap(baseWeightingFactory.createWeighting(profile, hints, disableTurnCosts));
+            routerCHGraphs = snapshot.getCHGraphs();
+            chFallback = snapshot.getVersion() > 0;
+        }
+        Router router = doCreateRouter(ghStorage, locationIndex, profilesByName, pathBuilderFactory,
+                trMap, routerConfig, weightingFactory, routerCHGraphs, landmarks);
+        if (routerConfig.getViaLegThreads() > 1)
+            router.setViaLegExecutor(getViaLegExecutor());
+        if (routerConfig.getAlternativeRouteThreads() > 1)
+            router.setAlternativeRouteExecutor(getAlternativeRouteExecutor());
+        router.setSpeedProfiles(speedProfiles);
+        // the CRP cliques do not follow the traffic speeds, so these requests use LM or the flexible mode instead
+        router.setCRPCustomizations(trafficOverlay == null ? crpCustomizations : Collections.emptyMap());
+        router.setCHFallback(chFallback);
+        return router;
+    }
+
+    private synchronized ExecutorService getAlternativeRouteExecutor() {
+        if (alternativeRouteExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            alternativeRouteExecutor = Executors.newFixedThreadPool(routerConfig.getAlternativeRouteThreads(), runnable -> {
+                Thread thread = new Thread(runnable, "alternative-route-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return alternativeRouteExecutor;
+    }
+
+    private synchronized ExecutorService getViaLegExecutor() {
+        if (viaLegExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            viaLegExecutor = Executors.newFixedThreadPool(routerConfig.getViaLegThreads(), runnable -> {
+                Thread thread = new Thread(runnable, "via-leg-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return viaLegExecutor;
     }
 
     protected Router doCreateRouter(GraphHopperStorage ghStorage, LocationIndex locationIndex, Map<String, Profile> profilesByName,
@@ -1067,6 +1532,10 @@ public class GraphHopper {
     }
 
     protected LocationIndex createLocationIndex(Directory dir) {
+        if (geometryChanged) {
+            ensureWriteAccess();
+            dir.removeIfExists("location_index");
+        }
         LocationIndexTree tmpIndex = new LocationIndexTree(ghStorage, dir);
         tmpIndex.setResolution(preciseIndexResolution);
         tmpIndex.setMaxRegionSearch(maxRegionSearch);
@@ -1088,6 +1557,48 @@ public class GraphHopper {
         locationIndex = createLocationIndex(ghStorage.getDirectory());
     }
 
+    protected void loadOrPrepareSimplifiedRoads() {
+        if (!encodingManager.hasEncodedValue(RoadClass.KEY))
+            throw new IllegalArgumentException("prepare.simplified_roads.zooms requires road_class, e.g. graph.encoded_values: road_class,max_speed,... ");
+
+        SimplifiedRoadNetwork roads = new SimplifiedRoadNetwork(ghStorage.getBaseGraph(), ghStorage.getDirectory());
+        if (!edgesChanged && roads.loadExisting()) {
+            int[] configured = simplifiedRoadZooms.clone();
+            Arrays.sort(configured);
+            if (!Arrays.equals(configured, roads.getZooms()))
+                throw new IllegalStateException("Zoom levels of the simplified roads do not match:"
+                        + "\nGraphhopper config: " + Arrays.toString(configured)
+                        + "\nGraph: " + Arrays.toString(roads.getZooms())
+                        + "\nChange configuration to match the graph or delete " + ghStorage.getDirectory().getLocation());
+        } else {
+            ensureWriteAccess();
+            roads.prepare(encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class), simplifiedRoadZooms);
+            roads.flush();
+        }
+        simplifiedRoadNetwork = roads;
+    }
+
+    protected void loadOrPrepareMemoized() {
+        Map<String, MemoizedSpeedAndPriority> result = new LinkedHashMap<>();
+        for (String profileName : memoizedProfiles) {
+            Profile profile = profilesByName.get(profileName);
+            if (profile == null)
+                throw new IllegalArgumentException("prepare.memoized_profiles contains unknown profile '" + profileName + "'");
+            if (!(profile instanceof CustomProfile))
+                throw new IllegalArgumentException("prepare.memoized_profiles requires custom profiles, but '" + profileName + "' is not");
+
+            MemoizedSpeedAndPriority memoizedProfile = new MemoizedSpeedAndPriority(ghStorage.getBaseGraph(),
+                    ghStorage.getDirectory(), (CustomProfile) profile);
+            if (changedProfiles.contains(profileName) || !memoizedProfile.loadExisting()) {
+                ensureWriteAccess();
+                memoizedProfile.prepare(encodingManager.getEncoder(profile.getVehicle()), encodingManager);
+                memoizedProfile.flush();
+            }
+            result.put(profileName, memoizedProfile);
+        }
+        memoized = result;
+    }
+
     private String getCHProfileVersion(String profile) {
         return ghStorage.getProperties().get("graph.profiles.ch." + profile + ".version");
     }
@@ -1096,6 +1607,14 @@ public class GraphHopper {
         ghStorage.getProperties().put("graph.profiles.ch." + profile + ".version", version);
     }
 
+    private String getCRPProfileVersion(String profile) {
+        return ghStorage.getProperties().get("graph.profiles.crp." + profile + ".version");
+    }
+
+    private void setCRPProfileVersion(String profile, int version) {
+        ghStorage.getProperties().put("graph.profiles.crp." + profile + ".version", version);
+    }
+
     private String getLMProfileVersion(String profile) {
         return ghStorage.getProperties().get("graph.profiles.lm." + profile + ".version");
     }
@@ -1139,6 +1658,40 @@ public class GraphHopper {
         return chPreparationHandler.prepare(ghStorage, configsToPrepare, closeEarly);
     }
 
+    /**
+     * Loads the CRP partition and the customizations of the CRP profiles or prepares them if they do not exist yet.
+     * After change files were applied the partition is kept and only the customizations of the changed profiles are
+     * done again.
+     */
+    protected void loadOrPrepareCRP() {
+        for (CRPProfile profile : crpPreparationHandler.getCRPProfiles())
+            if (!getCRPProfileVersion(profile.getProfile()).isEmpty()
+                    && !getCRPProfileVersion(profile.getProfile()).equals("" + profilesByName.get(profile.getProfile()).getVersion()))
+                throw new IllegalArgumentException("CRP preparation of " + profile.getProfile() + " already exists in storage and doesn't match configuration");
+
+        BaseGraph baseGraph = ghStorage.getBaseGraph();
+        CRPPartition partition = crpPreparationHandler.createPartition(baseGraph);
+        if (!partition.loadExisting()) {
+            ensureWriteAccess();
+            ghStorage.freeze();
+            crpPreparationHandler.preparePartition(partition, baseGraph);
+        }
+        Map<String, CRPCustomization> customizations = new LinkedHashMap<>();
+        for (CRPProfile crpProfile : crpPreparationHandler.getCRPProfiles()) {
+            Profile profile = profilesByName.get(crpProfile.getProfile());
+            Weighting weighting = createWeightingFactory().createWeighting(profile, new PMap(), false);
+            CRPCustomization customization = crpPreparationHandler.createCustomization(profile.getName(), weighting, baseGraph, partition);
+            if (!customization.loadExisting() || changedProfiles.contains(profile.getName())) {
+                ensureWriteAccess();
+                customization.customize().flush();
+                setCRPProfileVersion(profile.getName(), profile.getVersion());
+            }
+            customizations.put(profile.getName(), customization);
+        }
+        crpPartition = partition;
+        crpCustomizations = customizations;
+    }
+
     /**
      * For landmarks it is required to always call this method: either it creates the landmark data or it loads it.
      */
@@ -1183,18 +1736,18 @@ public class GraphHopper {
      * Internal method to clean up the graph.
      */
     protected void cleanUp() {
-        PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(ghStorage.getBaseGraph(), buildSubnetworkRemovalJobs());
+        PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(ghStorage.getBaseGraph(), buildSubnetworkRemovalJobs(profilesByName.values()));
         preparation.setMinNetworkSize(minNetworkSize);
         preparation.doWork();
         ghStorage.getProperties().put("profiles", getProfilesString());
         logger.info("nodes: " + Helper.nf(ghStorage.getNodes()) + ", edges: " + Helper.nf(ghStorage.getEdges()));
     }
 
-    private List<PrepareJob> buildSubnetworkRemovalJobs() {
+    private List<PrepareJob> buildSubnetworkRemovalJobs(Collection<Profile> profiles) {
         List<PrepareJob> jobs = new ArrayList<>();
-        for (Profile profile : profilesByName.values()) {
+        for (Profile profile : profiles) {
             // if turn costs are enabled use u-turn costs of zero as we only want to make sure the graph is fully connected assuming finite u-turn costs
-            Weighting weighting = createWeighting(profile, new PMap().putObject(Parameters.Routing.U_TURN_COSTS, 0));
+            Weighting weighting = createWeightingFactory().createWeighting(profile, new PMap().putObject(Parameters.Routing.U_TURN_COSTS, 0), false);
             jobs.add(new PrepareJob(encodingManager.getBooleanEncodedValue(Subnetwork.key(profile.getName())), weighting));
         }
         return jobs;
@@ -1218,10 +1771,31 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        crpCustomizations.values().forEach(CRPCustomization::close);
+        if (crpPartition != null)
+            crpPartition.close();
 
         if (locationIndex != null)
             locationIndex.close();
 
+        if (simplifiedRoadNetwork != null)
+            simplifiedRoadNetwork.close();
+
+        memoized.values().forEach(MemoizedSpeedAndPriority::close);
+        if (speedProfiles != null)
+            speedProfiles.close();
+        if (osmWayIds != null)
+            osmWayIds.close();
+
+        synchronized (this) {
+            if (viaLegExecutor != null)
+                viaLegExecutor.shutdownNow();
+            if (alternativeRouteExecutor != null)
+                alternativeRouteExecutor.shutdownNow();
+            if (trafficFeedExecutor != null)
+                trafficFeedExecutor.shutdownNow();
+        }
+
         try {
             lockFactory.forceRemove(fileLockName, true);
         } catch (Exception ex) {
@@ -21,6 +21,7 @@ package com.graphhopper;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.CRPProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.util.PMap;
@@ -39,6 +40,7 @@ public class GraphHopperConfig {
     private List<Profile> profiles = new ArrayList<>();
     private List<CHProfile> chProfiles = new ArrayList<>();
     private List<LMProfile> lmProfiles = new ArrayList<>();
+    private List<CRPProfile> crpProfiles = new ArrayList<>();
     private final PMap map;
 
     public GraphHopperConfig() {
@@ -50,6 +52,7 @@ public class GraphHopperConfig {
         profiles = new ArrayList<>(otherConfig.profiles);
         chProfiles = new ArrayList<>(otherConfig.chProfiles);
         lmProfiles = new ArrayList<>(otherConfig.lmProfiles);
+        crpProfiles = new ArrayList<>(otherConfig.crpProfiles);
     }
 
     public GraphHopperConfig(PMap pMap) {
@@ -85,6 +88,16 @@ public class GraphHopperConfig {
         return this;
     }
 
+    public List<CRPProfile> getCRPProfiles() {
+        return crpProfiles;
+    }
+
+    @JsonProperty("profiles_crp")
+    public GraphHopperConfig setCRPProfiles(List<CRPProfile> crpProfiles) {
+        this.crpProfiles = crpProfiles;
+        return this;
+    }
+
     // We can add explicit configuration properties to GraphHopperConfig (for example to allow lists or nested objects),
     // everything else is stored in a HashMap
     @JsonAnySetter
@@ -143,6 +156,11 @@ public class GraphHopperConfig {
             sb.append(profile);
             sb.append("\n");
         }
+        sb.append("profiles_crp:\n");
+        for (CRPProfile profile : crpProfiles) {
+            sb.append(profile);
+            sb.append("\n");
+        }
         sb.append("properties:\n");
         for (Map.Entry<String, Object> entry : map.toMap().entrySet()) {
             sb.append(entry.getKey()).append(": ").append(entry.getValue());
@@ -0,0 +1,123 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import java.util.Arrays;
+
+/**
+ * A radix heap (https://en.wikipedia.org/wiki/Radix_heap) of int elements with non-negative double keys. Like a
+ * bucket queue it needs no comparisons between the elements, but it only works for monotone usage, as in Dijkstra's
+ * algorithm: a pushed key must not be smaller than the last polled key. The bits of non-negative doubles sort like
+ * the doubles, so the keys are bucketed by the highest bit in which they differ from the last polled key.
+ * <p>
+ * The same element can be pushed several times. The heap does not shrink, so it can be cleared and reused.
+ */
+public class MonotoneRadixHeap {
+    private static final int BUCKETS = 65;
+    private final int[][] elements = new int[BUCKETS][];
+    private final long[][] keys = new long[BUCKETS][];
+    private final int[] sizes = new int[BUCKETS];
+    private long last;
+    private int size;
+
+    public MonotoneRadixHeap() {
+        for (int i = 0; i < BUCKETS; i++) {
+            elements[i] = new int[4];
+            keys[i] = new long[4];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void push(int element, double key) {
+        if (!(key >= 0))
+            throw new IllegalArgumentException("Keys must be non-negative, but was: " + key);
+        long bits = Double.doubleToRawLongBits(key + 0.0);
+        if (bits < last)
+            throw new IllegalArgumentException("Keys must not be smaller than the last polled key: " + key + " < " + Double.longBitsToDouble(last));
+        add(bucket(bits), element, bits);
+        size++;
+    }
+
+    /**
+     * @return the key of the element that is polled next
+     */
+    public double peekKey() {
+        if (size == 0)
+            throw new IllegalStateException("Cannot peek, the heap is empty");
+        refill();
+        return Double.longBitsToDouble(last);
+    }
+
+    public int poll() {
+        if (size == 0)
+            throw new IllegalStateException("Cannot poll, the heap is empty");
+        refill();
+        size--;
+        return elements[0][--sizes[0]];
+    }
+
+    public void clear() {
+        Arrays.fill(sizes, 0);
+        last = 0;
+        size = 0;
+    }
+
+    /**
+     * Makes sure the first bucket is not empty, by moving the smallest key of the first non-empty bucket to last and
+     * distributing this bucket over the lower ones.
+     */
+    private void refill() {
+        if (sizes[0] > 0)
+            return;
+        int bucket = 1;
+        while (sizes[bucket] == 0)
+            bucket++;
+        long[] bucketKeys = keys[bucket];
+        int[] bucketElements = elements[bucket];
+        int bucketSize = sizes[bucket];
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < bucketSize; i++)
+            min = Math.min(min, bucketKeys[i]);
+        last = min;
+        sizes[bucket] = 0;
+        for (int i = 0; i < bucketSize; i++)
+            add(bucket(bucketKeys[i]), bucketElements[i], bucketKeys[i]);
+    }
+
+    private int bucket(long bits) {
+        return bits == last ? 0 : 64 - Long.numberOfLeadingZeros(bits ^ last);
+    }
+
+    private void add(int bucket, int element, long bits) {
+        int bucketSize = sizes[bucket];
+        if (bucketSize == elements[bucket].length) {
+            elements[bucket] = Arrays.copyOf(elements[bucket], bucketSize * 2);
+            keys[bucket] = Arrays.copyOf(keys[bucket], bucketSize * 2);
+        }
+        elements[bucket][bucketSize] = element;
+        keys[bucket][bucketSize] = bits;
+        sizes[bucket] = bucketSize + 1;
+    }
+}
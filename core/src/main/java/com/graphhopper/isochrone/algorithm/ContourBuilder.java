@@ -19,6 +19,9 @@ import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.ToIntBiFunction;
 
 /**
@@ -54,6 +57,33 @@ public class ContourBuilder {
         return computeIsoline(cut, seedEdges);
     }
 
+    /**
+     * Computes the isolines for all the given z values. Each isoline only reads the triangulation, so they are
+     * computed concurrently by the given executor.
+     *
+     * @return the isolines in the order of the z values
+     */
+    public List<MultiPolygon> computeIsolines(List<Double> zs, Collection<ReadableQuadEdge> seedEdges, Executor executor) {
+        if (zs.size() == 1)
+            return Collections.singletonList(computeIsoline(zs.get(0), seedEdges));
+        List<CompletableFuture<MultiPolygon>> futures = new ArrayList<>(zs.size());
+        for (double z : zs) {
+            futures.add(CompletableFuture.supplyAsync(() -> computeIsoline(z, seedEdges), executor));
+        }
+        List<MultiPolygon> isolines = new ArrayList<>(zs.size());
+        try {
+            for (CompletableFuture<MultiPolygon> future : futures) {
+                isolines.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(f -> f.cancel(false));
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+        return isolines;
+    }
+
     public MultiPolygon computeIsoline(ToIntBiFunction<Vertex, Vertex> cut, Collection<ReadableQuadEdge> seedEdges) {
         Set<ReadableQuadEdge> processed = new HashSet<>();
         List<LinearRing> rings = new ArrayList<>();
@@ -0,0 +1,212 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.shapes.GHPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Calculates the isochrones of many points with the same weighting and limit. All points are snapped up front and
+ * share one QueryGraph. The explorations and the contours of every point run on the given executor, and the results
+ * are passed to the consumer on the calling thread in the order they complete.
+ * <p>
+ * Do not use the executor of {@link ContourBuilder#computeIsolines} here, the contours of one point are computed by
+ * the worker of that point.
+ */
+public class IsochroneBatch {
+
+    private final Graph graph;
+    private final LocationIndex locationIndex;
+    private final Weighting weighting;
+    private final EdgeFilter snapFilter;
+    private final TraversalMode traversalMode;
+    private final Triangulator triangulator;
+    private final ExecutorService executor;
+    private boolean reverseFlow;
+    private ShortestPathTree.ExploreType exploreType = ShortestPathTree.ExploreType.TIME;
+    private double limit = 600_000;
+    private int buckets = 1;
+    private double tolerance;
+
+    public IsochroneBatch(Graph graph, LocationIndex locationIndex, Weighting weighting, EdgeFilter snapFilter,
+                          TraversalMode traversalMode, Triangulator triangulator, ExecutorService executor) {
+        this.graph = graph;
+        this.locationIndex = locationIndex;
+        this.weighting = weighting;
+        this.snapFilter = snapFilter;
+        this.traversalMode = traversalMode;
+        this.triangulator = triangulator;
+        this.executor = executor;
+    }
+
+    public IsochroneBatch setReverseFlow(boolean reverseFlow) {
+        this.reverseFlow = reverseFlow;
+        return this;
+    }
+
+    /**
+     * @param timeLimit in milliseconds
+     */
+    public IsochroneBatch setTimeLimit(double timeLimit) {
+        exploreType = ShortestPathTree.ExploreType.TIME;
+        limit = timeLimit;
+        return this;
+    }
+
+    /**
+     * @param distanceLimit in meters
+     */
+    public IsochroneBatch setDistanceLimit(double distanceLimit) {
+        exploreType = ShortestPathTree.ExploreType.DISTANCE;
+        limit = distanceLimit;
+        return this;
+    }
+
+    public IsochroneBatch setWeightLimit(double weightLimit) {
+        exploreType = ShortestPathTree.ExploreType.WEIGHT;
+        limit = weightLimit;
+        return this;
+    }
+
+    public IsochroneBatch setBuckets(int buckets) {
+        if (buckets < 1)
+            throw new IllegalArgumentException("buckets must be at least 1, but was: " + buckets);
+        this.buckets = buckets;
+        return this;
+    }
+
+    /**
+     * @param tolerance the tolerance of the triangulation in degrees
+     */
+    public IsochroneBatch setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public static class Result {
+        /**
+         * the index of the point in the list that was passed to {@link #calculate}
+         */
+        public final int index;
+        /**
+         * one isochrone per bucket, or empty if there was an error
+         */
+        public final List<MultiPolygon> isochrones;
+        public final String error;
+
+        Result(int index, List<MultiPolygon> isochrones, String error) {
+            this.index = index;
+            this.isochrones = isochrones;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Calculates the isochrones of all points. A point that cannot be snapped or that reaches too few nodes gets a
+     * result with an error, the other points are not affected.
+     */
+    public void calculate(List<GHPoint> points, Consumer<Result> consumer) {
+        List<Snap> snaps = new ArrayList<>(points.size());
+        List<Integer> indices = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            Snap snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+            if (snap.isValid()) {
+                snaps.add(snap);
+                indices.add(i);
+            } else {
+                consumer.accept(new Result(i, Collections.emptyList(), "Point not found:" + point));
+            }
+        }
+        if (snaps.isEmpty())
+            return;
+
+        // the query graph is only read by the explorations, so all of them can share it
+        QueryGraph queryGraph = QueryGraph.create(graph.getBaseGraph(), snaps);
+        Weighting queryWeighting = queryGraph.wrapWeighting(weighting);
+        ExecutorCompletionService<Result> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Result>> futures = new ArrayList<>(snaps.size());
+        for (int i = 0; i < snaps.size(); i++) {
+            Snap snap = snaps.get(i);
+            int index = indices.get(i);
+            futures.add(completionService.submit(() -> calculate(index, snap, queryGraph, queryWeighting)));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                consumer.accept(completionService.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the isochrones", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // e.g. when the consumer failed because the client went away
+            futures.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private Result calculate(int index, Snap snap, QueryGraph queryGraph, Weighting queryWeighting) {
+        ShortestPathTree shortestPathTree = new PooledShortestPathTree(queryGraph, queryWeighting, reverseFlow, traversalMode);
+        // we explore a bit beyond the limit, so that the outermost contour is not cut off by the triangulation
+        ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
+        if (exploreType == ShortestPathTree.ExploreType.WEIGHT) {
+            shortestPathTree.setWeightLimit(limit + Math.max(limit * 0.14, 2_000));
+            fz = l -> l.weight;
+        } else if (exploreType == ShortestPathTree.ExploreType.DISTANCE) {
+            shortestPathTree.setDistanceLimit(limit + Math.max(limit * 0.14, 2_000));
+            fz = l -> l.distance;
+        } else {
+            shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
+            fz = l -> l.time;
+        }
+        Triangulator.Result triangulation;
+        try {
+            triangulation = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, tolerance);
+        } catch (IllegalArgumentException e) {
+            return new Result(index, Collections.emptyList(), e.getMessage());
+        }
+        ContourBuilder contourBuilder = new ContourBuilder(triangulation.triangulation);
+        List<MultiPolygon> isochrones = new ArrayList<>(buckets);
+        double delta = limit / buckets;
+        for (int i = 0; i < buckets; i++) {
+            isochrones.add(contourBuilder.computeIsoline((i + 1) * delta, triangulation.seedEdges));
+        }
+        return new Result(index, isochrones, null);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.cursors.IntIntCursor;
+import com.graphhopper.coll.MonotoneRadixHeap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Computes the same shortest path tree as {@link ShortestPathTree}, but without an object per label. The labels are
+ * stored in parallel primitive arrays, the queue is a {@link MonotoneRadixHeap} and both are reused by the next
+ * search in the same thread.
+ * <p>
+ * The consumer is called with a flyweight label that is only valid during the call, and the same goes for its parent.
+ * The parent of the parent is always null. Copy the values if you need to keep them. The labels of
+ * {@link #getIsochroneEdges()} are created before the arrays are reused, their parents do not have a parent either.
+ */
+public class PooledShortestPathTree extends ShortestPathTree {
+
+    private static final ThreadLocal<Labels> POOL = ThreadLocal.withInitial(Labels::new);
+    private int visitedNodes;
+    private List<IsoLabel> isochroneEdges;
+
+    public PooledShortestPathTree(Graph g, Weighting weighting, boolean reverseFlow, TraversalMode traversalMode) {
+        super(g, weighting, reverseFlow, traversalMode);
+    }
+
+    @Override
+    public void search(int from, final Consumer<IsoLabel> consumer) {
+        checkAlreadyRun();
+        Labels labels = POOL.get();
+        if (labels.inUse)
+            // e.g. a search started from the consumer of another search
+            labels = new Labels();
+        labels.inUse = true;
+        try {
+            search(from, consumer, labels);
+            isochroneEdges = createIsochroneEdges(labels);
+        } finally {
+            labels.clear();
+        }
+    }
+
+    private void search(int from, final Consumer<IsoLabel> consumer, Labels labels) {
+        IsoLabel label = new IsoLabel(from, EdgeIterator.NO_EDGE, 0, 0, 0, null);
+        IsoLabel parentLabel = new IsoLabel(from, EdgeIterator.NO_EDGE, 0, 0, 0, null);
+        MonotoneRadixHeap queue = labels.queue;
+        int currentLabel = labels.add(from, EdgeIterator.NO_EDGE, 0, 0, 0, -1);
+        queue.push(currentLabel, 0);
+        if (traversalMode == TraversalMode.NODE_BASED) {
+            labels.byTraversalId.put(from, currentLabel);
+        }
+        while (!queue.isEmpty()) {
+            currentLabel = queue.poll();
+            if (labels.deleted[currentLabel])
+                continue;
+            consumer.accept(labels.fill(label, parentLabel, currentLabel));
+            labels.deleted[currentLabel] = true;
+            visitedNodes++;
+
+            int currentEdge = labels.edge[currentLabel];
+            double currentWeight = labels.weight[currentLabel];
+            EdgeIterator iter = edgeExplorer.setBaseNode(labels.node[currentLabel]);
+            while (iter.next()) {
+                if (!accept(iter, currentEdge)) {
+                    continue;
+                }
+
+                double nextWeight = GHUtility.calcWeightWithTurnWeightWithAccess(weighting, iter, reverseFlow, currentEdge) + currentWeight;
+                if (Double.isInfinite(nextWeight))
+                    continue;
+
+                int nextTraversalId = traversalMode.createTraversalId(iter, reverseFlow);
+                int existing = labels.byTraversalId.getOrDefault(nextTraversalId, -1);
+                if (existing >= 0 && labels.weight[existing] <= nextWeight)
+                    continue;
+                if (existing >= 0)
+                    labels.deleted[existing] = true;
+                double nextDistance = iter.getDistance() + labels.distance[currentLabel];
+                long nextTime = GHUtility.calcMillisWithTurnMillis(weighting, iter, reverseFlow, currentEdge) + labels.time[currentLabel];
+                int nextLabel = labels.add(iter.getAdjNode(), iter.getEdge(), nextWeight, nextTime, nextDistance, currentLabel);
+                labels.byTraversalId.put(nextTraversalId, nextLabel);
+                if (getExploreValue(exploreType, nextWeight, nextTime, nextDistance) <= limit) {
+                    queue.push(nextLabel, nextWeight);
+                }
+            }
+        }
+    }
+
+    private static double getExploreValue(ExploreType exploreType, double weight, long time, double distance) {
+        if (exploreType == ExploreType.TIME)
+            return time;
+        if (exploreType == ExploreType.WEIGHT)
+            return weight;
+        return distance;
+    }
+
+    private List<IsoLabel> createIsochroneEdges(Labels labels) {
+        List<IsoLabel> result = new ArrayList<>();
+        for (IntIntCursor cursor : labels.byTraversalId) {
+            int id = cursor.value;
+            if (getExploreValue(exploreType, labels.weight[id], labels.time[id], labels.distance[id]) > limit)
+                result.add(labels.fill(new IsoLabel(-1, EdgeIterator.NO_EDGE, 0, 0, 0, null),
+                        new IsoLabel(-1, EdgeIterator.NO_EDGE, 0, 0, 0, null), id));
+        }
+        return result;
+    }
+
+    @Override
+    public Collection<IsoLabel> getIsochroneEdges() {
+        if (isochroneEdges == null)
+            throw new IllegalStateException("Call search before getIsochroneEdges");
+        return isochroneEdges;
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private static class Labels {
+        private static final int INITIAL_CAPACITY = 1 << 10;
+        // a thread only keeps the memory of searches up to this size (roughly 10MB)
+        private static final int MAX_POOLED_CAPACITY = 1 << 18;
+        MonotoneRadixHeap queue;
+        IntIntHashMap byTraversalId;
+        int size;
+        int[] node;
+        int[] edge;
+        double[] weight;
+        long[] time;
+        double[] distance;
+        int[] parent;
+        boolean[] deleted;
+        boolean inUse;
+
+        Labels() {
+            allocate();
+        }
+
+        private void allocate() {
+            queue = new MonotoneRadixHeap();
+            byTraversalId = new IntIntHashMap();
+            node = new int[INITIAL_CAPACITY];
+            edge = new int[INITIAL_CAPACITY];
+            weight = new double[INITIAL_CAPACITY];
+            time = new long[INITIAL_CAPACITY];
+            distance = new double[INITIAL_CAPACITY];
+            parent = new int[INITIAL_CAPACITY];
+            deleted = new boolean[INITIAL_CAPACITY];
+        }
+
+        int add(int node, int edge, double weight, long time, double distance, int parent) {
+            if (size == this.node.length) {
+                int capacity = size * 2;
+                this.node = Arrays.copyOf(this.node, capacity);
+                this.edge = Arrays.copyOf(this.edge, capacity);
+                this.weight = Arrays.copyOf(this.weight, capacity);
+                this.time = Arrays.copyOf(this.time, capacity);
+                this.distance = Arrays.copyOf(this.distance, capacity);
+                this.parent = Arrays.copyOf(this.parent, capacity);
+                this.deleted = Arrays.copyOf(this.deleted, capacity);
+            }
+            this.node[size] = node;
+            this.edge[size] = edge;
+            this.weight[size] = weight;
+            this.time[size] = time;
+            this.distance[size] = distance;
+            this.parent[size] = parent;
+            this.deleted[size] = false;
+            return size++;
+        }
+
+        IsoLabel fill(IsoLabel label, IsoLabel parentLabel, int id) {
+            set(label, id);
+            int parentId = parent[id];
+            if (parentId < 0) {
+                label.parent = null;
+            } else {
+                set(parentLabel, parentId);
+                parentLabel.parent = null;
+                label.parent = parentLabel;
+            }
+            return label;
+        }
+
+        private void set(IsoLabel label, int id) {
+            label.node = node[id];
+            label.edge = edge[id];
+            label.weight = weight[id];
+            label.time = time[id];
+            label.distance = distance[id];
+            label.deleted = deleted[id];
+        }
+
+        void clear() {
+            if (node.length > MAX_POOLED_CAPACITY) {
+                allocate();
+            } else {
+                queue.clear();
+                byTraversalId.clear();
+            }
+            size = 0;
+            inUse = false;
+        }
+    }
+}
@@ -87,9 +87,9 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
     private final IntObjectHashMap<IsoLabel> fromMap;
     private final PriorityQueue<IsoLabel> queueByWeighting;
     private int visitedNodes;
-    private double limit = -1;
-    private ExploreType exploreType = TIME;
-    private final boolean reverseFlow;
+    double limit = -1;
+    ExploreType exploreType = TIME;
+    final boolean reverseFlow;
 
     public ShortestPathTree(Graph g, Weighting weighting, boolean reverseFlow, TraversalMode traversalMode) {
         super(g, weighting, traversalMode);
@@ -183,7 +183,7 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
         return result;
     }
 
-    private double getExploreValue(IsoLabel label) {
+    double getExploreValue(IsoLabel label) {
         if (exploreType == TIME)
             return label.time;
         if (exploreType == WEIGHT)
@@ -0,0 +1,293 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.ObjectCursor;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.ch.ShortcutUnpacker;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import static java.util.Comparator.comparingDouble;
+
+/**
+ * Computes a shortest path tree like {@link ShortestPathTree}, but on a node-based contraction hierarchy, see
+ * "PHAST: Hardware-Accelerated Shortest Path Trees" by Delling, Goldberg, Nowatzyk and Werneck. A Dijkstra search
+ * that only goes upwards in the hierarchy is followed by a single sweep over the nodes in decreasing level, in which
+ * every node takes its weight from its neighbors on higher levels. The sweep needs no priority queue, so this is
+ * much faster than {@link ShortestPathTree} for limits that reach a large part of the graph.
+ * <p>
+ * Time and distance are calculated from the original edges of the (shortcut) edge a node is reached by. Nodes
+ * beyond the limit do not pass on their weight, just like {@link ShortestPathTree} does not expand them.
+ * <p>
+ * If the CH preparation did not contract all nodes there are no shortcuts between the remaining core nodes, so the
+ * upward search expands all edges of the paths that went through a core node. This makes the weights of the core
+ * nodes final and the sweep only covers the contracted nodes. The weights of the nodes are stored in
+ * an array that is reused by the next search in the same thread.
+ */
+public class ShortestPathTreeCH extends ShortestPathTree {
+
+    private static final ThreadLocal<Weights> POOL = ThreadLocal.withInitial(Weights::new);
+    private final RoutingCHGraph chGraph;
+    private final int baseNodes;
+    private final ShortcutUnpacker shortcutUnpacker;
+    private long unpackedTime;
+    private double unpackedDistance;
+    private int unpackedLastEdge;
+    private int visitedNodes;
+    private IntObjectHashMap<IsoLabel> labels;
+
+    /**
+     * @param chGraph a node-based CH graph, usually a QueryRoutingCHGraph that contains the start node
+     */
+    public ShortestPathTreeCH(RoutingCHGraph chGraph, boolean reverseFlow) {
+        super(chGraph.getBaseGraph(), chGraph.getWeighting(), reverseFlow, TraversalMode.NODE_BASED);
+        if (chGraph.isEdgeBased())
+            throw new IllegalArgumentException("Shortest path trees are only supported for node-based CH");
+        this.chGraph = chGraph;
+        this.baseNodes = chGraph.getBaseGraph().getBaseGraph().getNodes();
+        this.shortcutUnpacker = new ShortcutUnpacker(chGraph, (edge, reverse, prevOrNextEdgeId) -> {
+            unpackedTime += weighting.calcEdgeMillis(edge, reverse);
+            unpackedDistance += edge.getDistance();
+            unpackedLastEdge = edge.getEdge();
+        }, false);
+    }
+
+    @Override
+    public void search(int from, final Consumer<IsoLabel> consumer) {
+        checkAlreadyRun();
+        Weights pooled = POOL.get();
+        if (pooled.inUse)
+            // e.g. a search started from the consumer of another search
+            pooled = new Weights();
+        pooled.inUse = true;
+        labels = new GHIntObjectHashMap<>(1000);
+        boolean cleared = false;
+        try {
+            double[] weights = pooled.get(chGraph.getNodes());
+            int maxLevel = searchUpwards(from, weights, labels);
+            sweepDownwards(maxLevel, weights, labels);
+            // all nodes with a finite weight have a label
+            for (IntCursor cursor : labels.keys()) {
+                weights[cursor.value] = Double.POSITIVE_INFINITY;
+            }
+            cleared = true;
+        } finally {
+            if (!cleared)
+                pooled.values = new double[0];
+            pooled.inUse = false;
+        }
+        for (ObjectCursor<IsoLabel> cursor : labels.values()) {
+            consumer.accept(cursor.value);
+        }
+    }
+
+    /**
+     * @return the highest level of a (non-virtual) node that was reached
+     */
+    private int searchUpwards(int from, double[] weights, IntObjectHashMap<IsoLabel> labels) {
+        PriorityQueue<IsoLabel> queue = new PriorityQueue<>(1000, comparingDouble(l -> l.weight));
+        IsoLabel startLabel = new IsoLabel(from, EdgeIterator.NO_EDGE, 0, 0, 0, null);
+        // the nodes whose paths went through a core node, they are not limited to the upward edges
+        IntHashSet unrestricted = new GHIntHashSet();
+        labels.put(from, startLabel);
+        queue.add(startLabel);
+        RoutingCHEdgeExplorer explorer = reverseFlow ? chGraph.createInEdgeExplorer() : chGraph.createOutEdgeExplorer();
+        int maxLevel = -1;
+        while (!queue.isEmpty()) {
+            IsoLabel currentLabel = queue.poll();
+            if (currentLabel.deleted)
+                continue;
+            currentLabel.deleted = true;
+            weights[currentLabel.node] = currentLabel.weight;
+            visitedNodes++;
+            if (currentLabel.node < baseNodes)
+                maxLevel = Math.max(maxLevel, chGraph.getLevel(currentLabel.node));
+            boolean restricted = !unrestricted.contains(currentLabel.node) && !isCore(currentLabel.node);
+
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(currentLabel.node);
+            while (iter.next()) {
+                if (restricted && !isUpwards(iter.getBaseNode(), iter.getAdjNode(), iter.isShortcut()))
+                    continue;
+                double nextWeight = iter.getWeight(reverseFlow) + currentLabel.weight;
+                if (Double.isInfinite(nextWeight))
+                    continue;
+                IsoLabel label = labels.get(iter.getAdjNode());
+                if (label != null && label.weight <= nextWeight)
+                    continue;
+                IsoLabel nextLabel = createLabel(currentLabel, iter.getEdge(), iter.getAdjNode(), nextWeight);
+                if (getExploreValue(nextLabel) > limit)
+                    continue;
+                if (label != null)
+                    label.deleted = true;
+                labels.put(nextLabel.node, nextLabel);
+                if (restricted)
+                    unrestricted.remove(nextLabel.node);
+                else
+                    unrestricted.add(nextLabel.node);
+                queue.add(nextLabel);
+            }
+        }
+        return maxLevel;
+    }
+
+    private void sweepDownwards(int maxLevel, double[] weights, IntObjectHashMap<IsoLabel> labels) {
+        int[] nodesByLevel = chGraph.getNodesByLevel();
+        // the nodes that were not contracted have the level baseNodes and already got their final weight
+        int start = lastIndexWithLevelAtMost(nodesByLevel, Math.min(maxLevel, baseNodes - 1));
+        // we look at the edges coming from the higher levels, i.e. in the opposite direction of the upward search
+        RoutingCHEdgeExplorer explorer = reverseFlow ? chGraph.createOutEdgeExplorer() : chGraph.createInEdgeExplorer();
+        for (int i = start; i >= 0; i--) {
+            int node = nodesByLevel[i];
+            double bestWeight = weights[node];
+            int bestEdge = EdgeIterator.NO_EDGE;
+            int bestParent = -1;
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                if (weights[adjNode] == Double.POSITIVE_INFINITY || !isUpwards(node, adjNode, iter.isShortcut()))
+                    continue;
+                double weight = iter.getWeight(!reverseFlow) + weights[adjNode];
+                if (weight < bestWeight) {
+                    bestWeight = weight;
+                    bestEdge = iter.getEdge();
+                    bestParent = adjNode;
+                }
+            }
+            if (bestParent < 0)
+                continue;
+            IsoLabel label = createLabel(labels.get(bestParent), bestEdge, node, bestWeight);
+            // if the node is beyond the limit on this path we keep the label (and weight) it got from the upward search, if any
+            if (getExploreValue(label) <= limit) {
+                if (!labels.containsKey(node))
+                    visitedNodes++;
+                weights[node] = bestWeight;
+                labels.put(node, label);
+            }
+        }
+    }
+
+    private int lastIndexWithLevelAtMost(int[] nodesByLevel, int level) {
+        int lo = 0, hi = nodesByLevel.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (chGraph.getLevel(nodesByLevel[mid]) <= level)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo - 1;
+    }
+
+    private boolean isCore(int node) {
+        return node < baseNodes && chGraph.getLevel(node) >= baseNodes;
+    }
+
+    /**
+     * Virtual edges are always accepted, like the start node is the lowest node. Shortcuts are only stored at
+     * their lower node.
+     */
+    private boolean isUpwards(int baseNode, int adjNode, boolean shortcut) {
+        if (baseNode >= baseNodes || adjNode >= baseNodes || shortcut)
+            return true;
+        return chGraph.getLevel(baseNode) <= chGraph.getLevel(adjNode);
+    }
+
+    private IsoLabel createLabel(IsoLabel parent, int chEdge, int node, double weight) {
+        unpackedTime = 0;
+        unpackedDistance = 0;
+        unpackedLastEdge = EdgeIterator.NO_EDGE;
+        if (reverseFlow)
+            shortcutUnpacker.visitOriginalEdgesBwd(chEdge, node, false, EdgeIterator.NO_EDGE);
+        else
+            shortcutUnpacker.visitOriginalEdgesFwd(chEdge, node, false, EdgeIterator.NO_EDGE);
+        return new IsoLabel(node, unpackedLastEdge, weight, parent.time + unpackedTime, parent.distance + unpackedDistance, parent);
+    }
+
+    /**
+     * The nodes beyond the limit do not get a label during the search, so we create them from the original edges that
+     * leave the nodes within the limit, like {@link ShortestPathTree} does when it expands these nodes.
+     */
+    @Override
+    public Collection<IsoLabel> getIsochroneEdges() {
+        if (labels == null)
+            throw new IllegalStateException("Call search before getIsochroneEdges");
+        IntObjectHashMap<IsoLabel> result = new GHIntObjectHashMap<>();
+        for (ObjectCursor<IsoLabel> cursor : labels.values()) {
+            IsoLabel parent = cursor.value;
+            EdgeIterator iter = edgeExplorer.setBaseNode(parent.node);
+            while (iter.next()) {
+                if (!accept(iter, parent.edge) || labels.containsKey(iter.getAdjNode()))
+                    continue;
+                double weight = GHUtility.calcWeightWithTurnWeightWithAccess(weighting, iter, reverseFlow, parent.edge) + parent.weight;
+                if (Double.isInfinite(weight))
+                    continue;
+                IsoLabel label = result.get(iter.getAdjNode());
+                if (label != null && label.weight <= weight)
+                    continue;
+                long time = GHUtility.calcMillisWithTurnMillis(weighting, iter, reverseFlow, parent.edge) + parent.time;
+                result.put(iter.getAdjNode(), new IsoLabel(iter.getAdjNode(), iter.getEdge(), weight, time, iter.getDistance() + parent.distance, parent));
+            }
+        }
+        ArrayList<IsoLabel> edges = new ArrayList<>(result.size());
+        for (ObjectCursor<IsoLabel> cursor : result.values()) {
+            edges.add(cursor.value);
+        }
+        return edges;
+    }
+
+    @Override
+    public String getName() {
+        return "reachability|ch";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private static class Weights {
+        // all entries are infinite between the searches
+        double[] values = new double[0];
+        boolean inUse;
+
+        double[] get(int nodes) {
+            if (values.length < nodes) {
+                // leave some space for the virtual nodes of the next queries
+                values = new double[nodes + 10];
+                Arrays.fill(values, Double.POSITIVE_INFINITY);
+            }
+            return values;
+        }
+    }
+}
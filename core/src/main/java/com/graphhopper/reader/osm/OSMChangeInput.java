@@ -0,0 +1,130 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderNode;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads an OSM change file (.osc or .osc.gz), see https://wiki.openstreetmap.org/wiki/OsmChange. The elements are
+ * returned in the order of the file and {@link #getAction()} returns the action of the element that was returned
+ * last. Modified and created elements contain their complete new version, deleted elements only their id.
+ */
+public class OSMChangeInput implements OSMInput {
+    public enum Action {CREATE, MODIFY, DELETE}
+
+    private final InputStream is;
+    private XMLStreamReader xmlParser;
+    private Action currentAction;
+    private Action action;
+    private boolean eof;
+
+    public OSMChangeInput(File file) throws IOException {
+        InputStream fis = new BufferedInputStream(new FileInputStream(file), 50000);
+        is = file.getName().endsWith(".gz") ? new GZIPInputStream(fis, 50000) : fis;
+    }
+
+    public OSMChangeInput open() throws XMLStreamException {
+        xmlParser = XMLInputFactory.newInstance().createXMLStreamReader(is, "UTF-8");
+        int event = xmlParser.next();
+        if (event != XMLStreamConstants.START_ELEMENT || !xmlParser.getLocalName().equalsIgnoreCase("osmChange"))
+            throw new IllegalArgumentException("File is not a valid OSM change stream");
+        return this;
+    }
+
+    /**
+     * @return the action of the element that was returned by the last call of {@link #getNext()}
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    @Override
+    public ReaderElement getNext() throws XMLStreamException {
+        if (eof)
+            throw new IllegalStateException("EOF reached");
+
+        int event = xmlParser.next();
+        while (event != XMLStreamConstants.END_DOCUMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xmlParser.getLocalName();
+                switch (name) {
+                    case "create":
+                        currentAction = Action.CREATE;
+                        break;
+                    case "modify":
+                        currentAction = Action.MODIFY;
+                        break;
+                    case "delete":
+                        currentAction = Action.DELETE;
+                        break;
+                    case "node":
+                    case "way":
+                    case "relation":
+                        if (currentAction == null)
+                            throw new IllegalArgumentException("OSM change file contains a " + name + " outside of create, modify or delete");
+                        action = currentAction;
+                        return createElement(name, Long.parseLong(xmlParser.getAttributeValue(null, "id")));
+                }
+            }
+            event = xmlParser.next();
+        }
+        eof = true;
+        return null;
+    }
+
+    private ReaderElement createElement(String name, long id) throws XMLStreamException {
+        if ("way".equals(name))
+            return OSMXMLHelper.createWay(id, xmlParser);
+        if ("relation".equals(name))
+            return OSMXMLHelper.createRelation(id, xmlParser);
+        if (xmlParser.getAttributeValue(null, "lat") != null)
+            return OSMXMLHelper.createNode(id, xmlParser);
+        // deleted nodes usually come without coordinates
+        int event;
+        do {
+            event = xmlParser.next();
+        } while (event != XMLStreamConstants.END_ELEMENT || !"node".equals(xmlParser.getLocalName()));
+        return new ReaderNode(id, Double.NaN, Double.NaN);
+    }
+
+    @Override
+    public int getUnprocessedElements() {
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (xmlParser != null)
+                xmlParser.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        } finally {
+            eof = true;
+            is.close();
+        }
+    }
+}
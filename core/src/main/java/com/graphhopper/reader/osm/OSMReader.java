@@ -17,11 +17,17 @@
  */
 package com.graphhopper.reader.osm;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntLongMap;
+import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.LongArrayList;
-import com.graphhopper.coll.GHIntLongHashMap;
-import com.graphhopper.coll.GHLongHashSet;
-import com.graphhopper.coll.GHLongLongHashMap;
+import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.LongObjectMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.carrotsearch.hppc.cursors.LongObjectCursor;
+import com.graphhopper.coll.*;
 import com.graphhopper.reader.*;
 import com.graphhopper.reader.dem.EdgeSampling;
 import com.graphhopper.reader.dem.ElevationProvider;
@@ -89,6 +95,7 @@ public class OSMReader {
     // stores osm way ids used by relations to identify which edge ids needs to be mapped later
     private GHLongHashSet osmWayIdSet = new GHLongHashSet();
     private IntLongMap edgeIdToOsmWayIdMap;
+    private OSMWayIdStorage wayIdStorage;
 
     public OSMReader(BaseGraph baseGraph, EncodingManager encodingManager, OSMParsers osmParsers, OSMReaderConfig config) {
         this.baseGraph = baseGraph;
@@ -139,6 +146,15 @@ public class OSMReader {
         return this;
     }
 
+    /**
+     * Stores the OSM way of every created edge in the specified storage, which is needed to apply OSM change files
+     * later, see {@link #applyChanges}.
+     */
+    public OSMReader setWayIdStorage(OSMWayIdStorage wayIdStorage) {
+        this.wayIdStorage = wayIdStorage;
+        return this;
+    }
+
     public void readGraph() throws IOException {
         if (osmParsers == null)
             throw new IllegalStateException("Tag parsers were not set.");
@@ -278,14 +294,52 @@ public class OSMReader {
      * @param pointList coordinates of this segment
      * @param way       the OSM way this segment was taken from
      * @param nodeTags  node tags of this segment if it is an artificial edge, empty otherwise
+     * @param osmNodeIds the ids of the OSM nodes of this segment
      */
-    protected void addEdge(int fromIndex, int toIndex, PointList pointList, ReaderWay way, Map<String, Object> nodeTags) {
+    protected void addEdge(int fromIndex, int toIndex, PointList pointList, ReaderWay way, Map<String, Object> nodeTags, LongArrayList osmNodeIds) {
         // sanity checks
         if (fromIndex < 0 || toIndex < 0)
             throw new AssertionError("to or from index is invalid for this edge " + fromIndex + "->" + toIndex + ", points:" + pointList);
         if (pointList.getDimension() != nodeAccess.getDimension())
             throw new AssertionError("Dimension does not match for pointList vs. nodeAccess " + pointList.getDimension() + " <-> " + nodeAccess.getDimension());
 
+        PointList nodePoints = wayIdStorage == null ? null : pointList.clone(false);
+        pointList = prepareGeometry(pointList);
+        double distance = calcEdgeDistance(pointList, way.getId());
+
+        setArtificialWayTags(pointList, way, distance, nodeTags);
+        IntsRef relationFlags = getRelFlagsMap(way.getId());
+        IntsRef edgeFlags = encodingManager.createEdgeFlags();
+        edgeFlags = osmParsers.handleWayTags(edgeFlags, way, relationFlags);
+        if (edgeFlags.isEmpty())
+            return;
+
+        String name = way.getTag("way_name", "");
+        EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance).setFlags(edgeFlags).setName(name);
+
+        // If the entire way is just the first and last point, do not waste space storing an empty way geometry
+        if (pointList.size() > 2) {
+            // the geometry consists only of pillar nodes, but we check that the first and last points of the pointList
+            // are equal to the tower node coordinates
+            checkCoordinates(fromIndex, pointList.get(0));
+            checkCoordinates(toIndex, pointList.get(pointList.size() - 1));
+            edge.setWayGeometry(pointList.shallowCopy(1, pointList.size() - 1, false));
+        }
+        osmParsers.applyWayTags(way, edge);
+
+        checkDistance(edge);
+        if (osmWayIdSet.contains(way.getId())) {
+            getEdgeIdToOsmWayIdMap().put(edge.getEdge(), way.getId());
+        }
+        if (wayIdStorage != null)
+            wayIdStorage.setWay(edge.getEdge(), way.getId(), OSMWayIdStorage.calcNodesHash(way.getNodes()), relationFlags,
+                    osmNodeIds, findGeometryNodes(nodePoints, pointList), nodeTags);
+    }
+
+    /**
+     * Smooths, samples and simplifies the points of an edge, including its tower nodes
+     */
+    private PointList prepareGeometry(PointList pointList) {
         // todo: in principle it should be possible to delay elevation calculation so we do not need to store
         // elevations during import (saves memory in pillar info during import). also note that we already need to
         // to do some kind of elevation processing (bridge+tunnel interpolation in GraphHopper class, maybe this can
@@ -301,7 +355,10 @@ public class OSMReader {
 
         if (config.getMaxWayPointDistance() > 0 && pointList.size() > 2)
             simplifyAlgo.simplify(pointList);
+        return pointList;
+    }
 
+    private double calcEdgeDistance(PointList pointList, long wayId) {
         double distance = distCalc.calcDistance(pointList);
 
         if (distance < 0.001) {
@@ -313,7 +370,7 @@ public class OSMReader {
 
         double maxDistance = (Integer.MAX_VALUE - 1) / 1000d;
         if (Double.isNaN(distance)) {
-            LOGGER.warn("Bug in OSM or GraphHopper. Illegal tower node distance " + distance + " reset to 1m, osm way " + way.getId());
+            LOGGER.warn("Bug in OSM or GraphHopper. Illegal tower node distance " + distance + " reset to 1m, osm way " + wayId);
             distance = 1;
         }
 
@@ -321,34 +378,29 @@ public class OSMReader {
             // Too large is very rare and often the wrong tagging. See #435
             // so we can avoid the complexity of splitting the way for now (new towernodes would be required, splitting up geometry etc)
             // For example this happens here: https://www.openstreetmap.org/way/672506453 (Cape Town - Tristan da Cunha ferry)
-            LOGGER.warn("Bug in OSM or GraphHopper. Too big tower node distance " + distance + " reset to large value, osm way " + way.getId());
+            LOGGER.warn("Bug in OSM or GraphHopper. Too big tower node distance " + distance + " reset to large value, osm way " + wayId);
             distance = maxDistance;
         }
+        return distance;
+    }
 
-        setArtificialWayTags(pointList, way, distance, nodeTags);
-        IntsRef relationFlags = getRelFlagsMap(way.getId());
-        IntsRef edgeFlags = encodingManager.createEdgeFlags();
-        edgeFlags = osmParsers.handleWayTags(edgeFlags, way, relationFlags);
-        if (edgeFlags.isEmpty())
-            return;
-
-        String name = way.getTag("way_name", "");
-        EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance).setFlags(edgeFlags).setName(name);
-
-        // If the entire way is just the first and last point, do not waste space storing an empty way geometry
-        if (pointList.size() > 2) {
-            // the geometry consists only of pillar nodes, but we check that the first and last points of the pointList
-            // are equal to the tower node coordinates
-            checkCoordinates(fromIndex, pointList.get(0));
-            checkCoordinates(toIndex, pointList.get(pointList.size() - 1));
-            edge.setWayGeometry(pointList.shallowCopy(1, pointList.size() - 1, false));
-        }
-        osmParsers.applyWayTags(way, edge);
-
-        checkDistance(edge);
-        if (osmWayIdSet.contains(way.getId())) {
-            getEdgeIdToOsmWayIdMap().put(edge.getEdge(), way.getId());
+    /**
+     * @return the indices of the given node points that are still contained in the prepared geometry
+     */
+    private static BitSet findGeometryNodes(PointList nodePoints, PointList geometry) {
+        BitSet result = new BitSet(nodePoints.size());
+        int next = 0;
+        for (int i = 0; i < nodePoints.size() && next < geometry.size(); i++) {
+            // sampling only adds points and simplification only removes points, so the order is the same
+            for (int j = next; j < geometry.size(); j++) {
+                if (nodePoints.getLat(i) == geometry.getLat(j) && nodePoints.getLon(i) == geometry.getLon(j)) {
+                    result.set(i);
+                    next = j + 1;
+                    break;
+                }
+            }
         }
+        return result;
     }
 
     private void checkCoordinates(int nodeIndex, GHPoint point) {
@@ -377,6 +429,14 @@ public class OSMReader {
      * refers to the duration of the entire way.
      */
     protected void preprocessWay(ReaderWay way, WaySegmentParser.CoordinateSupplier coordinateSupplier) {
+        setWayName(way);
+        if (!isCalculateWayDistance(way))
+            return;
+
+        setWayDistance(way, calcDistance(way, coordinateSupplier));
+    }
+
+    private void setWayName(ReaderWay way) {
         // storing the road name does not yet depend on the flagEncoder so manage it directly
         if (config.isParseWayNames()) {
             // String wayInfo = carFlagEncoder.getWayInfo(way);
@@ -397,11 +457,9 @@ public class OSMReader {
 
             way.setTag("way_name", name);
         }
+    }
 
-        if (!isCalculateWayDistance(way))
-            return;
-
-        double distance = calcDistance(way, coordinateSupplier);
+    private void setWayDistance(ReaderWay way, double distance) {
         if (Double.isNaN(distance)) {
             // Some nodes were missing, and we cannot determine the distance. This can happen when ways are only
             // included partially in an OSM extract. In this case we cannot calculate the speed either, so we return.
@@ -450,6 +508,394 @@ public class OSMReader {
         return WAY_NAME_PATTERN.matcher(str).replaceAll(", ");
     }
 
+    /**
+     * Applies an OSM change file to the edges that were created from the changed ways and nodes, which requires that
+     * the OSM ways and nodes of the edges were stored during the import, see {@link #setWayIdStorage}.
+     * <ul>
+     * <li>The flags and names of the edges of changed ways are calculated again from the new tags of their way and the
+     * relation flags the way had on import. The edges of deleted ways and of ways that are not accepted anymore become
+     * inaccessible.</li>
+     * <li>Moved nodes, including tower nodes, change the geometry and the distance of all their edges.</li>
+     * <li>Ways whose nodes changed, but that still have the same tower and barrier nodes in the same order, get a new
+     * geometry. The nodes that were removed by the simplification on import have no stored coordinates, so the new
+     * geometry consists of the kept nodes and the nodes of the change file only.</li>
+     * <li>The tags of barrier nodes are updated if their way is in the change file as well.</li>
+     * </ul>
+     * Modified nodes that do not belong to any edge are ignored, and so are created and deleted nodes that are not used
+     * by changed ways. The graph cannot get new nodes or edges, so the change file is rejected before any edge is
+     * changed if it contains new ways that are accepted, ways whose tower or barrier nodes changed, new nodes of ways
+     * that connect them to other edges or whose coordinates are unknown, new barriers, changed barrier tags without
+     * their way, or changed route or turn restriction relations of ways with edges. Such changes require a new import.
+     *
+     * @return the previous flags of the edges whose flags changed and the edges whose geometry changed
+     * @throws IllegalStateException if the change file contains changes that cannot be applied
+     */
+    public AppliedChanges applyChanges(File changeFile) {
+        if (wayIdStorage == null)
+            throw new IllegalStateException("Applying OSM changes requires the OSM way ids of the edges");
+
+        StopWatch sw = new StopWatch().start();
+        LongObjectMap<ReaderWay> changedWays = new GHLongObjectHashMap<>();
+        LongObjectMap<ReaderNode> changedNodes = new GHLongObjectHashMap<>();
+        List<ReaderRelation> changedRelations = new ArrayList<>();
+        try (OSMChangeInput input = new OSMChangeInput(changeFile).open()) {
+            ReaderElement element;
+            while ((element = input.getNext()) != null) {
+                if (element.isType(ReaderElement.WAY)) {
+                    ReaderWay way = (ReaderWay) element;
+                    if (input.getAction() == OSMChangeInput.Action.DELETE) {
+                        // a deleted way is treated like a way that is not accepted anymore
+                        way.getNodes().clear();
+                        way.clearTags();
+                    }
+                    changedWays.put(way.getId(), way);
+                } else if (element.isType(ReaderElement.NODE)) {
+                    if (input.getAction() != OSMChangeInput.Action.DELETE)
+                        changedNodes.put(element.getId(), (ReaderNode) element);
+                } else if (element.isType(ReaderElement.RELATION)) {
+                    changedRelations.add((ReaderRelation) element);
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read OSM change file: " + changeFile.getAbsolutePath(), e);
+        }
+
+        // we find the edges of the changed ways and relations and of the nodes of the change file in a single pass
+        LongHashSet relevantWays = new GHLongHashSet();
+        LongHashSet relevantNodes = new GHLongHashSet();
+        for (LongObjectCursor<ReaderWay> cursor : changedWays) {
+            relevantWays.add(cursor.key);
+            relevantNodes.addAll(cursor.value.getNodes());
+        }
+        for (ReaderRelation relation : changedRelations) {
+            for (ReaderRelation.Member member : relation.getMembers()) {
+                if (member.getType() == ReaderRelation.Member.WAY)
+                    relevantWays.add(member.getRef());
+            }
+        }
+        relevantNodes.addAll(changedNodes.keys());
+        LongObjectMap<IntArrayList> edgesByWay = new GHLongObjectHashMap<>(relevantWays.size());
+        LongObjectMap<IntArrayList> edgesByNode = new GHLongObjectHashMap<>(relevantNodes.size());
+        for (int edge = 0; edge < wayIdStorage.getEdges(); edge++) {
+            long wayId = wayIdStorage.getWayId(edge);
+            if (wayId == OSMWayIdStorage.NO_WAY)
+                continue;
+            if (relevantWays.contains(wayId))
+                addEdge(edgesByWay, wayId, edge);
+            LongArrayList nodeIds = wayIdStorage.getNodeIds(edge);
+            for (int i = 0; i < nodeIds.size(); i++) {
+                if (relevantNodes.contains(nodeIds.get(i)))
+                    addEdge(edgesByNode, nodeIds.get(i), edge);
+            }
+        }
+
+        // we check all changes before we change any edge, so a change file is either applied completely or not at all
+        Map<String, Integer> rejected = new LinkedHashMap<>();
+        int ignoredRelations = 0;
+        for (ReaderRelation relation : changedRelations) {
+            String type = relation.getTag("type", "");
+            if (!type.equals("route") && !type.startsWith("restriction")) {
+                ignoredRelations++;
+                continue;
+            }
+            for (ReaderRelation.Member member : relation.getMembers()) {
+                if (member.getType() == ReaderRelation.Member.WAY && edgesByWay.containsKey(member.getRef())) {
+                    rejected.merge("changed relations", 1, Integer::sum);
+                    break;
+                }
+            }
+        }
+        LongObjectMap<ReaderWay> acceptedWays = new GHLongObjectHashMap<>(changedWays.size());
+        IntObjectMap<LongArrayList> newNodeIds = new GHIntObjectHashMap<>();
+        for (LongObjectCursor<ReaderWay> cursor : changedWays) {
+            ReaderWay way = cursor.value;
+            IntArrayList edges = edgesByWay.get(cursor.key);
+            if (!acceptWay(way))
+                continue;
+            acceptedWays.put(cursor.key, way);
+            if (edges == null) {
+                rejected.merge("new ways", 1, Integer::sum);
+            } else if (wayIdStorage.getNodesHash(edges.get(0)) != OSMWayIdStorage.calcNodesHash(way.getNodes())) {
+                String problem = splitIntoEdges(way, edges, changedNodes, edgesByNode, newNodeIds);
+                if (problem != null)
+                    rejected.merge(problem, 1, Integer::sum);
+            }
+        }
+        int usedNodes = 0;
+        for (LongObjectCursor<IntArrayList> cursor : edgesByNode) {
+            ReaderNode node = changedNodes.get(cursor.key);
+            if (node == null)
+                continue;
+            usedNodes++;
+            boolean barrier = false;
+            int towerEdges = 0;
+            LongHashSet towerWays = new GHLongHashSet();
+            for (IntCursor edge : cursor.value) {
+                Map<String, Object> nodeTags = wayIdStorage.getNodeTags(edge.value);
+                if (!nodeTags.isEmpty()) {
+                    barrier = true;
+                    if (!nodeTags.equals(toStringTags(node)) && !changedWays.containsKey(wayIdStorage.getWayId(edge.value)))
+                        rejected.merge("changed barriers without their way", 1, Integer::sum);
+                } else {
+                    LongArrayList nodeIds = wayIdStorage.getNodeIds(edge.value);
+                    if (nodeIds.get(0) == node.getId() || nodeIds.get(nodeIds.size() - 1) == node.getId()) {
+                        towerEdges++;
+                        towerWays.add(wayIdStorage.getWayId(edge.value));
+                    }
+                }
+            }
+            // barriers at junctions are ignored, see WaySegmentParser
+            boolean junction = towerWays.size() > 1 || towerEdges > 2;
+            if (!barrier && !junction && isBarrierNode(node))
+                rejected.merge("new barriers", 1, Integer::sum);
+        }
+        if (!rejected.isEmpty())
+            throw new IllegalStateException("OSM change file " + changeFile.getAbsolutePath() + " changes the graph in a way "
+                    + "that requires a new import: " + rejected);
+
+        // the new nodes of ways and the moved nodes change the geometry. we collect the previous coordinates of all
+        // these edges first, because moving a tower node changes the geometry of the other edges of this node as well
+        IntObjectMap<LongObjectMap<GHPoint3D>> previousCoordinates = new GHIntObjectHashMap<>();
+        for (IntObjectCursor<LongArrayList> cursor : newNodeIds)
+            previousCoordinates.put(cursor.key, getNodeCoordinates(edgesByWay.get(wayIdStorage.getWayId(cursor.key))));
+        for (LongObjectCursor<IntArrayList> cursor : edgesByNode) {
+            ReaderNode node = changedNodes.get(cursor.key);
+            if (node == null)
+                continue;
+            for (IntCursor edge : cursor.value) {
+                if (previousCoordinates.containsKey(edge.value))
+                    continue;
+                LongObjectMap<GHPoint3D> coordinates = getNodeCoordinates(IntArrayList.from(edge.value));
+                GHPoint3D previous = coordinates.get(node.getId());
+                // nodes that were removed by the simplification can have been moved as well
+                if (previous == null || Math.abs(previous.lat - node.getLat()) > 1e-7 || Math.abs(previous.lon - node.getLon()) > 1e-7)
+                    previousCoordinates.put(edge.value, coordinates);
+            }
+        }
+        AppliedChanges result = new AppliedChanges();
+        for (IntObjectCursor<LongObjectMap<GHPoint3D>> cursor : previousCoordinates) {
+            LongArrayList nodeIds = newNodeIds.get(cursor.key);
+            int nodesHash = nodeIds == null
+                    ? wayIdStorage.getNodesHash(cursor.key)
+                    : OSMWayIdStorage.calcNodesHash(changedWays.get(wayIdStorage.getWayId(cursor.key)).getNodes());
+            setGeometry(cursor.key, nodeIds == null ? wayIdStorage.getNodeIds(cursor.key) : nodeIds, nodesHash, changedNodes, cursor.value);
+            result.changedGeometries.add(cursor.key);
+        }
+        // the changed tags of barrier nodes are used for the flags of their edges below
+        for (LongObjectCursor<IntArrayList> cursor : edgesByNode) {
+            ReaderNode node = changedNodes.get(cursor.key);
+            if (node == null)
+                continue;
+            for (IntCursor edge : cursor.value) {
+                Map<String, Object> nodeTags = wayIdStorage.getNodeTags(edge.value);
+                if (!nodeTags.isEmpty() && !nodeTags.equals(toStringTags(node)))
+                    wayIdStorage.setNodeTags(edge.value, node.getTags());
+            }
+        }
+
+        IntsRef relationFlags = osmParsers.createRelationFlags();
+        for (LongObjectCursor<ReaderWay> cursor : changedWays) {
+            ReaderWay way = cursor.value;
+            IntArrayList edges = edgesByWay.get(cursor.key);
+            if (edges == null)
+                continue;
+            boolean accepted = acceptedWays.containsKey(cursor.key);
+            if (accepted) {
+                setWayName(way);
+                if (isCalculateWayDistance(way)) {
+                    double distance = 0;
+                    for (int i = 0; i < edges.size(); i++) {
+                        distance += baseGraph.getEdgeIteratorState(edges.get(i), Integer.MIN_VALUE).getDistance();
+                    }
+                    setWayDistance(way, distance);
+                }
+            }
+            for (int i = 0; i < edges.size(); i++) {
+                // the edges were created in the direction of the way
+                EdgeIteratorState edge = baseGraph.getEdgeIteratorState(edges.get(i), Integer.MIN_VALUE);
+                IntsRef edgeFlags = encodingManager.createEdgeFlags();
+                if (accepted) {
+                    // artificial edges, e.g. for barriers, get the tags of their node again
+                    setArtificialWayTags(edge.fetchWayGeometry(FetchMode.ALL), way, edge.getDistance(), wayIdStorage.getNodeTags(edge.getEdge()));
+                    edgeFlags = osmParsers.handleWayTags(edgeFlags, way, wayIdStorage.getRelationFlags(edge.getEdge(), relationFlags));
+                }
+                IntsRef oldFlags = IntsRef.deepCopyOf(edge.getFlags());
+                edge.setFlags(edgeFlags);
+                if (accepted) {
+                    String name = way.getTag("way_name", "");
+                    if (!name.equals(edge.getName()))
+                        edge.setName(name);
+                    osmParsers.applyWayTags(way, edge);
+                }
+                if (!oldFlags.equals(edge.getFlags()))
+                    result.previousFlags.put(edge.getEdge(), oldFlags);
+            }
+        }
+        LOGGER.info("Applied OSM change file: {}, took: {}s, changed ways: {}, changed edges: {}, changed geometries: {}, "
+                        + "used nodes: {}, ignored nodes: {}, ignored relations: {}", changeFile.getAbsolutePath(),
+                sw.stop().getSeconds(), nf(changedWays.size()), nf(result.previousFlags.size()), nf(result.changedGeometries.size()),
+                nf(usedNodes), nf(changedNodes.size() - usedNodes), nf(ignoredRelations));
+        return result;
+    }
+
+    private static void addEdge(LongObjectMap<IntArrayList> edgesByKey, long key, int edge) {
+        IntArrayList edges = edgesByKey.get(key);
+        if (edges == null)
+            edgesByKey.put(key, edges = new IntArrayList(2));
+        // a node can appear twice in the same edge, e.g. if the edge is a loop
+        if (edges.isEmpty() || edges.get(edges.size() - 1) != edge)
+            edges.add(edge);
+    }
+
+    private static Map<String, Object> toStringTags(ReaderNode node) {
+        Map<String, Object> tags = new LinkedHashMap<>(node.getTags().size());
+        node.getTags().forEach((key, value) -> tags.put(key, String.valueOf(value)));
+        return tags;
+    }
+
+    /**
+     * Splits the new nodes of the given way into its existing edges. This only works if the way still has the same
+     * ends of the edges, i.e. the same tower and barrier nodes in the same order, and if all new nodes are contained in
+     * the change file and are not used by other edges.
+     *
+     * @return the reason why the way cannot be split into its edges or null if the node ids of the edges were added to
+     * the given map
+     */
+    private String splitIntoEdges(ReaderWay way, IntArrayList edges, LongObjectMap<ReaderNode> changedNodes,
+                                  LongObjectMap<IntArrayList> edgesByNode, IntObjectMap<LongArrayList> newNodeIds) {
+        LongHashSet edgeEnds = new GHLongHashSet();
+        LongHashSet previousNodes = new GHLongHashSet();
+        for (IntCursor edge : edges) {
+            LongArrayList nodeIds = wayIdStorage.getNodeIds(edge.value);
+            edgeEnds.add(nodeIds.get(0));
+            edgeEnds.add(nodeIds.get(nodeIds.size() - 1));
+            previousNodes.addAll(nodeIds);
+        }
+        LongArrayList wayNodes = way.getNodes();
+        IntObjectMap<LongArrayList> result = new GHIntObjectHashMap<>(edges.size());
+        int index = 0;
+        // the edges were created in the order of the way
+        for (int i = 0; i < edges.size(); i++) {
+            LongArrayList nodeIds = wayIdStorage.getNodeIds(edges.get(i));
+            long first = nodeIds.get(0), last = nodeIds.get(nodeIds.size() - 1);
+            if (index >= wayNodes.size() || wayNodes.get(index) != first)
+                return "ways with changed tower nodes";
+            if (!wayIdStorage.getNodeTags(edges.get(i)).isEmpty()) {
+                // the barrier edge connects two copies of the same node
+                result.put(edges.get(i), nodeIds);
+                continue;
+            }
+            LongArrayList edgeNodes = new LongArrayList();
+            edgeNodes.add(first);
+            while (++index < wayNodes.size() && wayNodes.get(index) != last) {
+                long node = wayNodes.get(index);
+                if (edgeEnds.contains(node))
+                    return "ways with changed tower nodes";
+                IntArrayList nodeEdges = edgesByNode.get(node);
+                for (int j = 0; nodeEdges != null && j < nodeEdges.size(); j++) {
+                    if (!edges.contains(nodeEdges.get(j)))
+                        return "new nodes of ways that connect other edges";
+                }
+                ReaderNode changedNode = changedNodes.get(node);
+                // the previous nodes without coordinates were removed by the simplification and are skipped again
+                if (changedNode == null && !previousNodes.contains(node))
+                    return "new nodes of ways with unknown coordinates";
+                if (changedNode != null && isBarrierNode(changedNode))
+                    return "new barriers";
+                edgeNodes.add(node);
+            }
+            if (index >= wayNodes.size())
+                return "ways with changed tower nodes";
+            edgeNodes.add(last);
+            result.put(edges.get(i), edgeNodes);
+        }
+        if (index != wayNodes.size() - 1)
+            return "ways with changed tower nodes";
+        newNodeIds.putAll(result);
+        return null;
+    }
+
+    /**
+     * @return the coordinates of the OSM nodes of the given edges that are points of their geometry
+     */
+    private LongObjectMap<GHPoint3D> getNodeCoordinates(IntArrayList edges) {
+        LongObjectMap<GHPoint3D> coordinates = new GHLongObjectHashMap<>();
+        for (IntCursor edge : edges) {
+            LongArrayList nodeIds = wayIdStorage.getNodeIds(edge.value);
+            BitSet geometryNodes = wayIdStorage.getGeometryNodes(edge.value);
+            PointList geometry = baseGraph.getEdgeIteratorState(edge.value, Integer.MIN_VALUE).fetchWayGeometry(FetchMode.ALL);
+            coordinates.put(nodeIds.get(0), geometry.get(0));
+            coordinates.put(nodeIds.get(nodeIds.size() - 1), geometry.get(geometry.size() - 1));
+            // the sampling adds points between the nodes, so we only know the coordinates of the inner nodes without it
+            if (geometry.size() == geometryNodes.cardinality()) {
+                int point = 0;
+                for (int i = geometryNodes.nextSetBit(0); i >= 0; i = geometryNodes.nextSetBit(i + 1)) {
+                    coordinates.put(nodeIds.get(i), geometry.get(point++));
+                }
+            }
+        }
+        return coordinates;
+    }
+
+    /**
+     * Builds the geometry of the given edge from the given nodes, like on import, and moves its tower nodes.
+     *
+     * @param coordinates the previous coordinates of the nodes, nodes without coordinates are skipped
+     */
+    private void setGeometry(int edgeId, LongArrayList nodeIds, int nodesHash, LongObjectMap<ReaderNode> changedNodes,
+                             LongObjectMap<GHPoint3D> coordinates) {
+        EdgeIteratorState edge = baseGraph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+        PointList pointList = new PointList(nodeIds.size(), nodeAccess.is3D());
+        IntArrayList pointNodes = new IntArrayList(nodeIds.size());
+        for (int i = 0; i < nodeIds.size(); i++) {
+            ReaderNode node = changedNodes.get(nodeIds.get(i));
+            GHPoint3D point = coordinates.get(nodeIds.get(i));
+            if (node != null)
+                pointList.add(node.getLat(), node.getLon(), nodeAccess.is3D() ? eleProvider.getEle(node) : Double.NaN);
+            else if (point != null)
+                pointList.add(point);
+            else
+                continue;
+            pointNodes.add(i);
+        }
+        PointList nodePoints = pointList.clone(false);
+        pointList = prepareGeometry(pointList);
+        BitSet geometryNodes = new BitSet(nodeIds.size());
+        BitSet keptPoints = findGeometryNodes(nodePoints, pointList);
+        for (int i = keptPoints.nextSetBit(0); i >= 0; i = keptPoints.nextSetBit(i + 1)) {
+            geometryNodes.set(pointNodes.get(i));
+        }
+
+        int last = pointList.size() - 1;
+        nodeAccess.setNode(edge.getBaseNode(), pointList.getLat(0), pointList.getLon(0), pointList.getEle(0));
+        nodeAccess.setNode(edge.getAdjNode(), pointList.getLat(last), pointList.getLon(last), pointList.getEle(last));
+        edge.setWayGeometry(pointList.size() > 2 ? pointList.shallowCopy(1, last, false) : PointList.EMPTY);
+        edge.setDistance(calcEdgeDistance(pointList, wayIdStorage.getWayId(edgeId)));
+        wayIdStorage.setNodes(edgeId, nodesHash, nodeIds, geometryNodes);
+    }
+
+    /**
+     * The result of {@link #applyChanges}
+     */
+    public static class AppliedChanges {
+        private final IntObjectMap<IntsRef> previousFlags = new GHIntObjectHashMap<>();
+        private final IntHashSet changedGeometries = new GHIntHashSet();
+
+        /**
+         * @return the previous flags of the edges whose flags changed
+         */
+        public IntObjectMap<IntsRef> getPreviousFlags() {
+            return previousFlags;
+        }
+
+        /**
+         * @return the edges whose geometry and distance changed
+         */
+        public IntHashSet getChangedGeometries() {
+            return changedGeometries;
+        }
+    }
+
     /**
      * @return the distance of the given way or NaN if some nodes were missing
      */
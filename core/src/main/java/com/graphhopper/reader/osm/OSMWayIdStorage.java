@@ -0,0 +1,320 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.util.BitUtil;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stores the id of the OSM way every edge was created from, a hash of the node ids of this way, the relation flags of
+ * the way and the ids of the OSM nodes of the edge. This allows applying OSM change files to an existing graph, see
+ * {@link OSMReader#applyChanges}. The flags of artificial edges, e.g. for barriers, also depend on the node tags, so
+ * these are stored as well.
+ */
+public class OSMWayIdStorage {
+    public static final long NO_WAY = Long.MIN_VALUE;
+    private static final int NO_NODE_TAGS = -1;
+    private static final int NO_NODES = -1;
+    // way id as two ints, the hash of the node ids, the pointer to the node tags, the relation flags as two ints and
+    // the pointer to the nodes as two ints
+    private static final int EDGE_BYTES = 32;
+    private final DataAccess dataAccess;
+    // per entry: the number of tags and then the length and the bytes of every key and value
+    private final DataAccess nodeTags;
+    // per entry: the number of nodes, the OSM node ids and one byte per node that is 1 if the node is a point of the
+    // edge geometry and 0 if it was removed by the simplification
+    private final DataAccess nodes;
+    private int edges;
+    private long nodeTagsPointer;
+    private long nodesPointer;
+
+    public OSMWayIdStorage(Directory dir) {
+        this.dataAccess = dir.create("osm_way_ids", dir.getDefaultType("osm_way_ids", true));
+        this.nodeTags = dir.create("osm_way_ids_node_tags", dir.getDefaultType("osm_way_ids_node_tags", false));
+        this.nodes = dir.create("osm_way_ids_nodes", dir.getDefaultType("osm_way_ids_nodes", false));
+    }
+
+    public OSMWayIdStorage create(int initialEdges) {
+        dataAccess.create((long) initialEdges * EDGE_BYTES);
+        nodeTags.create(1000);
+        nodes.create(1000);
+        return this;
+    }
+
+    public boolean loadExisting() {
+        if (!dataAccess.loadExisting())
+            return false;
+        if (!nodeTags.loadExisting() || !nodes.loadExisting())
+            throw new IllegalStateException("Loaded the OSM way ids but cannot load their node tags and nodes");
+        GHUtility.checkDAVersion(dataAccess.getName(), Constants.VERSION_OSM_WAY_IDS, dataAccess.getHeader(0));
+        GHUtility.checkDAVersion(nodeTags.getName(), Constants.VERSION_OSM_WAY_IDS, nodeTags.getHeader(0));
+        GHUtility.checkDAVersion(nodes.getName(), Constants.VERSION_OSM_WAY_IDS, nodes.getHeader(0));
+        edges = dataAccess.getHeader(4);
+        nodeTagsPointer = BitUtil.LITTLE.combineIntsToLong(nodeTags.getHeader(4), nodeTags.getHeader(8));
+        nodesPointer = BitUtil.LITTLE.combineIntsToLong(nodes.getHeader(4), nodes.getHeader(8));
+        return true;
+    }
+
+    /**
+     * Stores the way of the specified edge. The edges have to be added in the order of their ids, skipped edges are
+     * stored without a way.
+     *
+     * @param wayId         the id of the OSM way or {@link #NO_WAY}
+     * @param relationFlags the relation flags of the way, see {@link OSMReader#getRelFlagsMap}
+     * @param nodeIds       the ids of the OSM nodes of the edge in the direction of the edge, including both ends
+     * @param geometryNodes the indices of the nodes that are points of the edge geometry
+     * @param nodeTags      the node tags of an artificial edge, empty otherwise
+     */
+    public void setWay(int edge, long wayId, int nodesHash, IntsRef relationFlags, LongArrayList nodeIds, BitSet geometryNodes,
+                       Map<String, Object> nodeTags) {
+        if (edge < edges)
+            throw new IllegalArgumentException("The edges must be added in order, edge " + edge + " was already added");
+        dataAccess.ensureCapacity((long) (edge + 1) * EDGE_BYTES);
+        while (edges < edge) {
+            set(edges++, NO_WAY, 0, NO_NODE_TAGS, 0, NO_NODES);
+        }
+        long relationFlagsAsLong = ((long) relationFlags.ints[1] << 32) | (relationFlags.ints[0] & 0xFFFFFFFFL);
+        set(edge, wayId, nodesHash, nodeTags.isEmpty() ? NO_NODE_TAGS : addNodeTags(nodeTags), relationFlagsAsLong,
+                addNodes(nodeIds, geometryNodes));
+        edges++;
+    }
+
+    private void set(int edge, long wayId, int nodesHash, long tagsPointer, long relationFlags, long nodesPointer) {
+        if (tagsPointer > Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many node tags, cannot store more than " + Integer.MAX_VALUE + " bytes");
+        long pointer = (long) edge * EDGE_BYTES;
+        dataAccess.setInt(pointer, (int) wayId);
+        dataAccess.setInt(pointer + 4, (int) (wayId >>> 32));
+        dataAccess.setInt(pointer + 8, nodesHash);
+        dataAccess.setInt(pointer + 12, (int) tagsPointer);
+        dataAccess.setInt(pointer + 16, (int) relationFlags);
+        dataAccess.setInt(pointer + 20, (int) (relationFlags >>> 32));
+        dataAccess.setInt(pointer + 24, BitUtil.LITTLE.getIntLow(nodesPointer));
+        dataAccess.setInt(pointer + 28, BitUtil.LITTLE.getIntHigh(nodesPointer));
+    }
+
+    /**
+     * Replaces the nodes of the specified edge after the node list of its way changed. The previous entry is reused if
+     * the new nodes fit into it.
+     */
+    public void setNodes(int edge, int nodesHash, LongArrayList nodeIds, BitSet geometryNodes) {
+        long pointer = (long) edge * EDGE_BYTES;
+        dataAccess.setInt(pointer + 8, nodesHash);
+        long existing = getNodesPointer(edge);
+        long start = existing != NO_NODES && nodes.getInt(existing) >= nodeIds.size() ? existing : nodesPointer;
+        long end = writeNodes(start, nodeIds, geometryNodes);
+        if (start == nodesPointer)
+            nodesPointer = end;
+        dataAccess.setInt(pointer + 24, BitUtil.LITTLE.getIntLow(start));
+        dataAccess.setInt(pointer + 28, BitUtil.LITTLE.getIntHigh(start));
+    }
+
+    private long addNodes(LongArrayList nodeIds, BitSet geometryNodes) {
+        long start = nodesPointer;
+        nodesPointer = writeNodes(start, nodeIds, geometryNodes);
+        return start;
+    }
+
+    private long writeNodes(long pointer, LongArrayList nodeIds, BitSet geometryNodes) {
+        int count = nodeIds.size();
+        nodes.ensureCapacity(pointer + 4 + 9L * count);
+        nodes.setInt(pointer, count);
+        pointer += 4;
+        for (int i = 0; i < count; i++) {
+            long id = nodeIds.get(i);
+            nodes.setInt(pointer, (int) id);
+            nodes.setInt(pointer + 4, (int) (id >>> 32));
+            pointer += 8;
+        }
+        for (int i = 0; i < count; i++) {
+            nodes.setByte(pointer++, (byte) (geometryNodes.get(i) ? 1 : 0));
+        }
+        return pointer;
+    }
+
+    private long addNodeTags(Map<String, Object> tags) {
+        long start = nodeTagsPointer;
+        nodeTags.ensureCapacity(nodeTagsPointer + 4);
+        nodeTags.setInt(nodeTagsPointer, tags.size());
+        nodeTagsPointer += 4;
+        for (Map.Entry<String, Object> entry : tags.entrySet()) {
+            addString(entry.getKey());
+            addString(String.valueOf(entry.getValue()));
+        }
+        return start;
+    }
+
+    private void addString(String str) {
+        byte[] bytes = str.getBytes(Helper.UTF_CS);
+        nodeTags.ensureCapacity(nodeTagsPointer + 4 + bytes.length);
+        nodeTags.setInt(nodeTagsPointer, bytes.length);
+        nodeTags.setBytes(nodeTagsPointer + 4, bytes, bytes.length);
+        nodeTagsPointer += 4 + bytes.length;
+    }
+
+    /**
+     * @return the id of the OSM way of the edge or {@link #NO_WAY} if it is unknown
+     */
+    public long getWayId(int edge) {
+        if (edge >= edges)
+            return NO_WAY;
+        long pointer = (long) edge * EDGE_BYTES;
+        return ((long) dataAccess.getInt(pointer + 4) << 32) | (dataAccess.getInt(pointer) & 0xFFFFFFFFL);
+    }
+
+    public int getNodesHash(int edge) {
+        return dataAccess.getInt((long) edge * EDGE_BYTES + 8);
+    }
+
+    /**
+     * @return the relation flags the way of the specified edge had on import, see {@link OSMReader#getRelFlagsMap}
+     */
+    public IntsRef getRelationFlags(int edge, IntsRef relationFlags) {
+        long pointer = (long) edge * EDGE_BYTES;
+        relationFlags.ints[0] = dataAccess.getInt(pointer + 16);
+        relationFlags.ints[1] = dataAccess.getInt(pointer + 20);
+        return relationFlags;
+    }
+
+    private long getNodesPointer(int edge) {
+        long pointer = (long) edge * EDGE_BYTES;
+        return BitUtil.LITTLE.combineIntsToLong(dataAccess.getInt(pointer + 24), dataAccess.getInt(pointer + 28));
+    }
+
+    /**
+     * @return the ids of the OSM nodes of the specified edge in the direction of the edge, empty if the edge has no way
+     */
+    public LongArrayList getNodeIds(int edge) {
+        if (edge >= edges || getWayId(edge) == NO_WAY)
+            return new LongArrayList(0);
+        long pointer = getNodesPointer(edge);
+        int count = nodes.getInt(pointer);
+        LongArrayList result = new LongArrayList(count);
+        pointer += 4;
+        for (int i = 0; i < count; i++, pointer += 8) {
+            result.add(((long) nodes.getInt(pointer + 4) << 32) | (nodes.getInt(pointer) & 0xFFFFFFFFL));
+        }
+        return result;
+    }
+
+    /**
+     * @return the indices of the nodes of {@link #getNodeIds} that are points of the edge geometry, i.e. that were not
+     * removed by the simplification
+     */
+    public BitSet getGeometryNodes(int edge) {
+        BitSet result = new BitSet();
+        if (edge >= edges || getWayId(edge) == NO_WAY)
+            return result;
+        long pointer = getNodesPointer(edge);
+        int count = nodes.getInt(pointer);
+        pointer += 4 + 8L * count;
+        for (int i = 0; i < count; i++) {
+            if (nodes.getByte(pointer + i) != 0)
+                result.set(i);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the node tags of an artificial edge after its node was modified
+     */
+    public void setNodeTags(int edge, Map<String, Object> tags) {
+        dataAccess.setInt((long) edge * EDGE_BYTES + 12, tags.isEmpty() ? NO_NODE_TAGS : (int) addNodeTags(tags));
+    }
+
+    /**
+     * @return the node tags of the specified edge if it is an artificial edge, an empty map otherwise
+     */
+    public Map<String, Object> getNodeTags(int edge) {
+        if (edge >= edges)
+            return Collections.emptyMap();
+        long pointer = dataAccess.getInt((long) edge * EDGE_BYTES + 12);
+        if (pointer == NO_NODE_TAGS)
+            return Collections.emptyMap();
+        int count = nodeTags.getInt(pointer);
+        pointer += 4;
+        Map<String, Object> tags = new LinkedHashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            String key = getString(pointer);
+            pointer += 4 + nodeTags.getInt(pointer);
+            String value = getString(pointer);
+            pointer += 4 + nodeTags.getInt(pointer);
+            tags.put(key, value);
+        }
+        return tags;
+    }
+
+    private String getString(long pointer) {
+        byte[] bytes = new byte[nodeTags.getInt(pointer)];
+        nodeTags.getBytes(pointer + 4, bytes, bytes.length);
+        return new String(bytes, Helper.UTF_CS);
+    }
+
+    /**
+     * @return the number of stored edges
+     */
+    public int getEdges() {
+        return edges;
+    }
+
+    /**
+     * @return a hash of the node ids of a way, which changes if nodes are added, removed or reordered
+     */
+    public static int calcNodesHash(LongArrayList nodes) {
+        int hash = 1;
+        for (int i = 0; i < nodes.size(); i++) {
+            hash = 31 * hash + Long.hashCode(nodes.get(i));
+        }
+        return hash;
+    }
+
+    public void flush() {
+        dataAccess.setHeader(0, Constants.VERSION_OSM_WAY_IDS);
+        dataAccess.setHeader(4, edges);
+        dataAccess.flush();
+        nodeTags.setHeader(0, Constants.VERSION_OSM_WAY_IDS);
+        nodeTags.setHeader(4, BitUtil.LITTLE.getIntLow(nodeTagsPointer));
+        nodeTags.setHeader(8, BitUtil.LITTLE.getIntHigh(nodeTagsPointer));
+        nodeTags.flush();
+        nodes.setHeader(0, Constants.VERSION_OSM_WAY_IDS);
+        nodes.setHeader(4, BitUtil.LITTLE.getIntLow(nodesPointer));
+        nodes.setHeader(8, BitUtil.LITTLE.getIntHigh(nodesPointer));
+        nodes.flush();
+    }
+
+    public void close() {
+        dataAccess.close();
+        nodeTags.close();
+        nodes.close();
+    }
+
+    public long getCapacity() {
+        return dataAccess.getCapacity() + nodeTags.getCapacity() + nodes.getCapacity();
+    }
+}
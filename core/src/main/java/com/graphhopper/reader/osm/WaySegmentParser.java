@@ -18,7 +18,9 @@
 
 package com.graphhopper.reader.osm;
 
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.cursors.LongCursor;
+import com.graphhopper.coll.GHLongLongHashMap;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
@@ -202,6 +204,8 @@ public class WaySegmentParser {
         private long acceptedNodes = 0;
         private long ignoredSplitNodes = 0;
         private long wayCounter = -1;
+        // the artificial OSM node ids of the copied barrier nodes and the ids of their original nodes
+        private final GHLongLongHashMap barrierCopies = new GHLongLongHashMap();
 
         @Override
         public void handleNode(ReaderNode node) {
@@ -310,6 +314,7 @@ public class WaySegmentParser {
                     // this node is a barrier. we will copy it and add an extra edge
                     SegmentNode barrierFrom = node;
                     SegmentNode barrierTo = nodeData.addCopyOfNode(node);
+                    barrierCopies.put(barrierTo.osmNodeId, node.osmNodeId);
                     if (i == parentSegment.size() - 1) {
                         // make sure the barrier node is always on the inside of the segment
                         SegmentNode tmp = barrierFrom;
@@ -340,6 +345,7 @@ public class WaySegmentParser {
 
         void handleSegment(List<SegmentNode> segment, ReaderWay way, Map<String, Object> nodeTags) {
             final PointList pointList = new PointList(segment.size(), nodeData.is3D());
+            final LongArrayList osmNodeIds = new LongArrayList(segment.size());
             int from = -1;
             int to = -1;
             for (int i = 0; i < segment.size(); i++) {
@@ -359,10 +365,11 @@ public class WaySegmentParser {
                 else if (isTowerNode(id))
                     throw new IllegalStateException("Tower nodes should only appear at the end of segments, way: " + way.getId());
                 nodeData.addCoordinatesToPointList(id, pointList);
+                osmNodeIds.add(barrierCopies.containsKey(node.osmNodeId) ? barrierCopies.get(node.osmNodeId) : node.osmNodeId);
             }
             if (from < 0 || to < 0)
                 throw new IllegalStateException("The first and last nodes of a segment must be tower nodes, way: " + way.getId());
-            edgeHandler.handleEdge(from, to, pointList, way, nodeTags);
+            edgeHandler.handleEdge(from, to, pointList, way, nodeTags, osmNodeIds);
         }
 
         @Override
@@ -418,7 +425,7 @@ public class WaySegmentParser {
         };
         private RelationProcessor relationProcessor = (relation, map) -> {
         };
-        private EdgeHandler edgeHandler = (from, to, pointList, way, nodeTags) ->
+        private EdgeHandler edgeHandler = (from, to, pointList, way, nodeTags, osmNodeIds) ->
                 System.out.println("edge " + from + "->" + to + " (" + pointList.size() + " points)");
         private int workerThreads = 2;
 
@@ -547,7 +554,10 @@ public class WaySegmentParser {
     }
 
     public interface EdgeHandler {
-        void handleEdge(int from, int to, PointList pointList, ReaderWay way, Map<String, Object> nodeTags);
+        /**
+         * @param osmNodeIds the ids of the OSM nodes of the segment, a copied barrier node has the id of its original
+         */
+        void handleEdge(int from, int to, PointList pointList, ReaderWay way, Map<String, Object> nodeTags, LongArrayList osmNodeIds);
     }
 
     public interface RelationProcessor {
@@ -29,6 +29,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Minimum number-of-moving-parts implementation of alternative route search with
@@ -44,7 +46,11 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
     private final double localOptimalityFactor;
     private final int maxPaths;
     private final List<AlternativeInfo> alternatives = new ArrayList<>();
+    private final long maxTimeNanos;
     private int extraVisitedNodes = 0;
+    private IntIndexedContainer bestPathNodes;
+    private ExecutorService executor;
+    private int threads = 1;
 
     public AlternativeRouteCH(RoutingCHGraph graph, PMap hints) {
         super(graph);
@@ -52,6 +58,19 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         maxShareFactor = hints.getDouble("alternative_route.max_share_factor", 0.8);
         localOptimalityFactor = hints.getDouble("alternative_route.local_optimality_factor", 0.25);
         maxPaths = hints.getInt("alternative_route.max_paths", 3);
+        maxTimeNanos = TimeUnit.MILLISECONDS.toNanos(hints.getLong("alternative_route.max_time_ms", Long.MAX_VALUE));
+    }
+
+    /**
+     * Checks up to the specified number of via-node candidates at the same time. The calling thread checks one of
+     * them and the others are submitted to the executor.
+     */
+    public AlternativeRouteCH setExecutor(ExecutorService executor, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("The number of threads must be positive but was " + threads);
+        this.executor = executor;
+        this.threads = threads;
+        return this;
     }
 
     @Override
@@ -69,6 +88,7 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
     }
 
     List<AlternativeInfo> calcAlternatives(final int s, final int t) {
+        final long startNanos = System.nanoTime();
         // First, do a regular bidirectional route search
         checkAlreadyRun();
         init(s, 0, t, 0);
@@ -79,6 +99,7 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         }
 
         alternatives.add(new AlternativeInfo(bestPath, 0));
+        bestPathNodes = alternatives.get(0).nodes;
 
         final ArrayList<PotentialAlternativeInfo> potentialAlternativeInfos = new ArrayList<>();
 
@@ -108,45 +129,75 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
 
         potentialAlternativeInfos.sort(Comparator.comparingDouble(o -> o.weight));
 
-        for (PotentialAlternativeInfo potentialAlternativeInfo : potentialAlternativeInfos) {
-            int v = potentialAlternativeInfo.v;
-
-            // Okay, now we want the s -> v -> t shortest via-path, so we route s -> v and v -> t
-            // and glue them together.
-            DijkstraBidirectionCH svRouter = new DijkstraBidirectionCH(graph);
-            final Path svPath = svRouter.calcPath(s, v);
-            extraVisitedNodes += svRouter.getVisitedNodes();
-
-            DijkstraBidirectionCH vtRouter = new DijkstraBidirectionCH(graph);
-            final Path vtPath = vtRouter.calcPath(v, t);
-            Path path = concat(graph.getBaseGraph(), svPath, vtPath);
-            extraVisitedNodes += vtRouter.getVisitedNodes();
-
-            double sharedDistanceWithShortest = sharedDistanceWithShortest(path);
-            double detourLength = path.getDistance() - sharedDistanceWithShortest;
-            double directLength = bestPath.getDistance() - sharedDistanceWithShortest;
-            if (detourLength > directLength * maxWeightFactor) {
-                continue;
-            }
+        // The checks that only depend on the best path can run concurrently. In this case the local optimality is
+        // checked up front, otherwise only if the share with the other alternatives is small enough.
+        final boolean concurrent = executor != null && threads > 1;
+        AlternativeRouteCandidates.check(potentialAlternativeInfos, info -> checkCandidate(info, s, t, bestPath, concurrent),
+                this::acceptCandidate, executor, threads, startNanos, maxTimeNanos);
+        return alternatives;
+    }
 
-            double share = calculateShare(path);
-            if (share > maxShareFactor) {
-                continue;
-            }
+    /**
+     * Calculates the via-path of the candidate and does the checks that do not depend on the other alternatives.
+     * This method is called from multiple threads, so it must not change the state of this algorithm.
+     */
+    private CandidateCheck checkCandidate(PotentialAlternativeInfo potentialAlternativeInfo, int s, int t, Path bestPath,
+                                          boolean checkLocalOptimality) {
+        int v = potentialAlternativeInfo.v;
+        CandidateCheck check = new CandidateCheck();
+
+        // Okay, now we want the s -> v -> t shortest via-path, so we route s -> v and v -> t
+        // and glue them together.
+        DijkstraBidirectionCH svRouter = new DijkstraBidirectionCH(graph);
+        final Path svPath = svRouter.calcPath(s, v);
+        check.visitedNodes += svRouter.getVisitedNodes();
+
+        DijkstraBidirectionCH vtRouter = new DijkstraBidirectionCH(graph);
+        final Path vtPath = vtRouter.calcPath(v, t);
+        Path path = concat(graph.getBaseGraph(), svPath, vtPath);
+        check.visitedNodes += vtRouter.getVisitedNodes();
+        check.path = path;
+
+        double sharedDistanceWithShortest = sharedDistanceWithShortest(path);
+        double detourLength = path.getDistance() - sharedDistanceWithShortest;
+        double directLength = bestPath.getDistance() - sharedDistanceWithShortest;
+        if (detourLength > directLength * maxWeightFactor) {
+            check.detourTooLong = true;
+            return check;
+        }
+
+        final IntIndexedContainer svNodes = svPath.calcNodes();
+        check.vIndex = svNodes.size() - 1;
+        if (checkLocalOptimality)
+            check.locallyOptimal = tTest(check);
+        return check;
+    }
+
+    /**
+     * @return true if we have enough alternatives
+     */
+    private boolean acceptCandidate(CandidateCheck check) {
+        try {
+            if (check.detourTooLong)
+                return false;
+
+            double share = calculateShare(check.path);
+            if (share > maxShareFactor)
+                return false;
 
             // This is the final test we need: Discard paths that are not "locally shortest" around v.
             // So move a couple of nodes to the left and right from v on our path,
             // route, and check if v is on the shortest path.
-            final IntIndexedContainer svNodes = svPath.calcNodes();
-            int vIndex = svNodes.size() - 1;
-            if (!tTest(path, vIndex))
-                continue;
-
-            alternatives.add(new AlternativeInfo(path, share));
-            if (alternatives.size() >= maxPaths)
-                break;
+            if (check.locallyOptimal == null)
+                check.locallyOptimal = tTest(check);
+            if (!check.locallyOptimal)
+                return false;
+
+            alternatives.add(new AlternativeInfo(check.path, share));
+            return alternatives.size() >= maxPaths;
+        } finally {
+            extraVisitedNodes += check.visitedNodes;
         }
-        return alternatives;
     }
 
     private double calculateShare(final Path path) {
@@ -169,7 +220,7 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         double sharedDistance = 0.0;
         List<EdgeIteratorState> edges = path.calcEdges();
         for (EdgeIteratorState edge : edges) {
-            if (alternatives.get(0).nodes.contains(edge.getBaseNode()) && alternatives.get(0).nodes.contains(edge.getAdjNode())) {
+            if (bestPathNodes.contains(edge.getBaseNode()) && bestPathNodes.contains(edge.getAdjNode())) {
                 sharedDistance += edge.getDistance();
             }
         }
@@ -185,7 +236,9 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         return false;
     }
 
-    private boolean tTest(Path path, int vIndex) {
+    private boolean tTest(CandidateCheck check) {
+        Path path = check.path;
+        int vIndex = check.vIndex;
         if (path.getEdgeCount() == 0) return true;
         double detourDistance = detourDistance(path);
         double T = 0.5 * localOptimalityFactor * detourDistance;
@@ -193,7 +246,7 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         int toNode = getNextNodeTMetersAway(path, vIndex, T);
         DijkstraBidirectionCH tRouter = new DijkstraBidirectionCH(graph);
         Path tPath = tRouter.calcPath(fromNode, toNode);
-        extraVisitedNodes += tRouter.getVisitedNodes();
+        check.visitedNodes += tRouter.getVisitedNodes();
         IntIndexedContainer tNodes = tPath.calcNodes();
         int v = path.calcNodes().get(vIndex);
         return tNodes.contains(v);
@@ -251,6 +304,15 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         return paths;
     }
 
+    private static class CandidateCheck {
+        Path path;
+        int vIndex;
+        int visitedNodes;
+        boolean detourTooLong;
+        // null as long as the local optimality was not checked
+        Boolean locallyOptimal;
+    }
+
     public static class PotentialAlternativeInfo {
         int v;
         double weight;
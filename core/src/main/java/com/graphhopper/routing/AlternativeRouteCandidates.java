@@ -0,0 +1,96 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Checks the via-node candidates of {@link AlternativeRouteCH} and {@link AlternativeRouteEdgeCH}. The expensive
+ * part of a check, i.e. the CH searches for the via-path and the local optimality, only depends on the candidate and
+ * the best path, so it can be done for several candidates at the same time. The results are still accepted one
+ * after another in the order of the candidates, so the alternatives are the same as for the sequential search.
+ */
+final class AlternativeRouteCandidates {
+
+    private AlternativeRouteCandidates() {
+    }
+
+    /**
+     * @param evaluate      the check of a candidate that does not depend on the already accepted alternatives
+     * @param accept        accepts the result of a candidate and returns true if no more candidates are needed
+     * @param executor      the executor for the concurrent checks, or null to check the candidates one after another
+     * @param threads       the maximum number of candidates that are checked at the same time
+     * @param startNanos    the {@link System#nanoTime()} when the search started
+     * @param maxNanos      no candidate is checked after this time since the start. As a running check is not
+     *                      interrupted the time budget can be exceeded by the duration of a single check.
+     */
+    static <C, R> void check(List<C> candidates, Function<C, R> evaluate, Predicate<R> accept,
+                             ExecutorService executor, int threads, long startNanos, long maxNanos) {
+        if (executor == null || threads <= 1) {
+            for (C candidate : candidates) {
+                if (System.nanoTime() - startNanos >= maxNanos || accept.test(evaluate.apply(candidate)))
+                    return;
+            }
+            return;
+        }
+
+        List<Future<R>> futures = new ArrayList<>(threads - 1);
+        try {
+            for (int batchStart = 0; batchStart < candidates.size(); batchStart += threads) {
+                if (System.nanoTime() - startNanos >= maxNanos)
+                    return;
+                int batchEnd = Math.min(candidates.size(), batchStart + threads);
+                futures.clear();
+                for (int i = batchStart + 1; i < batchEnd; i++) {
+                    final C candidate = candidates.get(i);
+                    futures.add(executor.submit(() -> evaluate.apply(candidate)));
+                }
+                // the calling thread checks the first candidate of the batch itself
+                if (accept.test(evaluate.apply(candidates.get(batchStart))))
+                    return;
+                for (Future<R> future : futures) {
+                    long remainingNanos = maxNanos - (System.nanoTime() - startNanos);
+                    if (remainingNanos <= 0 && !future.isDone())
+                        return;
+                    if (accept.test(future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS)))
+                        return;
+                }
+            }
+        } catch (TimeoutException ex) {
+            // the time budget is used up, we keep the alternatives found so far
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking the alternative routes", ex);
+        } finally {
+            // does nothing if all checks of the batch are done
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
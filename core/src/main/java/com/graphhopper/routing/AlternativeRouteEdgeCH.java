@@ -27,6 +27,8 @@ import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PMap;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
 
@@ -45,7 +47,11 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
     private final double localOptimalityFactor;
     private final int maxPaths;
     private final List<AlternativeInfo> alternatives = new ArrayList<>();
+    private final long maxTimeNanos;
     private int extraVisitedNodes = 0;
+    private IntIndexedContainer bestPathNodes;
+    private ExecutorService executor;
+    private int threads = 1;
 
     public AlternativeRouteEdgeCH(RoutingCHGraph graph, PMap hints) {
         super(graph);
@@ -53,6 +59,19 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         maxShareFactor = hints.getDouble("alternative_route.max_share_factor", 0.8);
         localOptimalityFactor = hints.getDouble("alternative_route.local_optimality_factor", 0.25);
         maxPaths = hints.getInt("alternative_route.max_paths", 3);
+        maxTimeNanos = TimeUnit.MILLISECONDS.toNanos(hints.getLong("alternative_route.max_time_ms", Long.MAX_VALUE));
+    }
+
+    /**
+     * Checks up to the specified number of via-node candidates at the same time. The calling thread checks one of
+     * them and the others are submitted to the executor.
+     */
+    public AlternativeRouteEdgeCH setExecutor(ExecutorService executor, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("The number of threads must be positive but was " + threads);
+        this.executor = executor;
+        this.threads = threads;
+        return this;
     }
 
     @Override
@@ -70,6 +89,7 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
     }
 
     List<AlternativeInfo> calcAlternatives(final int s, final int t) {
+        final long startNanos = System.nanoTime();
         // First, do a regular bidirectional route search
         checkAlreadyRun();
         init(s, 0, t, 0);
@@ -80,6 +100,7 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         }
 
         alternatives.add(new AlternativeInfo(bestPath, 0));
+        bestPathNodes = alternatives.get(0).nodes;
 
         final ArrayList<PotentialAlternativeInfo> potentialAlternativeInfos = new ArrayList<>();
 
@@ -117,48 +138,78 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
 
         potentialAlternativeInfos.sort(Comparator.comparingDouble(o -> o.weight));
 
-        for (PotentialAlternativeInfo potentialAlternativeInfo : potentialAlternativeInfos) {
-            int v = potentialAlternativeInfo.v;
-            int tailSv = potentialAlternativeInfo.edgeIn;
-
-            // Okay, now we want the s -> v -> t shortest via-path, so we route s -> v and v -> t
-            // and glue them together.
-            DijkstraBidirectionEdgeCHNoSOD svRouter = new DijkstraBidirectionEdgeCHNoSOD(graph);
-            final Path suvPath = svRouter.calcPath(s, v, ANY_EDGE, tailSv);
-            extraVisitedNodes += svRouter.getVisitedNodes();
+        // The checks that only depend on the best path can run concurrently. In this case the local optimality is
+        // checked up front, otherwise only if the share with the other alternatives is small enough.
+        final boolean concurrent = executor != null && threads > 1;
+        AlternativeRouteCandidates.check(potentialAlternativeInfos, info -> checkCandidate(info, s, t, bestPath, concurrent),
+                this::acceptCandidate, executor, threads, startNanos, maxTimeNanos);
+        return alternatives;
+    }
 
-            int u = graph.getBaseGraph().getEdgeIteratorState(tailSv, v).getBaseNode();
+    /**
+     * Calculates the via-path of the candidate and does the checks that do not depend on the other alternatives.
+     * This method is called from multiple threads, so it must not change the state of this algorithm.
+     */
+    private CandidateCheck checkCandidate(PotentialAlternativeInfo potentialAlternativeInfo, int s, int t, Path bestPath,
+                                          boolean checkLocalOptimality) {
+        int v = potentialAlternativeInfo.v;
+        int tailSv = potentialAlternativeInfo.edgeIn;
+        CandidateCheck check = new CandidateCheck();
+
+        // Okay, now we want the s -> v -> t shortest via-path, so we route s -> v and v -> t
+        // and glue them together.
+        DijkstraBidirectionEdgeCHNoSOD svRouter = new DijkstraBidirectionEdgeCHNoSOD(graph);
+        final Path suvPath = svRouter.calcPath(s, v, ANY_EDGE, tailSv);
+        check.visitedNodes += svRouter.getVisitedNodes();
+
+        int u = graph.getBaseGraph().getEdgeIteratorState(tailSv, v).getBaseNode();
+
+        DijkstraBidirectionEdgeCHNoSOD vtRouter = new DijkstraBidirectionEdgeCHNoSOD(graph);
+        final Path uvtPath = vtRouter.calcPath(u, t, tailSv, ANY_EDGE);
+        Path path = concat(graph.getBaseGraph(), suvPath, uvtPath);
+        check.visitedNodes += vtRouter.getVisitedNodes();
+        check.path = path;
+
+        double sharedDistanceWithShortest = sharedDistanceWithShortest(path);
+        double detourLength = path.getDistance() - sharedDistanceWithShortest;
+        double directLength = bestPath.getDistance() - sharedDistanceWithShortest;
+        if (detourLength > directLength * maxWeightFactor) {
+            check.detourTooLong = true;
+            return check;
+        }
 
-            DijkstraBidirectionEdgeCHNoSOD vtRouter = new DijkstraBidirectionEdgeCHNoSOD(graph);
-            final Path uvtPath = vtRouter.calcPath(u, t, tailSv, ANY_EDGE);
-            Path path = concat(graph.getBaseGraph(), suvPath, uvtPath);
-            extraVisitedNodes += vtRouter.getVisitedNodes();
+        final IntIndexedContainer svNodes = suvPath.calcNodes();
+        check.vIndex = svNodes.size() - 1;
+        if (checkLocalOptimality)
+            check.locallyOptimal = tTest(check);
+        return check;
+    }
 
-            double sharedDistanceWithShortest = sharedDistanceWithShortest(path);
-            double detourLength = path.getDistance() - sharedDistanceWithShortest;
-            double directLength = bestPath.getDistance() - sharedDistanceWithShortest;
-            if (detourLength > directLength * maxWeightFactor) {
-                continue;
-            }
+    /**
+     * @return true if we have enough alternatives
+     */
+    private boolean acceptCandidate(CandidateCheck check) {
+        try {
+            if (check.detourTooLong)
+                return false;
 
-            double share = calculateShare(path);
-            if (share > maxShareFactor) {
-                continue;
-            }
+            double share = calculateShare(check.path);
+            if (share > maxShareFactor)
+                return false;
 
             // This is the final test we need: Discard paths that are not "locally shortest" around v.
             // So move a couple of nodes to the left and right from v on our path,
             // route, and check if v is on the shortest path.
-            final IntIndexedContainer svNodes = suvPath.calcNodes();
-            int vIndex = svNodes.size() - 1;
-            if (!tTest(path, vIndex))
-                continue;
-
-            alternatives.add(new AlternativeInfo(path, share));
-            if (alternatives.size() >= maxPaths)
-                break;
+            if (check.locallyOptimal == null)
+                check.locallyOptimal = tTest(check);
+            if (!check.locallyOptimal)
+                return false;
+
+            alternatives.add(new AlternativeInfo(check.path, share));
+            return alternatives.size() >= maxPaths;
+        } finally {
+            extraVisitedNodes += check.visitedNodes;
         }
-        return alternatives;
     }
 
     private double calculateShare(final Path path) {
@@ -181,7 +232,7 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         double sharedDistance = 0.0;
         List<EdgeIteratorState> edges = path.calcEdges();
         for (EdgeIteratorState edge : edges) {
-            if (alternatives.get(0).nodes.contains(edge.getBaseNode()) && alternatives.get(0).nodes.contains(edge.getAdjNode())) {
+            if (bestPathNodes.contains(edge.getBaseNode()) && bestPathNodes.contains(edge.getAdjNode())) {
                 sharedDistance += edge.getDistance();
             }
         }
@@ -197,7 +248,9 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         return false;
     }
 
-    private boolean tTest(Path path, int vIndex) {
+    private boolean tTest(CandidateCheck check) {
+        Path path = check.path;
+        int vIndex = check.vIndex;
         if (path.getEdgeCount() == 0) return true;
         double detourDistance = detourDistance(path);
         double T = 0.5 * localOptimalityFactor * detourDistance;
@@ -205,7 +258,7 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         EdgeIteratorState toNode = getNextNodeTMetersAway(path, vIndex, T);
         DijkstraBidirectionEdgeCHNoSOD tRouter = new DijkstraBidirectionEdgeCHNoSOD(graph);
         Path tPath = tRouter.calcPath(fromNode.getBaseNode(), toNode.getAdjNode(), fromNode.getEdge(), toNode.getEdge());
-        extraVisitedNodes += tRouter.getVisitedNodes();
+        check.visitedNodes += tRouter.getVisitedNodes();
         IntIndexedContainer tNodes = tPath.calcNodes();
         int v = path.calcNodes().get(vIndex);
         return tNodes.contains(v);
@@ -270,6 +323,15 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         return paths;
     }
 
+    private static class CandidateCheck {
+        Path path;
+        int vIndex;
+        int visitedNodes;
+        boolean detourTooLong;
+        // null as long as the local optimality was not checked
+        Boolean locallyOptimal;
+    }
+
     public static class PotentialAlternativeInfo {
         public int v;
         public int edgeIn;
@@ -25,11 +25,15 @@ import com.graphhopper.routing.weighting.*;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.routing.weighting.custom.MemoizedSpeedAndPriority;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.Parameters;
 
+import java.util.Collections;
+import java.util.Map;
+
 import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
 import static com.graphhopper.routing.weighting.Weighting.INFINITE_U_TURN_COSTS;
 import static com.graphhopper.util.Helper.toLowerCase;
@@ -37,10 +41,20 @@ import static com.graphhopper.util.Helper.toLowerCase;
 public class DefaultWeightingFactory implements WeightingFactory {
     private final BaseGraph graph;
     private final EncodingManager encodingManager;
+    private final Map<String, MemoizedSpeedAndPriority> memoized;
 
     public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager) {
+        this(graph, encodingManager, Collections.emptyMap());
+    }
+
+    /**
+     * @param memoized the memoized speed and priority by profile name, these are used when a request does not change
+     *                 the custom model of the profile
+     */
+    public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager, Map<String, MemoizedSpeedAndPriority> memoized) {
         this.graph = graph;
         this.encodingManager = encodingManager;
+        this.memoized = memoized;
     }
 
     @Override
@@ -75,8 +89,13 @@ public class DefaultWeightingFactory implements WeightingFactory {
                 throw new IllegalArgumentException("custom weighting requires a CustomProfile but was profile=" + profile.getName());
             CustomModel queryCustomModel = requestHints.getObject(CustomModel.KEY, null);
             CustomProfile customProfile = (CustomProfile) profile;
-            queryCustomModel = CustomModel.merge(customProfile.getCustomModel(), queryCustomModel);
-            weighting = CustomModelParser.createWeighting(encoder, encodingManager, turnCostProvider, queryCustomModel);
+            MemoizedSpeedAndPriority memoizedForProfile = memoized.get(profile.getName());
+            if (queryCustomModel == null && memoizedForProfile != null) {
+                weighting = CustomModelParser.createWeighting(encoder, encodingManager, turnCostProvider, memoizedForProfile);
+            } else {
+                queryCustomModel = CustomModel.merge(customProfile.getCustomModel(), queryCustomModel);
+                weighting = CustomModelParser.createWeighting(encoder, encodingManager, turnCostProvider, queryCustomModel);
+            }
         } else if ("shortest".equalsIgnoreCase(weightingStr)) {
             weighting = new ShortestWeighting(encoder, turnCostProvider);
         } else if ("fastest".equalsIgnoreCase(weightingStr)) {
@@ -32,7 +32,7 @@ import com.graphhopper.util.shapes.GHPoint;
  * @author Robin Boldt
  * @author jan soe
  */
-public class InstructionsFromEdges implements Path.EdgeVisitor {
+public class InstructionsFromEdges implements Path.GeometryEdgeVisitor {
 
     private final Weighting weighting;
     private final NodeAccess nodeAccess;
@@ -100,18 +100,31 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
      */
     public static InstructionList calcInstructions(Path path, Graph graph, Weighting weighting, EncodedValueLookup evLookup, final Translation tr) {
         final InstructionList ways = new InstructionList(tr);
-        if (path.isFound()) {
-            if (path.getEdgeCount() == 0) {
-                ways.add(new FinishInstruction(graph.getNodeAccess(), path.getEndNode()));
-            } else {
-                path.forEveryEdge(new InstructionsFromEdges(graph, weighting, evLookup, ways));
-            }
-        }
+        InstructionsFromEdges visitor = create(path, graph, weighting, evLookup, ways);
+        if (visitor != null)
+            path.forEveryEdge(visitor);
         return ways;
     }
 
+    /**
+     * Creates the visitor that adds the instructions of the specified path to the list, so that it can be used
+     * together with other visitors in {@link Path#forEveryEdge(List)}. For a path without edges the finish
+     * instruction is added directly.
+     *
+     * @return the visitor or null if there are no edges to visit
+     */
+    public static InstructionsFromEdges create(Path path, Graph graph, Weighting weighting, EncodedValueLookup evLookup, InstructionList ways) {
+        if (!path.isFound())
+            return null;
+        if (path.getEdgeCount() == 0) {
+            ways.add(new FinishInstruction(graph.getNodeAccess(), path.getEndNode()));
+            return null;
+        }
+        return new InstructionsFromEdges(graph, weighting, evLookup, ways);
+    }
+
     @Override
-    public void next(EdgeIteratorState edge, int index, int prevEdgeId) {
+    public void next(EdgeIteratorState edge, PointList wayGeo, int index, int prevEdgeId) {
         // baseNode is the current node and adjNode is the next
         int adjNode = edge.getAdjNode();
         int baseNode = edge.getBaseNode();
@@ -125,7 +138,6 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
         double adjLon = nodeAccess.getLon(adjNode);
         double latitude, longitude;
 
-        PointList wayGeo = edge.fetchWayGeometry(FetchMode.ALL);
         boolean isRoundabout = edge.get(roundaboutEnc);
 
         if (wayGeo.size() <= 2) {
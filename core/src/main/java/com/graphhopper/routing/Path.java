@@ -271,21 +271,33 @@ public class Path {
      */
     public PointList calcPoints() {
         final PointList points = new PointList(edgeIds.size() + 1, nodeAccess.is3D());
+        EdgeVisitor visitor = createPointsVisitor(points);
+        if (visitor != null)
+            forEveryEdge(visitor);
+        return points;
+    }
+
+    /**
+     * Adds the first point of this path to the specified list and returns a visitor that adds the remaining points of
+     * every edge, so that the points can be calculated in the same pass as e.g. the instructions.
+     *
+     * @return the visitor or null if there are no edges to visit
+     */
+    public EdgeVisitor createPointsVisitor(final PointList points) {
         if (edgeIds.isEmpty()) {
             if (isFound()) {
                 points.add(nodeAccess, endNode);
             }
-            return points;
+            return null;
         }
 
-        int tmpNode = getFromNode();
-        points.add(nodeAccess, tmpNode);
-        forEveryEdge(new EdgeVisitor() {
+        points.add(nodeAccess, getFromNode());
+        return new GeometryEdgeVisitor() {
             @Override
-            public void next(EdgeIteratorState eb, int index, int prevEdgeId) {
-                PointList pl = eb.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
-                for (int j = 0; j < pl.size(); j++) {
-                    points.add(pl, j);
+            public void next(EdgeIteratorState eb, PointList geometry, int index, int prevEdgeId) {
+                // skip the base node, which was added for the previous edge
+                for (int j = 1; j < geometry.size(); j++) {
+                    points.add(geometry, j);
                 }
             }
 
@@ -293,8 +305,38 @@ public class Path {
             public void finish() {
 
             }
+        };
+    }
+
+    /**
+     * Calls all visitors for every edge in one pass, i.e. every edge state is created only once and its geometry is
+     * fetched only once for all {@link GeometryEdgeVisitor}s.
+     */
+    public void forEveryEdge(final List<? extends EdgeVisitor> visitors) {
+        boolean anyGeometry = false;
+        for (EdgeVisitor visitor : visitors) {
+            anyGeometry |= visitor instanceof GeometryEdgeVisitor;
+        }
+        final boolean fetchGeometry = anyGeometry;
+        forEveryEdge(new EdgeVisitor() {
+            @Override
+            public void next(EdgeIteratorState edge, int index, int prevEdgeId) {
+                PointList geometry = fetchGeometry ? edge.fetchWayGeometry(FetchMode.ALL) : null;
+                for (EdgeVisitor visitor : visitors) {
+                    if (visitor instanceof GeometryEdgeVisitor)
+                        ((GeometryEdgeVisitor) visitor).next(edge, geometry, index, prevEdgeId);
+                    else
+                        visitor.next(edge, index, prevEdgeId);
+                }
+            }
+
+            @Override
+            public void finish() {
+                for (EdgeVisitor visitor : visitors) {
+                    visitor.finish();
+                }
+            }
         });
-        return points;
     }
 
     @Override
@@ -310,4 +352,17 @@ public class Path {
 
         void finish();
     }
+
+    /**
+     * An EdgeVisitor that needs the geometry of every edge. The geometry is fetched with {@link FetchMode#ALL} and
+     * must not be modified, as it is shared by all visitors of {@link #forEveryEdge(List)}.
+     */
+    public interface GeometryEdgeVisitor extends EdgeVisitor {
+        void next(EdgeIteratorState edge, PointList geometry, int index, int prevEdgeId);
+
+        @Override
+        default void next(EdgeIteratorState edge, int index, int prevEdgeId) {
+            next(edge, edge.fetchWayGeometry(FetchMode.ALL), index, prevEdgeId);
+        }
+    }
 }
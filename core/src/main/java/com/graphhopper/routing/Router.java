@@ -24,10 +24,16 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
+import com.graphhopper.routing.crp.CRPCustomization;
+import com.graphhopper.routing.crp.MultiLevelDijkstra;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.timedependent.SpeedProfileStorage;
+import com.graphhopper.routing.timedependent.TimeDependentAlgorithmFactory;
+import com.graphhopper.routing.timedependent.TimeDependentPathCalculator;
+import com.graphhopper.routing.timedependent.TimeDependentWeighting;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.BlockAreaWeighting;
 import com.graphhopper.routing.weighting.Weighting;
@@ -40,13 +46,18 @@ import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.exceptions.PointOutOfBoundsException;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 
+import java.time.DateTimeException;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static com.graphhopper.routing.weighting.Weighting.INFINITE_U_TURN_COSTS;
 import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
@@ -69,6 +80,11 @@ public class Router {
     private final Map<String, LandmarkStorage> landmarks;
     private final boolean chEnabled;
     private final boolean lmEnabled;
+    private ExecutorService viaLegExecutor;
+    private ExecutorService alternativeRouteExecutor;
+    private SpeedProfileStorage speedProfiles;
+    private Map<String, CRPCustomization> crpCustomizations = Collections.emptyMap();
+    private boolean chFallback;
 
     public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
@@ -95,6 +111,54 @@ public class Router {
         }
     }
 
+    /**
+     * @param viaLegExecutor the executor used to calculate the legs of a route with via points concurrently, see
+     *                       {@link RouterConfig#setViaLegThreads}. If null the legs are calculated one after another.
+     */
+    public Router setViaLegExecutor(ExecutorService viaLegExecutor) {
+        this.viaLegExecutor = viaLegExecutor;
+        return this;
+    }
+
+    /**
+     * @param alternativeRouteExecutor the executor used to check the candidates of alternative routes with CH
+     *                                 concurrently, see {@link RouterConfig#setAlternativeRouteThreads}. If null
+     *                                 the candidates are checked one after another.
+     */
+    public Router setAlternativeRouteExecutor(ExecutorService alternativeRouteExecutor) {
+        this.alternativeRouteExecutor = alternativeRouteExecutor;
+        return this;
+    }
+
+    /**
+     * @param speedProfiles the speed profiles of the edges for requests with a departure time, or null if time-dependent
+     *                      routing is not available
+     */
+    public Router setSpeedProfiles(SpeedProfileStorage speedProfiles) {
+        this.speedProfiles = speedProfiles;
+        return this;
+    }
+
+    /**
+     * @param crpCustomizations the CRP customizations by profile name. If this is not empty they are used for all
+     *                          requests that do not use CH, unless {@link Parameters.CRP#DISABLE} is set.
+     */
+    public Router setCRPCustomizations(Map<String, CRPCustomization> crpCustomizations) {
+        this.crpCustomizations = crpCustomizations;
+        return this;
+    }
+
+    /**
+     * @param chFallback if true the requests for which CH does not find a route are calculated again with LM or the
+     *                   flexible mode. This is needed if the weights of the CH shortcuts were customized for another
+     *                   weighting than the one of the preparation, because the shortcuts that are necessary for the new
+     *                   weighting can be missing, see {@link com.graphhopper.routing.ch.CHCustomization}.
+     */
+    public Router setCHFallback(boolean chFallback) {
+        this.chFallback = chFallback;
+        return this;
+    }
+
     public GHResponse route(GHRequest request) {
         try {
             checkNoLegacyParameters(request);
@@ -113,11 +177,15 @@ public class Router {
                 if (!(solver instanceof FlexSolver))
                     throw new IllegalArgumentException("algorithm=round_trip only works with a flexible algorithm");
                 return routeRoundTrip(request, (FlexSolver) solver);
-            } else if (ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm())) {
-                return routeAlt(request, solver);
-            } else {
-                return routeVia(request, solver);
             }
+            GHResponse response = ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm()) ? routeAlt(request, solver) : routeVia(request, solver);
+            if (chFallback && solver instanceof CHSolver && isConnectionNotFound(response)) {
+                solver = createFlexSolver(request);
+                solver.checkRequest();
+                solver.init();
+                response = ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm()) ? routeAlt(request, solver) : routeVia(request, solver);
+            }
+            return response;
         } catch (MultiplePointsNotFoundException ex) {
             GHResponse ghRsp = new GHResponse();
             for (IntCursor p : ex.getPointsNotFound()) {
@@ -183,14 +251,30 @@ public class Router {
 
     protected Solver createSolver(GHRequest request) {
         final boolean disableCH = getDisableCH(request.getHints());
-        final boolean disableLM = getDisableLM(request.getHints());
-        if (chEnabled && !disableCH) {
-            return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
-        } else if (lmEnabled && !disableLM) {
-            return new LMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
+        final boolean disableCRP = getDisableCRP(request.getHints());
+        if (request.getHints().has(DEPARTURE_TIME)) {
+            return new TimeDependentSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, speedProfiles);
+        } else if (chEnabled && !disableCH) {
+            return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs, alternativeRouteExecutor);
+        } else if (!crpCustomizations.isEmpty() && !disableCRP) {
+            return new CRPSolver(request, profilesByName, routerConfig, encodingManager, crpCustomizations);
         } else {
-            return new FlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex);
+            return createFlexSolver(request);
+        }
+    }
+
+    private Solver createFlexSolver(GHRequest request) {
+        if (lmEnabled && !getDisableLM(request.getHints()))
+            return new LMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
+        return new FlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex);
+    }
+
+    private static boolean isConnectionNotFound(GHResponse response) {
+        for (Throwable error : response.getErrors()) {
+            if (error instanceof ConnectionNotFoundException)
+                return true;
         }
+        return false;
     }
 
     protected GHResponse routeRoundTrip(GHRequest request, FlexSolver solver) {
@@ -273,11 +357,11 @@ public class Router {
         // (base) query graph used to resolve headings, curbsides etc. this is not necessarily the same thing as
         // the (possibly implementation specific) query graph used by PathCalculator
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
-        PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
         boolean passThrough = getPassThrough(request.getHints());
         boolean forceCurbsides = getForceCurbsides(request.getHints());
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
-                pathCalculator, request.getCurbsides(), forceCurbsides, request.getHeadings(), passThrough);
+                () -> solver.createPathCalculator(queryGraph), request.getCurbsides(), forceCurbsides, request.getHeadings(),
+                passThrough, viaLegExecutor, solver.hasIndependentLegs() ? routerConfig.getViaLegThreads() : 1);
 
         if (request.getPoints().size() != result.paths.size() + 1)
             throw new RuntimeException("There should be exactly one more point than paths. points:" + request.getPoints().size() + ", paths:" + result.paths.size());
@@ -292,8 +376,13 @@ public class Router {
     }
 
     private PathMerger createPathMerger(GHRequest request, Weighting weighting, Graph graph) {
-        boolean enableInstructions = request.getHints().getBool(Parameters.Routing.INSTRUCTIONS, routerConfig.isInstructionsEnabled());
-        boolean calcPoints = request.getHints().getBool(Parameters.Routing.CALC_POINTS, routerConfig.isCalcPoints());
+        // skip what is not needed for the requested fields, the path details and instructions refer to the points
+        boolean enableInstructions = request.getHints().getBool(Parameters.Routing.INSTRUCTIONS, routerConfig.isInstructionsEnabled())
+                && request.isFieldRequested("instructions");
+        List<String> pathDetails = request.isFieldRequested("details") ? request.getPathDetails() : Collections.emptyList();
+        boolean calcPoints = request.getHints().getBool(Parameters.Routing.CALC_POINTS, routerConfig.isCalcPoints())
+                && (request.isFieldRequested("points") || request.isFieldRequested("bbox") || request.isFieldRequested("ascend")
+                || request.isFieldRequested("descend") || !pathDetails.isEmpty());
         double wayPointMaxDistance = request.getHints().getDouble(Parameters.Routing.WAY_POINT_MAX_DISTANCE, 1d);
         double elevationWayPointMaxDistance = request.getHints().getDouble(ELEVATION_WAY_POINT_MAX_DISTANCE, routerConfig.getElevationWayPointMaxDistance());
 
@@ -304,7 +393,7 @@ public class Router {
                 setCalcPoints(calcPoints).
                 setDouglasPeucker(peucker).
                 setEnableInstructions(enableInstructions).
-                setPathDetailsBuilders(pathDetailsBuilderFactory, request.getPathDetails()).
+                setPathDetailsBuilders(pathDetailsBuilderFactory, pathDetails).
                 setSimplifyResponse(routerConfig.isSimplifyResponse() && wayPointMaxDistance > 0);
 
         if (!request.getHeadings().isEmpty())
@@ -329,6 +418,10 @@ public class Router {
         return hints.getBool(Parameters.Landmark.DISABLE, false);
     }
 
+    private static boolean getDisableCRP(PMap hints) {
+        return hints.getBool(Parameters.CRP.DISABLE, false);
+    }
+
     private static boolean getDisableCH(PMap hints) {
         return hints.getBool(Parameters.CH.DISABLE, false);
     }
@@ -411,6 +504,13 @@ public class Router {
 
         protected abstract PathCalculator createPathCalculator(QueryGraph queryGraph);
 
+        /**
+         * @return true if the legs of a route with via points can be calculated in any order
+         */
+        protected boolean hasIndependentLegs() {
+            return true;
+        }
+
         private List<String> getTurnCostProfiles() {
             List<String> turnCostProfiles = new ArrayList<>();
             for (Profile p : profilesByName.values()) {
@@ -427,11 +527,16 @@ public class Router {
     }
 
     private static class CHSolver extends Solver {
+        private final RouterConfig routerConfig;
         private final Map<String, RoutingCHGraph> chGraphs;
+        private final ExecutorService alternativeRouteExecutor;
 
-        CHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup, Map<String, RoutingCHGraph> chGraphs) {
+        CHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup,
+                 Map<String, RoutingCHGraph> chGraphs, ExecutorService alternativeRouteExecutor) {
             super(request, profilesByName, routerConfig, lookup);
+            this.routerConfig = routerConfig;
             this.chGraphs = chGraphs;
+            this.alternativeRouteExecutor = alternativeRouteExecutor;
         }
 
         @Override
@@ -469,7 +574,11 @@ public class Router {
             PMap opts = new PMap(request.getHints());
             opts.putObject(ALGORITHM, request.getAlgorithm());
             opts.putObject(MAX_VISITED_NODES, getMaxVisitedNodes(request.getHints()));
-            return new CHPathCalculator(new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph), opts);
+            if (!opts.has(Parameters.Algorithms.AltRoute.MAX_TIME_MS))
+                opts.putObject(Parameters.Algorithms.AltRoute.MAX_TIME_MS, routerConfig.getAlternativeRouteMaxTimeMillis());
+            CHRoutingAlgorithmFactory algoFactory = new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph)
+                    .setAlternativeRouteExecutor(alternativeRouteExecutor, routerConfig.getAlternativeRouteThreads());
+            return new CHPathCalculator(algoFactory, opts);
         }
 
         private RoutingCHGraph getRoutingCHGraph(String profileName) {
@@ -482,6 +591,65 @@ public class Router {
         }
     }
 
+    private static class CRPSolver extends Solver {
+        private final RouterConfig routerConfig;
+        private final Map<String, CRPCustomization> crpCustomizations;
+
+        CRPSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup,
+                  Map<String, CRPCustomization> crpCustomizations) {
+            super(request, profilesByName, routerConfig, lookup);
+            this.routerConfig = routerConfig;
+            this.crpCustomizations = crpCustomizations;
+        }
+
+        @Override
+        protected void checkRequest() {
+            super.checkRequest();
+            if (request.getHints().has(Parameters.Routing.BLOCK_AREA))
+                throw new IllegalArgumentException("The '" + Parameters.Routing.BLOCK_AREA + "' parameter is currently not supported for CRP, you need to disable CRP with `crp.disable=true`.");
+
+            if (request.getCustomModel() != null)
+                throw new IllegalArgumentException("The 'custom_model' parameter is currently not supported for CRP, you need to disable CRP with `crp.disable=true`.");
+
+            // MultiLevelDijkstra is not bidirectional, so it cannot restrict the source and target edges
+            if (!request.getCurbsides().isEmpty())
+                throw new IllegalArgumentException("The '" + CURBSIDE + "' parameter is currently not supported for CRP, you need to disable CRP with `crp.disable=true`.");
+
+            if (ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm()) || ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
+                throw new IllegalArgumentException("algorithm=" + request.getAlgorithm() + " cannot be used with CRP");
+        }
+
+        @Override
+        protected Weighting createWeighting() {
+            // the request hints are ignored like for CH, the cliques were customized for the weighting of the profile
+            return getCustomization(profile.getName()).getWeighting();
+        }
+
+        @Override
+        protected PathCalculator createPathCalculator(QueryGraph queryGraph) {
+            CRPCustomization customization = getCustomization(profile.getName());
+            RoutingAlgorithmFactory algoFactory = (graph, weighting, opts) -> {
+                MultiLevelDijkstra algo = new MultiLevelDijkstra(graph, customization);
+                algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+                return algo;
+            };
+            AlgorithmOptions algoOpts = new AlgorithmOptions().
+                    setTraversalMode(TraversalMode.EDGE_BASED).
+                    setMaxVisitedNodes(getMaxVisitedNodes(request.getHints())).
+                    setHints(request.getHints());
+            return new FlexiblePathCalculator(queryGraph, algoFactory, weighting, algoOpts);
+        }
+
+        private CRPCustomization getCustomization(String profileName) {
+            CRPCustomization customization = crpCustomizations.get(profileName);
+            if (customization == null)
+                throw new IllegalArgumentException("Cannot find CRP preparation for the requested profile: '" + profileName + "'" +
+                        "\nYou can try disabling CRP using " + Parameters.CRP.DISABLE + "=true" +
+                        "\navailable CRP profiles: " + crpCustomizations.keySet());
+            return customization;
+        }
+    }
+
     private static class FlexSolver extends Solver {
         protected final RouterConfig routerConfig;
         private final WeightingFactory weightingFactory;
@@ -582,4 +750,59 @@ public class Router {
             return new FlexiblePathCalculator(queryGraph, routingAlgorithmFactory, weighting, getAlgoOpts());
         }
     }
+
+    private static class TimeDependentSolver extends FlexSolver {
+        private final EncodingManager encodingManager;
+        private final SpeedProfileStorage speedProfiles;
+
+        TimeDependentSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodingManager encodingManager,
+                            WeightingFactory weightingFactory, BaseGraph graph, LocationIndex locationIndex, SpeedProfileStorage speedProfiles) {
+            super(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex);
+            this.encodingManager = encodingManager;
+            this.speedProfiles = speedProfiles;
+        }
+
+        @Override
+        protected void checkRequest() {
+            super.checkRequest();
+            if (speedProfiles == null)
+                throw new IllegalArgumentException("The " + DEPARTURE_TIME + " parameter requires speed profiles, see time_dependent.speed_profiles_file");
+            if (ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm()) || ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
+                throw new IllegalArgumentException("The " + DEPARTURE_TIME + " parameter cannot be used with the algorithm " + request.getAlgorithm());
+            // TimeDependentDijkstra is not bidirectional, so it cannot restrict the source and target edges
+            if (!request.getCurbsides().isEmpty())
+                throw new IllegalArgumentException("The " + DEPARTURE_TIME + " parameter cannot be used with the " + CURBSIDE + " parameter");
+        }
+
+        @Override
+        protected Weighting createWeighting() {
+            // the instructions and the path details get the time-dependent travel times of the edges
+            return new TimeDependentWeighting(super.createWeighting());
+        }
+
+        @Override
+        protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
+            TimeDependentAlgorithmFactory algorithmFactory = new TimeDependentAlgorithmFactory(speedProfiles,
+                    encodingManager.getEncoder(profile.getVehicle()).getMaxSpeed(), parseDepartureTime(request.getHints().getString(DEPARTURE_TIME, "")));
+            return new TimeDependentPathCalculator(queryGraph, algorithmFactory, weighting, getAlgoOpts());
+        }
+
+        @Override
+        protected boolean hasIndependentLegs() {
+            // every leg departs when the previous one arrives
+            return false;
+        }
+
+        /**
+         * @return the local time of the day in milliseconds, e.g. for 2022-03-01T08:15+01:00 or 08:15
+         */
+        private static long parseDepartureTime(String str) {
+            try {
+                LocalTime time = str.contains("T") ? LocalTime.from(DateTimeFormatter.ISO_DATE_TIME.parse(str)) : LocalTime.parse(str);
+                return time.toNanoOfDay() / 1_000_000;
+            } catch (DateTimeException ex) {
+                throw new IllegalArgumentException("Cannot parse " + DEPARTURE_TIME + " '" + str + "', use e.g. 2022-03-01T08:15 or 08:15");
+            }
+        }
+    }
 }
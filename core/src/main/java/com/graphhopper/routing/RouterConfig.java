@@ -30,6 +30,9 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private int viaLegThreads = 1;
+    private int alternativeRouteThreads = 1;
+    private long alternativeRouteMaxTimeMillis = Long.MAX_VALUE;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -105,4 +108,45 @@ public class RouterConfig {
     public void setElevationWayPointMaxDistance(double elevationWayPointMaxDistance) {
         this.elevationWayPointMaxDistance = elevationWayPointMaxDistance;
     }
+
+    public int getViaLegThreads() {
+        return viaLegThreads;
+    }
+
+    /**
+     * Sets the number of threads that calculate the legs of a route with via points for one request. The legs are
+     * only calculated concurrently if they do not depend on each other, i.e. without pass_through and headings.
+     */
+    public void setViaLegThreads(int viaLegThreads) {
+        if (viaLegThreads < 1)
+            throw new IllegalArgumentException("The number of threads for via legs must be positive but was " + viaLegThreads);
+        this.viaLegThreads = viaLegThreads;
+    }
+
+    public int getAlternativeRouteThreads() {
+        return alternativeRouteThreads;
+    }
+
+    /**
+     * Sets the number of threads that check the via-node candidates of an alternative route request with CH.
+     */
+    public void setAlternativeRouteThreads(int alternativeRouteThreads) {
+        if (alternativeRouteThreads < 1)
+            throw new IllegalArgumentException("The number of threads for alternative routes must be positive but was " + alternativeRouteThreads);
+        this.alternativeRouteThreads = alternativeRouteThreads;
+    }
+
+    public long getAlternativeRouteMaxTimeMillis() {
+        return alternativeRouteMaxTimeMillis;
+    }
+
+    /**
+     * Sets the default time budget of an alternative route request with CH. After this time no further alternatives
+     * are searched and the alternatives found so far are returned.
+     */
+    public void setAlternativeRouteMaxTimeMillis(long alternativeRouteMaxTimeMillis) {
+        if (alternativeRouteMaxTimeMillis < 0)
+            throw new IllegalArgumentException("The time budget for alternative routes cannot be negative but was " + alternativeRouteMaxTimeMillis);
+        this.alternativeRouteMaxTimeMillis = alternativeRouteMaxTimeMillis;
+    }
 }
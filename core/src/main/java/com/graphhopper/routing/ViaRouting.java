@@ -32,6 +32,10 @@ import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
 import static com.graphhopper.util.EdgeIterator.NO_EDGE;
@@ -93,6 +97,20 @@ public class ViaRouting {
     }
 
     public static Result calcPaths(List<GHPoint> points, QueryGraph queryGraph, List<Snap> snaps, DirectedEdgeFilter directedEdgeFilter, PathCalculator pathCalculator, List<String> curbsides, boolean forceCurbsides, List<Double> headings, boolean passThrough) {
+        return calcPaths(points, queryGraph, snaps, directedEdgeFilter, () -> pathCalculator, curbsides, forceCurbsides, headings, passThrough, null, 1);
+    }
+
+    /**
+     * Calculates the legs of the route on up to the specified number of threads, where the calling thread is one of
+     * them. This is only done if the legs are independent of each other: with pass_through a leg depends on the
+     * previous one and headings are enforced by marking edges of the shared query graph, so in these cases the legs
+     * are calculated one after another. Every thread uses its own PathCalculator from the specified supplier.
+     *
+     * @param executor the executor for the other threads or null to calculate all legs on the calling thread
+     */
+    public static Result calcPaths(List<GHPoint> points, QueryGraph queryGraph, List<Snap> snaps, DirectedEdgeFilter directedEdgeFilter,
+                                   Supplier<PathCalculator> pathCalculatorSupplier, List<String> curbsides, boolean forceCurbsides,
+                                   List<Double> headings, boolean passThrough, ExecutorService executor, int threads) {
         if (!curbsides.isEmpty() && curbsides.size() != points.size())
             throw new IllegalArgumentException("If you pass " + CURBSIDE + ", you need to pass exactly one curbside for every point, empty curbsides will be ignored");
         if (!curbsides.isEmpty() && !headings.isEmpty())
@@ -100,59 +118,109 @@ public class ViaRouting {
 
         final int legs = snaps.size() - 1;
         Result result = new Result(legs);
-        for (int leg = 0; leg < legs; ++leg) {
-            Snap fromSnap = snaps.get(leg);
-            Snap toSnap = snaps.get(leg + 1);
-
-            // enforce headings
-            // at via-nodes and the target node the heading parameter is interpreted as the direction we want
-            // to enforce for arriving (not starting) at this node. the starting direction is not enforced at
-            // all for these points (unless using pass through). see this forum discussion:
-            // https://discuss.graphhopper.com/t/meaning-of-heading-parameter-for-via-routing/5643/6
-            double fromHeading = (leg == 0 && !headings.isEmpty()) ? headings.get(0) : Double.NaN;
-            double toHeading = (snaps.size() == headings.size() && !Double.isNaN(headings.get(leg + 1))) ? headings.get(leg + 1) : Double.NaN;
-
-            // enforce pass-through
-            int incomingEdge = NO_EDGE;
-            if (leg != 0) {
-                // enforce straight start after via stop
-                Path prevRoute = result.paths.get(leg - 1);
-                if (prevRoute.getEdgeCount() > 0)
-                    incomingEdge = prevRoute.getFinalEdge().getEdge();
+        boolean concurrent = executor != null && threads > 1 && legs > 1 && !passThrough
+                && headings.stream().allMatch(h -> Double.isNaN(h));
+        if (!concurrent) {
+            PathCalculator pathCalculator = pathCalculatorSupplier.get();
+            for (int leg = 0; leg < legs; ++leg) {
+                // enforce pass-through
+                int incomingEdge = NO_EDGE;
+                if (leg != 0) {
+                    // enforce straight start after via stop
+                    Path prevRoute = result.paths.get(leg - 1);
+                    if (prevRoute.getEdgeCount() > 0)
+                        incomingEdge = prevRoute.getFinalEdge().getEdge();
+                }
+                result.addLeg(calcLeg(leg, queryGraph, snaps, directedEdgeFilter, pathCalculator, curbsides,
+                        forceCurbsides, headings, incomingEdge, passThrough));
             }
+            return result;
+        }
 
-            // enforce curbsides
-            final String fromCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg);
-            final String toCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg + 1);
-
-            EdgeRestrictions edgeRestrictions = buildEdgeRestrictions(queryGraph, fromSnap, toSnap,
-                    fromHeading, toHeading, incomingEdge, passThrough,
-                    fromCurbside, toCurbside, directedEdgeFilter);
-
-            edgeRestrictions.setSourceOutEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getSourceOutEdge(), leg, forceCurbsides));
-            edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, forceCurbsides));
+        // every thread calculates a block of consecutive legs
+        final int blocks = Math.min(threads, legs);
+        final LegResult[] legResults = new LegResult[legs];
+        List<Future<?>> futures = new ArrayList<>(blocks - 1);
+        try {
+            for (int block = blocks - 1; block >= 0; block--) {
+                final int fromLeg = block * legs / blocks, toLeg = (block + 1) * legs / blocks;
+                Runnable task = () -> {
+                    PathCalculator pathCalculator = pathCalculatorSupplier.get();
+                    for (int leg = fromLeg; leg < toLeg; leg++) {
+                        legResults[leg] = calcLeg(leg, queryGraph, snaps, directedEdgeFilter, pathCalculator, curbsides,
+                                forceCurbsides, headings, NO_EDGE, false);
+                    }
+                };
+                if (block > 0)
+                    futures.add(executor.submit(task));
+                else
+                    task.run();
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while calculating the legs", ex);
+        } finally {
+            // does nothing if all legs were calculated
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
 
-            // calculate paths
-            List<Path> paths = pathCalculator.calcPaths(fromSnap.getClosestNode(), toSnap.getClosestNode(), edgeRestrictions);
-            result.debug += pathCalculator.getDebugString();
+        for (LegResult legResult : legResults) {
+            result.addLeg(legResult);
+        }
+        return result;
+    }
 
-            // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
-            // via-points for alternatives at the moment). otherwise we would have to return a list<list<path>> and find
-            // a good method to decide how to combine the different legs
-            for (int i = 0; i < paths.size(); i++) {
-                Path path = paths.get(i);
-                if (path.getTime() < 0)
-                    throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
+    private static LegResult calcLeg(int leg, QueryGraph queryGraph, List<Snap> snaps, DirectedEdgeFilter directedEdgeFilter,
+                                     PathCalculator pathCalculator, List<String> curbsides, boolean forceCurbsides,
+                                     List<Double> headings, int incomingEdge, boolean passThrough) {
+        Snap fromSnap = snaps.get(leg);
+        Snap toSnap = snaps.get(leg + 1);
+
+        // enforce headings
+        // at via-nodes and the target node the heading parameter is interpreted as the direction we want
+        // to enforce for arriving (not starting) at this node. the starting direction is not enforced at
+        // all for these points (unless using pass through). see this forum discussion:
+        // https://discuss.graphhopper.com/t/meaning-of-heading-parameter-for-via-routing/5643/6
+        double fromHeading = (leg == 0 && !headings.isEmpty()) ? headings.get(0) : Double.NaN;
+        double toHeading = (snaps.size() == headings.size() && !Double.isNaN(headings.get(leg + 1))) ? headings.get(leg + 1) : Double.NaN;
+
+        // enforce curbsides
+        final String fromCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg);
+        final String toCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg + 1);
+
+        EdgeRestrictions edgeRestrictions = buildEdgeRestrictions(queryGraph, fromSnap, toSnap,
+                fromHeading, toHeading, incomingEdge, passThrough,
+                fromCurbside, toCurbside, directedEdgeFilter);
+
+        edgeRestrictions.setSourceOutEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getSourceOutEdge(), leg, forceCurbsides));
+        edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, forceCurbsides));
+
+        // calculate paths
+        List<Path> paths = pathCalculator.calcPaths(fromSnap.getClosestNode(), toSnap.getClosestNode(), edgeRestrictions);
+        return new LegResult(paths, pathCalculator.getDebugString(), pathCalculator.getVisitedNodes());
+    }
 
-                result.paths.add(path);
-                result.debug += ", " + path.getDebugInfo();
-            }
+    private static class LegResult {
+        final List<Path> paths;
+        final String debug;
+        final int visitedNodes;
 
-            result.visitedNodes += pathCalculator.getVisitedNodes();
-            result.debug += "visited nodes sum: " + result.visitedNodes;
+        LegResult(List<Path> paths, String debug, int visitedNodes) {
+            this.paths = paths;
+            this.debug = debug;
+            this.visitedNodes = visitedNodes;
         }
-
-        return result;
     }
 
     public static class Result {
@@ -163,6 +231,24 @@ public class ViaRouting {
         Result(int legs) {
             paths = new ArrayList<>(legs);
         }
+
+        private void addLeg(LegResult leg) {
+            debug += leg.debug;
+            // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
+            // via-points for alternatives at the moment). otherwise we would have to return a list<list<path>> and find
+            // a good method to decide how to combine the different legs
+            for (int i = 0; i < leg.paths.size(); i++) {
+                Path path = leg.paths.get(i);
+                if (path.getTime() < 0)
+                    throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
+
+                paths.add(path);
+                debug += ", " + path.getDebugInfo();
+            }
+
+            visitedNodes += leg.visitedNodes;
+            debug += "visited nodes sum: " + visitedNodes;
+        }
     }
 
     /**
@@ -0,0 +1,376 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Calculates the weights of the shortcuts of an existing {@link CHStorage} for another weighting, e.g. when the
+ * speeds of some edges changed because of traffic. The node ordering and the shortcuts of the preparation are kept,
+ * only the weights are calculated again from the bottom to the top. All shortcuts with the same depth, i.e. the same
+ * maximum number of shortcuts between them and the base graph, are independent and are calculated in parallel.
+ * <p>
+ * For node-based CH the weight of a shortcut is the minimum over all its lower triangles, like in "Customizable
+ * Contraction Hierarchies" by Dibbelt, Strasser and Wagner: every node below both nodes of the shortcut that has an
+ * edge or shortcut to both of them is a possible middle node, not only the one that was contracted when the shortcut
+ * was added. The skipped edges of the best triangle are stored per direction, see {@link CHShortcutWeights}, so that
+ * the unpacked paths match the weights. Edge-based shortcuts are calculated from the two edges they skip.
+ * <p>
+ * The resulting routes are always valid and their weight is correct for the new weighting. But the witness search
+ * of the preparation did not add the shortcuts that were not necessary for the old weighting, so a route can still
+ * be worse than the best one or even be missing, e.g. when a road is closed. This is why the router calculates such
+ * requests again without CH, see {@link com.graphhopper.routing.Router#setCHFallback}. For bigger changes a new
+ * preparation with the fixed node ordering of the old one should be used, see
+ * {@link PrepareContractionHierarchies#useFixedNodeOrdering}.
+ */
+public class CHCustomization {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CHCustomization.class);
+    // do not bother other threads for a few shortcuts
+    private static final int MIN_SHORTCUTS_PER_THREAD = 1000;
+    private final BaseGraph graph;
+    private final CHStorage chStorage;
+    private int threads = 1;
+    // the shortcuts sorted by their depth and the first index for every depth
+    private int[] sortedShortcuts;
+    private int[] depthStart;
+    // for node-based CH: the lower triangles of every shortcut, i.e. the pairs of edges at node A and at node B
+    private int[] triangleStart;
+    private int[] triangleEdges;
+
+    public CHCustomization(BaseGraph graph, CHStorage chStorage) {
+        this.graph = graph;
+        this.chStorage = chStorage;
+    }
+
+    public CHCustomization setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Calculates the weights of all shortcuts for the specified weighting
+     */
+    public CHShortcutWeights customize(Weighting weighting) {
+        return customize(weighting, null, null);
+    }
+
+    /**
+     * Calculates the weights of the shortcuts that include one of the changed edges and copies the others.
+     *
+     * @param previous     the shortcut weights for the previous weighting, or null to calculate all shortcuts
+     * @param changedEdges the base graph edges whose weight changed compared to the previous weighting
+     */
+    public CHShortcutWeights customize(Weighting weighting, CHShortcutWeights previous, GHBitSet changedEdges) {
+        if (weighting.hasTurnCosts() != chStorage.isEdgeBased())
+            throw new IllegalArgumentException("Weighting " + weighting + " does not match the " + (chStorage.isEdgeBased() ? "edge" : "node") + "-based CHStorage");
+        if (previous != null && changedEdges == null)
+            throw new IllegalArgumentException("The changed edges are required to update the previous shortcut weights");
+        StopWatch sw = new StopWatch().start();
+        if (sortedShortcuts == null) {
+            if (!chStorage.isEdgeBased())
+                findTriangles();
+            sortByDepth();
+        }
+        CHShortcutWeights result = new CHShortcutWeights(chStorage.getShortcuts(), !chStorage.isEdgeBased());
+        // the weights of the skipped shortcuts are read via this graph while the result is filled
+        RoutingCHGraph chGraph = new RoutingCHGraphImpl(graph, chStorage, weighting, result);
+        boolean[] changed = null;
+        if (previous != null) {
+            result.copyFrom(previous);
+            changed = new boolean[chStorage.getShortcuts()];
+        }
+        int changedShortcuts = 0;
+        for (int depth = 0; depth < depthStart.length - 1; depth++) {
+            int start = depthStart[depth], end = depthStart[depth + 1];
+            int[] shortcuts = changed == null ? sortedShortcuts : filterChanged(start, end, changedEdges, changed);
+            if (changed != null) {
+                start = 0;
+                end = shortcuts.length;
+            }
+            changedShortcuts += end - start;
+            calcWeights(chGraph, result, shortcuts, start, end);
+        }
+        LOGGER.info("Customized " + nf(changedShortcuts) + " of " + nf(chStorage.getShortcuts()) + " shortcuts for " + weighting
+                + " with " + (depthStart.length - 1) + " depths, took: " + sw.stop().getSeconds() + "s");
+        return result;
+    }
+
+    /**
+     * @return the shortcuts of the depth that depend on a changed edge or shortcut. They are marked as changed as well.
+     */
+    private int[] filterChanged(int start, int end, GHBitSet changedEdges, boolean[] changed) {
+        int[] result = new int[end - start];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            int shortcut = sortedShortcuts[i];
+            if (dependsOnChanged(shortcut, changedEdges, changed)) {
+                changed[shortcut] = true;
+                result[count++] = shortcut;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private boolean dependsOnChanged(int shortcut, GHBitSet changedEdges, boolean[] changed) {
+        if (triangleStart != null) {
+            for (int i = 2 * triangleStart[shortcut]; i < 2 * triangleStart[shortcut + 1]; i++) {
+                if (isChanged(triangleEdges[i], changedEdges, changed))
+                    return true;
+            }
+            return false;
+        }
+        long pointer = chStorage.toShortcutPointer(shortcut);
+        return isChanged(chStorage.getSkippedEdge1(pointer), changedEdges, changed)
+                || isChanged(chStorage.getSkippedEdge2(pointer), changedEdges, changed);
+    }
+
+    /**
+     * @return the edges and shortcuts the weight of the shortcut is calculated from
+     */
+    private int[] getDependencies(int shortcut) {
+        if (triangleStart != null)
+            return Arrays.copyOfRange(triangleEdges, 2 * triangleStart[shortcut], 2 * triangleStart[shortcut + 1]);
+        long pointer = chStorage.toShortcutPointer(shortcut);
+        return new int[]{chStorage.getSkippedEdge1(pointer), chStorage.getSkippedEdge2(pointer)};
+    }
+
+    private boolean isChanged(int edge, GHBitSet changedEdges, boolean[] changed) {
+        return edge < graph.getEdges() ? changedEdges.contains(edge) : changed[edge - graph.getEdges()];
+    }
+
+    private void calcWeights(RoutingCHGraph chGraph, CHShortcutWeights result, int[] shortcuts, int start, int end) {
+        int chunks = Math.min(threads, (end - start) / MIN_SHORTCUTS_PER_THREAD);
+        if (chunks <= 1) {
+            for (int i = start; i < end; i++) {
+                calcWeight(chGraph, result, shortcuts[i]);
+            }
+            return;
+        }
+        List<Callable<String>> callables = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            final int chunkStart = start + (int) ((long) (end - start) * chunk / chunks);
+            final int chunkEnd = start + (int) ((long) (end - start) * (chunk + 1) / chunks);
+            callables.add(() -> {
+                for (int i = chunkStart; i < chunkEnd; i++) {
+                    calcWeight(chGraph, result, shortcuts[i]);
+                }
+                return "ch_customization_" + chunkStart;
+            });
+        }
+        GHUtility.runConcurrently(callables, chunks);
+    }
+
+    private void calcWeight(RoutingCHGraph chGraph, CHShortcutWeights result, int shortcut) {
+        long pointer = chStorage.toShortcutPointer(shortcut);
+        int nodeB = chStorage.getNodeB(pointer);
+        int skip1 = chStorage.getSkippedEdge1(pointer);
+        int skip2 = chStorage.getSkippedEdge2(pointer);
+        if (chStorage.isEdgeBased()) {
+            // edge-based shortcuts are one-directional and the skipped edges are sorted in the direction of the
+            // shortcut, see ShortcutUnpacker
+            boolean reverse = !chStorage.getFwdAccess(pointer);
+            RoutingCHEdgeIteratorState first = chGraph.getEdgeIteratorState(reverse ? skip1 : skip2, nodeB);
+            RoutingCHEdgeIteratorState second = chGraph.getEdgeIteratorState(reverse ? skip2 : skip1, first.getBaseNode());
+            if (!reverse) {
+                RoutingCHEdgeIteratorState tmp = first;
+                first = second;
+                second = tmp;
+            }
+            int middle = reverse ? first.getBaseNode() : second.getBaseNode();
+            double weight = first.getWeight(reverse) + second.getWeight(reverse);
+            if (!Double.isInfinite(weight))
+                weight += chGraph.getTurnWeight(GHUtility.getEdgeFromEdgeKey(first.getOrigEdgeKeyLast()), middle,
+                        GHUtility.getEdgeFromEdgeKey(second.getOrigEdgeKeyFirst()));
+            result.setWeight(shortcut, false, weight);
+            result.setWeight(shortcut, true, weight);
+        } else {
+            // node-based shortcuts can be bidirectional, so we calculate both directions from A to B and from B to A
+            double bestFwd = Double.POSITIVE_INFINITY, bestBwd = Double.POSITIVE_INFINITY;
+            int bestFwdTriangle = triangleStart[shortcut], bestBwdTriangle = triangleStart[shortcut];
+            for (int triangle = triangleStart[shortcut]; triangle < triangleStart[shortcut + 1]; triangle++) {
+                int edgeAtA = triangleEdges[2 * triangle], edgeAtB = triangleEdges[2 * triangle + 1];
+                RoutingCHEdgeIteratorState toB = chGraph.getEdgeIteratorState(edgeAtB, nodeB);
+                RoutingCHEdgeIteratorState fromA;
+                if (toB == null) {
+                    // the skipped edges of the preparation are not sorted
+                    toB = chGraph.getEdgeIteratorState(edgeAtA, nodeB);
+                    fromA = chGraph.getEdgeIteratorState(edgeAtB, toB.getBaseNode());
+                } else {
+                    fromA = chGraph.getEdgeIteratorState(edgeAtA, toB.getBaseNode());
+                }
+                double fwd = fromA.getWeight(false) + toB.getWeight(false);
+                double bwd = fromA.getWeight(true) + toB.getWeight(true);
+                if (fwd < bestFwd) {
+                    bestFwd = fwd;
+                    bestFwdTriangle = triangle;
+                }
+                if (bwd < bestBwd) {
+                    bestBwd = bwd;
+                    bestBwdTriangle = triangle;
+                }
+            }
+            result.setWeight(shortcut, false, bestFwd);
+            result.setWeight(shortcut, true, bestBwd);
+            result.setSkippedEdges(shortcut, false, triangleEdges[2 * bestFwdTriangle], triangleEdges[2 * bestFwdTriangle + 1]);
+            result.setSkippedEdges(shortcut, true, triangleEdges[2 * bestBwdTriangle], triangleEdges[2 * bestBwdTriangle + 1]);
+        }
+    }
+
+    /**
+     * Finds the lower triangles of all node-based shortcuts: for every node the pairs of its edges and shortcuts to
+     * higher nodes, for which there is a shortcut between these higher nodes.
+     */
+    private void findTriangles() {
+        int shortcuts = chStorage.getShortcuts();
+        triangleStart = new int[shortcuts + 1];
+        // the first pass counts the triangles per shortcut, the second one stores them
+        forEachTriangle((shortcut, edgeAtA, edgeAtB) -> triangleStart[shortcut + 1]++);
+        boolean[] noTriangle = new boolean[shortcuts];
+        for (int shortcut = 0; shortcut < shortcuts; shortcut++) {
+            if (triangleStart[shortcut + 1] == 0) {
+                // e.g. a loop, we use the edges that were skipped during the preparation
+                noTriangle[shortcut] = true;
+                triangleStart[shortcut + 1] = 1;
+            }
+            triangleStart[shortcut + 1] += triangleStart[shortcut];
+        }
+        triangleEdges = new int[2 * triangleStart[shortcuts]];
+        int[] next = Arrays.copyOf(triangleStart, shortcuts);
+        forEachTriangle((shortcut, edgeAtA, edgeAtB) -> {
+            triangleEdges[2 * next[shortcut]] = edgeAtA;
+            triangleEdges[2 * next[shortcut] + 1] = edgeAtB;
+            next[shortcut]++;
+        });
+        for (int shortcut = 0; shortcut < shortcuts; shortcut++) {
+            if (noTriangle[shortcut]) {
+                long pointer = chStorage.toShortcutPointer(shortcut);
+                triangleEdges[2 * triangleStart[shortcut]] = chStorage.getSkippedEdge1(pointer);
+                triangleEdges[2 * triangleStart[shortcut] + 1] = chStorage.getSkippedEdge2(pointer);
+            }
+        }
+    }
+
+    private void forEachTriangle(TriangleVisitor visitor) {
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntArrayList upEdges = new IntArrayList();
+        IntArrayList upNodes = new IntArrayList();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            int level = getLevel(node);
+            if (level >= graph.getNodes())
+                // the nodes that were not contracted are not the middle node of any shortcut
+                continue;
+            upEdges.clear();
+            upNodes.clear();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (getLevel(iter.getAdjNode()) > level) {
+                    upEdges.add(iter.getEdge());
+                    upNodes.add(iter.getAdjNode());
+                }
+            }
+            // the shortcuts are stored at their lower node
+            for (int shortcut = getLastShortcut(node); shortcut >= 0 && chStorage.getNodeA(chStorage.toShortcutPointer(shortcut)) == node; shortcut--) {
+                int adjNode = chStorage.getNodeB(chStorage.toShortcutPointer(shortcut));
+                if (adjNode != node) {
+                    upEdges.add(graph.getEdges() + shortcut);
+                    upNodes.add(adjNode);
+                }
+            }
+            for (int i = 0; i < upNodes.size(); i++) {
+                for (int j = i + 1; j < upNodes.size(); j++) {
+                    int nodeI = upNodes.get(i), nodeJ = upNodes.get(j);
+                    if (nodeI == nodeJ)
+                        continue;
+                    boolean iIsA = getLevel(nodeI) < getLevel(nodeJ);
+                    int nodeA = iIsA ? nodeI : nodeJ, nodeB = iIsA ? nodeJ : nodeI;
+                    for (int shortcut = getLastShortcut(nodeA); shortcut >= 0 && chStorage.getNodeA(chStorage.toShortcutPointer(shortcut)) == nodeA; shortcut--) {
+                        if (chStorage.getNodeB(chStorage.toShortcutPointer(shortcut)) == nodeB)
+                            visitor.visit(shortcut, iIsA ? upEdges.get(i) : upEdges.get(j), iIsA ? upEdges.get(j) : upEdges.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    private int getLevel(int node) {
+        return chStorage.getLevel(chStorage.toNodePointer(node));
+    }
+
+    private int getLastShortcut(int node) {
+        return chStorage.getLastShortcut(chStorage.toNodePointer(node));
+    }
+
+    /**
+     * Sorts the shortcuts such that every shortcut comes after the shortcuts it skips
+     */
+    private void sortByDepth() {
+        int shortcuts = chStorage.getShortcuts();
+        int baseEdges = graph.getEdges();
+        int[] depths = new int[shortcuts];
+        int maxDepth = -1;
+        for (int shortcut = 0; shortcut < shortcuts; shortcut++) {
+            int depth = 0;
+            for (int skipped : getDependencies(shortcut)) {
+                if (skipped < baseEdges)
+                    continue;
+                int skippedShortcut = skipped - baseEdges;
+                // shortcuts are sorted by the level of their lower node and the edges of a lower triangle start at an
+                // even lower node, so a shortcut only depends on earlier shortcuts
+                if (skippedShortcut >= shortcut)
+                    throw new IllegalStateException("Shortcut " + shortcut + " depends on shortcut " + skippedShortcut + " which was added later");
+                depth = Math.max(depth, depths[skippedShortcut] + 1);
+            }
+            depths[shortcut] = depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        depthStart = new int[maxDepth + 2];
+        for (int depth : depths) {
+            depthStart[depth + 1]++;
+        }
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            depthStart[depth + 1] += depthStart[depth];
+        }
+        int[] next = Arrays.copyOf(depthStart, depthStart.length);
+        sortedShortcuts = new int[shortcuts];
+        for (int shortcut = 0; shortcut < shortcuts; shortcut++) {
+            sortedShortcuts[next[depths[shortcut]]++] = shortcut;
+        }
+    }
+
+    private interface TriangleVisitor {
+        void visit(int shortcut, int edgeAtA, int edgeAtB);
+    }
+}
@@ -46,6 +46,8 @@ public class CHPreparationHandler {
     private final List<CHProfile> chProfiles = new ArrayList<>();
     private int preparationThreads;
     private PMap pMap = new PMap();
+    // the node orderings of removed preparations that are used when they are prepared again
+    private final Map<String, NodeOrderingProvider> nodeOrderings = new HashMap<>();
 
     public CHPreparationHandler() {
         setPreparationThreads(1);
@@ -115,6 +117,26 @@ public class CHPreparationHandler {
         return loaded;
     }
 
+    /**
+     * Removes the existing CH preparations of the specified configs, but keeps their node orderings for the next
+     * {@link #prepare} call. Contracting the graph in a fixed order is a lot faster than determining the node ordering,
+     * so this is useful when the weights of the base graph edges changed, but the graph structure did not.
+     */
+    public void removeKeepingNodeOrderings(BaseGraph graph, List<CHConfig> chConfigs) {
+        for (CHConfig chConfig : chConfigs) {
+            CHStorage chStorage = new CHStorage(graph.getDirectory(), chConfig.getName(), graph.getSegmentSize(), chConfig.isEdgeBased());
+            if (chStorage.loadExisting()) {
+                if (chStorage.getNodes() == graph.getNodes())
+                    nodeOrderings.put(chConfig.getName(), chStorage.getNodeOrderingProvider());
+                LOGGER.info("Removed CH preparation of profile '" + chConfig.getName() + "', it will be prepared again"
+                        + (nodeOrderings.containsKey(chConfig.getName()) ? " with its node ordering" : ""));
+            }
+            // see load
+            graph.getDirectory().remove("nodes_ch_" + chConfig.getName());
+            graph.getDirectory().remove("shortcuts_" + chConfig.getName());
+        }
+    }
+
     public Map<String, PrepareContractionHierarchies.Result> prepare(GraphHopperStorage ghStorage, List<CHConfig> chConfigs, final boolean closeEarly) {
         if (chConfigs.isEmpty()) {
             LOGGER.info("There are no CHs to prepare");
@@ -151,6 +173,9 @@ public class CHPreparationHandler {
     private PrepareContractionHierarchies createCHPreparation(BaseGraph graph, CHConfig chConfig) {
         PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
         pch.setParams(pMap);
+        NodeOrderingProvider nodeOrdering = nodeOrderings.remove(chConfig.getName());
+        if (nodeOrdering != null)
+            pch.useFixedNodeOrdering(nodeOrdering);
         return pch;
     }
 }
@@ -26,6 +26,8 @@ import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
 
+import java.util.concurrent.ExecutorService;
+
 import static com.graphhopper.util.Parameters.Algorithms.*;
 import static com.graphhopper.util.Parameters.Routing.ALGORITHM;
 import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
@@ -36,6 +38,8 @@ import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
  */
 public class CHRoutingAlgorithmFactory {
     private final RoutingCHGraph routingCHGraph;
+    private ExecutorService alternativeRouteExecutor;
+    private int alternativeRouteThreads = 1;
 
     public CHRoutingAlgorithmFactory(RoutingCHGraph routingCHGraph, QueryGraph queryGraph) {
         this(new QueryRoutingCHGraph(routingCHGraph, queryGraph));
@@ -45,6 +49,16 @@ public class CHRoutingAlgorithmFactory {
         this.routingCHGraph = routingCHGraph;
     }
 
+    /**
+     * @param executor the executor used to check the via-node candidates of alternative routes concurrently, see
+     *                 {@link AlternativeRouteCH#setExecutor}. If null the candidates are checked one after another.
+     */
+    public CHRoutingAlgorithmFactory setAlternativeRouteExecutor(ExecutorService executor, int threads) {
+        this.alternativeRouteExecutor = executor;
+        this.alternativeRouteThreads = threads;
+        return this;
+    }
+
     public BidirRoutingAlgorithm createAlgo(PMap opts) {
         BidirRoutingAlgorithm algo = routingCHGraph.isEdgeBased()
                 ? createAlgoEdgeBased(routingCHGraph, opts)
@@ -65,7 +79,7 @@ public class CHRoutingAlgorithmFactory {
         } else if (DIJKSTRA_BI.equals(algo)) {
             return new DijkstraBidirectionEdgeCHNoSOD(g);
         } else if (ALT_ROUTE.equalsIgnoreCase(algo)) {
-            return new AlternativeRouteEdgeCH(g, opts);
+            return new AlternativeRouteEdgeCH(g, opts).setExecutor(alternativeRouteExecutor, alternativeRouteThreads);
         } else {
             throw new IllegalArgumentException("Algorithm " + algo + " not supported for edge-based Contraction Hierarchies. Try with ch.disable=true");
         }
@@ -87,7 +101,7 @@ public class CHRoutingAlgorithmFactory {
                 return new DijkstraBidirectionCHNoSOD(g);
             }
         } else if (ALT_ROUTE.equalsIgnoreCase(algo)) {
-            return new AlternativeRouteCH(g, opts);
+            return new AlternativeRouteCH(g, opts).setExecutor(alternativeRouteExecutor, alternativeRouteThreads);
         } else {
             throw new IllegalArgumentException("Algorithm " + algo + " not supported for node-based Contraction Hierarchies. Try with ch.disable=true");
         }
@@ -60,7 +60,7 @@ public class ShortcutUnpacker {
         if (edgeBased) {
             expandSkippedEdgesEdgeBased(edge.getSkippedEdge1(), edge.getSkippedEdge2(), edge.getBaseNode(), edge.getAdjNode(), reverse, prevOrNextEdgeId);
         } else {
-            expandSkippedEdgesNodeBased(edge.getSkippedEdge1(), edge.getSkippedEdge2(), edge.getBaseNode(), edge.getAdjNode(), reverse);
+            expandSkippedEdgesNodeBased(edge.getSkippedEdge1(reverse), edge.getSkippedEdge2(reverse), edge.getBaseNode(), edge.getAdjNode(), reverse);
         }
     }
 
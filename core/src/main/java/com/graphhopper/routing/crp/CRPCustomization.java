@@ -0,0 +1,394 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.crp;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+
+/**
+ * The metric dependent part of Customizable Route Planning: for every cell of every level of a {@link CRPPartition}
+ * this class calculates the best weight from every arc that enters the cell to every arc that leaves it, including
+ * the turn costs. The cliques of the lowest level are calculated on the base graph, the cliques of the higher levels
+ * only use the cliques of the level below, so a change of the weighting only requires a new customization which is
+ * much faster than a new preparation of the partition.
+ * <p>
+ * An arc is a directed edge, identified by its edge key. Arcs without access are not part of the cliques.
+ * <p>
+ * The cliques are calculated and used in memory, {@link #flush} writes them to a DataAccess so they can be loaded
+ * with {@link #loadExisting} instead of customizing again.
+ */
+public class CRPCustomization {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CRPCustomization.class);
+    private final Graph graph;
+    private final Weighting weighting;
+    private final CRPPartition partition;
+    private final DataAccess da;
+    private final Level[] levels;
+    private int threads = 1;
+    private boolean customized;
+    private boolean stored;
+
+    public CRPCustomization(Graph graph, Weighting weighting, CRPPartition partition, DataAccess da) {
+        if (partition.getNodes() != graph.getNodes())
+            throw new IllegalArgumentException("The partition has " + partition.getNodes() + " nodes, but the graph has " + graph.getNodes());
+        this.graph = graph;
+        this.weighting = weighting;
+        this.partition = partition;
+        this.da = da;
+        this.levels = new Level[partition.getLevels()];
+    }
+
+    /**
+     * The cells of one level are customized with this number of threads
+     */
+    public CRPCustomization setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Calculates the cliques for all cells of all levels. This can be called again to update the cliques after the
+     * weights of the graph changed.
+     */
+    public CRPCustomization customize() {
+        StopWatch sw = new StopWatch().start();
+        for (int level = 0; level < levels.length; level++) {
+            levels[level] = findBoundaryArcs(level);
+        }
+        for (int level = 0; level < levels.length; level++) {
+            final int l = level;
+            List<Callable<String>> callables = new ArrayList<>(levels[level].cells.length);
+            for (int cell = 0; cell < levels[level].cells.length; cell++) {
+                final int c = cell;
+                callables.add(() -> {
+                    if (l == 0)
+                        customizeLowestLevelCell(c);
+                    else
+                        customizeCell(l, c);
+                    return "crp_customization_" + l + "_" + c;
+                });
+            }
+            GHUtility.runConcurrently(callables, threads);
+        }
+        customized = true;
+        LOGGER.info("Customized " + levels.length + " levels for " + weighting + ", took: " + sw.stop().getSeconds() + "s");
+        return this;
+    }
+
+    /**
+     * Writes the cliques of all cells to the DataAccess
+     */
+    public void flush() {
+        if (!customized)
+            throw new IllegalStateException("The customization for " + weighting + " has not been done");
+        if (!stored) {
+            da.create(1000);
+            stored = true;
+        }
+        long pointer = 0;
+        for (Level level : levels) {
+            da.ensureCapacity(pointer + 4);
+            da.setInt(pointer, level.cells.length);
+            pointer += 4;
+            for (Cell cell : level.cells) {
+                if (cell == null) {
+                    da.ensureCapacity(pointer + 4);
+                    da.setInt(pointer, -1);
+                    pointer += 4;
+                    continue;
+                }
+                int entries = cell.entries.length, exits = cell.exits.length;
+                da.ensureCapacity(pointer + 8 + (entries + 2L * exits) * 4 + (long) entries * exits * 8);
+                da.setInt(pointer, entries);
+                da.setInt(pointer + 4, exits);
+                pointer += 8;
+                pointer = setInts(pointer, cell.entries);
+                pointer = setInts(pointer, cell.exits);
+                pointer = setInts(pointer, cell.exitAdjNodes);
+                for (double weight : cell.weights) {
+                    long bits = Double.doubleToRawLongBits(weight);
+                    da.setInt(pointer, (int) bits);
+                    da.setInt(pointer + 4, (int) (bits >>> 32));
+                    pointer += 8;
+                }
+            }
+        }
+        da.setHeader(0, levels.length);
+        da.setHeader(4, partition.getNodes());
+        da.setHeader(8, graph.getEdges());
+        da.flush();
+    }
+
+    private long setInts(long pointer, int[] values) {
+        for (int value : values) {
+            da.setInt(pointer, value);
+            pointer += 4;
+        }
+        return pointer;
+    }
+
+    /**
+     * Reads the cliques that were written by {@link #flush}, after this the customization can be used for queries
+     * without calling {@link #customize}.
+     *
+     * @return false if there is no stored customization
+     */
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        stored = true;
+        if (da.getHeader(0) != levels.length || da.getHeader(4) != partition.getNodes() || da.getHeader(8) != graph.getEdges())
+            throw new IllegalStateException("The stored customization for " + weighting + " does not match the partition or the graph. levels: "
+                    + da.getHeader(0) + " vs. " + levels.length + ", nodes: " + da.getHeader(4) + " vs. " + partition.getNodes()
+                    + ", edges: " + da.getHeader(8) + " vs. " + graph.getEdges());
+        long pointer = 0;
+        for (int l = 0; l < levels.length; l++) {
+            Level level = new Level(da.getInt(pointer));
+            pointer += 4;
+            for (int c = 0; c < level.cells.length; c++) {
+                int entries = da.getInt(pointer);
+                pointer += 4;
+                if (entries < 0)
+                    continue;
+                int exits = da.getInt(pointer);
+                pointer += 4;
+                Cell cell = new Cell(getInts(pointer, entries), getInts(pointer + entries * 4L, exits), getInts(pointer + (entries + exits) * 4L, exits));
+                pointer += (entries + 2L * exits) * 4;
+                for (int i = 0; i < cell.weights.length; i++) {
+                    long bits = (da.getInt(pointer) & 0xFFFF_FFFFL) | ((long) da.getInt(pointer + 4) << 32);
+                    cell.weights[i] = Double.longBitsToDouble(bits);
+                    pointer += 8;
+                }
+                for (int i = 0; i < cell.entries.length; i++) {
+                    level.entryIndices.put(cell.entries[i], i);
+                }
+                level.cells[c] = cell;
+            }
+            levels[l] = level;
+        }
+        customized = true;
+        return true;
+    }
+
+    private int[] getInts(long pointer, int count) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = da.getInt(pointer + i * 4L);
+        }
+        return values;
+    }
+
+    public void close() {
+        da.close();
+    }
+
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+
+    public boolean isCustomized() {
+        return customized;
+    }
+
+    public Weighting getWeighting() {
+        return weighting;
+    }
+
+    public CRPPartition getPartition() {
+        return partition;
+    }
+
+    /**
+     * @return the cell data or null if the cell has no entry or exit arcs
+     */
+    Cell getCell(int level, int cell) {
+        return levels[level].cells[cell];
+    }
+
+    /**
+     * @return the index of the entry arc in the cell the arc points to, or -1 if the arc does not enter a cell on
+     * this level
+     */
+    int getEntryIndex(int level, int edgeKey) {
+        return levels[level].entryIndices.getOrDefault(edgeKey, -1);
+    }
+
+    private Level findBoundaryArcs(int level) {
+        int cellCount = partition.getCellCount(level);
+        IntArrayList[] entries = new IntArrayList[cellCount];
+        IntArrayList[] exits = new IntArrayList[cellCount];
+        IntArrayList[] exitAdjNodes = new IntArrayList[cellCount];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int baseCell = partition.getCell(level, iter.getBaseNode());
+            int adjCell = partition.getCell(level, iter.getAdjNode());
+            if (baseCell == adjCell)
+                continue;
+            if (isTraversable(iter, false))
+                addBoundaryArc(iter.getEdgeKey(), baseCell, adjCell, iter.getAdjNode(), entries, exits, exitAdjNodes);
+            if (isTraversable(iter, true))
+                addBoundaryArc(iter.getReverseEdgeKey(), adjCell, baseCell, iter.getBaseNode(), entries, exits, exitAdjNodes);
+        }
+        Level result = new Level(cellCount);
+        for (int cell = 0; cell < cellCount; cell++) {
+            if (entries[cell] == null || exits[cell] == null)
+                continue;
+            Cell c = new Cell(entries[cell].toArray(), exits[cell].toArray(), exitAdjNodes[cell].toArray());
+            for (int i = 0; i < c.entries.length; i++) {
+                result.entryIndices.put(c.entries[i], i);
+            }
+            result.cells[cell] = c;
+        }
+        return result;
+    }
+
+    private boolean isTraversable(EdgeIteratorState edge, boolean reverse) {
+        return !weighting.edgeHasNoAccess(edge, reverse) && !Double.isInfinite(weighting.calcEdgeWeight(edge, reverse));
+    }
+
+    private static void addBoundaryArc(int edgeKey, int fromCell, int toCell, int toNode,
+                                       IntArrayList[] entries, IntArrayList[] exits, IntArrayList[] exitAdjNodes) {
+        if (exits[fromCell] == null) {
+            exits[fromCell] = new IntArrayList();
+            exitAdjNodes[fromCell] = new IntArrayList();
+        }
+        exits[fromCell].add(edgeKey);
+        exitAdjNodes[fromCell].add(toNode);
+        if (entries[toCell] == null)
+            entries[toCell] = new IntArrayList();
+        entries[toCell].add(edgeKey);
+    }
+
+    private void customizeLowestLevelCell(int cellId) {
+        Cell cell = levels[0].cells[cellId];
+        if (cell == null)
+            return;
+        CellSearch search = new CellSearch(graph, weighting, partition);
+        for (int i = 0; i < cell.entries.length; i++) {
+            int entryKey = cell.entries[i];
+            int entryNode = graph.getEdgeIteratorStateForKey(entryKey).getAdjNode();
+            IntObjectMap<SPTEntry> reached = search.search(0, cellId, entryKey, entryNode, -1);
+            for (int j = 0; j < cell.exits.length; j++) {
+                SPTEntry exit = reached.get(cell.exits[j]);
+                cell.weights[i * cell.exits.length + j] = exit == null ? Double.POSITIVE_INFINITY : exit.weight;
+            }
+        }
+    }
+
+    /**
+     * Calculates the clique of a cell with a Dijkstra on the cliques of its sub-cells on the level below
+     */
+    private void customizeCell(int level, int cellId) {
+        Cell cell = levels[level].cells[cellId];
+        if (cell == null)
+            return;
+        Level subLevel = levels[level - 1];
+        IntIntHashMap exitIndices = new IntIntHashMap(cell.exits.length);
+        for (int j = 0; j < cell.exits.length; j++) {
+            exitIndices.put(cell.exits[j], j);
+        }
+        for (int i = 0; i < cell.entries.length; i++) {
+            Arrays.fill(cell.weights, i * cell.exits.length, (i + 1) * cell.exits.length, Double.POSITIVE_INFINITY);
+            IntDoubleHashMap bestWeights = new IntDoubleHashMap();
+            PriorityQueue<SPTEntry> heap = new PriorityQueue<>();
+            int entryKey = cell.entries[i];
+            bestWeights.put(entryKey, 0);
+            heap.add(new SPTEntry(entryKey, graph.getEdgeIteratorStateForKey(entryKey).getAdjNode(), 0, null));
+            while (!heap.isEmpty()) {
+                SPTEntry curr = heap.poll();
+                if (curr.weight > bestWeights.get(curr.edge))
+                    continue;
+                if (partition.getCell(level, curr.adjNode) != cellId) {
+                    cell.weights[i * cell.exits.length + exitIndices.get(curr.edge)] = curr.weight;
+                    continue;
+                }
+                int subCellId = partition.getCell(level - 1, curr.adjNode);
+                Cell subCell = subLevel.cells[subCellId];
+                int subEntry = subLevel.entryIndices.getOrDefault(curr.edge, -1);
+                if (subCell == null || subEntry < 0)
+                    continue;
+                for (int j = 0; j < subCell.exits.length; j++) {
+                    double weight = curr.weight + subCell.getWeight(subEntry, j);
+                    if (Double.isInfinite(weight))
+                        continue;
+                    int exitKey = subCell.exits[j];
+                    if (bestWeights.containsKey(exitKey) && bestWeights.get(exitKey) <= weight)
+                        continue;
+                    bestWeights.put(exitKey, weight);
+                    heap.add(new SPTEntry(exitKey, subCell.exitAdjNodes[j], weight, null));
+                }
+            }
+        }
+    }
+
+    private static class Level {
+        final Cell[] cells;
+        // the index of every entry arc in the cell it points to
+        final IntIntHashMap entryIndices = new IntIntHashMap();
+
+        Level(int cellCount) {
+            cells = new Cell[cellCount];
+        }
+    }
+
+    /**
+     * The entry and exit arcs of a cell and the best weights between them
+     */
+    static class Cell {
+        final int[] entries;
+        final int[] exits;
+        final int[] exitAdjNodes;
+        // the weight from entry i to exit j is stored at i * exits.length + j
+        final double[] weights;
+
+        Cell(int[] entries, int[] exits, int[] exitAdjNodes) {
+            this.entries = entries;
+            this.exits = exits;
+            this.exitAdjNodes = exitAdjNodes;
+            this.weights = new double[entries.length * exits.length];
+        }
+
+        double getWeight(int entry, int exit) {
+            return weights[entry * exits.length + exit];
+        }
+    }
+}
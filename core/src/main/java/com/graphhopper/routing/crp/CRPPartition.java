@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.crp;
+
+import com.graphhopper.storage.DataAccess;
+
+import java.util.Arrays;
+
+/**
+ * This class stores the cell of every node for every level of a nested partition, see
+ * {@link InertialFlowPartitioner}. The partition does not depend on the weighting, so it is created once and can be
+ * shared by all profiles, only the {@link CRPCustomization} has to be done per weighting.
+ */
+public class CRPPartition {
+    private final DataAccess da;
+    private int nodes;
+    private int levels;
+    private int[] cellCounts;
+
+    public CRPPartition(DataAccess da) {
+        this.da = da;
+    }
+
+    /**
+     * @param cells the cell of every node for every level, i.e. cells[level][node], where level 0 has the smallest
+     *              cells
+     */
+    public CRPPartition create(int[][] cells) {
+        if (cells.length == 0)
+            throw new IllegalArgumentException("at least one level is required");
+        levels = cells.length;
+        nodes = cells[0].length;
+        da.create(2000);
+        da.ensureCapacity((long) nodes * levels * 4);
+        cellCounts = new int[levels];
+        for (int level = 0; level < levels; level++) {
+            if (cells[level].length != nodes)
+                throw new IllegalArgumentException("level " + level + " has " + cells[level].length + " nodes but expected " + nodes);
+            for (int node = 0; node < nodes; node++) {
+                int cell = cells[level][node];
+                if (cell < 0)
+                    throw new IllegalArgumentException("cell must not be negative, node: " + node + ", level: " + level);
+                da.setInt(pointer(level, node), cell);
+                cellCounts[level] = Math.max(cellCounts[level], cell + 1);
+            }
+        }
+        checkNested();
+        da.setHeader(0, nodes);
+        da.setHeader(4, levels);
+        return this;
+    }
+
+    private void checkNested() {
+        for (int level = 1; level < levels; level++) {
+            int[] parent = new int[cellCounts[level - 1]];
+            Arrays.fill(parent, -1);
+            for (int node = 0; node < nodes; node++) {
+                int cell = getCell(level - 1, node);
+                int parentCell = getCell(level, node);
+                if (parent[cell] < 0)
+                    parent[cell] = parentCell;
+                else if (parent[cell] != parentCell)
+                    throw new IllegalArgumentException("cell " + cell + " of level " + (level - 1) + " is not contained in a single cell of level " + level);
+            }
+        }
+    }
+
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        nodes = da.getHeader(0);
+        levels = da.getHeader(4);
+        cellCounts = new int[levels];
+        for (int level = 0; level < levels; level++) {
+            for (int node = 0; node < nodes; node++) {
+                cellCounts[level] = Math.max(cellCounts[level], getCell(level, node) + 1);
+            }
+        }
+        return true;
+    }
+
+    private long pointer(int level, int node) {
+        return ((long) node * levels + level) * 4;
+    }
+
+    /**
+     * @return the cell of the node for the specified level. Cell ids are only unique per level.
+     */
+    public int getCell(int level, int node) {
+        return da.getInt(pointer(level, node));
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getCellCount(int level) {
+        return cellCounts[level];
+    }
+
+    public void flush() {
+        da.flush();
+    }
+
+    public void close() {
+        da.close();
+    }
+
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.crp;
+
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CRPProfile;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static com.graphhopper.util.Parameters.CRP;
+
+/**
+ * This class deals with the Customizable Route Planning (CRP) preparations: the partition of the base graph is
+ * prepared once and shared by all CRP profiles, every profile only needs its own customization.
+ */
+public class CRPPreparationHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CRPPreparationHandler.class);
+    private final List<CRPProfile> crpProfiles = new ArrayList<>();
+    private int[] maxCellSizes = {256, 4096, 65536};
+    private int preparationThreads = 1;
+
+    public void init(GraphHopperConfig ghConfig) {
+        setPreparationThreads(ghConfig.getInt(CRP.PREPARE + "threads", getPreparationThreads()));
+        String cellSizes = ghConfig.getString(CRP.PREPARE + "cell_sizes", "");
+        if (!cellSizes.isEmpty())
+            setMaxCellSizes(Arrays.stream(cellSizes.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray());
+        setCRPProfiles(ghConfig.getCRPProfiles());
+    }
+
+    public final boolean isEnabled() {
+        return !crpProfiles.isEmpty();
+    }
+
+    public CRPPreparationHandler setCRPProfiles(CRPProfile... crpProfiles) {
+        return setCRPProfiles(Arrays.asList(crpProfiles));
+    }
+
+    public CRPPreparationHandler setCRPProfiles(Collection<CRPProfile> crpProfiles) {
+        this.crpProfiles.clear();
+        this.crpProfiles.addAll(crpProfiles);
+        return this;
+    }
+
+    public List<CRPProfile> getCRPProfiles() {
+        return crpProfiles;
+    }
+
+    public int getPreparationThreads() {
+        return preparationThreads;
+    }
+
+    /**
+     * The cells of one level are customized with this number of threads. Default is 1.
+     */
+    public CRPPreparationHandler setPreparationThreads(int preparationThreads) {
+        if (preparationThreads < 1)
+            throw new IllegalArgumentException(CRP.PREPARE + "threads must be positive but was " + preparationThreads);
+        this.preparationThreads = preparationThreads;
+        return this;
+    }
+
+    public int[] getMaxCellSizes() {
+        return maxCellSizes;
+    }
+
+    /**
+     * @see InertialFlowPartitioner#partition
+     */
+    public CRPPreparationHandler setMaxCellSizes(int... maxCellSizes) {
+        this.maxCellSizes = maxCellSizes;
+        return this;
+    }
+
+    /**
+     * @return the partition of the base graph, it has to be loaded or prepared before it can be used
+     */
+    public CRPPartition createPartition(BaseGraph baseGraph) {
+        return new CRPPartition(baseGraph.getDirectory().create("crp_partition"));
+    }
+
+    public void preparePartition(CRPPartition partition, BaseGraph baseGraph) {
+        StopWatch sw = new StopWatch().start();
+        partition.create(new InertialFlowPartitioner(baseGraph).partition(maxCellSizes));
+        partition.flush();
+        LOGGER.info("Created the CRP partition with the maximum cell sizes " + Arrays.toString(maxCellSizes) + ", took: " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * @return the customization of the given profile, it has to be loaded or customized before it can be used
+     */
+    public CRPCustomization createCustomization(String profile, Weighting weighting, BaseGraph baseGraph, CRPPartition partition) {
+        return new CRPCustomization(baseGraph, weighting, partition, baseGraph.getDirectory().create("crp_customization_" + profile))
+                .setThreads(preparationThreads);
+    }
+}
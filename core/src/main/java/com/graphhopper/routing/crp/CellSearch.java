@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.crp;
+
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.PriorityQueue;
+
+/**
+ * An edge-based Dijkstra on the base graph that does not leave a cell of the partition. It starts right after an
+ * entry arc of the cell and finds the best way (including turn costs) to every exit arc. The exit arcs are not
+ * expanded. It is used to calculate the cliques of the lowest level and to unpack the cliques for the final path.
+ * <p>
+ * The {@link SPTEntry#edge} of the entries is the edge key, i.e. includes the direction of the edge.
+ */
+class CellSearch {
+    private final Weighting weighting;
+    private final CRPPartition partition;
+    private final EdgeExplorer explorer;
+
+    CellSearch(Graph graph, Weighting weighting, CRPPartition partition) {
+        this.weighting = weighting;
+        this.partition = partition;
+        this.explorer = graph.createEdgeExplorer();
+    }
+
+    /**
+     * @param entryKey  the edge key of the arc that enters the cell
+     * @param entryNode the node of the cell the entry arc points to
+     * @param targetKey the search stops once the exit arc with this edge key is found, use -1 to find all exit arcs
+     * @return the best entry for every reached exit arc
+     */
+    IntObjectMap<SPTEntry> search(int level, int cell, int entryKey, int entryNode, int targetKey) {
+        IntObjectMap<SPTEntry> exits = new IntObjectHashMap<>();
+        IntObjectMap<SPTEntry> bestEntries = new IntObjectHashMap<>();
+        PriorityQueue<SPTEntry> heap = new PriorityQueue<>();
+        SPTEntry root = new SPTEntry(entryKey, entryNode, 0, null);
+        bestEntries.put(entryKey, root);
+        heap.add(root);
+        while (!heap.isEmpty()) {
+            SPTEntry curr = heap.poll();
+            if (curr.isDeleted())
+                continue;
+            if (curr != root && partition.getCell(level, curr.adjNode) != cell) {
+                exits.put(curr.edge, curr);
+                if (curr.edge == targetKey)
+                    break;
+                continue;
+            }
+            int currEdge = GHUtility.getEdgeFromEdgeKey(curr.edge);
+            EdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                double weight = GHUtility.calcWeightWithTurnWeightWithAccess(weighting, iter, false, currEdge) + curr.weight;
+                if (Double.isInfinite(weight))
+                    continue;
+                int key = iter.getEdgeKey();
+                SPTEntry entry = bestEntries.get(key);
+                if (entry != null) {
+                    if (entry.weight <= weight)
+                        continue;
+                    entry.setDeleted();
+                }
+                entry = new SPTEntry(key, iter.getAdjNode(), weight, curr);
+                bestEntries.put(key, entry);
+                heap.add(entry);
+            }
+        }
+        return exits;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.crp;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates a nested multi-level partition of the nodes of a graph with recursive bisection. Every bisection uses the
+ * inertial flow method: the nodes are sorted along a few directions, the first and last nodes become the sources and
+ * sinks and the minimum cut between them (with a capacity of one per edge) splits the nodes. The direction with the
+ * smallest cut wins. The partition only depends on the graph and the node coordinates, not on any weighting.
+ * <p>
+ * "Customizable Route Planning in Road Networks" (Delling et al.) and "On Balanced Separators in Road Networks"
+ * (Schild, Sommer)
+ */
+public class InertialFlowPartitioner {
+    // the directions along which the nodes are sorted: longitude, latitude and both diagonals
+    private static final double[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+    private final Graph graph;
+    private final NodeAccess nodeAccess;
+    private final EdgeExplorer explorer;
+    private double sourceSinkFraction = 0.25;
+    // the index of every node in the currently bisected set or -1
+    private final int[] localIndex;
+
+    public InertialFlowPartitioner(Graph graph) {
+        this.graph = graph;
+        this.nodeAccess = graph.getNodeAccess();
+        this.explorer = graph.createEdgeExplorer();
+        this.localIndex = new int[graph.getNodes()];
+        Arrays.fill(localIndex, -1);
+    }
+
+    /**
+     * The fraction of the nodes of a set that are used as sources and the same number as sinks. Bigger values lead to
+     * more balanced cells but bigger cuts. The default is 0.25.
+     */
+    public InertialFlowPartitioner setSourceSinkFraction(double sourceSinkFraction) {
+        if (sourceSinkFraction <= 0 || sourceSinkFraction > 0.5)
+            throw new IllegalArgumentException("source and sink fraction must be in (0, 0.5] but was " + sourceSinkFraction);
+        this.sourceSinkFraction = sourceSinkFraction;
+        return this;
+    }
+
+    /**
+     * @param maxCellSizes the maximum number of nodes of a cell for every level, starting with the lowest level, i.e.
+     *                     the smallest cells. The sizes must be increasing.
+     * @return the cell of every node for every level, i.e. cells[level][node]. Every cell is completely contained in
+     * one cell of the next higher level.
+     */
+    public int[][] partition(int... maxCellSizes) {
+        if (maxCellSizes.length == 0)
+            throw new IllegalArgumentException("at least one level is required");
+        for (int level = 0; level < maxCellSizes.length; level++) {
+            if (maxCellSizes[level] < 1 || level > 0 && maxCellSizes[level] <= maxCellSizes[level - 1])
+                throw new IllegalArgumentException("the maximum cell sizes must be positive and increasing: " + Arrays.toString(maxCellSizes));
+        }
+        int[][] cells = new int[maxCellSizes.length][graph.getNodes()];
+        IntArrayList allNodes = new IntArrayList(graph.getNodes());
+        for (int node = 0; node < graph.getNodes(); node++) {
+            allNodes.add(node);
+        }
+        List<IntArrayList> parentCells = new ArrayList<>();
+        parentCells.add(allNodes);
+        // we start with the biggest cells and split every cell further for the level below
+        for (int level = maxCellSizes.length - 1; level >= 0; level--) {
+            List<IntArrayList> levelCells = new ArrayList<>();
+            for (IntArrayList parent : parentCells) {
+                bisectRecursively(parent, maxCellSizes[level], levelCells);
+            }
+            for (int cell = 0; cell < levelCells.size(); cell++) {
+                IntArrayList nodes = levelCells.get(cell);
+                for (int i = 0; i < nodes.size(); i++) {
+                    cells[level][nodes.get(i)] = cell;
+                }
+            }
+            parentCells = levelCells;
+        }
+        return cells;
+    }
+
+    private void bisectRecursively(IntArrayList nodes, int maxCellSize, List<IntArrayList> result) {
+        ArrayDeque<IntArrayList> stack = new ArrayDeque<>();
+        stack.push(nodes);
+        while (!stack.isEmpty()) {
+            IntArrayList set = stack.pop();
+            if (set.size() <= maxCellSize) {
+                if (!set.isEmpty())
+                    result.add(set);
+                continue;
+            }
+            IntArrayList[] halves = bisect(set);
+            // push the second half first to keep neighbouring cells next to each other
+            stack.push(halves[1]);
+            stack.push(halves[0]);
+        }
+    }
+
+    IntArrayList[] bisect(IntArrayList nodes) {
+        int n = nodes.size();
+        for (int i = 0; i < n; i++) {
+            localIndex[nodes.get(i)] = i;
+        }
+        try {
+            FlowNetwork network = new FlowNetwork(nodes);
+            int sourceSinkCount = Math.max(1, Math.min(n / 2, (int) (n * sourceSinkFraction)));
+            boolean[] bestSourceSide = null;
+            int bestCut = Integer.MAX_VALUE;
+            int bestImbalance = Integer.MAX_VALUE;
+            for (double[] direction : DIRECTIONS) {
+                int[] sorted = sortAlong(nodes, direction);
+                network.reset();
+                int cut = network.maxFlow(sorted, sourceSinkCount, bestCut);
+                if (cut > bestCut)
+                    continue;
+                boolean[] sourceSide = network.sourceSide(sorted, sourceSinkCount);
+                int sourceSideSize = 0;
+                for (boolean s : sourceSide) {
+                    if (s) sourceSideSize++;
+                }
+                int imbalance = Math.abs(n - 2 * sourceSideSize);
+                if (cut < bestCut || imbalance < bestImbalance) {
+                    bestCut = cut;
+                    bestImbalance = imbalance;
+                    bestSourceSide = sourceSide;
+                }
+            }
+            IntArrayList first = new IntArrayList(n / 2 + 1);
+            IntArrayList second = new IntArrayList(n / 2 + 1);
+            for (int i = 0; i < n; i++) {
+                (bestSourceSide[i] ? first : second).add(nodes.get(i));
+            }
+            return new IntArrayList[]{first, second};
+        } finally {
+            for (int i = 0; i < n; i++) {
+                localIndex[nodes.get(i)] = -1;
+            }
+        }
+    }
+
+    /**
+     * @return the local indices of the nodes sorted by their projection onto the direction
+     */
+    private int[] sortAlong(IntArrayList nodes, double[] direction) {
+        int n = nodes.size();
+        double[] projections = new double[n];
+        for (int i = 0; i < n; i++) {
+            int node = nodes.get(i);
+            projections[i] = direction[0] * nodeAccess.getLon(node) + direction[1] * nodeAccess.getLat(node);
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        // stable for equal projections, so the partition is deterministic
+        Arrays.sort(order, (a, b) -> Double.compare(projections[a], projections[b]));
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * The nodes of the set and their edges to other nodes of the set. Every edge can carry one unit of flow in one of
+     * its directions.
+     */
+    private class FlowNetwork {
+        // the arcs of node i are stored from arcStart[i] to arcStart[i + 1]
+        final int[] arcStart;
+        final int[] arcTarget;
+        // the index of the arc in the opposite direction
+        final int[] arcReverse;
+        final int[] flow;
+        // 0: no source or sink, 1: source, 2: sink
+        final byte[] terminal;
+        final int[] parentArc;
+        final int[] queue;
+
+        FlowNetwork(IntArrayList nodes) {
+            int n = nodes.size();
+            arcStart = new int[n + 1];
+            IntArrayList targets = new IntArrayList();
+            IntArrayList edgeIds = new IntArrayList();
+            for (int i = 0; i < n; i++) {
+                arcStart[i] = targets.size();
+                EdgeIterator iter = explorer.setBaseNode(nodes.get(i));
+                while (iter.next()) {
+                    int adj = localIndex[iter.getAdjNode()];
+                    if (adj < 0 || adj == i)
+                        continue;
+                    targets.add(adj);
+                    edgeIds.add(iter.getEdge());
+                }
+            }
+            arcStart[n] = targets.size();
+            arcTarget = targets.toArray();
+            arcReverse = new int[arcTarget.length];
+            // the opposite arc is the arc of the same edge at the adjacent node
+            for (int i = 0; i < n; i++) {
+                for (int arc = arcStart[i]; arc < arcStart[i + 1]; arc++) {
+                    int adj = arcTarget[arc];
+                    int edge = edgeIds.get(arc);
+                    for (int other = arcStart[adj]; other < arcStart[adj + 1]; other++) {
+                        if (arcTarget[other] == i && edgeIds.get(other) == edge) {
+                            arcReverse[arc] = other;
+                            break;
+                        }
+                    }
+                }
+            }
+            flow = new int[arcTarget.length];
+            terminal = new byte[n];
+            parentArc = new int[n];
+            queue = new int[n];
+        }
+
+        void reset() {
+            Arrays.fill(flow, 0);
+            Arrays.fill(terminal, (byte) 0);
+        }
+
+        /**
+         * Calculates the maximum flow from the first to the last nodes with augmenting paths.
+         *
+         * @return the maximum flow or a value bigger than maxFlow if it exceeds maxFlow
+         */
+        int maxFlow(int[] sorted, int sourceSinkCount, int maxFlow) {
+            for (int i = 0; i < sourceSinkCount; i++) {
+                terminal[sorted[i]] = 1;
+                terminal[sorted[sorted.length - 1 - i]] = 2;
+            }
+            int totalFlow = 0;
+            while (totalFlow <= maxFlow) {
+                int sink = findAugmentingPath(sorted, sourceSinkCount);
+                if (sink < 0)
+                    break;
+                for (int node = sink; terminal[node] != 1; ) {
+                    int arc = parentArc[node];
+                    flow[arc]++;
+                    flow[arcReverse[arc]]--;
+                    node = arcTarget[arcReverse[arc]];
+                }
+                totalFlow++;
+            }
+            return totalFlow;
+        }
+
+        /**
+         * Breadth first search in the residual network from all sources.
+         *
+         * @return the reached sink or -1
+         */
+        private int findAugmentingPath(int[] sorted, int sourceSinkCount) {
+            Arrays.fill(parentArc, -2);
+            int head = 0, tail = 0;
+            for (int i = 0; i < sourceSinkCount; i++) {
+                parentArc[sorted[i]] = -1;
+                queue[tail++] = sorted[i];
+            }
+            while (head < tail) {
+                int node = queue[head++];
+                for (int arc = arcStart[node]; arc < arcStart[node + 1]; arc++) {
+                    int adj = arcTarget[arc];
+                    if (parentArc[adj] != -2 || flow[arc] >= 1)
+                        continue;
+                    parentArc[adj] = arc;
+                    if (terminal[adj] == 2)
+                        return adj;
+                    queue[tail++] = adj;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the nodes that can be reached from the sources in the residual network, i.e. the source side of
+         * the minimum cut
+         */
+        boolean[] sourceSide(int[] sorted, int sourceSinkCount) {
+            findAugmentingPath(sorted, sourceSinkCount);
+            boolean[] result = new boolean[parentArc.length];
+            for (int i = 0; i < parentArc.length; i++) {
+                result[i] = parentArc[i] != -2;
+            }
+            return result;
+        }
+    }
+}
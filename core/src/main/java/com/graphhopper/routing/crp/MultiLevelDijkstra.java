@@ -0,0 +1,243 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.crp;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PathExtractor;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The query of Customizable Route Planning: an edge-based Dijkstra that uses the cliques of a
+ * {@link CRPCustomization} for all cells that contain neither the start nor the end node. Near the start and the end
+ * it runs on the graph including the turn costs.
+ * <p>
+ * The graph can be a query graph. The cells that contain a base node next to the virtual start or end node are
+ * treated like the cells of the start and the end, so the cliques never contain a virtual edge. Clique arcs are
+ * unpacked to base graph edges.
+ */
+public class MultiLevelDijkstra extends AbstractRoutingAlgorithm {
+    private final CRPCustomization customization;
+    private final CRPPartition partition;
+    private final int baseNodes;
+    private final IntObjectMap<Entry> bestEntries = new IntObjectHashMap<>();
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>();
+    private int from;
+    private int to;
+    // the cells of the base nodes at the start and the end for every level
+    private IntHashSet[] queryCells;
+    private Entry currEntry;
+    private int visitedNodes;
+
+    public MultiLevelDijkstra(Graph graph, CRPCustomization customization) {
+        super(graph, graph.wrapWeighting(customization.getWeighting()), TraversalMode.EDGE_BASED);
+        if (!customization.isCustomized())
+            throw new IllegalStateException("The customization for " + customization.getWeighting() + " has not been done");
+        if (graph.getBaseGraph().getNodes() != customization.getPartition().getNodes())
+            throw new IllegalArgumentException("The base graph has " + graph.getBaseGraph().getNodes() + " nodes, but the partition has "
+                    + customization.getPartition().getNodes());
+        this.customization = customization;
+        this.partition = customization.getPartition();
+        this.baseNodes = partition.getNodes();
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        checkAlreadyRun();
+        this.from = from;
+        this.to = to;
+        queryCells = new IntHashSet[partition.getLevels()];
+        for (int level = 0; level < queryCells.length; level++) {
+            queryCells[level] = new IntHashSet();
+        }
+        addQueryCells(from);
+        addQueryCells(to);
+        Entry root = new Entry(EdgeIterator.NO_EDGE, from, 0, null, -1);
+        heap.add(root);
+        runAlgo();
+        return extractPath();
+    }
+
+    private void runAlgo() {
+        while (!heap.isEmpty()) {
+            currEntry = heap.poll();
+            if (currEntry.isDeleted())
+                continue;
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || finished())
+                break;
+
+            int queryLevel = getQueryLevel(currEntry.adjNode);
+            int entryIndex = queryLevel == 0 ? -1 : customization.getEntryIndex(queryLevel - 1, currEntry.edge);
+            if (entryIndex < 0)
+                relaxBaseEdges();
+            else
+                relaxClique(queryLevel - 1, entryIndex);
+        }
+    }
+
+    /**
+     * Adds the cells of the node or, for a virtual node, the cells of the base nodes it is connected to via virtual
+     * nodes
+     */
+    private void addQueryCells(int node) {
+        IntArrayList stack = IntArrayList.from(node);
+        IntHashSet visited = new IntHashSet();
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        while (!stack.isEmpty()) {
+            int curr = stack.remove(stack.size() - 1);
+            if (!visited.add(curr))
+                continue;
+            if (curr < baseNodes) {
+                for (int level = 0; level < queryCells.length; level++) {
+                    queryCells[level].add(partition.getCell(level, curr));
+                }
+                continue;
+            }
+            EdgeIterator iter = explorer.setBaseNode(curr);
+            while (iter.next()) {
+                stack.add(iter.getAdjNode());
+            }
+        }
+    }
+
+    /**
+     * @return the number of levels on which the node is in a different cell than the start and the end, zero for
+     * virtual nodes
+     */
+    private int getQueryLevel(int node) {
+        if (node >= baseNodes)
+            return 0;
+        int level = 0;
+        while (level < partition.getLevels() && !queryCells[level].contains(partition.getCell(level, node)))
+            level++;
+        return level;
+    }
+
+    private void relaxBaseEdges() {
+        int currEdge = currEntry.edge == EdgeIterator.NO_EDGE ? EdgeIterator.NO_EDGE : GHUtility.getEdgeFromEdgeKey(currEntry.edge);
+        EdgeIterator iter = edgeExplorer.setBaseNode(currEntry.adjNode);
+        while (iter.next()) {
+            double weight = GHUtility.calcWeightWithTurnWeightWithAccess(weighting, iter, false, currEdge) + currEntry.weight;
+            if (!Double.isInfinite(weight))
+                relax(iter.getEdgeKey(), iter.getAdjNode(), weight, -1);
+        }
+    }
+
+    private void relaxClique(int level, int entryIndex) {
+        CRPCustomization.Cell cell = customization.getCell(level, partition.getCell(level, currEntry.adjNode));
+        for (int j = 0; j < cell.exits.length; j++) {
+            double weight = cell.getWeight(entryIndex, j) + currEntry.weight;
+            if (!Double.isInfinite(weight))
+                relax(cell.exits[j], cell.exitAdjNodes[j], weight, level);
+        }
+    }
+
+    private void relax(int edgeKey, int adjNode, double weight, int cliqueLevel) {
+        Entry entry = bestEntries.get(edgeKey);
+        if (entry != null) {
+            if (entry.weight <= weight)
+                return;
+            entry.setDeleted();
+        }
+        entry = new Entry(edgeKey, adjNode, weight, currEntry, cliqueLevel);
+        bestEntries.put(edgeKey, entry);
+        heap.add(entry);
+    }
+
+    @Override
+    protected boolean finished() {
+        return currEntry.adjNode == to;
+    }
+
+    @Override
+    protected Path extractPath() {
+        if (currEntry == null || !finished())
+            return createEmptyPath();
+        return PathExtractor.extractPath(graph, weighting, unpack(currEntry));
+    }
+
+    /**
+     * Replaces the clique arcs with the base graph arcs inside of the cells
+     *
+     * @return an entry chain with the edge ids instead of the edge keys as expected by the {@link PathExtractor}
+     */
+    private SPTEntry unpack(Entry target) {
+        List<SPTEntry> arcs = new ArrayList<>();
+        CellSearch search = null;
+        Entry curr = target;
+        while (curr.parent != null) {
+            arcs.add(curr);
+            if (curr.cliqueLevel >= 0) {
+                if (search == null)
+                    // the cells of the cliques contain no virtual edges
+                    search = new CellSearch(graph.getBaseGraph(), customization.getWeighting(), partition);
+                Entry entry = (Entry) curr.parent;
+                int cell = partition.getCell(curr.cliqueLevel, entry.adjNode);
+                SPTEntry exit = search.search(curr.cliqueLevel, cell, entry.edge, entry.adjNode, curr.edge).get(curr.edge);
+                if (exit == null)
+                    throw new IllegalStateException("Could not unpack the arc " + curr.edge + " in cell " + cell + " of level " + curr.cliqueLevel);
+                // the last arc is already added and the root of the cell search is the entry arc
+                for (SPTEntry arc = exit.parent; arc.parent != null; arc = arc.parent) {
+                    arcs.add(arc);
+                }
+            }
+            curr = (Entry) curr.parent;
+        }
+        SPTEntry result = new SPTEntry(from, 0);
+        for (int i = arcs.size() - 1; i >= 0; i--) {
+            SPTEntry arc = arcs.get(i);
+            result = new SPTEntry(GHUtility.getEdgeFromEdgeKey(arc.edge), arc.adjNode, arc.weight, result);
+        }
+        result.weight = target.weight;
+        return result;
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return "crp";
+    }
+
+    private static class Entry extends SPTEntry {
+        // the level of the clique this arc was reached with or -1 if it was reached via a base graph edge
+        final int cliqueLevel;
+
+        Entry(int edgeKey, int adjNode, double weight, SPTEntry parent, int cliqueLevel) {
+            super(edgeKey, adjNode, weight, parent);
+            this.cliqueLevel = cliqueLevel;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.lm;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A small, lossy cache of the per target setup of the {@link LMApproximator}: the weights between all landmarks and
+ * a tower node as well as the active landmarks chosen for a pair of nodes. Every key maps to exactly one slot and a
+ * new entry simply replaces the old one. The entries are immutable, so the cache can be used from multiple threads
+ * without locking.
+ */
+class ActiveLandmarkCache {
+    private final AtomicReferenceArray<TargetWeights> targets;
+    private final AtomicReferenceArray<ActiveLandmarks> selections;
+    private final int mask;
+
+    static final class TargetWeights {
+        final int node;
+        // the weights from every landmark to the node
+        final int[] fromWeights;
+        // the weights from the node to every landmark
+        final int[] toWeights;
+
+        TargetWeights(int node, int[] fromWeights, int[] toWeights) {
+            this.node = node;
+            this.fromWeights = fromWeights;
+            this.toWeights = toWeights;
+        }
+    }
+
+    private static final class ActiveLandmarks {
+        final int fromNode;
+        final int toNode;
+        final boolean reverse;
+        final int[] indices;
+
+        ActiveLandmarks(int fromNode, int toNode, boolean reverse, int[] indices) {
+            this.fromNode = fromNode;
+            this.toNode = toNode;
+            this.reverse = reverse;
+            this.indices = indices;
+        }
+    }
+
+    /**
+     * @param size the number of slots, will be rounded up to the next power of two
+     */
+    ActiveLandmarkCache(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("cache size must be positive but was " + size);
+        int slots = Integer.highestOneBit(size);
+        if (slots < size)
+            slots <<= 1;
+        mask = slots - 1;
+        targets = new AtomicReferenceArray<>(slots);
+        selections = new AtomicReferenceArray<>(slots);
+    }
+
+    TargetWeights getTargetWeights(int node) {
+        TargetWeights weights = targets.get(slot(node));
+        return weights != null && weights.node == node ? weights : null;
+    }
+
+    void putTargetWeights(TargetWeights weights) {
+        targets.set(slot(weights.node), weights);
+    }
+
+    /**
+     * Copies the cached active landmarks of the specified nodes into activeLandmarkIndices.
+     *
+     * @return false if there is no cached entry
+     */
+    boolean copyActiveLandmarks(int fromNode, int toNode, boolean reverse, int[] activeLandmarkIndices) {
+        ActiveLandmarks entry = selections.get(slot(fromNode, toNode));
+        if (entry == null || entry.fromNode != fromNode || entry.toNode != toNode || entry.reverse != reverse
+                || entry.indices.length != activeLandmarkIndices.length)
+            return false;
+        System.arraycopy(entry.indices, 0, activeLandmarkIndices, 0, activeLandmarkIndices.length);
+        return true;
+    }
+
+    void putActiveLandmarks(int fromNode, int toNode, boolean reverse, int[] activeLandmarkIndices) {
+        selections.set(slot(fromNode, toNode), new ActiveLandmarks(fromNode, toNode, reverse, activeLandmarkIndices.clone()));
+    }
+
+    void clear() {
+        for (int i = 0; i <= mask; i++) {
+            targets.set(i, null);
+            selections.set(i, null);
+        }
+    }
+
+    private int slot(int node) {
+        return mix(node) & mask;
+    }
+
+    private int slot(int fromNode, int toNode) {
+        return mix(fromNode * 31 + mix(toNode)) & mask;
+    }
+
+    private static int mix(int key) {
+        // spread the bits as neighbouring node IDs are often used together
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -38,6 +38,9 @@ public class LMApproximator implements WeightApproximator {
     private int[] activeLandmarkIndices;
     private int[] weightsFromActiveLandmarksToT;
     private int[] weightsFromTToActiveLandmarks;
+    // reused buffers for the weights of the node to approximate
+    private final int[] weightsFromActiveLandmarksToV;
+    private final int[] weightsFromVToActiveLandmarks;
     private double epsilon = 1;
     private int towerNodeNextToT = -1;
     private double weightFromTToTowerNode;
@@ -66,6 +69,8 @@ public class LMApproximator implements WeightApproximator {
         Arrays.fill(activeLandmarkIndices, -1);
         weightsFromActiveLandmarksToT = new int[activeCount];
         weightsFromTToActiveLandmarks = new int[activeCount];
+        weightsFromActiveLandmarksToV = new int[activeCount];
+        weightsFromVToActiveLandmarks = new int[activeCount];
 
         this.graph = graph;
         this.weighting = weighting;
@@ -98,10 +103,12 @@ public class LMApproximator implements WeightApproximator {
         // we have to update the priority queues and the maps if done in the middle of the search http://cstheory.stackexchange.com/q/36355/13229
         if (recalculateActiveLandmarks) {
             recalculateActiveLandmarks = false;
-            if (lms.chooseActiveLandmarks(v, towerNodeNextToT, activeLandmarkIndices, reverse)) {
+            // the weights of the target are cached by the LandmarkStorage, so repeated queries to the same target skip most of this setup
+            ActiveLandmarkCache.TargetWeights weightsOfT = lms.getTargetWeights(towerNodeNextToT);
+            if (lms.chooseActiveLandmarks(v, towerNodeNextToT, weightsOfT, activeLandmarkIndices, reverse)) {
                 for (int i = 0; i < activeLandmarkIndices.length; i++) {
-                    weightsFromActiveLandmarksToT[i] = lms.getFromWeight(activeLandmarkIndices[i], towerNodeNextToT);
-                    weightsFromTToActiveLandmarks[i] = lms.getToWeight(activeLandmarkIndices[i], towerNodeNextToT);
+                    weightsFromActiveLandmarksToT[i] = weightsOfT.fromWeights[activeLandmarkIndices[i]];
+                    weightsFromTToActiveLandmarks[i] = weightsOfT.toWeights[activeLandmarkIndices[i]];
                 }
             } else {
                 // note: fallback==true means forever true!
@@ -113,16 +120,19 @@ public class LMApproximator implements WeightApproximator {
     }
 
     private double getRemainingWeightUnderestimationUpToTowerNode(int v) {
+        // read all weights of v first, so that the loop below only works on int arrays
+        lms.getWeights(v, activeLandmarkIndices, weightsFromActiveLandmarksToV, weightsFromVToActiveLandmarks);
+        int sign = reverse ? -1 : 1;
         int maxWeightInt = 0;
         for (int i = 0; i < activeLandmarkIndices.length; i++) {
-            int resultInt = approximateForLandmark(i, v);
+            int resultInt = approximateForLandmark(i, sign);
             maxWeightInt = Math.max(maxWeightInt, resultInt);
         }
         // Round down, we need to be an underestimator.
         return (maxWeightInt - 1) * factor;
     }
 
-    private int approximateForLandmark(int i, int v) {
+    private int approximateForLandmark(int i, int sign) {
         // ---> means shortest path, d means length of shortest path
         // but remember that d(v,t) != d(t,v)
         //
@@ -153,13 +163,8 @@ public class LMApproximator implements WeightApproximator {
         //
         // ...and we can get the right-hand sides of III) and IV) by multiplying those of II) and I) by -1.
 
-        int rhs1Int = lms.getToWeight(activeLandmarkIndices[i], v) - weightsFromTToActiveLandmarks[i];
-        int rhs2Int = weightsFromActiveLandmarksToT[i] - lms.getFromWeight(activeLandmarkIndices[i], v);
-
-        if (reverse) {
-            rhs1Int *= -1;
-            rhs2Int *= -1;
-        }
+        int rhs1Int = sign * (weightsFromVToActiveLandmarks[i] - weightsFromTToActiveLandmarks[i]);
+        int rhs2Int = sign * (weightsFromActiveLandmarksToT[i] - weightsFromActiveLandmarksToV[i]);
         return Math.max(rhs1Int, rhs2Int);
     }
 
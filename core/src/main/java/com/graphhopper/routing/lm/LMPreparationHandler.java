@@ -24,6 +24,7 @@ import com.graphhopper.config.LMProfile;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.util.AreaIndex;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.GHUtility;
@@ -169,6 +170,17 @@ public class LMPreparationHandler {
         return loaded;
     }
 
+    /**
+     * Removes the existing landmark data of the specified configs, so they are prepared again by the next
+     * {@link #prepare} call, e.g. because the weights of the edges changed.
+     */
+    public void remove(List<LMConfig> lmConfigs, Directory dir) {
+        for (LMConfig lmConfig : lmConfigs) {
+            dir.removeIfExists("landmarks_" + lmConfig.getName());
+            dir.removeIfExists("landmarks_subnetwork_" + lmConfig.getName());
+        }
+    }
+
     /**
      * Prepares the landmark data for all given configs
      */
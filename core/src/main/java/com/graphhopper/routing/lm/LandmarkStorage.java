@@ -94,6 +94,8 @@ public class LandmarkStorage {
     private List<LandmarkSuggestion> landmarkSuggestions = Collections.emptyList();
     private AreaIndex<SplitArea> areaIndex;
     private boolean logDetails = false;
+    private ActiveLandmarkCache activeLandmarkCache = new ActiveLandmarkCache(DEFAULT_ACTIVE_LANDMARK_CACHE_SIZE);
+    static final int DEFAULT_ACTIVE_LANDMARK_CACHE_SIZE = 1024;
     /**
      * 'to' and 'from' fit into 32 bit => 16 bit for each of them => 65536
      */
@@ -137,6 +139,7 @@ public class LandmarkStorage {
         this.landmarks = landmarks;
         // one short per landmark and two directions => 2*2 byte
         this.LM_ROW_LENGTH = landmarks * 4;
+        // getWeights relies on 'from' and 'to' being stored in this order
         this.FROM_OFFSET = 0;
         this.TO_OFFSET = 2;
         this.landmarkIDs = new ArrayList<>();
@@ -169,6 +172,18 @@ public class LandmarkStorage {
         this.logDetails = logDetails;
     }
 
+    /**
+     * Sets the number of slots of the cache for the weights between the landmarks and a target node and the active
+     * landmarks chosen for a pair of nodes. Queries to the same targets, like in a matrix, can then skip most of the
+     * setup of the LMApproximator. Use 0 to disable the cache.
+     */
+    public LandmarkStorage setActiveLandmarkCacheSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("active landmark cache size cannot be negative: " + size);
+        activeLandmarkCache = size == 0 ? null : new ActiveLandmarkCache(size);
+        return this;
+    }
+
     /**
      * This method forces the landmark preparation to skip the landmark search and uses the specified landmark list instead.
      * Useful for manual tuning of larger areas to safe import time or improve quality.
@@ -348,6 +363,7 @@ public class LandmarkStorage {
 
         if (logDetails)
             LOGGER.info("Finished landmark creation. Subnetwork node count sum " + nodes + " vs. nodes " + graph.getNodes());
+        clearActiveLandmarkCache();
         initialized = true;
     }
 
@@ -548,6 +564,25 @@ public class LandmarkStorage {
         return res;
     }
 
+    /**
+     * Reads the weights from and to the specified landmarks for the node. The 'from' and 'to' weight of a landmark are
+     * stored next to each other in a 4 byte aligned block of the node's row, so a single int read is enough for both.
+     *
+     * @param fromWeights receives the weight from the landmark to the node for every landmark index
+     * @param toWeights   receives the weight from the node to the landmark for every landmark index
+     */
+    void getWeights(int node, int[] landmarkIndices, int[] fromWeights, int[] toWeights) {
+        long rowPointer = (long) node * LM_ROW_LENGTH;
+        for (int i = 0; i < landmarkIndices.length; i++) {
+            // the data access uses little endian, i.e. the lower half is the 'from' and the upper half the 'to' weight
+            int weights = landmarkWeightDA.getInt(rowPointer + landmarkIndices[i] * 4);
+            int from = weights & 0x0000FFFF;
+            int to = weights >>> 16;
+            fromWeights[i] = from == SHORT_INFINITY ? SHORT_MAX : from;
+            toWeights[i] = to == SHORT_INFINITY ? SHORT_MAX : to;
+        }
+    }
+
     /**
      * @return false if the value capacity was reached and instead of the real value the SHORT_MAX was stored.
      */
@@ -575,6 +610,33 @@ public class LandmarkStorage {
 
     // From all available landmarks pick just a few active ones
     boolean chooseActiveLandmarks(int fromNode, int toNode, int[] activeLandmarkIndices, boolean reverse) {
+        return chooseActiveLandmarks(fromNode, toNode, getTargetWeights(toNode), activeLandmarkIndices, reverse);
+    }
+
+    /**
+     * @return the weights between all landmarks and the specified node, possibly from the cache
+     */
+    ActiveLandmarkCache.TargetWeights getTargetWeights(int node) {
+        if (node < 0)
+            throw new IllegalStateException("to node " + node + " has to be 0 or positive to init landmarks");
+        ActiveLandmarkCache cache = activeLandmarkCache;
+        ActiveLandmarkCache.TargetWeights weights = cache == null ? null : cache.getTargetWeights(node);
+        if (weights == null) {
+            int[] fromWeights = new int[landmarks];
+            int[] toWeights = new int[landmarks];
+            for (int lmIndex = 0; lmIndex < landmarks; lmIndex++) {
+                fromWeights[lmIndex] = getFromWeight(lmIndex, node);
+                toWeights[lmIndex] = getToWeight(lmIndex, node);
+            }
+            weights = new ActiveLandmarkCache.TargetWeights(node, fromWeights, toWeights);
+            if (cache != null)
+                cache.putTargetWeights(weights);
+        }
+        return weights;
+    }
+
+    boolean chooseActiveLandmarks(int fromNode, int toNode, ActiveLandmarkCache.TargetWeights toWeights,
+                                  int[] activeLandmarkIndices, boolean reverse) {
         if (fromNode < 0 || toNode < 0)
             throw new IllegalStateException("from " + fromNode + " and to "
                     + toNode + " nodes have to be 0 or positive to init landmarks");
@@ -588,11 +650,17 @@ public class LandmarkStorage {
                     + " vs. " + subnetworkTo, new HashMap<>());
         }
 
+        // the first selection only depends on the nodes and can be shared between queries
+        ActiveLandmarkCache cache = activeLandmarkCache;
+        boolean cacheSelection = cache != null && activeLandmarkIndices[0] < 0;
+        if (cacheSelection && cache.copyActiveLandmarks(fromNode, toNode, reverse, activeLandmarkIndices))
+            return true;
+
         // See the similar formula in LMApproximator.approximateForLandmark
         List<Map.Entry<Integer, Integer>> list = new ArrayList<>(landmarks);
         for (int lmIndex = 0; lmIndex < landmarks; lmIndex++) {
-            int fromWeight = getFromWeight(lmIndex, toNode) - getFromWeight(lmIndex, fromNode);
-            int toWeight = getToWeight(lmIndex, fromNode) - getToWeight(lmIndex, toNode);
+            int fromWeight = toWeights.fromWeights[lmIndex] - getFromWeight(lmIndex, fromNode);
+            int toWeight = getToWeight(lmIndex, fromNode) - toWeights.toWeights[lmIndex];
 
             list.add(new MapEntry<>(reverse
                     ? Math.max(-fromWeight, -toWeight)
@@ -621,6 +689,8 @@ public class LandmarkStorage {
             for (int i = 0; i < activeLandmarkIndices.length; i++) {
                 activeLandmarkIndices[i] = list.get(i).getValue();
             }
+            if (cacheSelection)
+                cache.putActiveLandmarks(fromNode, toNode, reverse, activeLandmarkIndices);
         }
 
         return true;
@@ -707,12 +777,18 @@ public class LandmarkStorage {
                 landmarkIDs.add(tmpLandmarks);
             }
 
+            clearActiveLandmarkCache();
             initialized = true;
             return true;
         }
         return false;
     }
 
+    private void clearActiveLandmarkCache() {
+        if (activeLandmarkCache != null)
+            activeLandmarkCache.clear();
+    }
+
     public void flush() {
         landmarkWeightDA.flush();
         subnetworkStorage.flush();
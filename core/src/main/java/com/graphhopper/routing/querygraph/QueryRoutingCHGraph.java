@@ -126,6 +126,11 @@ public class QueryRoutingCHGraph implements RoutingCHGraph {
         return routingCHGraph.getLevel(node);
     }
 
+    @Override
+    public int[] getNodesByLevel() {
+        return routingCHGraph.getNodesByLevel();
+    }
+
     @Override
     public double getTurnWeight(int inEdge, int viaNode, int outEdge) {
         if (!routingCHGraph.hasTurnCosts())
@@ -0,0 +1,64 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the speed profiles of the edges from a CSV file. Every line contains the edge id, the direction and the
+ * {@link SpeedProfileStorage#SLOTS} speed factors in percent starting at midnight, separated by commas, e.g.
+ * "1234,forward,100,100,...,60,55,...". The direction is 'forward' for the storage direction of the edge, 'backward'
+ * or 'both'. Empty lines and lines starting with '#' are ignored.
+ */
+public class SpeedProfileReader {
+    public static void read(Path file, SpeedProfileStorage storage) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split(",");
+                if (fields.length != SpeedProfileStorage.SLOTS + 2)
+                    throw new IllegalArgumentException("Expected edge id, direction and " + SpeedProfileStorage.SLOTS
+                            + " speed factors in line " + lineNumber + " of " + file + ", but got " + fields.length + " fields");
+                int edge = Integer.parseInt(fields[0].trim());
+                int[] factors = new int[SpeedProfileStorage.SLOTS];
+                for (int slot = 0; slot < factors.length; slot++) {
+                    factors[slot] = Integer.parseInt(fields[slot + 2].trim());
+                }
+                String direction = fields[1].trim();
+                if (!direction.equals("forward") && !direction.equals("backward") && !direction.equals("both"))
+                    throw new IllegalArgumentException("Unknown direction '" + direction + "' in line " + lineNumber + " of " + file);
+                if (!direction.equals("backward"))
+                    storage.setProfile(edge, false, factors);
+                if (!direction.equals("forward"))
+                    storage.setProfile(edge, true, factors);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
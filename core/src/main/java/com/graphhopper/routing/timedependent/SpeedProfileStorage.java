@@ -0,0 +1,209 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores a speed profile for every direction of an edge: the speed of each 15 minute slot of the day relative to the
+ * speed of the weighting, in percent. Many edges have the same profile, so the profiles are stored only once in a
+ * dictionary (96 bytes per profile) and every edge only stores the ids of the profiles of both directions.
+ * <p>
+ * The travel time of an edge is calculated by integrating the speed over the slots the edge is traversed in. This
+ * way a later departure never leads to an earlier arrival (FIFO property), even if the speed changes while the edge
+ * is traversed.
+ */
+public class SpeedProfileStorage {
+    public static final int SLOTS = 96;
+    public static final long SLOT_MILLIS = 15 * 60 * 1000;
+    public static final long DAY_MILLIS = SLOTS * SLOT_MILLIS;
+    // profile id + 1 in storage direction and against it, 0 means no profile
+    private static final int EDGE_BYTES = 8;
+    private final Directory dir;
+    private final DataAccess edgeProfiles;
+    private final DataAccess profiles;
+    private int edges;
+    private int profileCount;
+    private int maxFactorPercent = 100;
+    // the ids of the profiles, only needed while the profiles are added
+    private Map<ByteBuffer, Integer> profileIds;
+
+    public SpeedProfileStorage(Directory dir) {
+        this.dir = dir;
+        this.edgeProfiles = dir.create("speed_profiles_edges", dir.getDefaultType("speed_profiles_edges", true));
+        this.profiles = dir.create("speed_profiles", dir.getDefaultType("speed_profiles", false));
+    }
+
+    public SpeedProfileStorage create(int edges) {
+        this.edges = edges;
+        edgeProfiles.create((long) edges * EDGE_BYTES);
+        edgeProfiles.ensureCapacity((long) edges * EDGE_BYTES);
+        for (long pointer = 0; pointer < (long) edges * EDGE_BYTES; pointer += 4) {
+            edgeProfiles.setInt(pointer, 0);
+        }
+        profiles.create(100 * SLOTS);
+        profileIds = new HashMap<>();
+        return this;
+    }
+
+    public boolean loadExisting() {
+        if (!edgeProfiles.loadExisting() || !profiles.loadExisting())
+            return false;
+        GHUtility.checkDAVersion(edgeProfiles.getName(), Constants.VERSION_SPEED_PROFILES, edgeProfiles.getHeader(0));
+        GHUtility.checkDAVersion(profiles.getName(), Constants.VERSION_SPEED_PROFILES, profiles.getHeader(0));
+        edges = edgeProfiles.getHeader(4);
+        profileCount = profiles.getHeader(4);
+        maxFactorPercent = profiles.getHeader(8);
+        return true;
+    }
+
+    /**
+     * @param reverse        false for the storage direction of the edge, i.e. from its base to its adjacent node
+     * @param factorsPercent the speed of every slot of the day in percent of the speed of the weighting, between 1
+     *                       and 255
+     */
+    public void setProfile(int edge, boolean reverse, int[] factorsPercent) {
+        if (profileIds == null)
+            throw new IllegalStateException("Profiles can only be set after create");
+        if (edge < 0 || edge >= edges)
+            throw new IllegalArgumentException("Speed profile for unknown edge " + edge + ", edges: " + edges);
+        if (factorsPercent.length != SLOTS)
+            throw new IllegalArgumentException("A speed profile needs " + SLOTS + " values, but edge " + edge + " has " + factorsPercent.length);
+        byte[] bytes = new byte[SLOTS];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            // zero is not allowed, because a closed edge would have to be waited at, which breaks the FIFO property
+            if (factorsPercent[slot] < 1 || factorsPercent[slot] > 255)
+                throw new IllegalArgumentException("Speed factor must be in [1, 255] percent, edge: " + edge + ", slot: " + slot + ", factor: " + factorsPercent[slot]);
+            bytes[slot] = (byte) factorsPercent[slot];
+            maxFactorPercent = Math.max(maxFactorPercent, factorsPercent[slot]);
+        }
+        Integer id = profileIds.get(ByteBuffer.wrap(bytes));
+        if (id == null) {
+            id = profileCount++;
+            profileIds.put(ByteBuffer.wrap(bytes), id);
+            profiles.ensureCapacity((long) profileCount * SLOTS);
+            profiles.setBytes((long) id * SLOTS, bytes, SLOTS);
+        }
+        edgeProfiles.setInt((long) edge * EDGE_BYTES + (reverse ? 4 : 0), id + 1);
+    }
+
+    /**
+     * @return the number of distinct profiles
+     */
+    public int getProfileCount() {
+        return profileCount;
+    }
+
+    /**
+     * @return the maximum factor of all profiles and at least 1, i.e. no edge is faster than its speed multiplied by
+     * this factor
+     */
+    public double getMaxFactor() {
+        return maxFactorPercent / 100.0;
+    }
+
+    /**
+     * @return the speed factor of the edge at the specified time of the day in milliseconds, 1 if there is no profile
+     */
+    public double getFactor(int edge, boolean reverse, long timeOfDay) {
+        int profile = getProfile(edge, reverse);
+        if (profile < 0)
+            return 1;
+        return getFactor(profile, (int) (Math.floorMod(timeOfDay, DAY_MILLIS) / SLOT_MILLIS));
+    }
+
+    private double getFactor(int profile, int slot) {
+        return (profiles.getByte((long) profile * SLOTS + slot) & 0xFF) / 100.0;
+    }
+
+    private int getProfile(int edge, boolean reverse) {
+        if (edge < 0 || edge >= edges)
+            return -1;
+        return edgeProfiles.getInt((long) edge * EDGE_BYTES + (reverse ? 4 : 0)) - 1;
+    }
+
+    /**
+     * Calculates the travel time of the direction of the edge state if it is entered at the specified time. Virtual
+     * edges use the profile of their original edge.
+     *
+     * @param staticMillis the travel time of the weighting without a speed profile
+     * @param time         the time the edge is entered at in milliseconds since the start of a day, the time can be
+     *                     bigger than a day
+     */
+    public double calcMillis(EdgeIteratorState edgeState, boolean reverse, long staticMillis, double time) {
+        int edgeKey = edgeState instanceof VirtualEdgeIteratorState
+                ? ((VirtualEdgeIteratorState) edgeState).getOriginalEdgeKey() : edgeState.getEdgeKey();
+        // an odd edge key means the edge state is against the storage direction
+        int profile = getProfile(GHUtility.getEdgeFromEdgeKey(edgeKey), reverse != ((edgeKey & 1) == 1));
+        if (profile < 0 || staticMillis <= 0)
+            return staticMillis;
+        // the part of the edge that is left, in milliseconds with the speed of the weighting
+        double remaining = staticMillis;
+        double curr = time;
+        while (true) {
+            double timeOfDay = curr - Math.floor(curr / DAY_MILLIS) * DAY_MILLIS;
+            int slot = Math.min(SLOTS - 1, (int) (timeOfDay / SLOT_MILLIS));
+            double factor = getFactor(profile, slot);
+            double slotLeft = (slot + 1) * SLOT_MILLIS - timeOfDay;
+            if (remaining <= factor * slotLeft)
+                return curr + remaining / factor - time;
+            remaining -= factor * slotLeft;
+            curr += slotLeft;
+        }
+    }
+
+    public void flush() {
+        edgeProfiles.setHeader(0, Constants.VERSION_SPEED_PROFILES);
+        edgeProfiles.setHeader(4, edges);
+        profiles.setHeader(0, Constants.VERSION_SPEED_PROFILES);
+        profiles.setHeader(4, profileCount);
+        profiles.setHeader(8, maxFactorPercent);
+        edgeProfiles.flush();
+        profiles.flush();
+    }
+
+    /**
+     * Closes this storage and removes its files, e.g. to read the speed profiles again
+     */
+    public void remove() {
+        dir.remove(edgeProfiles.getName());
+        dir.remove(profiles.getName());
+    }
+
+    public void close() {
+        edgeProfiles.close();
+        profiles.close();
+    }
+
+    public boolean isClosed() {
+        return edgeProfiles.isClosed();
+    }
+
+    public long getCapacity() {
+        return edgeProfiles.getCapacity() + profiles.getCapacity();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Parameters;
+
+/**
+ * The {@link TimeDependentDijkstra} with the beeline travel time to the target as estimate. The estimate uses the
+ * maximum speed of the vehicle multiplied with the maximum factor of all speed profiles, so it never overestimates.
+ */
+public class TimeDependentAStar extends TimeDependentDijkstra {
+    // the minimum travel time per meter
+    private final double millisPerMeter;
+
+    /**
+     * @param maxSpeed the maximum speed of the weighting in km/h, e.g. FlagEncoder.getMaxSpeed
+     */
+    public TimeDependentAStar(Graph graph, Weighting weighting, TraversalMode tMode, SpeedProfileStorage speedProfiles,
+                              long departureTime, double maxSpeed) {
+        super(graph, weighting, tMode, speedProfiles, departureTime);
+        if (maxSpeed <= 0)
+            throw new IllegalArgumentException("maxSpeed must be positive but was " + maxSpeed);
+        this.millisPerMeter = 3600 / (maxSpeed * speedProfiles.getMaxFactor());
+    }
+
+    @Override
+    protected double estimate(int node) {
+        return millisPerMeter * DistanceCalcEarth.DIST_EARTH.calcDist(nodeAccess.getLat(node), nodeAccess.getLon(node),
+                nodeAccess.getLat(to), nodeAccess.getLon(to));
+    }
+
+    @Override
+    public String getName() {
+        return "td_" + Parameters.Algorithms.ASTAR;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.Helper;
+
+import static com.graphhopper.util.Parameters.Algorithms.*;
+
+/**
+ * Creates the time-dependent algorithms for the current departure time. There are no bidirectional time-dependent
+ * algorithms, because the arrival time is not known, so dijkstrabi and astarbi are mapped to their unidirectional
+ * counterparts. If the weighting is a {@link TimeDependentWeighting} the algorithms use its time-independent weighting
+ * and pass the travel times of the edges of their paths on to it.
+ */
+public class TimeDependentAlgorithmFactory implements RoutingAlgorithmFactory {
+    private final SpeedProfileStorage speedProfiles;
+    private final double maxSpeed;
+    private long departureTime;
+
+    /**
+     * @param maxSpeed      the maximum speed of the weighting in km/h for the A* estimate
+     * @param departureTime the departure time in milliseconds since the start of the day
+     */
+    public TimeDependentAlgorithmFactory(SpeedProfileStorage speedProfiles, double maxSpeed, long departureTime) {
+        this.speedProfiles = speedProfiles;
+        this.maxSpeed = maxSpeed;
+        this.departureTime = departureTime;
+    }
+
+    public long getDepartureTime() {
+        return departureTime;
+    }
+
+    public TimeDependentAlgorithmFactory setDepartureTime(long departureTime) {
+        this.departureTime = departureTime;
+        return this;
+    }
+
+    @Override
+    public RoutingAlgorithm createAlgo(Graph g, Weighting w, AlgorithmOptions opts) {
+        TimeDependentDijkstra ra;
+        String algoStr = opts.getAlgorithm();
+        TimeDependentWeighting pathTimes = w instanceof TimeDependentWeighting ? (TimeDependentWeighting) w : null;
+        Weighting weighting = g.wrapWeighting(pathTimes == null ? w : pathTimes.getTimeIndependentWeighting());
+        if (DIJKSTRA.equalsIgnoreCase(algoStr) || DIJKSTRA_BI.equalsIgnoreCase(algoStr)) {
+            ra = new TimeDependentDijkstra(g, weighting, opts.getTraversalMode(), speedProfiles, departureTime);
+        } else if (ASTAR.equalsIgnoreCase(algoStr) || ASTAR_BI.equalsIgnoreCase(algoStr) || Helper.isEmpty(algoStr)) {
+            ra = new TimeDependentAStar(g, weighting, opts.getTraversalMode(), speedProfiles, departureTime, maxSpeed);
+        } else {
+            throw new IllegalArgumentException("Algorithm " + algoStr + " does not support a departure time");
+        }
+        ra.setPathTimes(pathTimes);
+        ra.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+        return ra;
+    }
+}
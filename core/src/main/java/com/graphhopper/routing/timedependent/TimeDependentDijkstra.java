@@ -0,0 +1,173 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PathExtractor;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Parameters;
+
+import java.util.PriorityQueue;
+
+/**
+ * Finds the path with the earliest arrival for a departure time. The travel time of every edge depends on the time
+ * the edge is entered, see {@link SpeedProfileStorage#calcMillis}. Because the travel times are FIFO, a label-setting
+ * Dijkstra on the arrival times is still correct. The weighting is only used for the access, the turn restrictions
+ * and the travel time without speed profiles, the paths are optimized for the travel time.
+ * <p>
+ * The weight of the resulting path is its travel time in seconds and the time of the path already includes the speed
+ * profiles. The travel times of its edges can be passed on to a {@link TimeDependentWeighting}, see
+ * {@link #setPathTimes}.
+ */
+public class TimeDependentDijkstra extends AbstractRoutingAlgorithm {
+    protected final SpeedProfileStorage speedProfiles;
+    private final long departureTime;
+    private final IntObjectMap<Entry> fromMap;
+    private final PriorityQueue<Entry> fromHeap;
+    private Entry currEdge;
+    private TimeDependentWeighting pathTimes;
+    private int visitedNodes;
+    protected int to = -1;
+
+    /**
+     * @param departureTime the departure time in milliseconds since the start of the day
+     */
+    public TimeDependentDijkstra(Graph graph, Weighting weighting, TraversalMode tMode, SpeedProfileStorage speedProfiles, long departureTime) {
+        super(graph, weighting, tMode);
+        this.speedProfiles = speedProfiles;
+        this.departureTime = departureTime;
+        int size = Math.min(Math.max(200, graph.getNodes() / 10), 2000);
+        fromHeap = new PriorityQueue<>(size);
+        fromMap = new GHIntObjectHashMap<>(size);
+    }
+
+    /**
+     * @param pathTimes the weighting that gets the travel times of the edges of the path that is found
+     */
+    public TimeDependentDijkstra setPathTimes(TimeDependentWeighting pathTimes) {
+        this.pathTimes = pathTimes;
+        return this;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        checkAlreadyRun();
+        this.to = to;
+        fromHeap.add(new Entry(EdgeIterator.NO_EDGE, -1, from, 0, null, estimate(from)));
+        runAlgo();
+        return extractPath();
+    }
+
+    /**
+     * @return a lower bound for the travel time in milliseconds from the node to the target
+     */
+    protected double estimate(int node) {
+        return 0;
+    }
+
+    private void runAlgo() {
+        while (!fromHeap.isEmpty()) {
+            currEdge = fromHeap.poll();
+            if (currEdge.isDeleted())
+                continue;
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || finished())
+                break;
+
+            EdgeIterator iter = edgeExplorer.setBaseNode(currEdge.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, currEdge.edge))
+                    continue;
+                // rejects edges without access and forbidden turns
+                if (Double.isInfinite(GHUtility.calcWeightWithTurnWeightWithAccess(weighting, iter, false, currEdge.edge)))
+                    continue;
+                double entryTime = currEdge.arrival;
+                if (traversalMode.isEdgeBased() && currEdge.edge != EdgeIterator.NO_EDGE)
+                    entryTime += weighting.calcTurnMillis(currEdge.edge, iter.getBaseNode(), iter.getEdge());
+                double arrival = entryTime + speedProfiles.calcMillis(iter, false, weighting.calcEdgeMillis(iter, false), departureTime + entryTime);
+                int traversalId = traversalMode.createTraversalId(iter, false);
+                Entry entry = fromMap.get(traversalId);
+                if (entry != null) {
+                    if (entry.arrival <= arrival)
+                        continue;
+                    entry.setDeleted();
+                }
+                entry = new Entry(iter.getEdge(), iter.getEdgeKey(), iter.getAdjNode(), arrival, currEdge, estimate(iter.getAdjNode()));
+                fromMap.put(traversalId, entry);
+                fromHeap.add(entry);
+            }
+        }
+    }
+
+    @Override
+    protected boolean finished() {
+        return currEdge.adjNode == to;
+    }
+
+    @Override
+    protected Path extractPath() {
+        if (currEdge == null || !finished())
+            return createEmptyPath();
+        Path path = PathExtractor.extractPath(graph, weighting, currEdge);
+        path.setTime(Math.round(currEdge.arrival));
+        if (pathTimes != null)
+            addPathTimes();
+        path.setWeight(currEdge.arrival / 1000);
+        return path;
+    }
+
+    private void addPathTimes() {
+        for (Entry entry = currEdge; entry.parent != null; entry = (Entry) entry.parent) {
+            Entry parent = (Entry) entry.parent;
+            long turnMillis = traversalMode.isEdgeBased() && parent.edge != EdgeIterator.NO_EDGE
+                    ? weighting.calcTurnMillis(parent.edge, parent.adjNode, entry.edge) : 0;
+            // the rounded differences add up to the rounded time of the path
+            pathTimes.addMillis(entry.edgeKey, Math.round(entry.arrival) - Math.round(parent.arrival) - turnMillis);
+        }
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return "td_" + Parameters.Algorithms.DIJKSTRA;
+    }
+
+    private static class Entry extends SPTEntry {
+        // the arrival time in milliseconds after the departure, the weight is this time plus the estimate
+        final double arrival;
+        final int edgeKey;
+
+        Entry(int edge, int edgeKey, int adjNode, double arrival, SPTEntry parent, double estimate) {
+            super(edge, adjNode, arrival + estimate, parent);
+            this.edgeKey = edgeKey;
+            this.arrival = arrival;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.EdgeRestrictions;
+import com.graphhopper.routing.FlexiblePathCalculator;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.weighting.Weighting;
+
+import java.util.List;
+
+/**
+ * Calculates the legs of a route one after the other, every leg departs when the previous leg arrives.
+ */
+public class TimeDependentPathCalculator extends FlexiblePathCalculator {
+    private final TimeDependentAlgorithmFactory algoFactory;
+
+    public TimeDependentPathCalculator(QueryGraph queryGraph, TimeDependentAlgorithmFactory algoFactory, Weighting weighting, AlgorithmOptions algoOpts) {
+        super(queryGraph, algoFactory, weighting, algoOpts);
+        this.algoFactory = algoFactory;
+    }
+
+    @Override
+    public List<Path> calcPaths(int from, int to, EdgeRestrictions edgeRestrictions) {
+        List<Path> paths = super.calcPaths(from, to, edgeRestrictions);
+        if (paths.get(0).isFound())
+            algoFactory.setDepartureTime(algoFactory.getDepartureTime() + paths.get(0).getTime());
+        return paths;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntLongHashMap;
+import com.graphhopper.routing.weighting.AbstractAdjustedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Returns the time-dependent travel times of the edges of the paths that were found, so the times of the instructions
+ * and the path details add up to the time of the route. The weights and the times of all other edges are those of
+ * the wrapped weighting, which is also the one the time-dependent algorithms use, see
+ * {@link TimeDependentAlgorithmFactory}.
+ */
+public class TimeDependentWeighting extends AbstractAdjustedWeighting {
+    // the sum and the number of the travel times per edge key, as a route can use an edge more than once
+    private final IntLongHashMap millisSums = new IntLongHashMap();
+    private final IntIntHashMap counts = new IntIntHashMap();
+
+    public TimeDependentWeighting(Weighting superWeighting) {
+        super(superWeighting);
+    }
+
+    /**
+     * @return the weighting without the travel times of the paths
+     */
+    public Weighting getTimeIndependentWeighting() {
+        return superWeighting;
+    }
+
+    void addMillis(int edgeKey, long millis) {
+        millisSums.addTo(edgeKey, millis);
+        counts.addTo(edgeKey, 1);
+    }
+
+    @Override
+    public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
+        int edgeKey = reverse ? edgeState.getReverseEdgeKey() : edgeState.getEdgeKey();
+        int count = counts.get(edgeKey);
+        if (count == 0)
+            return superWeighting.calcEdgeMillis(edgeState, reverse);
+        return Math.round((double) millisSums.get(edgeKey) / count);
+    }
+
+    @Override
+    public String getName() {
+        return superWeighting.getName();
+    }
+}
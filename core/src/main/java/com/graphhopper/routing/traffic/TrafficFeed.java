@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.traffic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the traffic speeds from a local file whenever it was modified and replaces all speeds of the
+ * {@link TrafficOverlay} with them. Every line of the file contains the edge id, the speed in storage direction and
+ * the speed against the storage direction in km/h, separated by commas, e.g. "1234,30.5,". An empty speed means
+ * there is no traffic speed for this direction. Empty lines and lines starting with '#' are ignored.
+ */
+public class TrafficFeed implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrafficFeed.class);
+    private final TrafficOverlay overlay;
+    private final Path file;
+    private long lastModified = Long.MIN_VALUE;
+
+    public TrafficFeed(TrafficOverlay overlay, Path file) {
+        this.overlay = overlay;
+        this.file = file;
+    }
+
+    /**
+     * Reads the file if it was modified since the last call. Errors are logged, because this is meant to be called
+     * periodically and the next call might succeed.
+     */
+    @Override
+    public void run() {
+        try {
+            if (!Files.exists(file))
+                return;
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == lastModified)
+                return;
+            overlay.replace(read(file));
+            lastModified = modified;
+        } catch (Exception ex) {
+            LOGGER.error("Could not read traffic feed " + file, ex);
+        }
+    }
+
+    public static List<TrafficOverlay.SpeedUpdate> read(Path file) {
+        List<TrafficOverlay.SpeedUpdate> result = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split(",", -1);
+                if (fields.length != 3)
+                    throw new IllegalArgumentException("Expected edge id, forward and backward speed in line " + lineNumber + " of " + file + ": " + line);
+                int edge = Integer.parseInt(fields[0].trim());
+                if (!fields[1].trim().isEmpty())
+                    result.add(new TrafficOverlay.SpeedUpdate(edge, false, Double.parseDouble(fields[1].trim())));
+                if (!fields[2].trim().isEmpty())
+                    result.add(new TrafficOverlay.SpeedUpdate(edge, true, Double.parseDouble(fields[2].trim())));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return result;
+    }
+}
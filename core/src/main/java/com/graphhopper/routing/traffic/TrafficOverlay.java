@@ -0,0 +1,201 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.traffic;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHTBitSet;
+import com.graphhopper.routing.ch.CHCustomization;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Traffic speeds per edge and direction that are applied to the weightings of all profiles and to the shortcut
+ * weights of the CH profiles at runtime, without a new preparation. Every update creates a new
+ * {@link TrafficSnapshot}: only the segments of the speeds that contain an updated edge are copied (copy-on-write),
+ * the shortcuts that include a changed edge are customized again (see {@link CHCustomization}) and then the new
+ * snapshot replaces the old one. Requests that still use the old snapshot are not affected.
+ */
+public class TrafficOverlay {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrafficOverlay.class);
+    private final BaseGraph graph;
+    private final Map<String, CHProfile> chProfiles = new LinkedHashMap<>();
+    private int threads = 1;
+    private volatile TrafficSnapshot snapshot;
+
+    public TrafficOverlay(BaseGraph graph) {
+        this.graph = graph;
+        this.snapshot = new TrafficSnapshot(new float[TrafficSnapshot.getSegmentCount(graph.getEdges())][], graph.getEdges(), 0);
+    }
+
+    /**
+     * The shortcuts of every depth are customized with this number of threads
+     */
+    public TrafficOverlay setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Adds a CH profile whose shortcut weights shall follow the traffic speeds. Must be called before the first update.
+     */
+    public synchronized TrafficOverlay addCHProfile(String profile, RoutingCHGraphImpl chGraph) {
+        if (snapshot.getVersion() > 0)
+            throw new IllegalStateException("CH profiles must be added before the first traffic update");
+        CHProfile chProfile = new CHProfile(chGraph.getCHStorage(), chGraph.getWeighting(), new CHCustomization(graph, chGraph.getCHStorage()));
+        chProfiles.put(profile, chProfile);
+        // without traffic speeds the stored shortcut weights are still valid
+        snapshot.putCHGraph(profile, new RoutingCHGraphImpl(graph, chProfile.chStorage, snapshot.wrap(chProfile.weighting)));
+        return this;
+    }
+
+    public TrafficSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Changes the traffic speeds of the specified edges and keeps the traffic speeds of all other edges.
+     */
+    public TrafficSnapshot update(Collection<SpeedUpdate> updates) {
+        return update(updates, false);
+    }
+
+    /**
+     * Replaces all traffic speeds with the specified ones, e.g. for a feed that always contains the complete traffic.
+     */
+    public TrafficSnapshot replace(Collection<SpeedUpdate> updates) {
+        return update(updates, true);
+    }
+
+    private synchronized TrafficSnapshot update(Collection<SpeedUpdate> updates, boolean replace) {
+        StopWatch sw = new StopWatch().start();
+        TrafficSnapshot old = snapshot;
+        int edges = graph.getEdges();
+        // the segments without an update are shared with the old snapshot
+        float[][] segments = replace ? new float[old.getSegments().length][] : old.getSegments().clone();
+        boolean[] copied = new boolean[segments.length];
+        // the edges whose speeds might have changed
+        IntHashSet candidates = new GHIntHashSet();
+        if (replace)
+            addEdgesWithSpeeds(old, candidates);
+        for (SpeedUpdate update : updates) {
+            if (update.edge < 0 || update.edge >= edges)
+                throw new IllegalArgumentException("Traffic speed for unknown edge " + update.edge + ", edges: " + edges);
+            if (update.speed < 0)
+                throw new IllegalArgumentException("Traffic speed must not be negative, edge: " + update.edge + ", speed: " + update.speed);
+            int segmentIndex = update.edge >>> TrafficSnapshot.SEGMENT_BITS;
+            if (!copied[segmentIndex]) {
+                segments[segmentIndex] = segments[segmentIndex] == null ? createSegment() : segments[segmentIndex].clone();
+                copied[segmentIndex] = true;
+            }
+            segments[segmentIndex][2 * (update.edge & (TrafficSnapshot.SEGMENT_EDGES - 1)) + (update.reverse ? 1 : 0)] = (float) update.speed;
+            candidates.add(update.edge);
+        }
+        TrafficSnapshot result = new TrafficSnapshot(segments, edges, old.getVersion() + 1);
+        GHBitSet changedEdges = new GHTBitSet(candidates.size());
+        for (IntCursor cursor : candidates) {
+            int edge = cursor.value;
+            if (Float.floatToIntBits((float) result.getSpeed(edge, false)) != Float.floatToIntBits((float) old.getSpeed(edge, false))
+                    || Float.floatToIntBits((float) result.getSpeed(edge, true)) != Float.floatToIntBits((float) old.getSpeed(edge, true)))
+                changedEdges.add(edge);
+        }
+        int changedCount = changedEdges.getCardinality();
+
+        for (Map.Entry<String, CHProfile> entry : chProfiles.entrySet()) {
+            CHProfile chProfile = entry.getValue();
+            Weighting weighting = result.wrap(chProfile.weighting);
+            chProfile.customization.setThreads(threads);
+            // the first update has to calculate all shortcuts, because the stored weights have a lower precision
+            CHShortcutWeights shortcutWeights = chProfile.shortcutWeights == null
+                    ? chProfile.customization.customize(weighting)
+                    : chProfile.customization.customize(weighting, chProfile.shortcutWeights, changedEdges);
+            chProfile.shortcutWeights = shortcutWeights;
+            result.putCHGraph(entry.getKey(), new RoutingCHGraphImpl(graph, chProfile.chStorage, weighting, shortcutWeights));
+        }
+        snapshot = result;
+        LOGGER.info("Traffic update " + result.getVersion() + " changed " + changedCount + " edges, took: " + sw.stop().getSeconds() + "s");
+        return result;
+    }
+
+    private static void addEdgesWithSpeeds(TrafficSnapshot snapshot, IntHashSet edges) {
+        float[][] segments = snapshot.getSegments();
+        for (int segmentIndex = 0; segmentIndex < segments.length; segmentIndex++) {
+            if (segments[segmentIndex] == null)
+                continue;
+            for (int i = 0; i < segments[segmentIndex].length; i += 2) {
+                if (!Float.isNaN(segments[segmentIndex][i]) || !Float.isNaN(segments[segmentIndex][i + 1]))
+                    edges.add((segmentIndex << TrafficSnapshot.SEGMENT_BITS) + i / 2);
+            }
+        }
+    }
+
+    private static float[] createSegment() {
+        float[] segment = new float[2 * TrafficSnapshot.SEGMENT_EDGES];
+        Arrays.fill(segment, Float.NaN);
+        return segment;
+    }
+
+    /**
+     * The traffic speed in km/h for one direction of an edge
+     */
+    public static class SpeedUpdate {
+        final int edge;
+        final boolean reverse;
+        final double speed;
+
+        /**
+         * @param reverse false for the storage direction of the edge, i.e. from its base to its adjacent node
+         * @param speed   the speed in km/h, zero closes the edge and NaN removes the traffic speed
+         */
+        public SpeedUpdate(int edge, boolean reverse, double speed) {
+            this.edge = edge;
+            this.reverse = reverse;
+            this.speed = speed;
+        }
+
+        @Override
+        public String toString() {
+            return edge + (reverse ? " bwd: " : " fwd: ") + speed;
+        }
+    }
+
+    private static class CHProfile {
+        final CHStorage chStorage;
+        final Weighting weighting;
+        final CHCustomization customization;
+        CHShortcutWeights shortcutWeights;
+
+        CHProfile(CHStorage chStorage, Weighting weighting, CHCustomization customization) {
+            this.chStorage = chStorage;
+            this.weighting = weighting;
+            this.customization = customization;
+        }
+    }
+}
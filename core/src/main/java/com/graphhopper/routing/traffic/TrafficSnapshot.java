@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.traffic;
+
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable state of the {@link TrafficOverlay}: the traffic speeds of all edges and the CH graphs that were
+ * customized for them. A request should use a single snapshot for all its weightings and CH graphs, so it sees either
+ * the old or the new traffic, but never a mix of both.
+ */
+public class TrafficSnapshot {
+    // the speeds are stored in segments of this many edges, which are shared with the next snapshot unless one of
+    // their speeds changes
+    static final int SEGMENT_BITS = 12;
+    static final int SEGMENT_EDGES = 1 << SEGMENT_BITS;
+    // forward speed and backward speed in storage direction for every edge, NaN if there is no traffic speed. A null
+    // segment has no traffic speeds at all.
+    private final float[][] segments;
+    private final int edges;
+    private final int version;
+    private final Map<String, RoutingCHGraph> chGraphs = new LinkedHashMap<>();
+
+    TrafficSnapshot(float[][] segments, int edges, int version) {
+        this.segments = segments;
+        this.edges = edges;
+        this.version = version;
+    }
+
+    void putCHGraph(String profile, RoutingCHGraph chGraph) {
+        chGraphs.put(profile, chGraph);
+    }
+
+    /**
+     * @return the number of updates that led to this snapshot
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the traffic speed in km/h for the specified edge and direction, or NaN if there is none
+     */
+    public double getSpeed(int edge, boolean reverse) {
+        if (edge < 0 || edge >= edges)
+            return Double.NaN;
+        float[] segment = segments[edge >>> SEGMENT_BITS];
+        return segment == null ? Double.NaN : segment[2 * (edge & (SEGMENT_EDGES - 1)) + (reverse ? 1 : 0)];
+    }
+
+    /**
+     * @return the traffic speed in km/h for the direction of the edge state, or NaN if there is none. Virtual edges
+     * get the speed of their original edge.
+     */
+    public double getSpeed(EdgeIteratorState edgeState, boolean reverse) {
+        int edgeKey = edgeState instanceof VirtualEdgeIteratorState
+                ? ((VirtualEdgeIteratorState) edgeState).getOriginalEdgeKey() : edgeState.getEdgeKey();
+        // an odd edge key means the edge state is against the storage direction
+        return getSpeed(GHUtility.getEdgeFromEdgeKey(edgeKey), reverse != ((edgeKey & 1) == 1));
+    }
+
+    /**
+     * @return the weighting that applies the traffic speeds of this snapshot to the specified weighting
+     */
+    public Weighting wrap(Weighting weighting) {
+        return new TrafficWeighting(weighting, this);
+    }
+
+    /**
+     * @return the CH graphs of all CH profiles of the overlay, customized for the traffic speeds of this snapshot
+     */
+    public Map<String, RoutingCHGraph> getCHGraphs() {
+        return Collections.unmodifiableMap(chGraphs);
+    }
+
+    float[][] getSegments() {
+        return segments;
+    }
+
+    static int getSegmentCount(int edges) {
+        return (edges + SEGMENT_EDGES - 1) >>> SEGMENT_BITS;
+    }
+}
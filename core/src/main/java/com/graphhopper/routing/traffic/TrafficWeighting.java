@@ -0,0 +1,72 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.traffic;
+
+import com.graphhopper.routing.weighting.AbstractAdjustedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Applies the traffic speeds of a {@link TrafficSnapshot} to another weighting. The weight of an edge with a traffic
+ * speed is scaled by the ratio of the travel time with the traffic speed and the travel time of the wrapped weighting.
+ * Traffic can only make an edge slower, so the minimum weight of the wrapped weighting stays valid for A* and the
+ * landmarks. A traffic speed of zero closes the edge.
+ */
+public class TrafficWeighting extends AbstractAdjustedWeighting {
+    private final TrafficSnapshot snapshot;
+
+    public TrafficWeighting(Weighting superWeighting, TrafficSnapshot snapshot) {
+        super(superWeighting);
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+        double weight = superWeighting.calcEdgeWeight(edgeState, reverse);
+        double speed = snapshot.getSpeed(edgeState, reverse);
+        if (Double.isNaN(speed) || Double.isInfinite(weight))
+            return weight;
+        if (speed <= 0)
+            return Double.POSITIVE_INFINITY;
+        long millis = superWeighting.calcEdgeMillis(edgeState, reverse);
+        double trafficMillis = calcMillis(edgeState.getDistance(), speed);
+        return millis > 0 && trafficMillis > millis ? weight * trafficMillis / millis : weight;
+    }
+
+    @Override
+    public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
+        long millis = superWeighting.calcEdgeMillis(edgeState, reverse);
+        double speed = snapshot.getSpeed(edgeState, reverse);
+        if (Double.isNaN(speed) || speed <= 0)
+            return millis;
+        return Math.max(millis, Math.round(calcMillis(edgeState.getDistance(), speed)));
+    }
+
+    private static double calcMillis(double distance, double speedInKmh) {
+        return distance * 3600 / speedInKmh;
+    }
+
+    public TrafficSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public String getName() {
+        return "traffic";
+    }
+}
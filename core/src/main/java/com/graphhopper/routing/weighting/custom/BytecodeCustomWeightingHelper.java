@@ -0,0 +1,53 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.util.JsonFeature;
+
+import java.util.Map;
+
+/**
+ * This class is for internal usage only. It is subclassed by {@link CustomModelBytecodeCompiler}, which creates the
+ * getSpeed and getPriority methods directly as bytecode. The subclass reads its encoded values from
+ * {@link #encodedValues}, in the order of {@link #getEncodedValueNames()}.
+ */
+public abstract class BytecodeCustomWeightingHelper extends CustomWeightingHelper {
+    protected EncodedValue[] encodedValues;
+
+    protected BytecodeCustomWeightingHelper() {
+    }
+
+    @Override
+    public void init(EncodedValueLookup lookup, DecimalEncodedValue avgSpeedEnc, DecimalEncodedValue priorityEnc, Map<String, JsonFeature> areas) {
+        super.init(lookup, avgSpeedEnc, priorityEnc, areas);
+        String names = getEncodedValueNames();
+        String[] split = names.isEmpty() ? new String[0] : names.split(",");
+        encodedValues = new EncodedValue[split.length];
+        for (int i = 0; i < split.length; i++) {
+            encodedValues[i] = lookup.getEncodedValue(split[i], EncodedValue.class);
+        }
+    }
+
+    /**
+     * @return the comma separated names of the encoded values the subclass reads
+     */
+    protected abstract String getEncodedValueNames();
+}
@@ -0,0 +1,133 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A concurrent cache of compiled classes. Reading does not lock, and concurrent requests for a missing key wait for
+ * the same compilation instead of compiling the class several times. A failed compilation is not cached.
+ * <p>
+ * Every entry is weighted by the length of its key, which grows with the size of the generated class. When there
+ * are too many entries or their total weight is too big, the least recently used entries are removed.
+ */
+class CompiledClassCache {
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong weight = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private static class Entry {
+        final CompletableFuture<Class<?>> future = new CompletableFuture<>();
+        final int weight;
+        volatile long lastAccess;
+
+        Entry(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    CompiledClassCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @return the cached class of the specified key or the class created by the compiler on the calling thread. If
+     * another thread is already compiling the class for this key we wait for it.
+     */
+    Class<?> get(String key, Supplier<Class<?>> compiler) {
+        Entry entry = map.get(key);
+        if (entry == null) {
+            Entry created = new Entry(key.length());
+            created.lastAccess = clock.incrementAndGet();
+            entry = map.putIfAbsent(key, created);
+            if (entry == null) {
+                entry = created;
+                weight.addAndGet(created.weight);
+                try {
+                    created.future.complete(compiler.get());
+                } catch (Throwable ex) {
+                    // also for errors like a VerifyError, otherwise the other threads would wait forever
+                    remove(key, created);
+                    created.future.completeExceptionally(ex);
+                    throw ex;
+                }
+                evictIfNeeded();
+            }
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        try {
+            return entry.future.join();
+        } catch (CompletionException ex) {
+            // the compilation of another thread failed, e.g. for an invalid expression
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            throw ex;
+        }
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    long getWeight() {
+        return weight.get();
+    }
+
+    private void remove(String key, Entry entry) {
+        if (map.remove(key, entry))
+            weight.addAndGet(-entry.weight);
+    }
+
+    private void evictIfNeeded() {
+        if (map.size() <= maxEntries && weight.get() <= maxWeight)
+            return;
+        // one thread evicts for all others
+        if (!evictionLock.tryLock())
+            return;
+        try {
+            // copy the access times as they change while we sort
+            List<Object[]> entries = new ArrayList<>(map.size());
+            map.forEach((key, entry) -> entries.add(new Object[]{key, entry, entry.lastAccess}));
+            entries.sort(Comparator.comparingLong(e -> (Long) e[2]));
+            for (Object[] e : entries) {
+                if (map.size() <= maxEntries && weight.get() <= maxWeight)
+                    break;
+                Entry entry = (Entry) e[1];
+                // entries that are still compiling are not evicted as other threads might wait for them
+                if (entry.future.isDone())
+                    remove((String) e[0], entry);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+}
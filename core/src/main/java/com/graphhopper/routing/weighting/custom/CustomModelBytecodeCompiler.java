@@ -0,0 +1,711 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.json.Statement;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.util.CustomModel;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.TokenType;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the subclass of {@link BytecodeCustomWeightingHelper} for a custom model by writing the class file directly,
+ * instead of creating Java source code and compiling it with Janino. This takes a fraction of a millisecond, but only
+ * supports the most common conditions: boolean encoded values, enum encoded values compared with == or != to one of
+ * their constants, numeric encoded values compared to a number, the literals true and false, !, && and || and
+ * brackets. For everything else, e.g. areas, strings or method calls, {@link #compile} returns null and the custom
+ * model has to be compiled with Janino.
+ * <p>
+ * The expressions must have been validated with {@link ExpressionVisitor} before. The class file has version 49, so
+ * that it does not need stack map frames.
+ */
+final class CustomModelBytecodeCompiler {
+    private static final AtomicLong counter = new AtomicLong(1);
+    private static final String HELPER = "com/graphhopper/routing/weighting/custom/BytecodeCustomWeightingHelper";
+    private static final String EDGE = "com/graphhopper/util/EdgeIteratorState";
+    private static final String EDGE_METHOD_DESC = "(L" + EDGE + ";Z)D";
+    private static final int THIS = 0, EDGE_LOCAL = 1, REVERSE_LOCAL = 2, VALUE_LOCAL = 3, FIRST_EV_LOCAL = 5;
+
+    private CustomModelBytecodeCompiler() {
+    }
+
+    /**
+     * @return the created class or null if the custom model contains something that is not supported
+     */
+    static Class<?> compile(CustomModel customModel, EncodedValueLookup lookup, double globalMaxSpeed) {
+        String name = "com/graphhopper/routing/weighting/custom/BytecodeCustomWeightingHelperSubclass" + counter.incrementAndGet();
+        List<String> encodedValueNames = new ArrayList<>();
+        byte[] bytes;
+        try {
+            ClassWriter cw = new ClassWriter(name);
+            MethodWriter priority = new MethodWriter(cw, lookup, encodedValueNames);
+            priority.writeMethod(customModel.getPriority(), "getRawPriority", -1);
+            MethodWriter speed = new MethodWriter(cw, lookup, encodedValueNames);
+            speed.writeMethod(customModel.getSpeed(), "getRawSpeed", globalMaxSpeed);
+
+            Code init = new Code(cw);
+            init.op(0x2a); // aload_0
+            init.op(0xb7); // invokespecial
+            init.u2(cw.methodRef(HELPER, "<init>", "()V", false));
+            init.op(0xb1); // return
+            cw.addMethod(0x0001, "<init>", "()V", init, 1, 1);
+
+            Code names = new Code(cw);
+            names.op(0x13); // ldc_w
+            names.u2(cw.string(String.join(",", encodedValueNames)));
+            names.op(0xb0); // areturn
+            cw.addMethod(0x0004, "getEncodedValueNames", "()Ljava/lang/String;", names, 1, 1);
+
+            cw.addMethod(0x0001, "getPriority", EDGE_METHOD_DESC, priority.code, MethodWriter.MAX_STACK, priority.nextLocal);
+            cw.addMethod(0x0001, "getSpeed", EDGE_METHOD_DESC, speed.code, MethodWriter.MAX_STACK, speed.nextLocal);
+            bytes = cw.toByteArray();
+        } catch (NotSupportedException ex) {
+            return null;
+        }
+
+        try {
+            String className = name.replace('/', '.');
+            HelperClassLoader loader = new HelperClassLoader(CustomModelBytecodeCompiler.class.getClassLoader());
+            loader.define(className, bytes);
+            // initializing the class makes sure it is verified here and not on first use
+            return Class.forName(className, true, loader);
+        } catch (LinkageError | ClassNotFoundException ex) {
+            LoggerFactory.getLogger(CustomModelBytecodeCompiler.class).warn("Could not load generated class for " + customModel, ex);
+            return null;
+        }
+    }
+
+    private static class NotSupportedException extends Exception {
+        NotSupportedException() {
+            // only used for control flow
+            super(null, null, false, false);
+        }
+    }
+
+    private static class HelperClassLoader extends ClassLoader {
+        HelperClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        void define(String name, byte[] bytes) {
+            defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private enum Kind {
+        BOOLEAN("BooleanEncodedValue", "Z"), INT("IntEncodedValue", "I"), ENUM("IntEncodedValue", "I"),
+        DECIMAL("DecimalEncodedValue", "D");
+
+        final String type;
+        final String desc;
+
+        Kind(String interfaceName, String returnType) {
+            this.type = "com/graphhopper/routing/ev/" + interfaceName;
+            this.desc = "(L" + type + ";)" + returnType;
+        }
+    }
+
+    private static class MethodWriter {
+        static final int MAX_STACK = 6;
+        final ClassWriter cw;
+        final EncodedValueLookup lookup;
+        final List<String> encodedValueNames;
+        final Code code;
+        final Map<String, Integer> locals = new HashMap<>();
+        final Map<String, Kind> kinds = new HashMap<>();
+        int nextLocal = FIRST_EV_LOCAL;
+
+        MethodWriter(ClassWriter cw, EncodedValueLookup lookup, List<String> encodedValueNames) {
+            this.cw = cw;
+            this.lookup = lookup;
+            this.encodedValueNames = encodedValueNames;
+            this.code = new Code(cw);
+        }
+
+        /**
+         * @param maxValue the value is limited to this at the end, if it is not negative
+         */
+        void writeMethod(List<Statement> statements, String rawMethod, double maxValue) throws NotSupportedException {
+            List<Java.Rvalue> conditions = new ArrayList<>(statements.size());
+            Set<String> names = new LinkedHashSet<>();
+            for (Statement statement : statements) {
+                if (statement.getKeyword() == Statement.Keyword.ELSE) {
+                    conditions.add(null);
+                } else {
+                    Java.Rvalue condition = parse(statement.getCondition());
+                    collectNames(condition, names);
+                    conditions.add(condition);
+                }
+            }
+
+            // double value = getRawXY(edge, reverse)
+            code.op(0x2a);
+            code.op(0x2b);
+            code.op(0x1c);
+            code.op(0xb6); // invokevirtual
+            code.u2(cw.methodRef(cw.name, rawMethod, EDGE_METHOD_DESC, false));
+            code.op(0x4a); // dstore_3
+            for (String name : names) {
+                readEncodedValue(name);
+            }
+
+            Label chainEnd = null;
+            for (int i = 0; i < statements.size(); i++) {
+                Statement statement = statements.get(i);
+                if (statement.getKeyword() == Statement.Keyword.IF) {
+                    if (chainEnd != null)
+                        code.place(chainEnd);
+                    chainEnd = new Label();
+                } else if (chainEnd == null) {
+                    // else or else_if without if, let Janino report the error
+                    throw new NotSupportedException();
+                }
+
+                if (statement.getKeyword() == Statement.Keyword.ELSE) {
+                    writeOperation(statement);
+                    code.place(chainEnd);
+                    chainEnd = null;
+                } else {
+                    Label next = new Label();
+                    jumpIfFalse(conditions.get(i), next);
+                    writeOperation(statement);
+                    code.jump(0xa7, chainEnd); // goto
+                    code.place(next);
+                }
+            }
+            if (chainEnd != null)
+                code.place(chainEnd);
+
+            code.op(0x29); // dload_3
+            if (maxValue >= 0) {
+                code.op(0x14); // ldc2_w
+                code.u2(cw.doubleConstant(maxValue));
+                code.op(0xb8); // invokestatic
+                code.u2(cw.methodRef("java/lang/Math", "min", "(DD)D", false));
+            }
+            code.op(0xaf); // dreturn
+            code.finish();
+        }
+
+        private Java.Rvalue parse(String condition) throws NotSupportedException {
+            try {
+                Parser parser = new Parser(new Scanner(null, new StringReader(condition)));
+                Java.Atom atom = parser.parseConditionalExpression();
+                Java.Rvalue rvalue = atom.toRvalue();
+                if (parser.peek().type != TokenType.END_OF_INPUT || rvalue == null)
+                    throw new NotSupportedException();
+                return rvalue;
+            } catch (NotSupportedException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new NotSupportedException();
+            }
+        }
+
+        private void collectNames(Java.Rvalue rv, Set<String> names) {
+            if (rv instanceof Java.ParenthesizedExpression) {
+                collectNames(((Java.ParenthesizedExpression) rv).value, names);
+            } else if (rv instanceof Java.UnaryOperation) {
+                collectNames(((Java.UnaryOperation) rv).operand, names);
+            } else if (rv instanceof Java.BinaryOperation) {
+                collectNames(((Java.BinaryOperation) rv).lhs, names);
+                collectNames(((Java.BinaryOperation) rv).rhs, names);
+            } else if (rv instanceof Java.AmbiguousName) {
+                String[] identifiers = ((Java.AmbiguousName) rv).identifiers;
+                if (identifiers.length == 1 && lookup.hasEncodedValue(identifiers[0]))
+                    names.add(identifiers[0]);
+            }
+        }
+
+        private void readEncodedValue(String name) throws NotSupportedException {
+            EncodedValue ev = lookup.getEncodedValue(name, EncodedValue.class);
+            Kind kind;
+            if (ev instanceof BooleanEncodedValue)
+                kind = Kind.BOOLEAN;
+            else if (ev instanceof DecimalEncodedValue)
+                kind = Kind.DECIMAL;
+            else if (ev instanceof EnumEncodedValue)
+                kind = Kind.ENUM;
+            else if (ev instanceof IntEncodedValue && !(ev instanceof StringEncodedValue))
+                kind = Kind.INT;
+            else
+                throw new NotSupportedException();
+
+            int index = encodedValueNames.indexOf(name);
+            if (index < 0) {
+                index = encodedValueNames.size();
+                encodedValueNames.add(name);
+            }
+            int local = nextLocal;
+            nextLocal += kind == Kind.DECIMAL ? 2 : 1;
+            if (nextLocal > 255)
+                throw new NotSupportedException();
+            locals.put(name, local);
+            kinds.put(name, kind);
+
+            // edge, (XEncodedValue) encodedValues[index]
+            code.op(0x2b);
+            code.op(0x2a);
+            code.op(0xb4); // getfield
+            code.u2(cw.fieldRef(cw.name, "encodedValues", "[Lcom/graphhopper/routing/ev/EncodedValue;"));
+            code.pushInt(index);
+            code.op(0x32); // aaload
+            code.op(0xc0); // checkcast
+            code.u2(cw.classRef(kind.type));
+            // reverse ? edge.getReverse(ev) : edge.get(ev)
+            Label forward = new Label(), done = new Label();
+            code.op(0x1c);
+            code.jump(0x99, forward); // ifeq
+            code.invokeInterface(EDGE, "getReverse", kind.desc);
+            code.jump(0xa7, done);
+            code.place(forward);
+            code.invokeInterface(EDGE, "get", kind.desc);
+            code.place(done);
+            code.op(kind == Kind.DECIMAL ? 0x39 : 0x36); // dstore or istore
+            code.u1(local);
+        }
+
+        private void writeOperation(Statement statement) throws NotSupportedException {
+            code.op(0x29); // dload_3
+            code.op(0x14); // ldc2_w
+            code.u2(cw.doubleConstant(statement.getValue()));
+            if (statement.getOperation() == Statement.Op.MULTIPLY) {
+                code.op(0x6b); // dmul
+            } else if (statement.getOperation() == Statement.Op.LIMIT) {
+                code.op(0xb8); // invokestatic
+                code.u2(cw.methodRef("java/lang/Math", "min", "(DD)D", false));
+            } else {
+                throw new NotSupportedException();
+            }
+            code.op(0x4a); // dstore_3
+        }
+
+        private void jumpIfFalse(Java.Rvalue rv, Label target) throws NotSupportedException {
+            if (rv instanceof Java.ParenthesizedExpression) {
+                jumpIfFalse(((Java.ParenthesizedExpression) rv).value, target);
+            } else if (rv instanceof Java.UnaryOperation && "!".equals(((Java.UnaryOperation) rv).operator)) {
+                jumpIfTrue(((Java.UnaryOperation) rv).operand, target);
+            } else if (rv instanceof Java.BinaryOperation) {
+                Java.BinaryOperation binOp = (Java.BinaryOperation) rv;
+                if ("&&".equals(binOp.operator)) {
+                    jumpIfFalse(binOp.lhs, target);
+                    jumpIfFalse(binOp.rhs, target);
+                } else if ("||".equals(binOp.operator)) {
+                    Label isTrue = new Label();
+                    jumpIfTrue(binOp.lhs, isTrue);
+                    jumpIfFalse(binOp.rhs, target);
+                    code.place(isTrue);
+                } else {
+                    compare(binOp, target, false);
+                }
+            } else if (rv instanceof Java.BooleanLiteral) {
+                if ("false".equals(((Java.BooleanLiteral) rv).value))
+                    code.jump(0xa7, target);
+            } else {
+                loadBoolean(rv);
+                code.jump(0x99, target); // ifeq
+            }
+        }
+
+        private void jumpIfTrue(Java.Rvalue rv, Label target) throws NotSupportedException {
+            if (rv instanceof Java.ParenthesizedExpression) {
+                jumpIfTrue(((Java.ParenthesizedExpression) rv).value, target);
+            } else if (rv instanceof Java.UnaryOperation && "!".equals(((Java.UnaryOperation) rv).operator)) {
+                jumpIfFalse(((Java.UnaryOperation) rv).operand, target);
+            } else if (rv instanceof Java.BinaryOperation) {
+                Java.BinaryOperation binOp = (Java.BinaryOperation) rv;
+                if ("&&".equals(binOp.operator)) {
+                    Label isFalse = new Label();
+                    jumpIfFalse(binOp.lhs, isFalse);
+                    jumpIfTrue(binOp.rhs, target);
+                    code.place(isFalse);
+                } else if ("||".equals(binOp.operator)) {
+                    jumpIfTrue(binOp.lhs, target);
+                    jumpIfTrue(binOp.rhs, target);
+                } else {
+                    compare(binOp, target, true);
+                }
+            } else if (rv instanceof Java.BooleanLiteral) {
+                if ("true".equals(((Java.BooleanLiteral) rv).value))
+                    code.jump(0xa7, target);
+            } else {
+                loadBoolean(rv);
+                code.jump(0x9a, target); // ifne
+            }
+        }
+
+        private void loadBoolean(Java.Rvalue rv) throws NotSupportedException {
+            if (kindOf(rv) != Kind.BOOLEAN)
+                throw new NotSupportedException();
+            code.op(0x15); // iload
+            code.u1(locals.get(((Java.AmbiguousName) rv).identifiers[0]));
+        }
+
+        private void compare(Java.BinaryOperation binOp, Label target, boolean jumpIfTrue) throws NotSupportedException {
+            String operator = binOp.operator;
+            if (kindOf(binOp.lhs) == Kind.ENUM) {
+                if (!operator.equals("==") && !operator.equals("!=") || !(binOp.rhs instanceof Java.AmbiguousName))
+                    throw new NotSupportedException();
+                String name = ((Java.AmbiguousName) binOp.lhs).identifiers[0];
+                String[] identifiers = ((Java.AmbiguousName) binOp.rhs).identifiers;
+                Enum<?>[] values = lookup.getEnumEncodedValue(name, Enum.class).getValues();
+                int ordinal = -1;
+                for (Enum<?> value : values) {
+                    if (identifiers.length == 1 && value.name().equals(identifiers[0]))
+                        ordinal = value.ordinal();
+                }
+                if (ordinal < 0)
+                    throw new NotSupportedException();
+                code.op(0x15); // iload
+                code.u1(locals.get(name));
+                code.pushInt(ordinal);
+                code.jump(operator.equals("==") == jumpIfTrue ? 0x9f : 0xa0, target); // if_icmpeq or if_icmpne
+                return;
+            }
+
+            Java.Rvalue ev = binOp.lhs, literal = binOp.rhs;
+            if (kindOf(ev) == null) {
+                ev = binOp.rhs;
+                literal = binOp.lhs;
+                operator = mirror(operator);
+            }
+            Kind kind = kindOf(ev);
+            if (kind != Kind.INT && kind != Kind.DECIMAL)
+                throw new NotSupportedException();
+            int local = locals.get(((Java.AmbiguousName) ev).identifiers[0]);
+            if (kind == Kind.INT) {
+                code.op(0x15); // iload
+                code.u1(local);
+                code.op(0x87); // i2d
+            } else {
+                code.op(0x18); // dload
+                code.u1(local);
+            }
+            code.op(0x14); // ldc2_w
+            code.u2(cw.doubleConstant(parseNumber(literal)));
+            // like javac: NaN must make < and <= false, so we use dcmpg for them and dcmpl otherwise
+            code.op(operator.equals("<") || operator.equals("<=") ? 0x98 : 0x97);
+            code.jump(jumpIfTrue ? branchIf(operator) : branchIf(negate(operator)), target);
+        }
+
+        private Kind kindOf(Java.Rvalue rv) {
+            if (!(rv instanceof Java.AmbiguousName) || ((Java.AmbiguousName) rv).identifiers.length != 1)
+                return null;
+            return kinds.get(((Java.AmbiguousName) rv).identifiers[0]);
+        }
+
+        private static double parseNumber(Java.Rvalue rv) throws NotSupportedException {
+            if (!(rv instanceof Java.IntegerLiteral) && !(rv instanceof Java.FloatingPointLiteral))
+                throw new NotSupportedException();
+            String value = ((Java.Literal) rv).value;
+            // hex, octal, underscores and float precision are left to Janino
+            if (value.contains("x") || value.contains("X") || value.contains("_") || value.endsWith("f") || value.endsWith("F")
+                    || rv instanceof Java.IntegerLiteral && value.length() > 1 && value.startsWith("0"))
+                throw new NotSupportedException();
+            try {
+                if (rv instanceof Java.IntegerLiteral)
+                    return Long.parseLong(value.endsWith("L") || value.endsWith("l") ? value.substring(0, value.length() - 1) : value);
+                return Double.parseDouble(value);
+            } catch (NumberFormatException ex) {
+                throw new NotSupportedException();
+            }
+        }
+
+        private static String mirror(String operator) throws NotSupportedException {
+            switch (operator) {
+                case "==":
+                case "!=":
+                    return operator;
+                case "<":
+                    return ">";
+                case "<=":
+                    return ">=";
+                case ">":
+                    return "<";
+                case ">=":
+                    return "<=";
+                default:
+                    throw new NotSupportedException();
+            }
+        }
+
+        private static String negate(String operator) throws NotSupportedException {
+            switch (operator) {
+                case "==":
+                    return "!=";
+                case "!=":
+                    return "==";
+                case "<":
+                    return ">=";
+                case "<=":
+                    return ">";
+                case ">":
+                    return "<=";
+                case ">=":
+                    return "<";
+                default:
+                    throw new NotSupportedException();
+            }
+        }
+
+        /**
+         * @return the opcode that jumps if the result of dcmpl or dcmpg fulfills the operator
+         */
+        private static int branchIf(String operator) throws NotSupportedException {
+            switch (operator) {
+                case "==":
+                    return 0x99; // ifeq
+                case "!=":
+                    return 0x9a; // ifne
+                case "<":
+                    return 0x9b; // iflt
+                case ">=":
+                    return 0x9c; // ifge
+                case ">":
+                    return 0x9d; // ifgt
+                case "<=":
+                    return 0x9e; // ifle
+                default:
+                    throw new NotSupportedException();
+            }
+        }
+    }
+
+    private static class Label {
+        int position = -1;
+        // pairs of the instruction position and the position of the offset
+        final List<int[]> jumps = new ArrayList<>();
+    }
+
+    private static class Code {
+        final ClassWriter cw;
+        byte[] bytes = new byte[256];
+        int length;
+        final List<Label> labels = new ArrayList<>();
+
+        Code(ClassWriter cw) {
+            this.cw = cw;
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void u1(int value) {
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            bytes[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value); // iconst_<n>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(0x10); // bipush
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(0x11); // sipush
+                u2(value);
+            } else {
+                throw new IllegalArgumentException("Value too big: " + value);
+            }
+        }
+
+        void invokeInterface(String owner, String name, String desc) {
+            op(0xb9);
+            u2(cw.methodRef(owner, name, desc, true));
+            u1(2); // the receiver and the encoded value
+            u1(0);
+        }
+
+        void jump(int opcode, Label label) {
+            label.jumps.add(new int[]{length, length + 1});
+            if (!labels.contains(label))
+                labels.add(label);
+            op(opcode);
+            u2(0);
+        }
+
+        void place(Label label) {
+            label.position = length;
+            if (!labels.contains(label))
+                labels.add(label);
+        }
+
+        void finish() throws NotSupportedException {
+            if (length > Short.MAX_VALUE)
+                // goto_w would be required
+                throw new NotSupportedException();
+            for (Label label : labels) {
+                if (label.position < 0)
+                    throw new IllegalStateException("Label was not placed");
+                for (int[] jump : label.jumps) {
+                    int offset = label.position - jump[0];
+                    bytes[jump[1]] = (byte) (offset >> 8);
+                    bytes[jump[1] + 1] = (byte) offset;
+                }
+            }
+        }
+    }
+
+    private static class ClassWriter {
+        final String name;
+        private final Map<String, Integer> constants = new HashMap<>();
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream poolOut = new DataOutputStream(pool);
+        private int poolCount = 1;
+        private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        private final DataOutputStream methodsOut = new DataOutputStream(methods);
+        private int methodCount;
+
+        ClassWriter(String name) {
+            this.name = name;
+        }
+
+        int utf8(String value) {
+            return constant("U" + value, 1, 1, out -> out.writeUTF(value));
+        }
+
+        int classRef(String className) {
+            int nameIndex = utf8(className);
+            return constant("C" + className, 7, 1, out -> out.writeShort(nameIndex));
+        }
+
+        int string(String value) {
+            int valueIndex = utf8(value);
+            return constant("S" + value, 8, 1, out -> out.writeShort(valueIndex));
+        }
+
+        int doubleConstant(double value) {
+            return constant("D" + Double.doubleToRawLongBits(value), 6, 2, out -> out.writeDouble(value));
+        }
+
+        int fieldRef(String owner, String field, String desc) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(field, desc);
+            return constant("F" + owner + "." + field + desc, 9, 1, out -> {
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        int methodRef(String owner, String method, String desc, boolean isInterface) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(method, desc);
+            return constant((isInterface ? "I" : "M") + owner + "." + method + desc, isInterface ? 11 : 10, 1, out -> {
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private int nameAndType(String memberName, String desc) {
+            int nameIndex = utf8(memberName);
+            int descIndex = utf8(desc);
+            return constant("N" + memberName + ":" + desc, 12, 1, out -> {
+                out.writeShort(nameIndex);
+                out.writeShort(descIndex);
+            });
+        }
+
+        private interface Writer {
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        private int constant(String key, int tag, int slots, Writer writer) {
+            Integer index = constants.get(key);
+            if (index != null)
+                return index;
+            try {
+                poolOut.writeByte(tag);
+                writer.write(poolOut);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            index = poolCount;
+            poolCount += slots;
+            constants.put(key, index);
+            return index;
+        }
+
+        void addMethod(int access, String methodName, String desc, Code code, int maxStack, int maxLocals) {
+            int nameIndex = utf8(methodName);
+            int descIndex = utf8(desc);
+            int codeIndex = utf8("Code");
+            try {
+                methodsOut.writeShort(access);
+                methodsOut.writeShort(nameIndex);
+                methodsOut.writeShort(descIndex);
+                methodsOut.writeShort(1);
+                methodsOut.writeShort(codeIndex);
+                methodsOut.writeInt(12 + code.length);
+                methodsOut.writeShort(maxStack);
+                methodsOut.writeShort(maxLocals);
+                methodsOut.writeInt(code.length);
+                methodsOut.write(code.bytes, 0, code.length);
+                // no exception table and no attributes
+                methodsOut.writeShort(0);
+                methodsOut.writeShort(0);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            methodCount++;
+        }
+
+        byte[] toByteArray() {
+            int thisIndex = classRef(name);
+            int superIndex = classRef(HELPER);
+            ByteArrayOutputStream result = new ByteArrayOutputStream(pool.size() + methods.size() + 32);
+            try (DataOutputStream out = new DataOutputStream(result)) {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(49);
+                out.writeShort(poolCount);
+                pool.writeTo(out);
+                // public super
+                out.writeShort(0x0021);
+                out.writeShort(thisIndex);
+                out.writeShort(superIndex);
+                // no interfaces and no fields
+                out.writeShort(0);
+                out.writeShort(0);
+                out.writeShort(methodCount);
+                methods.writeTo(out);
+                out.writeShort(0);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return result.toByteArray();
+        }
+    }
+}
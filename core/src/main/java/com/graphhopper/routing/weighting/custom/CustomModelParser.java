@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class CustomModelParser {
@@ -48,23 +49,21 @@ public class CustomModelParser {
     private static final Set<String> allowedNames = new HashSet<>(Arrays.asList("edge", "Math"));
     private static final boolean JANINO_DEBUG = Boolean.getBoolean(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_ENABLE);
     private static final String SCRIPT_FILE_DIR = System.getProperty(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_DIR, "./src/main/java/com/graphhopper/routing/weighting/custom");
+    // Most custom models only compare encoded values and can be written as bytecode directly, which is much faster
+    // than compiling them with Janino. The other custom models and debugging still use Janino.
+    private static final boolean BYTECODE = !JANINO_DEBUG && Boolean.parseBoolean(System.getProperty("graphhopper.custom_weighting.bytecode", "true"));
 
     // Without a cache the class creation takes 10-40ms which makes routingLM8 requests 20% slower on average.
     // CH requests and preparation is unaffected as cached weighting from preparation is used.
-    // Use accessOrder==true to remove oldest accessed entry, not oldest inserted.
+    // The least recently used classes are removed if there are too many or if their keys are too long in total.
     private static final int CACHE_SIZE = Integer.getInteger("graphhopper.custom_weighting.cache_size", 1000);
-    private static final Map<String, Class<?>> CACHE = Collections.synchronizedMap(
-            new LinkedHashMap<String, Class<?>>(CACHE_SIZE, 0.75f, true) {
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    return size() > CACHE_SIZE;
-                }
-            });
+    private static final long CACHE_MAX_KEY_LENGTH = Long.getLong("graphhopper.custom_weighting.cache_max_key_length", 10_000_000);
+    private static final CompiledClassCache CACHE = new CompiledClassCache(CACHE_SIZE, CACHE_MAX_KEY_LENGTH);
 
     // This internal cache ensures that the "internal" Weighting classes specified in the profiles, are never removed regardless
-    // of how frequent other Weightings are created and accessed. We only need to synchronize the get and put methods alone.
+    // of how frequent other Weightings are created and accessed.
     // E.g. we do not care for the race condition where two identical classes are requested and one of them is overwritten.
-    // TODO perf compare with ConcurrentHashMap, but I guess, if there is a difference at all, it is not big for small maps
-    private static final Map<String, Class<?>> INTERNAL_CACHE = Collections.synchronizedMap(new HashMap<>());
+    private static final Map<String, Class<?>> INTERNAL_CACHE = new ConcurrentHashMap<>();
 
     private CustomModelParser() {
         // utility class
@@ -83,6 +82,26 @@ public class CustomModelParser {
         return new CustomWeighting(baseFlagEncoder, turnCostProvider, parameters);
     }
 
+    /**
+     * Creates the weighting of a profile whose custom model was not changed by the request, which reads the speed
+     * and priority from the specified memoized values instead of evaluating the custom model.
+     */
+    public static CustomWeighting createWeighting(FlagEncoder baseFlagEncoder, EncodedValueLookup lookup,
+                                                  TurnCostProvider turnCostProvider, MemoizedSpeedAndPriority memoized) {
+        CustomModel customModel = memoized.getProfile().getCustomModel();
+        DecimalEncodedValue avgSpeedEnc = lookup.getDecimalEncodedValue(EncodingManager.getKey(baseFlagEncoder.toString(), "average_speed"));
+        final String pKey = EncodingManager.getKey(baseFlagEncoder.toString(), "priority");
+        DecimalEncodedValue priorityEnc = lookup.hasEncodedValue(pKey) ? lookup.getDecimalEncodedValue(pKey) : null;
+
+        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup,
+                avgSpeedEnc, baseFlagEncoder.getMaxSpeed(), priorityEnc);
+        return new CustomWeighting(baseFlagEncoder, turnCostProvider, new CustomWeighting.Parameters(
+                memoized.wrapSpeedMapping(parameters.getEdgeToSpeedMapping()),
+                memoized.wrapPriorityMapping(parameters.getEdgeToPriorityMapping()),
+                parameters.getMaxSpeed(), parameters.getMaxPriority(), parameters.getDistanceInfluence(),
+                parameters.getHeadingPenaltySeconds()));
+    }
+
     /**
      * This method compiles a new subclass of CustomWeightingHelper composed from the provided CustomModel caches this
      * and returns an instance.
@@ -94,24 +113,22 @@ public class CustomModelParser {
 
         final double maxSpeed = customModel.findMaxSpeed(globalMaxSpeed); // globalMaxSpeed can be lower than avgSpeedEnc.getMaxDecimal()
         final double maxPriority = customModel.findMaxPriority(priorityEnc == null ? 1 : priorityEnc.getMaxDecimal());
-        String key = customModel.toString() + ",maxSpeed:" + maxSpeed + ",maxPriority:" + maxPriority;
-        if (key.length() > 100_000) throw new IllegalArgumentException("Custom Model too big: " + key.length());
+        int length = customModel.toString().length();
+        if (length > 100_000) throw new IllegalArgumentException("Custom Model too big: " + length);
+        String key = createCacheKey(customModel, maxSpeed, maxPriority);
 
         Class<?> clazz = customModel.isInternal() ? INTERNAL_CACHE.get(key) : null;
-        if (CACHE_SIZE > 0 && clazz == null)
-            clazz = CACHE.get(key);
         if (clazz == null) {
-            clazz = createClazz(customModel, lookup, maxSpeed);
+            clazz = CACHE_SIZE > 0 ? CACHE.get(key, () -> createClazz(customModel, lookup, maxSpeed, BYTECODE))
+                    : createClazz(customModel, lookup, maxSpeed, BYTECODE);
             if (customModel.isInternal()) {
                 INTERNAL_CACHE.put(key, clazz);
                 if (INTERNAL_CACHE.size() > 100) {
-                    CACHE.putAll(INTERNAL_CACHE);
+                    int size = INTERNAL_CACHE.size();
                     INTERNAL_CACHE.clear();
                     LoggerFactory.getLogger(CustomModelParser.class).warn("Internal cache must stay small but was "
-                            + INTERNAL_CACHE.size() + ". Cleared it. Misuse of CustomModel::__internal_cache?");
+                            + size + ". Cleared it. Misuse of CustomModel::__internal_cache?");
                 }
-            } else if (CACHE_SIZE > 0) {
-                CACHE.put(key, clazz);
             }
         }
 
@@ -126,12 +143,52 @@ public class CustomModelParser {
         }
     }
 
-    private static Class<?> createClazz(CustomModel customModel, EncodedValueLookup lookup, double globalMaxSpeed) {
+    /**
+     * Creates a key that only contains what goes into the generated class: the statements, the maximum speed and
+     * priority and the names of the areas, but e.g. not the distance influence or the coordinates of the areas, which
+     * are passed to the created instance. Whitespace in the conditions is normalized.
+     */
+    static String createCacheKey(CustomModel customModel, double maxSpeed, double maxPriority) {
+        StringBuilder sb = new StringBuilder("speed:");
+        appendStatements(sb, customModel.getSpeed());
+        sb.append("|priority:");
+        appendStatements(sb, customModel.getPriority());
+        sb.append("|areas:");
+        // the validity of an area is checked when the class is created, so it must be part of the key
+        new TreeMap<>(customModel.getAreas()).forEach((id, feature) -> sb.append(id).append(isValidArea(feature) ? ',' : '!'));
+        return sb.append("|maxSpeed:").append(maxSpeed).append("|maxPriority:").append(maxPriority).toString();
+    }
+
+    private static void appendStatements(StringBuilder sb, List<Statement> statements) {
+        for (Statement statement : statements) {
+            String condition = statement.getCondition();
+            // do not touch string literals
+            if (condition != null && condition.indexOf('"') < 0 && condition.indexOf('\'') < 0)
+                condition = condition.trim().replaceAll("\\s+", " ");
+            sb.append(statement.getKeyword().getName()).append('(').append(condition).append(')')
+                    .append(statement.getOperation().getName()).append(statement.getValue()).append(';');
+        }
+    }
+
+    private static boolean isValidArea(JsonFeature feature) {
+        return feature != null && feature.getGeometry() instanceof Polygonal
+                && (feature.getProperties() == null || feature.getProperties().isEmpty()) && feature.getBBox() == null;
+    }
+
+    /**
+     * @param bytecode if true the class is written as bytecode if possible, otherwise Janino compiles it
+     */
+    static Class<?> createClazz(CustomModel customModel, EncodedValueLookup lookup, double globalMaxSpeed, boolean bytecode) {
         try {
             HashSet<String> priorityVariables = new LinkedHashSet<>();
             List<Java.BlockStatement> priorityStatements = createGetPriorityStatements(priorityVariables, customModel, lookup);
             HashSet<String> speedVariables = new LinkedHashSet<>();
             List<Java.BlockStatement> speedStatements = createGetSpeedStatements(speedVariables, customModel, lookup, globalMaxSpeed);
+            if (bytecode) {
+                Class<?> clazz = CustomModelBytecodeCompiler.compile(customModel, lookup, globalMaxSpeed);
+                if (clazz != null)
+                    return clazz;
+            }
             // Create different class name, which is required only for debugging.
             // TODO does it improve performance too? I.e. it could be that the JIT is confused if different classes
             //  have the same name and it mixes performance stats. See https://github.com/janino-compiler/janino/issues/137
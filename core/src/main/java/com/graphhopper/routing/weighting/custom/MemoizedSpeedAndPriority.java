@@ -0,0 +1,140 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the speed and the priority of the custom model of a profile for every edge and both directions, so that a
+ * query with the unchanged custom model reads two floats instead of evaluating the custom model for every edge. The
+ * values are calculated once after the import or when an existing graph is loaded without them, and must be
+ * calculated again if the edge flags change.
+ * <p>
+ * Virtual edges and loops are not stored, for them the custom model is evaluated as usual.
+ */
+public class MemoizedSpeedAndPriority {
+    private static final Logger logger = LoggerFactory.getLogger(MemoizedSpeedAndPriority.class);
+    // forward speed, backward speed, forward priority, backward priority
+    private static final int EDGE_BYTES = 16;
+
+    private final BaseGraph graph;
+    private final CustomProfile profile;
+    private final DataAccess dataAccess;
+    private int edges;
+
+    public MemoizedSpeedAndPriority(BaseGraph graph, Directory dir, CustomProfile profile) {
+        this.graph = graph;
+        this.profile = profile;
+        String name = "memoized_" + profile.getName();
+        this.dataAccess = dir.create(name, dir.getDefaultType(name, true));
+    }
+
+    public boolean loadExisting() {
+        if (!dataAccess.loadExisting())
+            return false;
+
+        GHUtility.checkDAVersion(dataAccess.getName(), Constants.VERSION_MEMOIZED_SPEED_AND_PRIORITY, dataAccess.getHeader(0));
+        if (dataAccess.getHeader(4) != profile.getVersion())
+            throw new IllegalStateException("Memoized speed and priority of profile '" + profile.getName() + "' do not match the configuration");
+        edges = dataAccess.getHeader(8);
+        return true;
+    }
+
+    /**
+     * Evaluates the custom model of the profile for all edges of the graph.
+     */
+    public void prepare(FlagEncoder encoder, EncodedValueLookup lookup) {
+        StopWatch sw = new StopWatch().start();
+        DecimalEncodedValue avgSpeedEnc = lookup.getDecimalEncodedValue(EncodingManager.getKey(encoder.toString(), "average_speed"));
+        String pKey = EncodingManager.getKey(encoder.toString(), "priority");
+        DecimalEncodedValue priorityEnc = lookup.hasEncodedValue(pKey) ? lookup.getDecimalEncodedValue(pKey) : null;
+        CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(profile.getCustomModel(),
+                lookup, avgSpeedEnc, encoder.getMaxSpeed(), priorityEnc);
+        CustomWeighting.EdgeToDoubleMapping speedMapping = parameters.getEdgeToSpeedMapping();
+        CustomWeighting.EdgeToDoubleMapping priorityMapping = parameters.getEdgeToPriorityMapping();
+
+        edges = graph.getEdges();
+        dataAccess.create((long) edges * EDGE_BYTES);
+        dataAccess.ensureCapacity((long) edges * EDGE_BYTES);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            // the iterator is in storage direction
+            long pointer = (long) iter.getEdge() * EDGE_BYTES;
+            dataAccess.setInt(pointer, Float.floatToRawIntBits((float) speedMapping.get(iter, false)));
+            dataAccess.setInt(pointer + 4, Float.floatToRawIntBits((float) speedMapping.get(iter, true)));
+            dataAccess.setInt(pointer + 8, Float.floatToRawIntBits((float) priorityMapping.get(iter, false)));
+            dataAccess.setInt(pointer + 12, Float.floatToRawIntBits((float) priorityMapping.get(iter, true)));
+        }
+        dataAccess.setHeader(0, Constants.VERSION_MEMOIZED_SPEED_AND_PRIORITY);
+        dataAccess.setHeader(4, profile.getVersion());
+        dataAccess.setHeader(8, edges);
+        logger.info("memoized speed and priority of profile " + profile.getName() + " in " + sw.stop().getSeconds()
+                + "s, edges: " + Helper.nf(edges));
+    }
+
+    /**
+     * @return a mapping that reads the stored speed and falls back to the specified mapping for edges that are not
+     * stored. The fallback must be created from the same custom model.
+     */
+    public CustomWeighting.EdgeToDoubleMapping wrapSpeedMapping(CustomWeighting.EdgeToDoubleMapping fallback) {
+        return (edge, reverse) -> get(edge, reverse, 0, fallback);
+    }
+
+    /**
+     * @see #wrapSpeedMapping
+     */
+    public CustomWeighting.EdgeToDoubleMapping wrapPriorityMapping(CustomWeighting.EdgeToDoubleMapping fallback) {
+        return (edge, reverse) -> get(edge, reverse, 8, fallback);
+    }
+
+    private double get(EdgeIteratorState edge, boolean reverse, int offset, CustomWeighting.EdgeToDoubleMapping fallback) {
+        int edgeId = edge.getEdge();
+        // for loops the direction depends on how the edge state was created, so we do not try to map it
+        if (edgeId >= edges || edge.getBaseNode() == edge.getAdjNode())
+            return fallback.get(edge, reverse);
+        // an odd edge key means the edge state is against the storage direction
+        boolean storageReverse = reverse != ((edge.getEdgeKey() & 1) == 1);
+        return Float.intBitsToFloat(dataAccess.getInt((long) edgeId * EDGE_BYTES + offset + (storageReverse ? 4 : 0)));
+    }
+
+    public CustomProfile getProfile() {
+        return profile;
+    }
+
+    public void flush() {
+        dataAccess.flush();
+    }
+
+    public void close() {
+        dataAccess.close();
+    }
+}
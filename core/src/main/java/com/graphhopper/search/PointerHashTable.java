@@ -0,0 +1,148 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.search;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.util.function.LongPredicate;
+
+/**
+ * An open addressing hash table of positive pointers into another storage, e.g. to find the existing copy of a
+ * value before it is stored again. Only the pointer and the hash of the content it points to are kept, the caller
+ * compares the content itself. The slots are kept in a DataAccess of the given Directory, so they are memory mapped
+ * if the graph is, and they are only created when the first pointer is added. The DataAccess is temporary and is
+ * removed again by clear.
+ */
+class PointerHashTable {
+    // 8 bytes pointer, 4 bytes hash, 4 bytes padding so that a slot never spans two segments
+    private static final int SLOT_BYTES = 16;
+    private static final int MIN_SLOTS = 1 << 10;
+    private final Directory dir;
+    private final String name;
+    private DataAccess slots;
+    private long slotCount;
+    private long size;
+    private int generation;
+
+    PointerHashTable(Directory dir, String name) {
+        this.dir = dir;
+        this.name = name;
+    }
+
+    /**
+     * @return the pointer with the given hash for which matches returns true, or -1 if there is none
+     */
+    long find(int hash, LongPredicate matches) {
+        if (slots == null)
+            return -1;
+        long mask = slotCount - 1;
+        for (long slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            long pointer = getPointer(slot);
+            if (pointer == 0)
+                return -1;
+            if (slots.getInt(slot * SLOT_BYTES + 8) == hash && matches.test(pointer))
+                return pointer;
+        }
+    }
+
+    /**
+     * Adds the given pointer, or replaces the pointer with the same hash for which sameContent returns true.
+     */
+    void put(int hash, long pointer, LongPredicate sameContent) {
+        if (pointer <= 0)
+            throw new IllegalArgumentException("Pointers must be positive, but was: " + pointer);
+        if (slots == null)
+            allocate(MIN_SLOTS);
+        else if (2 * (size + 1) > slotCount)
+            grow();
+        long mask = slotCount - 1;
+        for (long slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            long existing = getPointer(slot);
+            if (existing == 0) {
+                setSlot(slot, pointer, hash);
+                size++;
+                return;
+            }
+            if (slots.getInt(slot * SLOT_BYTES + 8) == hash && sameContent.test(existing)) {
+                setSlot(slot, pointer, hash);
+                return;
+            }
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Removes all pointers and the DataAccess of the slots
+     */
+    void clear() {
+        if (slots != null)
+            // the directory might have been closed already
+            dir.removeIfExists(slots.getName());
+        slots = null;
+        slotCount = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        DataAccess old = slots;
+        long oldCount = slotCount;
+        allocate(2 * slotCount);
+        long mask = slotCount - 1;
+        for (long oldSlot = 0; oldSlot < oldCount; oldSlot++) {
+            long pointer = old.getInt(oldSlot * SLOT_BYTES) & 0xFFFFFFFFL | (long) old.getInt(oldSlot * SLOT_BYTES + 4) << 32;
+            if (pointer == 0)
+                continue;
+            int hash = old.getInt(oldSlot * SLOT_BYTES + 8);
+            long slot = mix(hash) & mask;
+            while (getPointer(slot) != 0)
+                slot = (slot + 1) & mask;
+            setSlot(slot, pointer, hash);
+        }
+        dir.remove(old.getName());
+    }
+
+    private void allocate(long count) {
+        slotCount = count;
+        String slotsName = name + "_" + generation++;
+        // a memory mapped file of a previous run that was not removed must not be reused
+        dir.removeIfExists(slotsName);
+        // the slots of a new DataAccess are zero, i.e. empty
+        slots = dir.create(slotsName);
+        slots.create(count * SLOT_BYTES);
+        slots.ensureCapacity(count * SLOT_BYTES);
+    }
+
+    private long getPointer(long slot) {
+        return slots.getInt(slot * SLOT_BYTES) & 0xFFFFFFFFL | (long) slots.getInt(slot * SLOT_BYTES + 4) << 32;
+    }
+
+    private void setSlot(long slot, long pointer, int hash) {
+        slots.setInt(slot * SLOT_BYTES, (int) pointer);
+        slots.setInt(slot * SLOT_BYTES + 4, (int) (pointer >>> 32));
+        slots.setInt(slot * SLOT_BYTES + 8, hash);
+    }
+
+    private static long mix(int hash) {
+        // spread the bits, as similar strings have similar hash codes
+        return (hash * 0x9E3779B97F4A7C15L) >>> 20;
+    }
+}
@@ -31,6 +31,7 @@ import java.util.*;
  */
 public class StringIndex {
     private static final long EMPTY_POINTER = 0, START_POINTER = 1;
+    private static final byte[] EMPTY_BYTES = new byte[0];
     // Store the key index in 2 bytes. Use negative values for marking the value as duplicate.
     static final int MAX_UNIQUE_KEYS = (1 << 15);
     // Store string value as byte array and store the length into 1 byte
@@ -41,29 +42,29 @@ public class StringIndex {
     // 1 byte    | 2 bytes  | 1 byte      | x    | 2 bytes  | 1 byte      | x    | 2 bytes  (dup example) | 4 bytes | ...
     // vals count| key_idx_0| val_length_0| val_0| key_idx_1| val_length_1| val_1| -key_idx_2             | delta_2 | key_idx_3 | val_length_3 | val_3
     // Drawback: we need to loop through the entries to get the start of val_x.
-    // Note, that we detect duplicate values via smallCache and then use the negative key index as 'duplicate' marker.
+    // Note, that we detect duplicate values via valueDictionary and then use the negative key index as 'duplicate' marker.
     // We then store only the delta (signed int) instead the absolute unsigned long value to reduce memory usage when duplicate entries.
     private final DataAccess vals;
     // array.indexOf could be faster than hashmap.get if not too many keys or even sort keys and use binarySearch
     private final Map<String, Integer> keysInMem = new LinkedHashMap<>();
     private final List<String> keyList = new ArrayList<>();
-    private final Map<String, Long> smallCache;
+    // While adding we find every value and every entry that is already stored via these hash tables. Their slots
+    // point into vals: to the key index of a value and to the start of an entry.
+    private final PointerHashTable valueDictionary;
+    private final PointerHashTable entryDictionary;
     private long bytePointer = START_POINTER;
     private long lastEntryPointer = -1;
     private Map<String, String> lastEntryMap;
 
     /**
-     * Specify a larger cacheSize to reduce disk usage. Note that this increases the memory usage of this object.
+     * Every value and every combination of key-value pairs that is added is stored only once. The dictionaries for
+     * this are only kept until the next flush, so values that were added before do not count after loadExisting.
      */
-    public StringIndex(Directory dir, final int cacheSize, final int segmentSize) {
+    public StringIndex(Directory dir, final int segmentSize) {
         keys = dir.create("string_index_keys", segmentSize);
         vals = dir.create("string_index_vals", segmentSize);
-        smallCache = new LinkedHashMap<String, Long>(cacheSize, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, Long> entry) {
-                return size() > cacheSize;
-            }
-        };
+        valueDictionary = new PointerHashTable(dir, "string_index_value_dict");
+        entryDictionary = new PointerHashTable(dir, "string_index_entry_dict");
     }
 
     public StringIndex create(long initBytes) {
@@ -120,20 +121,61 @@ public class StringIndex {
         else if (entryMap.size() > 200)
             throw new IllegalArgumentException("Cannot store more than 200 entries per entry");
 
-        // This is a very important compressing mechanism due to the nature of OSM. Make this faster via precalculated hastcodes?
+        // This is a very important compressing mechanism due to the nature of OSM: consecutive edges of a way
+        // have the same entry, and so do the ways of a street.
         if (entryMap.equals(lastEntryMap))
             return lastEntryPointer;
+        // the key indices and the value bytes in the order of the entry map, which is also the order in which they are stored
+        int[] keyIndices = new int[entryMap.size()];
+        byte[][] values = new byte[entryMap.size()][];
+        boolean knownKeys = true;
+        int index = 0;
+        for (Map.Entry<String, String> entry : entryMap.entrySet()) {
+            Integer keyIndex = keysInMem.get(entry.getKey());
+            keyIndices[index] = keyIndex == null ? -1 : keyIndex;
+            knownKeys &= keyIndex != null;
+            // a null value is stored like an empty one, but an entry with a null value is not equal to the stored entry
+            values[index] = entry.getValue() == null ? null
+                    : entry.getValue().isEmpty() ? EMPTY_BYTES : getBytesForString("Value for key" + entry.getKey(), entry.getValue());
+            index++;
+        }
+        int entryHash = entryMap.hashCode();
+        // an entry with a new key cannot exist already
+        long existingEntry = knownKeys ? entryDictionary.find(entryHash, pointer -> equalEntry(pointer, keyIndices, values)) : -1;
+        if (existingEntry >= 0) {
+            lastEntryMap = entryMap;
+            lastEntryPointer = existingEntry;
+            return existingEntry;
+        }
 
         lastEntryMap = entryMap;
         lastEntryPointer = bytePointer;
-        // while adding there could be exceptions and we need to avoid that the bytePointer is modified
-        long currentPointer = bytePointer;
+        try {
+            bytePointer = addNew(entryMap, values, bytePointer);
+        } catch (RuntimeException ex) {
+            // the dictionaries must not point into the entry that was not stored
+            valueDictionary.clear();
+            entryDictionary.clear();
+            lastEntryMap = null;
+            throw ex;
+        }
+        entryDictionary.put(entryHash, lastEntryPointer, pointer -> false);
+        return lastEntryPointer;
+    }
 
+    /**
+     * @param values the bytes of the values in the order of the entry map
+     * @return the pointer behind the new entry
+     */
+    private long addNew(Map<String, String> entryMap, byte[][] values, long currentPointer) {
+        // while adding there could be exceptions and we need to avoid that the bytePointer is modified
         vals.ensureCapacity(currentPointer + 1);
         vals.setByte(currentPointer, (byte) entryMap.size());
         currentPointer += 1;
+        int index = 0;
         for (Map.Entry<String, String> entry : entryMap.entrySet()) {
-            String key = entry.getKey(), value = entry.getValue();
+            String key = entry.getKey();
+            byte[] valueBytes = values[index++];
             Integer keyIndex = keysInMem.get(key);
             if (keyIndex == null) {
                 keyIndex = keysInMem.size();
@@ -143,35 +185,34 @@ public class StringIndex {
                 keyList.add(key);
             }
 
-            if (value == null || value.isEmpty()) {
+            if (valueBytes == null || valueBytes.length == 0) {
                 vals.ensureCapacity(currentPointer + 3);
                 vals.setShort(currentPointer, keyIndex.shortValue());
                 // ensure that also in case of MMap value is set to 0
                 vals.setByte(currentPointer + 2, (byte) 0);
                 currentPointer += 3;
             } else {
-                Long existingRef = smallCache.get(value);
-                if (existingRef != null) {
+                int valueHash = Arrays.hashCode(valueBytes);
+                long existingRef = valueBytes.length > 3 ? valueDictionary.find(valueHash, pointer -> equalBytes(pointer + 2, valueBytes)) : -1;
+                if (existingRef >= 0) {
                     long delta = lastEntryPointer - existingRef;
                     if (delta < Integer.MAX_VALUE && delta > Integer.MIN_VALUE) {
                         vals.ensureCapacity(currentPointer + 2 + 4);
                         vals.setShort(currentPointer, (short) -keyIndex);
                         currentPointer += 2;
                         // do not store valueBytes.length as we know it already: it is 4!
-                        byte[] valueBytes = new byte[4];
-                        BitUtil.LITTLE.fromInt(valueBytes, (int) delta);
-                        vals.setBytes(currentPointer, valueBytes, valueBytes.length);
-                        currentPointer += valueBytes.length;
+                        byte[] deltaBytes = new byte[4];
+                        BitUtil.LITTLE.fromInt(deltaBytes, (int) delta);
+                        vals.setBytes(currentPointer, deltaBytes, deltaBytes.length);
+                        currentPointer += deltaBytes.length;
                         continue;
-                    } else {
-                        smallCache.remove(value);
                     }
                 }
 
-                byte[] valueBytes = getBytesForString("Value for key" + key, value);
-                // only cache value if storing via duplicate marker is valuable (the delta costs 4 bytes minus 1 due to omitted valueBytes.length storage)
+                // only remember the value if storing via duplicate marker is valuable (the delta costs 4 bytes minus 1 due to omitted valueBytes.length storage)
+                // if the existing value is too far away we replace it, so that the next duplicates are close again
                 if (valueBytes.length > 3)
-                    smallCache.put(value, currentPointer);
+                    valueDictionary.put(valueHash, currentPointer, pointer -> equalBytes(pointer + 2, valueBytes));
 
                 vals.ensureCapacity(currentPointer + 2 + 1 + valueBytes.length);
                 vals.setShort(currentPointer, keyIndex.shortValue());
@@ -182,8 +223,57 @@ public class StringIndex {
                 currentPointer += valueBytes.length;
             }
         }
-        bytePointer = currentPointer;
-        return lastEntryPointer;
+        return currentPointer;
+    }
+
+    /**
+     * @return true if the entry at the given pointer has exactly the given keys and values, which are compared in
+     * place without reading the entry into a map
+     */
+    private boolean equalEntry(long entryPointer, int[] keyIndices, byte[][] values) {
+        int keyCount = vals.getByte(entryPointer) & 0xFF;
+        if (keyCount != keyIndices.length)
+            return false;
+        long tmpPointer = entryPointer + 1;
+        for (int i = 0; i < keyCount; i++) {
+            int currentKeyIndex = vals.getShort(tmpPointer);
+            tmpPointer += 2;
+            long valuePointer;
+            if (currentKeyIndex < 0) {
+                currentKeyIndex = -currentKeyIndex;
+                valuePointer = entryPointer - getDelta(tmpPointer) + 2;
+                tmpPointer += 4;
+            } else {
+                valuePointer = tmpPointer;
+                tmpPointer += 1 + (vals.getByte(tmpPointer) & 0xFF);
+            }
+            // the keys of an entry are unique and there are only a few of them
+            int index = 0;
+            while (index < keyIndices.length && keyIndices[index] != currentKeyIndex)
+                index++;
+            if (index == keyIndices.length || values[index] == null || !equalBytes(valuePointer, values[index]))
+                return false;
+        }
+        return true;
+    }
+
+    private int getDelta(long pointer) {
+        return (vals.getByte(pointer) & 0xFF) | (vals.getByte(pointer + 1) & 0xFF) << 8
+                | (vals.getByte(pointer + 2) & 0xFF) << 16 | (vals.getByte(pointer + 3) & 0xFF) << 24;
+    }
+
+    /**
+     * @return true if the value with the length byte at the given pointer has the given bytes
+     */
+    private boolean equalBytes(long pointer, byte[] bytes) {
+        int length = vals.getByte(pointer) & 0xFF;
+        if (length != bytes.length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (vals.getByte(pointer + 1 + i) != bytes[i])
+                return false;
+        }
+        return true;
     }
 
     public Map<String, String> getAll(final long entryPointer) {
@@ -300,6 +390,9 @@ public class StringIndex {
     }
 
     public void flush() {
+        valueDictionary.clear();
+        entryDictionary.clear();
+        lastEntryMap = null;
         keys.setHeader(0, Constants.VERSION_STRING_IDX);
         keys.ensureCapacity(2);
         keys.setShort(0, (short) keysInMem.size());
@@ -322,6 +415,8 @@ public class StringIndex {
     }
 
     public void close() {
+        valueDictionary.clear();
+        entryDictionary.clear();
         keys.close();
         vals.close();
     }
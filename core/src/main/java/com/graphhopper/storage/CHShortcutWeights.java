@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+/**
+ * Shortcut weights that replace the weights stored in a {@link CHStorage}, e.g. after the weights of the base graph
+ * edges changed, see CHCustomization. In contrast to the CHStorage there is a weight for both directions of every
+ * shortcut, because a shortcut that was bidirectional during the preparation can have different weights per
+ * direction afterwards. For the same reason the skipped edges can be stored per direction as well, if the weight of
+ * a shortcut was calculated from other edges than the ones it skipped during the preparation.
+ */
+public class CHShortcutWeights {
+    private final float[] weights;
+    private final int[] skippedEdges;
+
+    public CHShortcutWeights(int shortcuts) {
+        this(shortcuts, false);
+    }
+
+    /**
+     * @param withSkippedEdges true if the skipped edges of the shortcuts are stored as well, otherwise the skipped
+     *                         edges of the CHStorage are used
+     */
+    public CHShortcutWeights(int shortcuts, boolean withSkippedEdges) {
+        weights = new float[shortcuts * 2];
+        skippedEdges = withSkippedEdges ? new int[shortcuts * 4] : null;
+    }
+
+    public int getShortcuts() {
+        return weights.length / 2;
+    }
+
+    /**
+     * @param reverse false for the direction from node A to node B of the shortcut, see {@link CHStorage#getNodeA}
+     */
+    public double getWeight(int shortcut, boolean reverse) {
+        return weights[shortcut * 2 + (reverse ? 1 : 0)];
+    }
+
+    public void setWeight(int shortcut, boolean reverse, double weight) {
+        weights[shortcut * 2 + (reverse ? 1 : 0)] = (float) weight;
+    }
+
+    public boolean hasSkippedEdges() {
+        return skippedEdges != null;
+    }
+
+    public int getSkippedEdge1(int shortcut, boolean reverse) {
+        return skippedEdges[shortcut * 4 + (reverse ? 2 : 0)];
+    }
+
+    public int getSkippedEdge2(int shortcut, boolean reverse) {
+        return skippedEdges[shortcut * 4 + (reverse ? 3 : 1)];
+    }
+
+    /**
+     * @param reverse false for the direction from node A to node B of the shortcut, see {@link CHStorage#getNodeA}
+     */
+    public void setSkippedEdges(int shortcut, boolean reverse, int skippedEdge1, int skippedEdge2) {
+        skippedEdges[shortcut * 4 + (reverse ? 2 : 0)] = skippedEdge1;
+        skippedEdges[shortcut * 4 + (reverse ? 3 : 1)] = skippedEdge2;
+    }
+
+    /**
+     * Copies all weights (and skipped edges) from another instance for the same {@link CHStorage}
+     */
+    public void copyFrom(CHShortcutWeights other) {
+        if (other.weights.length != weights.length)
+            throw new IllegalArgumentException("Cannot copy weights of " + other.getShortcuts() + " shortcuts to " + getShortcuts() + " shortcuts");
+        if (other.hasSkippedEdges() != hasSkippedEdges())
+            throw new IllegalArgumentException("Cannot copy weights " + (other.hasSkippedEdges() ? "with" : "without") + " skipped edges to weights "
+                    + (hasSkippedEdges() ? "with" : "without") + " skipped edges");
+        System.arraycopy(other.weights, 0, weights, 0, weights.length);
+        if (skippedEdges != null)
+            System.arraycopy(other.skippedEdges, 0, skippedEdges, 0, skippedEdges.length);
+    }
+}
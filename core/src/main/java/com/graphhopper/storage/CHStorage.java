@@ -61,6 +61,8 @@ public class CHStorage {
     private final int N_LEVEL, N_LAST_SC;
     private int nodeCHEntryBytes;
     private int nodeCount = -1;
+    // the nodes sorted by level, calculated on demand
+    private volatile int[] nodesByLevel;
 
     private boolean edgeBased;
     // some shortcuts exceed the maximum storable weight, and we count them here
@@ -271,6 +273,8 @@ public class CHStorage {
     }
 
     public void setLevel(long nodePointer, int level) {
+        if (nodesByLevel != null)
+            nodesByLevel = null;
         nodesCH.setInt(nodePointer + N_LEVEL, level);
     }
 
@@ -338,16 +342,36 @@ public class CHStorage {
     }
 
     public NodeOrderingProvider getNodeOrderingProvider() {
-        int numNodes = getNodes();
-        final int[] nodeOrdering = new int[numNodes];
         // the node ordering is the inverse of the ch levels
-        // if we really want to save some memory it could be still reasonable to not create the node ordering here,
-        // but search nodesCH for a given level on demand.
-        for (int i = 0; i < numNodes; ++i) {
-            int level = getLevel(toNodePointer(i));
-            nodeOrdering[level] = i;
+        return NodeOrderingProvider.fromArray(getNodesByLevel().clone());
+    }
+
+    /**
+     * @return the nodes sorted by increasing level. Nodes that were not contracted all have the highest level and
+     * come last. Nodes with the same level are sorted by id. The array is calculated once and must not be modified.
+     */
+    public int[] getNodesByLevel() {
+        int[] result = nodesByLevel;
+        if (result != null)
+            return result;
+        int numNodes = getNodes();
+        // counting sort, the levels are in [0, numNodes]
+        int[] starts = new int[numNodes + 2];
+        for (int node = 0; node < numNodes; node++) {
+            int level = getLevel(toNodePointer(node));
+            if (level < 0 || level > numNodes)
+                throw new IllegalStateException("Invalid level " + level + " for node " + node + ", nodes: " + numNodes);
+            starts[level + 1]++;
+        }
+        for (int level = 1; level < starts.length; level++) {
+            starts[level] += starts[level - 1];
+        }
+        result = new int[numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            result[starts[getLevel(toNodePointer(node))]++] = node;
         }
-        return NodeOrderingProvider.fromArray(nodeOrdering);
+        nodesByLevel = result;
+        return result;
     }
 
     public void debugPrint() {
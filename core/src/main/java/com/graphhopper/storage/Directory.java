@@ -51,6 +51,13 @@ public interface Directory {
      */
     void remove(String name);
 
+    /**
+     * Removes the specified object from the directory if it was created and its stored data in any case. Unlike
+     * {@link #remove} this does not require that the object was created before, e.g. to discard outdated data
+     * before it is loaded.
+     */
+    void removeIfExists(String name);
+
     /**
      * @return the default type of a newly created DataAccess object
      */
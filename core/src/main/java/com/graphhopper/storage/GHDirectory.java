@@ -176,6 +176,17 @@ public class GHDirectory implements Directory {
         removeBackingFile(old, name);
     }
 
+    @Override
+    public void removeIfExists(String name) {
+        DataAccess old = map.remove(name);
+        if (old != null) {
+            old.close();
+            removeBackingFile(old, name);
+        } else if (getDefault(name, typeFallback).isStoring()) {
+            removeDir(new File(location + name));
+        }
+    }
+
     private void removeBackingFile(DataAccess da, String name) {
         if (da.getType().isStoring())
             removeDir(new File(location + name));
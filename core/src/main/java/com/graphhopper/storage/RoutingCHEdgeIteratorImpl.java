@@ -30,15 +30,28 @@ public class RoutingCHEdgeIteratorImpl extends RoutingCHEdgeIteratorStateImpl im
     private int nextEdgeId;
 
     public static RoutingCHEdgeIteratorImpl outEdges(CHStorage chStore, BaseGraph baseGraph, Weighting weighting) {
-        return new RoutingCHEdgeIteratorImpl(chStore, baseGraph, weighting, true, false);
+        return outEdges(chStore, baseGraph, weighting, null);
     }
 
     public static RoutingCHEdgeIteratorImpl inEdges(CHStorage chStore, BaseGraph baseGraph, Weighting weighting) {
-        return new RoutingCHEdgeIteratorImpl(chStore, baseGraph, weighting, false, true);
+        return inEdges(chStore, baseGraph, weighting, null);
+    }
+
+    public static RoutingCHEdgeIteratorImpl outEdges(CHStorage chStore, BaseGraph baseGraph, Weighting weighting, CHShortcutWeights shortcutWeights) {
+        return new RoutingCHEdgeIteratorImpl(chStore, baseGraph, weighting, shortcutWeights, true, false);
+    }
+
+    public static RoutingCHEdgeIteratorImpl inEdges(CHStorage chStore, BaseGraph baseGraph, Weighting weighting, CHShortcutWeights shortcutWeights) {
+        return new RoutingCHEdgeIteratorImpl(chStore, baseGraph, weighting, shortcutWeights, false, true);
     }
 
     public RoutingCHEdgeIteratorImpl(CHStorage chStore, BaseGraph baseGraph, Weighting weighting, boolean outgoing, boolean incoming) {
-        super(chStore, baseGraph, new BaseGraph.EdgeIteratorImpl(baseGraph, EdgeFilter.ALL_EDGES), weighting);
+        this(chStore, baseGraph, weighting, null, outgoing, incoming);
+    }
+
+    public RoutingCHEdgeIteratorImpl(CHStorage chStore, BaseGraph baseGraph, Weighting weighting, CHShortcutWeights shortcutWeights,
+                                     boolean outgoing, boolean incoming) {
+        super(chStore, baseGraph, new BaseGraph.EdgeIteratorImpl(baseGraph, EdgeFilter.ALL_EDGES), weighting, shortcutWeights);
         this.baseIterator = (BaseGraph.EdgeIteratorImpl) super.baseEdgeState;
         this.outgoing = outgoing;
         this.incoming = incoming;
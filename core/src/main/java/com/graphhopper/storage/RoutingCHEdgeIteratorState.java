@@ -66,6 +66,23 @@ public interface RoutingCHEdgeIteratorState {
      */
     int getSkippedEdge2();
 
+    /**
+     * Like {@link #getSkippedEdge1()}, but for the direction in which the shortcut is traversed. The skipped edges of
+     * a shortcut can depend on the direction if its weights were customized, see {@link CHShortcutWeights}.
+     *
+     * @param reverse false for the direction from the base node to the adjacent node
+     */
+    default int getSkippedEdge1(boolean reverse) {
+        return getSkippedEdge1();
+    }
+
+    /**
+     * The second skipped edge for the direction in which the shortcut is traversed, see {@link #getSkippedEdge1(boolean)}
+     */
+    default int getSkippedEdge2(boolean reverse) {
+        return getSkippedEdge2();
+    }
+
     double getWeight(boolean reverse);
 
 }
@@ -27,6 +27,7 @@ public class RoutingCHEdgeIteratorStateImpl implements RoutingCHEdgeIteratorStat
     final CHStorage store;
     final BaseGraph baseGraph;
     private final Weighting weighting;
+    private final CHShortcutWeights shortcutWeights;
     int edgeId = -1;
     int baseNode;
     int adjNode;
@@ -34,10 +35,16 @@ public class RoutingCHEdgeIteratorStateImpl implements RoutingCHEdgeIteratorStat
     long shortcutPointer = -1;
 
     public RoutingCHEdgeIteratorStateImpl(CHStorage store, BaseGraph baseGraph, BaseGraph.EdgeIteratorStateImpl baseEdgeState, Weighting weighting) {
+        this(store, baseGraph, baseEdgeState, weighting, null);
+    }
+
+    public RoutingCHEdgeIteratorStateImpl(CHStorage store, BaseGraph baseGraph, BaseGraph.EdgeIteratorStateImpl baseEdgeState, Weighting weighting,
+                                          CHShortcutWeights shortcutWeights) {
         this.store = store;
         this.baseGraph = baseGraph;
         this.baseEdgeState = baseEdgeState;
         this.weighting = weighting;
+        this.shortcutWeights = shortcutWeights;
     }
 
     boolean init(int edge, int expectedAdjNode) {
@@ -114,9 +121,28 @@ public class RoutingCHEdgeIteratorStateImpl implements RoutingCHEdgeIteratorStat
         return store.getSkippedEdge2(shortcutPointer);
     }
 
+    @Override
+    public int getSkippedEdge1(boolean reverse) {
+        checkShortcut(true, "getSkippedEdge1");
+        if (shortcutWeights != null && shortcutWeights.hasSkippedEdges())
+            return shortcutWeights.getSkippedEdge1(edgeId - baseGraph.getEdges(), reverse != (baseNode != store.getNodeA(shortcutPointer)));
+        return store.getSkippedEdge1(shortcutPointer);
+    }
+
+    @Override
+    public int getSkippedEdge2(boolean reverse) {
+        checkShortcut(true, "getSkippedEdge2");
+        if (shortcutWeights != null && shortcutWeights.hasSkippedEdges())
+            return shortcutWeights.getSkippedEdge2(edgeId - baseGraph.getEdges(), reverse != (baseNode != store.getNodeA(shortcutPointer)));
+        return store.getSkippedEdge2(shortcutPointer);
+    }
+
     @Override
     public double getWeight(boolean reverse) {
         if (isShortcut()) {
+            if (shortcutWeights != null)
+                // the shortcut weights are stored in the direction from node A to node B
+                return shortcutWeights.getWeight(edgeId - baseGraph.getEdges(), reverse != (baseNode != store.getNodeA(shortcutPointer)));
             return store.getWeight(shortcutPointer);
         } else {
             return getOrigEdgeWeight(reverse, true);
@@ -43,6 +43,11 @@ public interface RoutingCHGraph {
 
     int getLevel(int node);
 
+    /**
+     * @return the nodes of the base graph sorted by increasing level, see {@link CHStorage#getNodesByLevel()}
+     */
+    int[] getNodesByLevel();
+
     double getTurnWeight(int inEdge, int viaNode, int outEdge);
 
     /**
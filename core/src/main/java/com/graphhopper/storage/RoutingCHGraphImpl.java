@@ -24,17 +24,29 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
     private final BaseGraph baseGraph;
     private final CHStorage chStorage;
     private final Weighting weighting;
+    private final CHShortcutWeights shortcutWeights;
 
     public static RoutingCHGraph fromGraph(BaseGraph baseGraph, CHStorage chStorage, CHConfig chConfig) {
         return new RoutingCHGraphImpl(baseGraph, chStorage, chConfig.getWeighting());
     }
 
     public RoutingCHGraphImpl(BaseGraph baseGraph, CHStorage chStorage, Weighting weighting) {
+        this(baseGraph, chStorage, weighting, null);
+    }
+
+    /**
+     * @param shortcutWeights the weights of the shortcuts that are used instead of the weights stored in the
+     *                        CHStorage, or null. They must be consistent with the specified weighting.
+     */
+    public RoutingCHGraphImpl(BaseGraph baseGraph, CHStorage chStorage, Weighting weighting, CHShortcutWeights shortcutWeights) {
+        if (shortcutWeights != null && shortcutWeights.getShortcuts() != chStorage.getShortcuts())
+            throw new IllegalArgumentException("There are " + shortcutWeights.getShortcuts() + " shortcut weights, but " + chStorage.getShortcuts() + " shortcuts");
         if (weighting.hasTurnCosts() && !chStorage.isEdgeBased())
             throw new IllegalArgumentException("Weighting has turn costs, but CHStorage is node-based");
         this.baseGraph = baseGraph;
         this.chStorage = chStorage;
         this.weighting = weighting;
+        this.shortcutWeights = shortcutWeights;
     }
 
     @Override
@@ -54,18 +66,18 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
 
     @Override
     public RoutingCHEdgeExplorer createInEdgeExplorer() {
-        return RoutingCHEdgeIteratorImpl.inEdges(chStorage, baseGraph, weighting);
+        return RoutingCHEdgeIteratorImpl.inEdges(chStorage, baseGraph, weighting, shortcutWeights);
     }
 
     @Override
     public RoutingCHEdgeExplorer createOutEdgeExplorer() {
-        return RoutingCHEdgeIteratorImpl.outEdges(chStorage, baseGraph, weighting);
+        return RoutingCHEdgeIteratorImpl.outEdges(chStorage, baseGraph, weighting, shortcutWeights);
     }
 
     @Override
     public RoutingCHEdgeIteratorState getEdgeIteratorState(int chEdge, int adjNode) {
         RoutingCHEdgeIteratorStateImpl edgeState =
-                new RoutingCHEdgeIteratorStateImpl(chStorage, baseGraph, new BaseGraph.EdgeIteratorStateImpl(baseGraph), weighting);
+                new RoutingCHEdgeIteratorStateImpl(chStorage, baseGraph, new BaseGraph.EdgeIteratorStateImpl(baseGraph), weighting, shortcutWeights);
         if (edgeState.init(chEdge, adjNode))
             return edgeState;
         // if edgeId exists, but adjacent nodes do not match
@@ -77,11 +89,20 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
         return chStorage.getLevel(chStorage.toNodePointer(node));
     }
 
+    @Override
+    public int[] getNodesByLevel() {
+        return chStorage.getNodesByLevel();
+    }
+
     @Override
     public Graph getBaseGraph() {
         return baseGraph;
     }
 
+    public CHStorage getCHStorage() {
+        return chStorage;
+    }
+
     @Override
     public Weighting getWeighting() {
         return weighting;
@@ -0,0 +1,375 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.routing.ev.EnumEncodedValue;
+import com.graphhopper.routing.ev.RoadClass;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.BBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Stores a generalized version of the road network for a few zoom levels, e.g. to quickly create vector tiles with a
+ * low zoom. For every zoom level only the visible road classes are kept, chains of edges with the same road class
+ * and name are merged and the merged geometry is simplified with Douglas-Peucker using a tolerance of roughly half a
+ * pixel. The resulting road chains are stored in a DataAccess together with a grid index of web mercator tiles so
+ * that a tile can be created without a bbox query of the location index.
+ * <p>
+ * Every chain references one of its edges so that further properties like the name can be read from the graph.
+ */
+public class SimplifiedRoadNetwork {
+    private static final Logger logger = LoggerFactory.getLogger(SimplifiedRoadNetwork.class);
+    /**
+     * The grid index uses tiles of at most this zoom, to limit the size of the index for large areas
+     */
+    static final int MAX_GRID_ZOOM = 10;
+    private static final int MAX_CHAIN_POINTS = 256;
+    private static final int LEVEL_INTS = 8;
+    // meters per pixel at zoom 0 for 256px tiles
+    private static final double EQUATOR_METERS_PER_PIXEL = 156543.03;
+
+    private final BaseGraph graph;
+    private final DataAccess dataAccess;
+    private int[] zooms = new int[0];
+    private int[][] levels = new int[0][];
+
+    public SimplifiedRoadNetwork(BaseGraph graph, Directory dir) {
+        this.graph = graph;
+        this.dataAccess = dir.create("simplified_roads", dir.getDefaultType("simplified_roads", true));
+    }
+
+    /**
+     * Returns true if the specified road class is shown for the specified zoom level. Below zoom 11 only motorways
+     * are visible.
+     */
+    public static boolean isVisible(RoadClass roadClass, int zoom) {
+        return roadClass == RoadClass.MOTORWAY
+                || zoom > 10 && (roadClass == RoadClass.PRIMARY || roadClass == RoadClass.TRUNK)
+                || zoom > 11 && roadClass == RoadClass.SECONDARY
+                || zoom > 12;
+    }
+
+    public boolean loadExisting() {
+        if (!dataAccess.loadExisting())
+            return false;
+
+        GHUtility.checkDAVersion("simplified_roads", Constants.VERSION_SIMPLIFIED_ROADS, dataAccess.getHeader(0));
+        int levelCount = dataAccess.getHeader(4);
+        zooms = new int[levelCount];
+        levels = new int[levelCount][];
+        for (int i = 0; i < levelCount; i++) {
+            levels[i] = new int[LEVEL_INTS];
+            for (int j = 0; j < LEVEL_INTS; j++) {
+                levels[i][j] = dataAccess.getInt((long) (i * LEVEL_INTS + j) * 4);
+            }
+            zooms[i] = levels[i][0];
+        }
+        return true;
+    }
+
+    /**
+     * Creates the simplified road chains for the specified zoom levels.
+     */
+    public void prepare(EnumEncodedValue<RoadClass> roadClassEnc, int[] zoomLevels) {
+        StopWatch sw = new StopWatch().start();
+        zooms = zoomLevels.clone();
+        Arrays.sort(zooms);
+        for (int i = 1; i < zooms.length; i++) {
+            if (zooms[i] == zooms[i - 1])
+                throw new IllegalArgumentException("Duplicate zoom level " + zooms[i]);
+        }
+        if (zooms.length > 0 && (zooms[0] < 0 || zooms[zooms.length - 1] > 20))
+            throw new IllegalArgumentException("Zoom levels must be in [0, 20] but were " + Arrays.toString(zooms));
+
+        dataAccess.create(64 * 1024);
+        levels = new int[zooms.length][];
+        // the level table is followed by the road chains and cell index of every level
+        int intPointer = zooms.length * LEVEL_INTS;
+        int chainCount = 0;
+        for (int i = 0; i < zooms.length; i++) {
+            List<PointList> chains = new ArrayList<>();
+            IntArrayList chainEdges = new IntArrayList();
+            createChains(roadClassEnc, zooms[i], chains, chainEdges);
+            chainCount += chains.size();
+            levels[i] = new int[LEVEL_INTS];
+            intPointer = storeLevel(levels[i], zooms[i], chains, chainEdges, intPointer);
+            for (int j = 0; j < LEVEL_INTS; j++) {
+                dataAccess.setInt((long) (i * LEVEL_INTS + j) * 4, levels[i][j]);
+            }
+        }
+        dataAccess.setHeader(0, Constants.VERSION_SIMPLIFIED_ROADS);
+        dataAccess.setHeader(4, zooms.length);
+        logger.info("simplified roads created in " + sw.stop().getSeconds() + "s, zooms: " + Arrays.toString(zooms)
+                + ", chains: " + Helper.nf(chainCount) + ", size: " + Helper.nf(intPointer * 4L));
+    }
+
+    private void createChains(EnumEncodedValue<RoadClass> roadClassEnc, int zoom, List<PointList> chains, IntArrayList chainEdges) {
+        int[] degree = new int[graph.getNodes()];
+        BitSet accepted = new BitSet(graph.getEdges());
+        AllEdgesIterator allIter = graph.getAllEdges();
+        while (allIter.next()) {
+            if (!isVisible(allIter.get(roadClassEnc), zoom))
+                continue;
+            accepted.set(allIter.getEdge());
+            degree[allIter.getBaseNode()]++;
+            degree[allIter.getAdjNode()]++;
+        }
+
+        DouglasPeucker douglasPeucker = new DouglasPeucker().setMaxDistance(EQUATOR_METERS_PER_PIXEL / (1 << zoom) / 2);
+        BitSet visited = new BitSet(graph.getEdges());
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        EdgeExplorer chainExplorer = graph.createEdgeExplorer();
+        // start at the junctions and dead ends ...
+        for (int node = 0; node < degree.length; node++) {
+            if (degree[node] == 0 || degree[node] == 2)
+                continue;
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (accepted.get(iter.getEdge()) && !visited.get(iter.getEdge()))
+                    addChain(graph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()), roadClassEnc, degree, accepted,
+                            visited, chainExplorer, douglasPeucker, chains, chainEdges);
+            }
+        }
+        // ... and then pick up what is left, i.e. cycles and chains that were split as they were too long
+        for (int edge = accepted.nextSetBit(0); edge >= 0; edge = accepted.nextSetBit(edge + 1)) {
+            if (!visited.get(edge))
+                addChain(graph.getEdgeIteratorState(edge, Integer.MIN_VALUE), roadClassEnc, degree, accepted,
+                        visited, chainExplorer, douglasPeucker, chains, chainEdges);
+        }
+    }
+
+    private void addChain(EdgeIteratorState edge, EnumEncodedValue<RoadClass> roadClassEnc, int[] degree, BitSet accepted,
+                          BitSet visited, EdgeExplorer explorer, DouglasPeucker douglasPeucker,
+                          List<PointList> chains, IntArrayList chainEdges) {
+        RoadClass roadClass = edge.get(roadClassEnc);
+        String name = edge.getName();
+        PointList chain = new PointList(16, false);
+        chainEdges.add(edge.getEdge());
+        while (true) {
+            visited.set(edge.getEdge());
+            PointList points = edge.fetchWayGeometry(chain.isEmpty() ? FetchMode.ALL : FetchMode.PILLAR_AND_ADJ);
+            for (int i = 0; i < points.size(); i++) {
+                chain.add(points.getLat(i), points.getLon(i));
+            }
+            int node = edge.getAdjNode();
+            if (degree[node] != 2 || chain.size() > MAX_CHAIN_POINTS)
+                break;
+
+            EdgeIteratorState next = null;
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (accepted.get(iter.getEdge()) && !visited.get(iter.getEdge())
+                        && iter.get(roadClassEnc) == roadClass && Objects.equals(iter.getName(), name)) {
+                    next = graph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode());
+                    break;
+                }
+            }
+            if (next == null)
+                break;
+            edge = next;
+        }
+        douglasPeucker.simplify(chain);
+        chains.add(chain);
+    }
+
+    private int storeLevel(int[] level, int zoom, List<PointList> chains, IntArrayList chainEdges, int intPointer) {
+        int gridZoom = Math.min(zoom, MAX_GRID_ZOOM);
+        BBox bounds = graph.getBounds();
+        int minX = tileX(bounds.minLon, gridZoom), maxX = tileX(bounds.maxLon, gridZoom);
+        int minY = tileY(bounds.maxLat, gridZoom), maxY = tileY(bounds.minLat, gridZoom);
+        int width = maxX - minX + 1, height = maxY - minY + 1;
+        IntArrayList[] cells = new IntArrayList[width * height];
+        IntHashSet chainCells = new IntHashSet();
+        for (int chainIndex = 0; chainIndex < chains.size(); chainIndex++) {
+            PointList chain = chains.get(chainIndex);
+            int chainPointer = intPointer;
+            dataAccess.ensureCapacity((intPointer + 6L + 2L * chain.size()) * 4);
+            BBox bbox = BBox.createInverse(false);
+            for (int i = 0; i < chain.size(); i++) {
+                bbox.update(chain.getLat(i), chain.getLon(i));
+            }
+            dataAccess.setInt(intPointer++ * 4L, chainEdges.get(chainIndex));
+            dataAccess.setInt(intPointer++ * 4L, chain.size());
+            dataAccess.setInt(intPointer++ * 4L, Helper.degreeToInt(bbox.minLat));
+            dataAccess.setInt(intPointer++ * 4L, Helper.degreeToInt(bbox.minLon));
+            dataAccess.setInt(intPointer++ * 4L, Helper.degreeToInt(bbox.maxLat));
+            dataAccess.setInt(intPointer++ * 4L, Helper.degreeToInt(bbox.maxLon));
+            chainCells.clear();
+            for (int i = 0; i < chain.size(); i++) {
+                dataAccess.setInt(intPointer++ * 4L, Helper.degreeToInt(chain.getLat(i)));
+                dataAccess.setInt(intPointer++ * 4L, Helper.degreeToInt(chain.getLon(i)));
+                if (i > 0) {
+                    // add the chain to all cells of the bbox of this segment
+                    int x1 = tileX(chain.getLon(i - 1), gridZoom), x2 = tileX(chain.getLon(i), gridZoom);
+                    int y1 = tileY(chain.getLat(i - 1), gridZoom), y2 = tileY(chain.getLat(i), gridZoom);
+                    for (int x = Math.max(minX, Math.min(x1, x2)); x <= Math.min(maxX, Math.max(x1, x2)); x++) {
+                        for (int y = Math.max(minY, Math.min(y1, y2)); y <= Math.min(maxY, Math.max(y1, y2)); y++) {
+                            chainCells.add((y - minY) * width + (x - minX));
+                        }
+                    }
+                }
+            }
+            for (IntCursor cell : chainCells) {
+                if (cells[cell.value] == null)
+                    cells[cell.value] = new IntArrayList(4);
+                cells[cell.value].add(chainPointer);
+            }
+        }
+
+        // the cell index stores the start pointer of every cell plus the end pointer of the last cell
+        int cellsPointer = intPointer;
+        int entryPointer = cellsPointer + cells.length + 1;
+        dataAccess.ensureCapacity((entryPointer + 1L) * 4);
+        for (int cell = 0; cell < cells.length; cell++) {
+            dataAccess.setInt((cellsPointer + (long) cell) * 4, entryPointer);
+            if (cells[cell] == null)
+                continue;
+            dataAccess.ensureCapacity((entryPointer + cells[cell].size() + 1L) * 4);
+            for (IntCursor chainPointer : cells[cell]) {
+                dataAccess.setInt(entryPointer++ * 4L, chainPointer.value);
+            }
+        }
+        dataAccess.setInt((cellsPointer + (long) cells.length) * 4, entryPointer);
+
+        level[0] = zoom;
+        level[1] = gridZoom;
+        level[2] = minX;
+        level[3] = minY;
+        level[4] = width;
+        level[5] = height;
+        level[6] = cellsPointer;
+        return entryPointer;
+    }
+
+    /**
+     * @return the biggest zoom that is stored or -1 if there is no zoom level
+     */
+    public int getMaxZoom() {
+        return zooms.length == 0 ? -1 : zooms[zooms.length - 1];
+    }
+
+    public int[] getZooms() {
+        return zooms.clone();
+    }
+
+    /**
+     * Passes all road chains that intersect the specified web mercator tile to the visitor. The road chains are taken
+     * from the biggest stored zoom level that is not bigger than the specified zoom.
+     *
+     * @return false if there is no zoom level for the specified zoom
+     */
+    public boolean query(int zoom, int tileX, int tileY, RoadVisitor visitor) {
+        int levelIndex = -1;
+        for (int i = 0; i < zooms.length && zooms[i] <= zoom; i++) {
+            levelIndex = i;
+        }
+        if (levelIndex < 0)
+            return false;
+
+        int[] level = levels[levelIndex];
+        int shift = zoom - level[1];
+        int cellX = (tileX >> shift) - level[2], cellY = (tileY >> shift) - level[3];
+        if (cellX < 0 || cellY < 0 || cellX >= level[4] || cellY >= level[5])
+            return true;
+
+        BBox tile = tileToBBox(tileX, tileY, zoom);
+        int tileMinLat = Helper.degreeToInt(tile.minLat), tileMinLon = Helper.degreeToInt(tile.minLon);
+        int tileMaxLat = Helper.degreeToInt(tile.maxLat), tileMaxLon = Helper.degreeToInt(tile.maxLon);
+        long cellPointer = level[6] + (long) cellY * level[4] + cellX;
+        int start = dataAccess.getInt(cellPointer * 4), end = dataAccess.getInt((cellPointer + 1) * 4);
+        PointList points = new PointList(MAX_CHAIN_POINTS, false);
+        for (int entry = start; entry < end; entry++) {
+            long pointer = dataAccess.getInt(entry * 4L) * 4L;
+            if (dataAccess.getInt(pointer + 8) > tileMaxLat || dataAccess.getInt(pointer + 12) > tileMaxLon
+                    || dataAccess.getInt(pointer + 16) < tileMinLat || dataAccess.getInt(pointer + 20) < tileMinLon)
+                continue;
+
+            int edge = dataAccess.getInt(pointer);
+            int size = dataAccess.getInt(pointer + 4);
+            points.clear();
+            pointer += 24;
+            for (int i = 0; i < size; i++, pointer += 8) {
+                points.add(Helper.intToDegree(dataAccess.getInt(pointer)), Helper.intToDegree(dataAccess.getInt(pointer + 4)));
+            }
+            visitor.onRoad(edge, points);
+        }
+        return true;
+    }
+
+    public static int tileX(double lon, int zoom) {
+        int n = 1 << zoom;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((lon + 180) / 360 * n)));
+    }
+
+    public static int tileY(double lat, int zoom) {
+        int n = 1 << zoom;
+        double latRad = Math.toRadians(lat);
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n)));
+    }
+
+    /**
+     * @return the area of the specified web mercator tile
+     */
+    public static BBox tileToBBox(int tileX, int tileY, int zoom) {
+        double n = Math.pow(2, zoom);
+        double minLon = tileX / n * 360.0 - 180.0;
+        double maxLon = (tileX + 1) / n * 360.0 - 180.0;
+        // unfortunately latitude numbers goes from north to south
+        double maxLat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * tileY / n))));
+        double minLat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * (tileY + 1) / n))));
+        BBox bbox = new BBox(minLon, maxLon, minLat, maxLat);
+        if (!bbox.isValid())
+            throw new IllegalStateException("Invalid bbox " + bbox);
+        return bbox;
+    }
+
+    public void flush() {
+        dataAccess.flush();
+    }
+
+    public void close() {
+        dataAccess.close();
+    }
+
+    public boolean isClosed() {
+        return dataAccess.isClosed();
+    }
+
+    public long getCapacity() {
+        return dataAccess.getCapacity();
+    }
+
+    public interface RoadVisitor {
+        /**
+         * @param edge   one of the edges of the road chain, e.g. to read its name
+         * @param points the simplified geometry of the road chain. The object is reused for the next chain.
+         */
+        void onRoad(int edge, PointList points);
+    }
+}
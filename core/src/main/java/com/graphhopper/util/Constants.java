@@ -73,6 +73,10 @@ public class Constants {
     public static final int VERSION_GEOMETRY = 6;
     public static final int VERSION_LOCATION_IDX = 5;
     public static final int VERSION_STRING_IDX = 6;
+    public static final int VERSION_SIMPLIFIED_ROADS = 1;
+    public static final int VERSION_MEMOIZED_SPEED_AND_PRIORITY = 1;
+    public static final int VERSION_SPEED_PROFILES = 1;
+    public static final int VERSION_OSM_WAY_IDS = 3;
     /**
      * The version without the snapshot string
      */
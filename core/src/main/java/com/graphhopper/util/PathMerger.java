@@ -109,9 +109,30 @@ public class PathMerger {
             fullTimeInMillis += path.getTime();
             fullDistance += path.getDistance();
             fullWeight += path.getWeight();
+            // the instructions, the points and the path details are calculated in one pass over the edges
+            List<Path.EdgeVisitor> visitors = new ArrayList<>(3);
+            InstructionList il = null;
             if (enableInstructions) {
-                InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, evLookup, tr);
+                il = new InstructionList(tr);
+                InstructionsFromEdges instructionsVisitor = InstructionsFromEdges.create(path, graph, weighting, evLookup, il);
+                if (instructionsVisitor != null)
+                    visitors.add(instructionsVisitor);
+            }
+            PointList tmpPoints = null;
+            PathDetailsFromEdges detailsVisitor = null;
+            if (calcPoints || enableInstructions) {
+                tmpPoints = new PointList(path.getEdgeCount() + 1, graph.getNodeAccess().is3D());
+                Path.EdgeVisitor pointsVisitor = path.createPointsVisitor(tmpPoints);
+                if (pointsVisitor != null)
+                    visitors.add(pointsVisitor);
+                detailsVisitor = PathDetailsFromEdges.create(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints);
+                if (detailsVisitor != null)
+                    visitors.add(detailsVisitor);
+            }
+            if (!visitors.isEmpty())
+                path.forEveryEdge(visitors);
 
+            if (enableInstructions) {
                 if (!il.isEmpty()) {
                     fullInstructions.addAll(il);
 
@@ -125,7 +146,6 @@ public class PathMerger {
 
             }
             if (calcPoints || enableInstructions) {
-                PointList tmpPoints = path.calcPoints();
                 if (fullPoints.isEmpty())
                     fullPoints = new PointList(tmpPoints.size(), tmpPoints.is3D());
 
@@ -135,7 +155,8 @@ public class PathMerger {
                 }
 
                 fullPoints.add(tmpPoints);
-                responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints));
+                if (detailsVisitor != null)
+                    responsePath.addPathDetails(detailsVisitor.getDetails());
                 origPoints = fullPoints.size();
             }
 
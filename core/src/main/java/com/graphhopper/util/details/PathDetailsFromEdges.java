@@ -21,7 +21,7 @@ import com.graphhopper.routing.Path;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -38,7 +38,7 @@ import java.util.Map;
  * @author Robin Boldt
  * @see PathDetail
  */
-public class PathDetailsFromEdges implements Path.EdgeVisitor {
+public class PathDetailsFromEdges implements Path.GeometryEdgeVisitor {
 
     private final List<PathDetailsBuilder> calculators;
     private int lastIndex = 0;
@@ -58,16 +58,32 @@ public class PathDetailsFromEdges implements Path.EdgeVisitor {
      */
     public static Map<String, List<PathDetail>> calcDetails(Path path, EncodedValueLookup evLookup, Weighting weighting,
                                                             List<String> requestedPathDetails, PathDetailsBuilderFactory pathBuilderFactory, int previousIndex) {
-        if (!path.isFound() || requestedPathDetails.isEmpty())
+        PathDetailsFromEdges visitor = create(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, previousIndex);
+        if (visitor == null)
             return Collections.emptyMap();
+        path.forEveryEdge(visitor);
+        return visitor.getDetails();
+    }
+
+    /**
+     * Creates the visitor for the PathDetails of a Path, so that it can be used together with other visitors in
+     * {@link Path#forEveryEdge(List)}. Call {@link #getDetails()} after the edges were visited.
+     *
+     * @return the visitor or null if there are no PathDetails to calculate
+     */
+    public static PathDetailsFromEdges create(Path path, EncodedValueLookup evLookup, Weighting weighting,
+                                              List<String> requestedPathDetails, PathDetailsBuilderFactory pathBuilderFactory, int previousIndex) {
+        if (!path.isFound() || requestedPathDetails.isEmpty())
+            return null;
         List<PathDetailsBuilder> pathBuilders = pathBuilderFactory.createPathDetailsBuilders(requestedPathDetails, evLookup, weighting);
         if (pathBuilders.isEmpty())
-            return Collections.emptyMap();
-
-        path.forEveryEdge(new PathDetailsFromEdges(pathBuilders, previousIndex));
+            return null;
+        return new PathDetailsFromEdges(pathBuilders, previousIndex);
+    }
 
-        Map<String, List<PathDetail>> pathDetails = new HashMap<>(pathBuilders.size());
-        for (PathDetailsBuilder builder : pathBuilders) {
+    public Map<String, List<PathDetail>> getDetails() {
+        Map<String, List<PathDetail>> pathDetails = new HashMap<>(calculators.size());
+        for (PathDetailsBuilder builder : calculators) {
             Map.Entry<String, List<PathDetail>> entry = builder.build();
             List<PathDetail> existing = pathDetails.put(entry.getKey(), entry.getValue());
             if (existing != null)
@@ -78,14 +94,15 @@ public class PathDetailsFromEdges implements Path.EdgeVisitor {
     }
 
     @Override
-    public void next(EdgeIteratorState edge, int index, int prevEdgeId) {
+    public void next(EdgeIteratorState edge, PointList geometry, int index, int prevEdgeId) {
         for (PathDetailsBuilder calc : calculators) {
             if (calc.isEdgeDifferentToLastEdge(edge)) {
                 calc.endInterval(lastIndex);
                 calc.startInterval(lastIndex);
             }
         }
-        lastIndex += edge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ).size();
+        // the geometry without the base node
+        lastIndex += geometry.size() - 1;
     }
 
     @Override
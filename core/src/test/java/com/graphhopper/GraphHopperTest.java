@@ -17,16 +17,26 @@
  */
 package com.graphhopper;
 
+import com.carrotsearch.hppc.LongArrayList;
 import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.CRPProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.json.Statement;
+import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
+import com.graphhopper.reader.osm.OSMInputFile;
+import com.graphhopper.reader.osm.OSMWayIdStorage;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.ev.RoadEnvironment;
 import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.lm.LMConfig;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.timedependent.SpeedProfileStorage;
+import com.graphhopper.routing.traffic.TrafficOverlay;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
@@ -36,11 +46,16 @@ import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
 import com.graphhopper.routing.util.parsers.TagParser;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Parameters.CH;
+import com.graphhopper.util.Parameters.CRP;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.details.PathDetail;
@@ -59,7 +74,11 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -475,6 +494,42 @@ public class GraphHopperTest {
         assertEquals(958, rsp.getAll().get(2).getTime() / 1000);
     }
 
+    @Test
+    public void testConcurrentAlternativeRoutesCH() {
+        final String profile = "profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+
+        GHRequest req = new GHRequest(43.729057, 7.41251, 43.740298, 7.423561).
+                setAlgorithm(ALT_ROUTE).setProfile(profile);
+        req.putHint("alternative_route.max_paths", 3);
+        req.putHint("alternative_route.max_weight_factor", 2);
+        GHResponse sequential = hopper.route(req);
+        assertFalse(sequential.hasErrors(), sequential.getErrors().toString());
+        assertTrue(sequential.getAll().size() > 1, "expected alternatives: " + sequential.getAll().size());
+
+        hopper.getRouterConfig().setAlternativeRouteThreads(4);
+        GHResponse concurrent = hopper.route(req);
+        assertFalse(concurrent.hasErrors(), concurrent.getErrors().toString());
+        assertEquals(sequential.getAll().size(), concurrent.getAll().size());
+        for (int i = 0; i < sequential.getAll().size(); i++) {
+            assertEquals(sequential.getAll().get(i).getPoints(), concurrent.getAll().get(i).getPoints());
+        }
+
+        // no time for alternatives
+        hopper.getRouterConfig().setAlternativeRouteMaxTimeMillis(0);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(1, rsp.getAll().size());
+        assertEquals(sequential.getBest().getPoints(), rsp.getBest().getPoints());
+        hopper.close();
+    }
+
     @Test
     public void testPointHint() {
         final String profile = "profile";
@@ -665,6 +720,438 @@ public class GraphHopperTest {
         assertDistance(hopper, customCar, new CustomModel(customModelWithUnclassifiedRule).setDistanceInfluence(100), 14475);
     }
 
+    @Test
+    public void testMemoizedCustomModel() {
+        CustomModel customModel = new CustomModel();
+        customModel.addToSpeed(Statement.If("road_class == TERTIARY || road_class == TRACK", Statement.Op.MULTIPLY, 0.1));
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(BAYREUTH).
+                setProfiles(new CustomProfile("custom_car").setCustomModel(customModel).setVehicle("car")).
+                setMemoizedProfiles("custom_car").
+                setStoreOnFlush(true);
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("custom_car"));
+        hopper.importOrLoad();
+        // the same routes as without memoization, also when the request changes the custom model
+        assertDistance(hopper, "custom_car", null, 13223);
+        assertDistance(hopper, "custom_car", new CustomModel().addToSpeed(
+                Statement.If("road_class == UNCLASSIFIED", Statement.Op.MULTIPLY, 0.1)), 19289);
+        hopper.close();
+
+        // the memoized values are loaded with the graph
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(new CustomProfile("custom_car").setCustomModel(customModel).setVehicle("car")).
+                setMemoizedProfiles("custom_car").
+                setAllowWrites(false);
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("custom_car"));
+        assertTrue(hopper.load());
+        assertDistance(hopper, "custom_car", null, 13223);
+        hopper.close();
+    }
+
+    @Test
+    public void testTraffic() {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setTrafficEnabled(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        request.setPathDetails(Collections.singletonList(Parameters.Details.EDGE_ID));
+        ResponsePath before = hopper.route(request).getBest();
+        EdgeIteratorState firstEdge = hopper.getGraphHopperStorage().getEdgeIteratorState(
+                ((Number) before.getPathDetails().get(Parameters.Details.EDGE_ID).get(0).getValue()).intValue(), Integer.MIN_VALUE);
+        double weightBefore = hopper.createWeighting(hopper.getProfile(profile), new PMap()).calcEdgeWeight(firstEdge, false);
+        RoutingCHGraph chGraphBefore = hopper.getCHGraphs().get(profile);
+
+        // slow down every edge of the route in both directions
+        List<TrafficOverlay.SpeedUpdate> updates = new ArrayList<>();
+        for (PathDetail detail : before.getPathDetails().get(Parameters.Details.EDGE_ID)) {
+            updates.add(new TrafficOverlay.SpeedUpdate(((Number) detail.getValue()).intValue(), false, 5));
+            updates.add(new TrafficOverlay.SpeedUpdate(((Number) detail.getValue()).intValue(), true, 5));
+        }
+        hopper.getTrafficOverlay().update(updates);
+        ResponsePath chPath = hopper.route(request).getBest();
+        ResponsePath flexPath = hopper.route(new GHRequest(request.getPoints()).setProfile(profile).putHint(CH.DISABLE, true)).getBest();
+        assertTrue(chPath.getTime() > before.getTime(), chPath.getTime() + " vs. " + before.getTime());
+        assertNotEquals(before.getDistance(), chPath.getDistance(), 1);
+        // the shortcuts were not recalculated with a new node ordering, so CH can only be worse than Dijkstra
+        assertTrue(chPath.getRouteWeight() >= flexPath.getRouteWeight() - 1.e-3, chPath.getRouteWeight() + " vs. " + flexPath.getRouteWeight());
+
+        // the weightings and CH graphs outside of the router, e.g. for isochrones, use the traffic as well
+        double weightAfter = hopper.createWeighting(hopper.getProfile(profile), new PMap()).calcEdgeWeight(firstEdge, false);
+        assertTrue(weightAfter > weightBefore, weightAfter + " vs. " + weightBefore);
+        RoutingCHGraph chGraphAfter = hopper.getCHGraphs().get(profile);
+        assertNotSame(chGraphBefore, chGraphAfter);
+        assertEquals(weightAfter, chGraphAfter.getWeighting().calcEdgeWeight(firstEdge, false), 1.e-6);
+
+        // closing a road of the new route can make the customized shortcuts miss a route, then the router uses LM or
+        // the flexible mode
+        updates.clear();
+        List<PathDetail> chEdges = chPath.getPathDetails().get(Parameters.Details.EDGE_ID);
+        for (PathDetail detail : chEdges.subList(chEdges.size() / 2, chEdges.size() / 2 + 1)) {
+            updates.add(new TrafficOverlay.SpeedUpdate(((Number) detail.getValue()).intValue(), false, 0));
+            updates.add(new TrafficOverlay.SpeedUpdate(((Number) detail.getValue()).intValue(), true, 0));
+        }
+        hopper.getTrafficOverlay().update(updates);
+        GHResponse closedResponse = hopper.route(request);
+        assertFalse(closedResponse.hasErrors(), closedResponse.getErrors().toString());
+        ResponsePath closedFlexPath = hopper.route(new GHRequest(request.getPoints()).setProfile(profile).putHint(CH.DISABLE, true)).getBest();
+        assertTrue(closedResponse.getBest().getRouteWeight() >= closedFlexPath.getRouteWeight() - 1.e-3);
+        hopper.close();
+    }
+
+    @Test
+    public void testTrafficDisablesCRP() {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest").setTurnCosts(true)).
+                setTrafficEnabled(true).
+                setStoreOnFlush(true);
+        hopper.getCRPPreparationHandler().setCRPProfiles(new CRPProfile(profile)).setMaxCellSizes(50, 500);
+        hopper.importOrLoad();
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        request.setPathDetails(Collections.singletonList(Parameters.Details.EDGE_ID));
+        ResponsePath before = hopper.route(request).getBest();
+        List<TrafficOverlay.SpeedUpdate> updates = new ArrayList<>();
+        for (PathDetail detail : before.getPathDetails().get(Parameters.Details.EDGE_ID)) {
+            updates.add(new TrafficOverlay.SpeedUpdate(((Number) detail.getValue()).intValue(), false, 5));
+            updates.add(new TrafficOverlay.SpeedUpdate(((Number) detail.getValue()).intValue(), true, 5));
+        }
+        hopper.getTrafficOverlay().update(updates);
+        // the CRP cliques do not know the traffic speeds, so the flexible mode is used and avoids the slow roads
+        ResponsePath after = hopper.route(request).getBest();
+        ResponsePath flexPath = hopper.route(new GHRequest(request.getPoints()).setProfile(profile).putHint(CRP.DISABLE, true)).getBest();
+        assertNotEquals(before.getDistance(), after.getDistance(), 1);
+        assertEquals(flexPath.getRouteWeight(), after.getRouteWeight(), 1.e-3);
+        hopper.close();
+    }
+
+    @Test
+    public void testCRP() {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest").setTurnCosts(true)).
+                setStoreOnFlush(true);
+        hopper.getCRPPreparationHandler().setCRPProfiles(new CRPProfile(profile)).setMaxCellSizes(50, 500);
+        hopper.importOrLoad();
+        assertTrue(hopper.getCRPCustomizations().get(profile).isCustomized());
+        GHRequest request = new GHRequest().setProfile(profile).
+                addPoint(new GHPoint(43.727687, 7.418737)).
+                addPoint(new GHPoint(43.74958, 7.436566)).
+                addPoint(new GHPoint(43.730864, 7.420771));
+        GHResponse crpResponse = hopper.route(request);
+        assertFalse(crpResponse.hasErrors(), crpResponse.getErrors().toString());
+        ResponsePath crpPath = crpResponse.getBest();
+        ResponsePath flexPath = hopper.route(new GHRequest(request.getPoints()).setProfile(profile).putHint(CRP.DISABLE, true)).getBest();
+        assertEquals(flexPath.getRouteWeight(), crpPath.getRouteWeight(), 1.e-3);
+        assertEquals(flexPath.getDistance(), crpPath.getDistance(), 1.e-3);
+        assertEquals(flexPath.getPoints().size(), crpPath.getPoints().size());
+
+        // curbsides require a bidirectional algorithm
+        GHRequest curbsideRequest = new GHRequest(request.getPoints()).setProfile(profile).
+                setCurbsides(Arrays.asList("right", "any", "right"));
+        GHResponse curbsideResponse = hopper.route(curbsideRequest);
+        assertTrue(curbsideResponse.hasErrors());
+        assertTrue(curbsideResponse.getErrors().get(0).getMessage().contains("crp.disable=true"), curbsideResponse.getErrors().toString());
+        curbsideResponse = hopper.route(curbsideRequest.putHint(CRP.DISABLE, true));
+        assertFalse(curbsideResponse.hasErrors(), curbsideResponse.getErrors().toString());
+        hopper.close();
+
+        // the customization is loaded, not calculated again
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest").setTurnCosts(true)).
+                setAllowWrites(false);
+        hopper.getCRPPreparationHandler().setCRPProfiles(new CRPProfile(profile));
+        hopper.importOrLoad();
+        assertEquals(crpPath.getRouteWeight(), hopper.route(request).getBest().getRouteWeight(), 1.e-3);
+
+        request.setCustomModel(new CustomModel());
+        GHResponse rsp = hopper.route(request);
+        assertTrue(rsp.hasErrors());
+        assertTrue(rsp.getErrors().get(0).getMessage().contains("not supported for CRP"), rsp.getErrors().toString());
+        hopper.close();
+    }
+
+    @Test
+    public void testTimeDependent() throws IOException {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setStoreOnFlush(true).
+                importOrLoad();
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        request.setPathDetails(Collections.singletonList(Parameters.Details.EDGE_ID));
+        ResponsePath before = hopper.route(request).getBest();
+        hopper.close();
+
+        // a quarter of the speed on the edges of the route from 07:00 to 09:00
+        StringBuilder factors = new StringBuilder();
+        for (int slot = 0; slot < SpeedProfileStorage.SLOTS; slot++) {
+            factors.append(slot >= 28 && slot < 36 ? ",25" : ",100");
+        }
+        List<String> lines = new ArrayList<>();
+        for (PathDetail detail : before.getPathDetails().get(Parameters.Details.EDGE_ID)) {
+            lines.add(detail.getValue() + ",both" + factors);
+        }
+        File speedProfilesFile = new File(GH_LOCATION, "speed_profiles.csv");
+        Files.write(speedProfilesFile.toPath(), lines, StandardCharsets.UTF_8);
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setSpeedProfilesFile(speedProfilesFile.getAbsolutePath()).
+                setStoreOnFlush(true).
+                importOrLoad();
+        assertEquals(1, hopper.getSpeedProfiles().getProfileCount());
+
+        GHRequest tdRequest = new GHRequest(request.getPoints()).setProfile(profile);
+        ResponsePath night = hopper.route(tdRequest.putHint(Routing.DEPARTURE_TIME, "03:00")).getBest();
+        assertEquals(before.getDistance(), night.getDistance(), 1);
+        assertEquals(before.getTime(), night.getTime(), 1000);
+
+        GHResponse rsp = hopper.route(new GHRequest(request.getPoints()).setProfile(profile).
+                putHint(Routing.DEPARTURE_TIME, "2022-03-01T08:00:00"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        ResponsePath rushHour = rsp.getBest();
+        assertTrue(rushHour.getTime() > night.getTime(), rushHour.getTime() + " vs. " + night.getTime());
+        assertNotEquals(before.getDistance(), rushHour.getDistance(), 1);
+        // the instructions and the time details use the time-dependent travel times of the edges as well
+        long instructionsTime = 0;
+        for (Instruction instruction : rushHour.getInstructions())
+            instructionsTime += instruction.getTime();
+        assertEquals(rushHour.getTime(), instructionsTime, 10);
+        GHRequest detailsRequest = new GHRequest(request.getPoints()).setProfile(profile).
+                putHint(Routing.DEPARTURE_TIME, "08:00").setPathDetails(Collections.singletonList(Parameters.Details.TIME));
+        ResponsePath details = hopper.route(detailsRequest).getBest();
+        long detailsTime = details.getPathDetails().get(Parameters.Details.TIME).stream().mapToLong(d -> (Long) d.getValue()).sum();
+        assertEquals(details.getTime(), detailsTime, 10);
+        hopper.close();
+
+        // a changed file is read again, but only if writes are allowed
+        lines.add(lines.get(0).replace(",25", ",50"));
+        Files.write(speedProfilesFile.toPath(), lines, StandardCharsets.UTF_8);
+        assertTrue(speedProfilesFile.setLastModified(speedProfilesFile.lastModified() + 10_000));
+        GraphHopper readOnly = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setSpeedProfilesFile(speedProfilesFile.getAbsolutePath()).
+                setAllowWrites(false);
+        IllegalStateException e = assertThrows(IllegalStateException.class, readOnly::importOrLoad);
+        assertTrue(e.getMessage().contains("Writes must be allowed"), e.getMessage());
+        readOnly.close();
+
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setSpeedProfilesFile(speedProfilesFile.getAbsolutePath()).
+                setStoreOnFlush(true).
+                importOrLoad();
+        assertEquals(2, hopper.getSpeedProfiles().getProfileCount());
+        hopper.close();
+    }
+
+    @Test
+    public void testChangeFiles() throws IOException {
+        final String profile = "car";
+        Profile carProfile = new Profile(profile).setVehicle("car").setWeighting("fastest");
+        Profile footProfile = new Profile("foot").setVehicle("foot").setWeighting("fastest");
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(carProfile, footProfile).
+                setStoreOSMWayIds(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile), new CHProfile("foot"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(profile), new LMProfile("foot"));
+        hopper.importOrLoad();
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        request.setPathDetails(Collections.singletonList(Parameters.Details.EDGE_ID));
+        ResponsePath before = hopper.route(request).getBest();
+        ResponsePath footBefore = hopper.route(new GHRequest(request.getPoints()).setProfile("foot")).getBest();
+        hopper.close();
+
+        // limit the speed on the way of an edge in the middle of the route, which does not matter for foot
+        OSMWayIdStorage wayIds = new OSMWayIdStorage(new GHDirectory(GH_LOCATION, DAType.RAM_STORE));
+        assertTrue(wayIds.loadExisting());
+        List<PathDetail> edgeIds = before.getPathDetails().get(Parameters.Details.EDGE_ID);
+        long wayId = wayIds.getWayId((Integer) edgeIds.get(edgeIds.size() / 2).getValue());
+        wayIds.close();
+        assertNotEquals(OSMWayIdStorage.NO_WAY, wayId);
+        ReaderWay way = null;
+        try (OSMInputFile input = new OSMInputFile(new File(MONACO)).setWorkerThreads(1).open()) {
+            ReaderElement element;
+            while (way == null && (element = input.getNext()) != null) {
+                if (element.getType() == ReaderElement.WAY && element.getId() == wayId)
+                    way = (ReaderWay) element;
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        assertNotNull(way);
+        List<String> lines = new ArrayList<>(Arrays.asList("<?xml version='1.0' encoding='UTF-8'?>",
+                "<osmChange version=\"0.6\">", "<modify>", "<way id=\"" + wayId + "\" version=\"1\">"));
+        for (int i = 0; i < way.getNodes().size(); i++) {
+            lines.add("<nd ref=\"" + way.getNodes().get(i) + "\"/>");
+        }
+        way.setTag("maxspeed", "30");
+        for (Map.Entry<String, Object> tag : way.getTags().entrySet()) {
+            lines.add("<tag k=\"" + tag.getKey() + "\" v=\"" + tag.getValue().toString().replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;") + "\"/>");
+        }
+        lines.addAll(Arrays.asList("</way>", "</modify>", "</osmChange>"));
+        File changeFile = new File(GH_LOCATION, "change.osc");
+        Files.write(changeFile.toPath(), lines, StandardCharsets.UTF_8);
+
+        for (int run = 0; run < 2; run++) {
+            // the second run loads the changed graph and does not apply the change file again
+            List<String> prepared = new ArrayList<>();
+            hopper = new GraphHopper() {
+                @Override
+                protected List<PrepareLandmarks> prepareLM(boolean closeEarly, List<LMConfig> configsToPrepare) {
+                    configsToPrepare.forEach(c -> prepared.add("lm|" + c.getName()));
+                    return super.prepareLM(closeEarly, configsToPrepare);
+                }
+
+                @Override
+                protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
+                    configsToPrepare.forEach(c -> prepared.add("ch|" + c.getName()));
+                    return super.prepareCH(closeEarly, configsToPrepare);
+                }
+            }.
+                    setGraphHopperLocation(GH_LOCATION).
+                    setProfiles(carProfile, footProfile).
+                    setChangeFiles(changeFile.getAbsolutePath()).
+                    setStoreOnFlush(true);
+            hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile), new CHProfile("foot"));
+            hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(profile), new LMProfile("foot"));
+            hopper.importOrLoad();
+            assertEquals(changeFile.getCanonicalPath(), hopper.getGraphHopperStorage().getProperties().get("datareader.change_files"));
+            // only the preparations of the car profile are updated
+            assertEquals(run == 0 ? Arrays.asList("lm|car", "ch|car") : Collections.emptyList(), prepared);
+
+            ResponsePath flex = hopper.route(new GHRequest(request.getPoints()).setProfile(profile).
+                    putHint(CH.DISABLE, true).putHint(Landmark.DISABLE, true)).getBest();
+            assertTrue(flex.getTime() > before.getTime() + 1000, flex.getTime() + " vs. " + before.getTime());
+            ResponsePath ch = hopper.route(new GHRequest(request.getPoints()).setProfile(profile)).getBest();
+            assertEquals(flex.getDistance(), ch.getDistance(), 1);
+            assertEquals(flex.getTime(), ch.getTime(), 1000);
+            ResponsePath lm = hopper.route(new GHRequest(request.getPoints()).setProfile(profile).
+                    putHint(CH.DISABLE, true)).getBest();
+            assertEquals(flex.getDistance(), lm.getDistance(), 1);
+            ResponsePath foot = hopper.route(new GHRequest(request.getPoints()).setProfile("foot")).getBest();
+            assertEquals(footBefore.getDistance(), foot.getDistance(), 1);
+            assertEquals(footBefore.getTime(), foot.getTime());
+            hopper.close();
+        }
+    }
+
+    @Test
+    public void testChangeFilesMoveNodes() throws IOException {
+        Profile profile = new Profile("car").setVehicle("car").setWeighting("fastest");
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(profile).
+                setStoreOSMWayIds(true).
+                setStoreOnFlush(true);
+        hopper.importOrLoad();
+        int edge = hopper.getLocationIndex().findClosest(43.73, 7.42, EdgeFilter.ALL_EDGES).getClosestEdge().getEdge();
+        int towerNode = hopper.getGraphHopperStorage().getEdgeIteratorState(edge, Integer.MIN_VALUE).getAdjNode();
+        hopper.close();
+
+        // move the tower node at the end of the edge far out of Monaco, where the previous location index has no cells
+        OSMWayIdStorage wayIds = new OSMWayIdStorage(new GHDirectory(GH_LOCATION, DAType.RAM_STORE));
+        assertTrue(wayIds.loadExisting());
+        LongArrayList nodeIds = wayIds.getNodeIds(edge);
+        wayIds.close();
+        File changeFile = new File(GH_LOCATION, "change.osc");
+        Files.write(changeFile.toPath(), Arrays.asList("<?xml version='1.0' encoding='UTF-8'?>", "<osmChange version=\"0.6\">",
+                "<modify>", "<node id=\"" + nodeIds.get(nodeIds.size() - 1) + "\" lat=\"43.8\" lon=\"7.42\" version=\"2\"/>",
+                "</modify>", "</osmChange>"), StandardCharsets.UTF_8);
+
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(profile).
+                setChangeFiles(changeFile.getAbsolutePath()).
+                setStoreOnFlush(true);
+        hopper.importOrLoad();
+        assertEquals(43.8, hopper.getGraphHopperStorage().getNodeAccess().getLat(towerNode), 1e-6);
+        Snap snap = hopper.getLocationIndex().findClosest(43.8, 7.42, EdgeFilter.ALL_EDGES);
+        assertTrue(snap.isValid());
+        assertEquals(towerNode, snap.getClosestNode());
+        hopper.close();
+    }
+
+    @Test
+    public void testFields() {
+        final String profile = "profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setStoreOnFlush(true).
+                importOrLoad();
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        request.setPathDetails(Collections.singletonList("street_name"));
+        ResponsePath full = hopper.route(request).getBest();
+        assertFalse(full.getPoints().isEmpty());
+
+        ResponsePath path = hopper.route(request.setFields(Arrays.asList("distance", "time"))).getBest();
+        assertEquals(full.getDistance(), path.getDistance(), 1.e-6);
+        assertEquals(full.getTime(), path.getTime());
+        // neither points nor instructions nor path details were calculated
+        assertTrue(path.getPoints().isEmpty());
+        assertTrue(path.getPathDetails().isEmpty());
+        assertThrows(IllegalArgumentException.class, path::getInstructions);
+
+        path = hopper.route(request.setFields(Arrays.asList("distance", "details"))).getBest();
+        assertEquals(full.getPathDetails().get("street_name").size(), path.getPathDetails().get("street_name").size());
+        hopper.close();
+    }
+
+    @Test
+    public void testConcurrentViaLegs() {
+        final String profile = "profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setStoreOnFlush(true).
+                importOrLoad();
+        List<GHPoint> points = Arrays.asList(new GHPoint(43.727687, 7.418737), new GHPoint(43.74958, 7.436566),
+                new GHPoint(43.730864, 7.420771), new GHPoint(43.739213, 7.427806), new GHPoint(43.73222, 7.431564),
+                new GHPoint(43.742933, 7.42221), new GHPoint(43.727687, 7.418737));
+        ResponsePath sequential = hopper.route(new GHRequest(points).setProfile(profile)).getBest();
+
+        hopper.getRouterConfig().setViaLegThreads(3);
+        GHResponse rsp = hopper.route(new GHRequest(points).setProfile(profile));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        ResponsePath concurrent = rsp.getBest();
+        assertEquals(sequential.getDistance(), concurrent.getDistance(), 1.e-6);
+        assertEquals(sequential.getTime(), concurrent.getTime());
+        assertEquals(sequential.getPoints(), concurrent.getPoints());
+        assertEquals(sequential.getInstructions().size(), concurrent.getInstructions().size());
+
+        // with pass_through the legs are calculated one after another
+        GHRequest request = new GHRequest(points).setProfile(profile);
+        request.putHint(Routing.PASS_THROUGH, true);
+        rsp = hopper.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(points.size(), rsp.getBest().getWaypoints().size());
+        hopper.close();
+    }
+
     private void assertDistance(GraphHopper hopper, String profile, CustomModel customModel, double expectedDistance) {
         GHRequest req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509);
         req.setProfile(profile);
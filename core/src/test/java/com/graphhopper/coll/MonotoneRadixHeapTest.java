@@ -0,0 +1,90 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.coll;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MonotoneRadixHeapTest {
+
+    @Test
+    public void pollInKeyOrder() {
+        MonotoneRadixHeap heap = new MonotoneRadixHeap();
+        heap.push(3, 12.5);
+        heap.push(1, 0.25);
+        heap.push(2, 3);
+        heap.push(4, 3);
+        assertEquals(4, heap.size());
+        assertEquals(0.25, heap.peekKey());
+        assertEquals(1, heap.poll());
+        assertEquals(3, heap.peekKey());
+        int a = heap.poll();
+        int b = heap.poll();
+        assertEquals(6, a + b);
+        assertEquals(3, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void keysMustBeMonotone() {
+        MonotoneRadixHeap heap = new MonotoneRadixHeap();
+        heap.push(0, 5);
+        heap.poll();
+        assertThrows(IllegalArgumentException.class, () -> heap.push(1, 4.9));
+        assertThrows(IllegalArgumentException.class, () -> heap.push(1, -1));
+        assertThrows(IllegalArgumentException.class, () -> heap.push(1, Double.NaN));
+        heap.push(1, 5);
+        heap.clear();
+        heap.push(2, 1);
+        assertEquals(2, heap.poll());
+        assertThrows(IllegalStateException.class, heap::poll);
+    }
+
+    @Test
+    public void sameOrderAsPriorityQueue() {
+        Random rnd = new Random(42);
+        MonotoneRadixHeap heap = new MonotoneRadixHeap();
+        PriorityQueue<Double> queue = new PriorityQueue<>();
+        double[] keys = new double[100_000];
+        int elements = 0;
+        double last = 0;
+        for (int i = 0; i < 200_000; i++) {
+            if (queue.isEmpty() || rnd.nextDouble() < 0.6) {
+                // like Dijkstra: the new key is the last polled key plus a non-negative edge weight
+                double key = last + (rnd.nextInt(10) == 0 ? 0 : rnd.nextDouble() * 1000);
+                if (elements == keys.length)
+                    break;
+                keys[elements] = key;
+                heap.push(elements++, key);
+                queue.add(key);
+            } else {
+                double expected = queue.poll();
+                assertEquals(expected, heap.peekKey());
+                int element = heap.poll();
+                assertEquals(expected, keys[element]);
+                last = expected;
+            }
+            assertEquals(queue.size(), heap.size());
+        }
+    }
+}
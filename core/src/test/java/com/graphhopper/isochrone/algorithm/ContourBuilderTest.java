@@ -0,0 +1,60 @@
+package com.graphhopper.isochrone.algorithm;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.triangulate.ConformingDelaunayTriangulator;
+import org.locationtech.jts.triangulate.ConstraintVertex;
+import org.locationtech.jts.triangulate.quadedge.QuadEdgeSubdivision;
+import org.locationtech.jts.triangulate.quadedge.Vertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ContourBuilderTest {
+
+    @Test
+    public void computeIsolinesConcurrently() {
+        Random rnd = new Random(42);
+        List<ConstraintVertex> sites = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Coordinate coordinate = new Coordinate(rnd.nextDouble(), rnd.nextDouble());
+            coordinate.z = coordinate.distance(new Coordinate(0.5, 0.5)) + rnd.nextDouble() * 0.05;
+            sites.add(new ConstraintVertex(coordinate));
+        }
+        ConformingDelaunayTriangulator triangulator = new ConformingDelaunayTriangulator(sites, 1.e-6);
+        triangulator.setConstraints(new ArrayList<>(), new ArrayList<>());
+        triangulator.formInitialDelaunay();
+        QuadEdgeSubdivision tin = triangulator.getSubdivision();
+        for (Vertex vertex : (Collection<Vertex>) tin.getVertices(true)) {
+            if (tin.isFrameVertex(vertex))
+                vertex.setZ(Double.MAX_VALUE);
+        }
+        ReadableTriangulation triangulation = ReadableTriangulation.wrap(tin);
+        Collection<ReadableQuadEdge> seedEdges = triangulation.getEdges();
+        ContourBuilder contourBuilder = new ContourBuilder(triangulation);
+
+        List<Double> zs = Arrays.asList(0.05, 0.1, 0.15, 0.2, 0.25, 0.3, 0.35, 0.4, 0.45, 0.5);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<MultiPolygon> isolines = contourBuilder.computeIsolines(zs, seedEdges, executor);
+            assertEquals(zs.size(), isolines.size());
+            for (int i = 0; i < zs.size(); i++) {
+                MultiPolygon expected = contourBuilder.computeIsoline(zs.get(i), seedEdges);
+                assertFalse(expected.isEmpty());
+                assertEquals(expected.getArea(), isolines.get(i).getArea(), 1.e-12, "z: " + zs.get(i));
+                assertEquals(expected.getNumPoints(), isolines.get(i).getNumPoints(), "z: " + zs.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
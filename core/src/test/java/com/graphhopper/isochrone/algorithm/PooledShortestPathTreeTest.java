@@ -0,0 +1,95 @@
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FlagEncoders;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PooledShortestPathTreeTest {
+
+    private static class CopiedLabel {
+        final int node, edge, parentNode, parentEdge;
+        final double weight, distance;
+        final long time;
+
+        CopiedLabel(ShortestPathTree.IsoLabel label) {
+            node = label.node;
+            edge = label.edge;
+            weight = label.weight;
+            distance = label.distance;
+            time = label.time;
+            parentNode = label.parent == null ? -1 : label.parent.node;
+            parentEdge = label.parent == null ? -1 : label.parent.edge;
+        }
+
+        @Override
+        public String toString() {
+            return node + "," + edge + "," + weight + "," + distance + "," + time + "," + parentNode + "," + parentEdge;
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 4, 5})
+    public void sameTreeAsShortestPathTree(long seed) {
+        FlagEncoder encoder = FlagEncoders.createCar(new PMap().putObject("max_turn_costs", 10));
+        EncodingManager encodingManager = EncodingManager.create(encoder);
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.2, true, false,
+                encoder.getAccessEnc(), encoder.getAverageSpeedEnc(), null, 0.7, 0.8, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, encodingManager, encoder, 10, graph.getTurnCostStorage());
+        Weighting nodeBased = new FastestWeighting(encoder);
+        Weighting edgeBased = new FastestWeighting(encoder, new DefaultTurnCostProvider(encoder, graph.getTurnCostStorage(), 40));
+        for (int i = 0; i < 20; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            boolean reverseFlow = rnd.nextBoolean();
+            double timeLimit = rnd.nextInt(1000_000);
+            for (TraversalMode traversalMode : new TraversalMode[]{TraversalMode.NODE_BASED, TraversalMode.EDGE_BASED}) {
+                Weighting weighting = traversalMode.isEdgeBased() ? edgeBased : nodeBased;
+                ShortestPathTree spt = new ShortestPathTree(graph, weighting, reverseFlow, traversalMode);
+                spt.setTimeLimit(timeLimit);
+                List<String> expected = new ArrayList<>();
+                spt.search(from, l -> expected.add(new CopiedLabel(l).toString()));
+
+                PooledShortestPathTree pooled = new PooledShortestPathTree(graph, weighting, reverseFlow, traversalMode);
+                pooled.setTimeLimit(timeLimit);
+                List<String> actual = new ArrayList<>();
+                pooled.search(from, l -> {
+                    actual.add(new CopiedLabel(l).toString());
+                    if (l.parent != null)
+                        assertNull(l.parent.parent);
+                });
+
+                // labels with equal weights may come in a different order
+                Collections.sort(expected);
+                Collections.sort(actual);
+                String message = "seed: " + seed + ", from: " + from + ", " + traversalMode + ", reverse: " + reverseFlow;
+                assertEquals(expected, actual, message);
+                assertEquals(spt.getVisitedNodes(), pooled.getVisitedNodes(), message);
+
+                List<String> expectedEdges = new ArrayList<>(), actualEdges = new ArrayList<>();
+                spt.getIsochroneEdges().forEach(l -> expectedEdges.add(new CopiedLabel(l).toString()));
+                pooled.getIsochroneEdges().forEach(l -> actualEdges.add(new CopiedLabel(l).toString()));
+                Collections.sort(expectedEdges);
+                Collections.sort(actualEdges);
+                assertEquals(expectedEdges, actualEdges, message);
+            }
+        }
+    }
+}
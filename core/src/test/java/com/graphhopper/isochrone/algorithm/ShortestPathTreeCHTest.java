@@ -0,0 +1,203 @@
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.routing.ch.CHParameters;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShortestPathTreeCHTest {
+
+    private final EncodingManager encodingManager = EncodingManager.create("car");
+    private final FlagEncoder carEncoder = encodingManager.getEncoder("car");
+    private final Weighting weighting = new FastestWeighting(carEncoder);
+
+    private BaseGraph createGraph() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        // same graph as in ShortestPathTreeTest
+        GHUtility.setSpeed(10, true, false, carEncoder, graph.edge(0, 1).setDistance(70));
+        GHUtility.setSpeed(20, true, false, carEncoder, graph.edge(0, 4).setDistance(50));
+        GHUtility.setSpeed(10, true, true, carEncoder, graph.edge(1, 4).setDistance(70));
+        GHUtility.setSpeed(10, true, true, carEncoder, graph.edge(1, 5).setDistance(70));
+        GHUtility.setSpeed(10, true, true, carEncoder, graph.edge(1, 2).setDistance(200));
+        GHUtility.setSpeed(10, true, false, carEncoder, graph.edge(5, 2).setDistance(50));
+        GHUtility.setSpeed(10, true, false, carEncoder, graph.edge(2, 3).setDistance(50));
+        GHUtility.setSpeed(20, true, false, carEncoder, graph.edge(5, 3).setDistance(110));
+        GHUtility.setSpeed(10, true, false, carEncoder, graph.edge(3, 7).setDistance(70));
+        GHUtility.setSpeed(20, true, false, carEncoder, graph.edge(4, 6).setDistance(50));
+        GHUtility.setSpeed(10, true, false, carEncoder, graph.edge(5, 4).setDistance(70));
+        GHUtility.setSpeed(10, true, false, carEncoder, graph.edge(5, 6).setDistance(70));
+        GHUtility.setSpeed(20, true, false, carEncoder, graph.edge(7, 5).setDistance(50));
+        GHUtility.setSpeed(20, true, true, carEncoder, graph.edge(6, 7).setDistance(50));
+        GHUtility.setSpeed(20, true, true, carEncoder, graph.edge(3, 8).setDistance(25));
+        graph.freeze();
+        return graph;
+    }
+
+    private RoutingCHGraph prepareCH(BaseGraph graph) {
+        return prepareCH(graph, 100);
+    }
+
+    private RoutingCHGraph prepareCH(BaseGraph graph, int contractedNodesPercentage) {
+        PrepareContractionHierarchies.Result result = PrepareContractionHierarchies.fromGraph(graph, CHConfig.nodeBased("car", weighting))
+                .setParams(new PMap().putObject(CHParameters.CONTRACTED_NODES, contractedNodesPercentage))
+                .doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, result.getCHStorage(), result.getCHConfig());
+    }
+
+    @Test
+    public void sameTreeAsDijkstra() {
+        BaseGraph graph = createGraph();
+        RoutingCHGraph chGraph = prepareCH(graph);
+        for (boolean reverseFlow : new boolean[]{false, true}) {
+            for (int from = 0; from < graph.getNodes(); from++) {
+                for (int timeLimit : new int[]{0, 25_000, 26_000, 50_000, 1_000_000}) {
+                    ShortestPathTree spt = new ShortestPathTree(graph, weighting, reverseFlow, TraversalMode.NODE_BASED);
+                    spt.setTimeLimit(timeLimit);
+                    ShortestPathTreeCH sptCH = new ShortestPathTreeCH(chGraph, reverseFlow);
+                    sptCH.setTimeLimit(timeLimit);
+                    assertSameTree(graph, spt, sptCH, from, "from: " + from + ", limit: " + timeLimit + ", reverse: " + reverseFlow);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keepUpwardLabelWithinLimit() {
+        BaseGraph graph = createGraph();
+        RoutingCHGraph chGraph = prepareCH(graph);
+        for (boolean reverseFlow : new boolean[]{false, true}) {
+            for (int from = 0; from < graph.getNodes(); from++) {
+                ShortestPathTreeCH fullTree = new ShortestPathTreeCH(chGraph, reverseFlow);
+                fullTree.setDistanceLimit(Double.MAX_VALUE);
+                IntObjectHashMap<ShortestPathTree.IsoLabel> all = new IntObjectHashMap<>();
+                fullTree.search(from, l -> all.put(l.node, l));
+                for (double distanceLimit : new double[]{50, 100, 150, 200}) {
+                    ShortestPathTreeCH sptCH = new ShortestPathTreeCH(chGraph, reverseFlow);
+                    sptCH.setDistanceLimit(distanceLimit);
+                    IntObjectHashMap<ShortestPathTree.IsoLabel> actual = new IntObjectHashMap<>();
+                    sptCH.search(from, l -> actual.put(l.node, l));
+                    // the fastest paths within the limit are always found, even if a node is reached by a faster but longer path
+                    for (IntObjectCursor<ShortestPathTree.IsoLabel> cursor : all) {
+                        if (cursor.value.distance <= distanceLimit)
+                            assertNotNull(actual.get(cursor.key), "from: " + from + ", node: " + cursor.key + ", limit: " + distanceLimit);
+                    }
+                    for (IntObjectCursor<ShortestPathTree.IsoLabel> cursor : actual) {
+                        assertTrue(cursor.value.distance <= distanceLimit);
+                    }
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 4, 5})
+    public void sameTreeAsDijkstraFromVirtualNode(long seed) {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, false, false,
+                carEncoder.getAccessEnc(), carEncoder.getAverageSpeedEnc(), null, 0, 0.8, 0.0);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph);
+        LocationIndexTree index = new LocationIndexTree(graph, graph.getDirectory());
+        index.prepareIndex();
+        for (int i = 0; i < 20; i++) {
+            Snap snap = index.findClosest(49.4 + rnd.nextDouble() * 0.01, 9.7 + rnd.nextDouble() * 0.01, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snap);
+            boolean reverseFlow = rnd.nextBoolean();
+            ShortestPathTree spt = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, TraversalMode.NODE_BASED);
+            spt.setDistanceLimit(Double.MAX_VALUE);
+            ShortestPathTreeCH sptCH = new ShortestPathTreeCH(new QueryRoutingCHGraph(chGraph, queryGraph), reverseFlow);
+            sptCH.setDistanceLimit(Double.MAX_VALUE);
+            assertSameTree(queryGraph, spt, sptCH, snap.getClosestNode(), "seed: " + seed + ", query: " + i + ", reverse: " + reverseFlow);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 30, 50, 90})
+    public void sameTreeAsDijkstraWithPartialContraction(int contractedNodes) {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        Random rnd = new Random(contractedNodes);
+        GHUtility.buildRandomGraph(graph, rnd, 50, 2.2, false, false,
+                carEncoder.getAccessEnc(), carEncoder.getAverageSpeedEnc(), null, 0, 0.8, 0.0);
+        graph.freeze();
+        // the uncontracted nodes all share the highest level
+        RoutingCHGraph chGraph = prepareCH(graph, contractedNodes);
+        for (boolean reverseFlow : new boolean[]{false, true}) {
+            for (int from = 0; from < graph.getNodes(); from++) {
+                for (int timeLimit : new int[]{0, 60_000, 300_000, Integer.MAX_VALUE}) {
+                    ShortestPathTree spt = new ShortestPathTree(graph, weighting, reverseFlow, TraversalMode.NODE_BASED);
+                    spt.setTimeLimit(timeLimit);
+                    ShortestPathTreeCH sptCH = new ShortestPathTreeCH(chGraph, reverseFlow);
+                    sptCH.setTimeLimit(timeLimit);
+                    assertSameTree(graph, spt, sptCH, from, "contracted: " + contractedNodes + "%, from: " + from + ", limit: " + timeLimit + ", reverse: " + reverseFlow);
+                }
+            }
+        }
+    }
+
+    private static int[] sortedNodes(IntObjectHashMap<ShortestPathTree.IsoLabel> labels) {
+        int[] nodes = labels.keys().toArray();
+        Arrays.sort(nodes);
+        return nodes;
+    }
+
+    private void assertSameTree(Graph graph, ShortestPathTree spt, ShortestPathTreeCH sptCH, int from, String message) {
+        IntObjectHashMap<ShortestPathTree.IsoLabel> expected = new IntObjectHashMap<>();
+        spt.search(from, l -> expected.put(l.node, l));
+        IntObjectHashMap<ShortestPathTree.IsoLabel> actual = new IntObjectHashMap<>();
+        sptCH.search(from, l -> actual.put(l.node, l));
+        assertArrayEquals(sortedNodes(expected), sortedNodes(actual), message);
+        for (IntObjectCursor<ShortestPathTree.IsoLabel> cursor : expected) {
+            int node = cursor.key;
+            ShortestPathTree.IsoLabel e = cursor.value;
+            ShortestPathTree.IsoLabel a = actual.get(node);
+            assertNotNull(a, message + ", node: " + node);
+            // CH stores weights with three decimal digits
+            assertEquals(e.weight, a.weight, 1.e-2, message + ", node: " + node);
+            assertEquals(e.distance, a.distance, 1.e-6, message + ", node: " + node);
+            assertEquals(e.time, a.time, message + ", node: " + node);
+            if (e.edge >= 0)
+                assertNotNull(graph.getEdgeIteratorState(a.edge, node), message + ", node: " + node);
+        }
+        IntObjectHashMap<ShortestPathTree.IsoLabel> expectedIsochrone = new IntObjectHashMap<>();
+        spt.getIsochroneEdges().forEach(l -> expectedIsochrone.put(l.node, l));
+        IntObjectHashMap<ShortestPathTree.IsoLabel> actualIsochrone = new IntObjectHashMap<>();
+        sptCH.getIsochroneEdges().forEach(l -> actualIsochrone.put(l.node, l));
+        assertArrayEquals(sortedNodes(expectedIsochrone), sortedNodes(actualIsochrone), message + ", isochrone edges");
+        for (IntObjectCursor<ShortestPathTree.IsoLabel> cursor : expectedIsochrone) {
+            ShortestPathTree.IsoLabel e = cursor.value;
+            ShortestPathTree.IsoLabel a = actualIsochrone.get(cursor.key);
+            assertEquals(e.weight, a.weight, 1.e-2, message + ", isochrone node: " + cursor.key);
+            assertEquals(e.time, a.time, message + ", isochrone node: " + cursor.key);
+            assertEquals(e.parent.node, a.parent.node, message + ", isochrone node: " + cursor.key);
+        }
+    }
+}
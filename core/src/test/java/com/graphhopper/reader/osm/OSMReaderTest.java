@@ -140,6 +140,117 @@ public class OSMReaderTest {
         return index.findClosest(lat, lon, EdgeFilter.ALL_EDGES).getClosestNode();
     }
 
+    @Test
+    public void testChangeFile() throws IOException {
+        File changeFile = new File(getClass().getResource("test-osm-change.osc").getFile());
+        GraphHopper hopper = new GraphHopperFacade(file1).setStoreOSMWayIds(true).
+                setChangeFiles(changeFile.getPath()).importOrLoad();
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        assertEquals(changeFile.getCanonicalPath(), graph.getProperties().get("datareader.change_files"));
+        int n10 = AbstractGraphStorageTester.getIdOf(graph, 51.2492152);
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        int n30 = AbstractGraphStorageTester.getIdOf(graph, 51.2);
+        int n50 = AbstractGraphStorageTester.getIdOf(graph, 49);
+        // way 11 is a footway now
+        assertEquals(GHUtility.asSet(n10, n30), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n20)));
+        EdgeIteratorState edge = GHUtility.getEdge(graph, n20, n50);
+        assertEquals("new street", edge.getName());
+        assertFalse(edge.get(carAccessEnc));
+        assertTrue(edge.get(footEncoder.getAccessEnc()));
+        assertEquals("route 666", GHUtility.getEdge(graph, n20, n10).getName());
+        AbstractGraphStorageTester.assertPList(Helper.createPointList(51.25, 9.43), edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        // the new way 12 is not accepted
+        assertEquals(4, graph.getNodes());
+        assertEquals(3, graph.getEdges());
+    }
+
+    @Test
+    public void testChangeFileWithTopologyChanges() {
+        // node 35 of way 10 is unknown and way 12 is new, so nothing is applied, not even the change of way 11
+        GraphHopper geometry = new GraphHopperFacade(file1).setStoreOSMWayIds(true).
+                setChangeFiles(getClass().getResource("test-osm-change-geometry.osc").getFile());
+        IllegalStateException e = assertThrows(IllegalStateException.class, geometry::importOrLoad);
+        assertTrue(e.getMessage().contains("{new nodes of ways with unknown coordinates=1, new ways=1}"), e.getMessage());
+        GraphHopperStorage graph = geometry.getGraphHopperStorage();
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        int n50 = AbstractGraphStorageTester.getIdOf(graph, 49);
+        assertTrue(GHUtility.getEdge(graph, n20, n50).get(carAccessEnc));
+        assertEquals("", graph.getProperties().get("datareader.change_files"));
+        geometry.close();
+
+        // the relation flags of way 11 would change
+        Helper.removeDir(new File(dir));
+        GraphHopper relation = new GraphHopperFacade(file1).setStoreOSMWayIds(true).
+                setChangeFiles(getClass().getResource("test-osm-change-relation.osc").getFile());
+        e = assertThrows(IllegalStateException.class, relation::importOrLoad);
+        assertTrue(e.getMessage().contains("{changed relations=1}"), e.getMessage());
+        relation.close();
+    }
+
+    @Test
+    public void testChangeFileMovesNodes() {
+        GraphHopper hopper = new GraphHopperFacade(file1).setStoreOSMWayIds(true).
+                setChangeFiles(getClass().getResource("test-osm-change-node.osc").getFile()).importOrLoad();
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        int n50 = AbstractGraphStorageTester.getIdOf(graph, 49.1);
+        // the pillar node 40 and the tower node 50 moved, node 41 is not used and ignored
+        EdgeIteratorState edge = GHUtility.getEdge(graph, n20, n50);
+        AbstractGraphStorageTester.assertPList(Helper.createPointList(51.26, 9.43), edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals(10, graph.getNodeAccess().getLon(n50), 1e-6);
+        assertEquals(DistanceCalcEarth.DIST_EARTH.calcDistance(edge.fetchWayGeometry(FetchMode.ALL)), edge.getDistance(), 1);
+        assertEquals(n50, findID(hopper.getLocationIndex(), 49.1, 10));
+        assertEquals(4, graph.getNodes());
+    }
+
+    @Test
+    public void testChangeFileChangesNodesOfWay() {
+        GraphHopper hopper = new GraphHopperFacade(file1).setStoreOSMWayIds(true).
+                setChangeFiles(getClass().getResource("test-osm-change-way-nodes.osc").getFile()).importOrLoad();
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        int n10 = AbstractGraphStorageTester.getIdOf(graph, 51.2492152);
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        int n30 = AbstractGraphStorageTester.getIdOf(graph, 51.2);
+        // the new node 36 is a pillar node of the edge between the tower nodes 20 and 30
+        EdgeIteratorState edge = GHUtility.getEdge(graph, n20, n30);
+        AbstractGraphStorageTester.assertPList(Helper.createPointList(51.6, 9.0), edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals(DistanceCalcEarth.DIST_EARTH.calcDistance(edge.fetchWayGeometry(FetchMode.ALL)), edge.getDistance(), 1);
+        assertEquals(0, GHUtility.getEdge(graph, n10, n20).fetchWayGeometry(FetchMode.PILLAR_ONLY).size());
+        assertEquals(4, graph.getNodes());
+        assertEquals(3, graph.getEdges());
+    }
+
+    @Test
+    public void testChangeFileKeepsRelationFlags() {
+        GraphHopper hopper = new GraphHopperFacade("test-osm-route.xml").setStoreOSMWayIds(true).
+                setChangeFiles(getClass().getResource("test-osm-change.osc").getFile()).importOrLoad();
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        EnumEncodedValue<RouteNetwork> bikeNetworkEnc = hopper.getEncodingManager().getEnumEncodedValue(BikeNetwork.KEY, RouteNetwork.class);
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        int n50 = AbstractGraphStorageTester.getIdOf(graph, 49);
+        // way 11 changed, but it is still part of the bicycle route
+        EdgeIteratorState edge = GHUtility.getEdge(graph, n20, n50);
+        assertEquals("new street", edge.getName());
+        assertEquals(RouteNetwork.LOCAL, edge.get(bikeNetworkEnc));
+    }
+
+    @Test
+    public void testChangeFileDeletesWay() {
+        GraphHopper hopper = new GraphHopperFacade(file1).setStoreOSMWayIds(true).
+                setChangeFiles(getClass().getResource("test-osm-change2.osc").getFile()).importOrLoad();
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        int n10 = AbstractGraphStorageTester.getIdOf(graph, 51.2492152);
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        assertEquals(0, GHUtility.count(carAllExplorer.setBaseNode(n10)));
+        assertEquals(1, GHUtility.count(carOutExplorer.setBaseNode(n20)));
+        assertEquals(3, graph.getEdges());
+
+        // without the way ids the change files cannot be applied
+        Helper.removeDir(new File(dir));
+        GraphHopper noWayIds = new GraphHopperFacade(file1).setChangeFiles(getClass().getResource("test-osm-change2.osc").getFile());
+        assertThrows(IllegalStateException.class, noWayIds::importOrLoad);
+    }
+
     @Test
     public void testSort() {
         GraphHopper hopper = new GraphHopperFacade(file1).setSortGraph(true).importOrLoad();
@@ -337,6 +448,23 @@ public class OSMReaderTest {
         assertEquals(88643, iter.getDistance(), 1);
     }
 
+    @Test
+    public void testChangeFileKeepsBarriers() {
+        GraphHopper hopper = new GraphHopperFacade(fileBarriers).setStoreOSMWayIds(true).setMinNetworkSize(0).
+                setChangeFiles(getClass().getResource("test-osm-change-barrier.osc").getFile()).importOrLoad();
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        int n10 = AbstractGraphStorageTester.getIdOf(graph, 51);
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        int new20 = 4;
+        // the barrier edge of way 10 gets the new tags of the way, but still blocks cars
+        EdgeIteratorState barrierEdge = GHUtility.getEdge(graph, n20, new20);
+        assertEquals("fence street", barrierEdge.getName());
+        assertFalse(barrierEdge.get(carAccessEnc));
+        assertFalse(barrierEdge.getReverse(carAccessEnc));
+        assertEquals("fence street", GHUtility.getEdge(graph, n10, n20).getName());
+        assertEquals(GHUtility.asSet(n10), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n20)));
+    }
+
     @Test
     public void testBarriers() {
         GraphHopper hopper = new GraphHopperFacade(fileBarriers).
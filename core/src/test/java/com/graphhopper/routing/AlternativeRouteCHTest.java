@@ -32,6 +32,8 @@ import com.graphhopper.util.PMap;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -118,4 +120,42 @@ public class AlternativeRouteCHTest {
         // 4 -> 11 -> 12 -> 10 is not too long compared to 4 -> 10
     }
 
+    @Test
+    public void testConcurrentCandidateChecks() {
+        BaseGraph g = createTestGraph(em);
+        PMap hints = new PMap();
+        hints.putObject("alternative_route.max_weight_factor", 4);
+        hints.putObject("alternative_route.local_optimality_factor", 0.5);
+        hints.putObject("alternative_route.max_paths", 4);
+        RoutingCHGraph routingCHGraph = prepareCH(g);
+        List<AlternativeRouteCH.AlternativeInfo> expected = new AlternativeRouteCH(routingCHGraph, hints).calcAlternatives(5, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int threads = 2; threads <= 5; threads++) {
+                List<AlternativeRouteCH.AlternativeInfo> pathInfos = new AlternativeRouteCH(routingCHGraph, hints)
+                        .setExecutor(executor, threads).calcAlternatives(5, 10);
+                assertEquals(expected.size(), pathInfos.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getPath().calcNodes(), pathInfos.get(i).getPath().calcNodes());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTimeBudget() {
+        BaseGraph g = createTestGraph(em);
+        PMap hints = new PMap();
+        hints.putObject("alternative_route.max_weight_factor", 4);
+        hints.putObject("alternative_route.local_optimality_factor", 0.5);
+        hints.putObject("alternative_route.max_paths", 4);
+        hints.putObject("alternative_route.max_time_ms", 0);
+        RoutingCHGraph routingCHGraph = prepareCH(g);
+        // without any time left only the best path is returned
+        List<AlternativeRouteCH.AlternativeInfo> pathInfos = new AlternativeRouteCH(routingCHGraph, hints).calcAlternatives(5, 10);
+        assertEquals(1, pathInfos.size());
+    }
+
 }
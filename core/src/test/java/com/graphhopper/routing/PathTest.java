@@ -343,6 +343,32 @@ public class PathTest {
         assertEquals(4, streetNameDetails.get(3).getLast());
     }
 
+    @Test
+    public void testInstructionsPointsAndDetailsInOnePass() {
+        ShortestWeighting weighting = new ShortestWeighting(encoder);
+        Path p = new Dijkstra(pathDetailGraph, weighting, TraversalMode.NODE_BASED).calcPath(1, 5);
+        assertTrue(p.isFound());
+        List<String> requestedDetails = Arrays.asList(STREET_NAME, EDGE_ID, AVERAGE_SPEED, DISTANCE);
+
+        InstructionList instructions = new InstructionList(tr);
+        PointList points = new PointList(p.getEdgeCount() + 1, pathDetailGraph.getNodeAccess().is3D());
+        PathDetailsFromEdges detailsVisitor = PathDetailsFromEdges.create(p, carManager, weighting, requestedDetails,
+                new PathDetailsBuilderFactory(), 0);
+        p.forEveryEdge(Arrays.asList(InstructionsFromEdges.create(p, pathDetailGraph, weighting, carManager, instructions),
+                p.createPointsVisitor(points), detailsVisitor));
+
+        InstructionList expectedInstructions = InstructionsFromEdges.calcInstructions(p, pathDetailGraph, weighting, carManager, tr);
+        assertEquals(expectedInstructions.toString(), instructions.toString());
+        assertEquals(p.calcPoints(), points);
+        Map<String, List<PathDetail>> expectedDetails = PathDetailsFromEdges.calcDetails(p, carManager, weighting,
+                requestedDetails, new PathDetailsBuilderFactory(), 0);
+        Map<String, List<PathDetail>> details = detailsVisitor.getDetails();
+        assertEquals(expectedDetails.keySet(), details.keySet());
+        for (String key : requestedDetails) {
+            assertEquals(expectedDetails.get(key).toString(), details.get(key).toString(), key);
+        }
+    }
+
     @Test
     public void testCalcEdgeIdDetails() {
         ShortestWeighting weighting = new ShortestWeighting(encoder);
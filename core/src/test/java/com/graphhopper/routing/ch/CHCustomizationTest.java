@@ -0,0 +1,200 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FlagEncoders;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.AbstractAdjustedWeighting;
+import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CHCustomizationTest {
+    private final FlagEncoder encoder = FlagEncoders.createCar(new PMap().putObject("max_turn_costs", 10));
+    private final EncodingManager encodingManager = EncodingManager.create(encoder);
+    private final BaseGraph graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void sameWeighting(boolean edgeBased) {
+        Random rnd = new Random(123);
+        Weighting weighting = createWeighting(edgeBased);
+        CHStorage chStorage = prepare(rnd, weighting, edgeBased);
+        CHShortcutWeights shortcutWeights = new CHCustomization(graph, chStorage).customize(weighting);
+        RoutingCHGraph chGraph = new RoutingCHGraphImpl(graph, chStorage, weighting, shortcutWeights);
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new Dijkstra(graph, weighting, edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED).calcPath(from, to);
+            Path path = createCHAlgo(chGraph).calcPath(from, to);
+            String msg = "from: " + from + ", to: " + to;
+            assertEquals(refPath.isFound(), path.isFound(), msg);
+            if (refPath.isFound())
+                assertEquals(refPath.getWeight(), path.getWeight(), 1.e-3, msg);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void changedWeighting(boolean edgeBased) {
+        Random rnd = new Random(456);
+        Weighting weighting = createWeighting(edgeBased);
+        CHStorage chStorage = prepare(rnd, weighting, edgeBased);
+        CHCustomization customization = new CHCustomization(graph, chStorage).setThreads(2);
+        CHShortcutWeights previous = customization.customize(weighting);
+
+        IntHashSet slowEdges = new IntHashSet();
+        GHBitSet changedEdges = new GHBitSetImpl(graph.getEdges());
+        for (int i = 0; i < graph.getEdges() / 10; i++) {
+            int edge = rnd.nextInt(graph.getEdges());
+            slowEdges.add(edge);
+            changedEdges.add(edge);
+        }
+        Weighting slowWeighting = new SlowEdgesWeighting(weighting, slowEdges);
+        CHShortcutWeights shortcutWeights = customization.customize(slowWeighting);
+        // updating only the shortcuts that include a changed edge yields the same weights
+        CHShortcutWeights updatedWeights = customization.customize(slowWeighting, previous, changedEdges);
+        for (int shortcut = 0; shortcut < shortcutWeights.getShortcuts(); shortcut++) {
+            assertEquals(shortcutWeights.getWeight(shortcut, false), updatedWeights.getWeight(shortcut, false), 1.e-6);
+            assertEquals(shortcutWeights.getWeight(shortcut, true), updatedWeights.getWeight(shortcut, true), 1.e-6);
+        }
+
+        RoutingCHGraph chGraph = new RoutingCHGraphImpl(graph, chStorage, slowWeighting, shortcutWeights);
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new Dijkstra(graph, slowWeighting, edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED).calcPath(from, to);
+            Path path = createCHAlgo(chGraph).calcPath(from, to);
+            String msg = "from: " + from + ", to: " + to;
+            assertEquals(refPath.isFound(), path.isFound(), msg);
+            if (!refPath.isFound())
+                continue;
+            // the node ordering was not made for the new weighting, so the path can be worse than the best one, but
+            // its weight must match the weight of its edges
+            assertTrue(path.getWeight() >= refPath.getWeight() - 1.e-3, msg);
+            assertEquals(calcWeight(slowWeighting, path), path.getWeight(), 1.e-3, msg);
+        }
+    }
+
+    @Test
+    public void otherLowerTriangle() {
+        //   0
+        //  / \
+        // 2   3  the shortcut 2-3 skips the shorter edges to node 1, node 0 is a witness that was contracted before
+        //  \ /
+        //   1
+        Weighting weighting = createWeighting(false);
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(0, 2).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(0, 3).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(1, 2).setDistance(50));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(1, 3).setDistance(50));
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("car", weighting);
+        CHStorage chStorage = CHStorage.fromGraph(graph, chConfig);
+        CHStorageBuilder chBuilder = new CHStorageBuilder(chStorage);
+        chBuilder.setIdentityLevels();
+        chBuilder.addShortcutNodeBased(2, 3, PrepareEncoder.getScDirMask(), 2 * weighting.calcEdgeWeight(graph.getEdgeIteratorState(2, 2), false), 2, 3);
+
+        IntHashSet slowEdges = new IntHashSet();
+        slowEdges.addAll(2, 3);
+        Weighting slowWeighting = new SlowEdgesWeighting(weighting, slowEdges);
+        CHShortcutWeights shortcutWeights = new CHCustomization(graph, chStorage).customize(slowWeighting);
+        RoutingCHGraph chGraph = new RoutingCHGraphImpl(graph, chStorage, slowWeighting, shortcutWeights);
+        for (int[] fromTo : new int[][]{{2, 3}, {3, 2}}) {
+            Path refPath = new Dijkstra(graph, slowWeighting, TraversalMode.NODE_BASED).calcPath(fromTo[0], fromTo[1]);
+            Path path = createCHAlgo(chGraph).calcPath(fromTo[0], fromTo[1]);
+            // the shortcut is now calculated via node 0 and unpacked accordingly
+            assertEquals(refPath.getWeight(), path.getWeight(), 1.e-3);
+            assertEquals(IntArrayList.from(fromTo[0], 0, fromTo[1]), path.calcNodes());
+        }
+    }
+
+    private Weighting createWeighting(boolean edgeBased) {
+        return edgeBased
+                ? new FastestWeighting(encoder, new DefaultTurnCostProvider(encoder, graph.getTurnCostStorage(), 40))
+                : new FastestWeighting(encoder);
+    }
+
+    private CHStorage prepare(Random rnd, Weighting weighting, boolean edgeBased) {
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.2, true, true,
+                encoder.getAccessEnc(), encoder.getAverageSpeedEnc(), null, 0.7, 0.8, 0.8);
+        if (edgeBased)
+            GHUtility.addRandomTurnCosts(graph, rnd.nextLong(), encodingManager, encoder, 10, graph.getTurnCostStorage());
+        graph.freeze();
+        CHConfig chConfig = edgeBased ? CHConfig.edgeBased("car", weighting) : CHConfig.nodeBased("car", weighting);
+        return PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork().getCHStorage();
+    }
+
+    private static RoutingAlgorithm createCHAlgo(RoutingCHGraph chGraph) {
+        return new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap());
+    }
+
+    private double calcWeight(Weighting weighting, Path path) {
+        IntIndexedContainer nodes = path.calcNodes();
+        double weight = 0;
+        int prevEdge = EdgeIterator.NO_EDGE;
+        for (int i = 0; i < path.getEdgeCount(); i++) {
+            int edge = path.getEdges().get(i);
+            weight += GHUtility.calcWeightWithTurnWeight(weighting, graph.getEdgeIteratorState(edge, nodes.get(i + 1)), false, prevEdge);
+            prevEdge = edge;
+        }
+        return weight;
+    }
+
+    private static class SlowEdgesWeighting extends AbstractAdjustedWeighting {
+        private final IntHashSet slowEdges;
+
+        SlowEdgesWeighting(Weighting superWeighting, IntHashSet slowEdges) {
+            super(superWeighting);
+            this.slowEdges = slowEdges;
+        }
+
+        @Override
+        public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+            double weight = superWeighting.calcEdgeWeight(edgeState, reverse);
+            return slowEdges.contains(edgeState.getEdge()) ? 3 * weight : weight;
+        }
+
+        @Override
+        public String getName() {
+            return "slow_edges";
+        }
+    }
+}
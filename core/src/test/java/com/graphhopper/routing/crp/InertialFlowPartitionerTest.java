@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.crp;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FlagEncoders;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InertialFlowPartitionerTest {
+    private final FlagEncoder encoder = FlagEncoders.createCar();
+    private final BaseGraph graph = new BaseGraph.Builder(EncodingManager.create(encoder)).create();
+
+    @Test
+    public void splitAtBridge() {
+        // two 3x3 grids that are connected by a single edge between 5 and 12
+        // 0-1-2    9-10-11
+        // | | |    |  |  |
+        // 3-4-5 - 12-13-14
+        // | | |    |  |  |
+        // 6-7-8   15-16-17
+        for (int grid = 0; grid < 2; grid++) {
+            int offset = grid * 9;
+            for (int row = 0; row < 3; row++) {
+                for (int col = 0; col < 3; col++) {
+                    int node = offset + row * 3 + col;
+                    graph.getNodeAccess().setNode(node, 50 - row * 0.01, 10 + grid * 0.05 + col * 0.01);
+                    if (col < 2)
+                        GHUtility.setSpeed(60, true, true, encoder, graph.edge(node, node + 1).setDistance(1000));
+                    if (row < 2)
+                        GHUtility.setSpeed(60, true, true, encoder, graph.edge(node, node + 3).setDistance(1000));
+                }
+            }
+        }
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(5, 12).setDistance(1000));
+        int[][] cells = new InertialFlowPartitioner(graph).partition(9);
+        for (int node = 1; node < 9; node++) {
+            assertEquals(cells[0][0], cells[0][node]);
+            assertEquals(cells[0][9], cells[0][node + 9]);
+        }
+        assertNotEquals(cells[0][0], cells[0][9]);
+    }
+
+    @Test
+    public void nestedCells() {
+        Random rnd = new Random(123);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.2, true, true,
+                encoder.getAccessEnc(), encoder.getAverageSpeedEnc(), null, 0.7, 0.8, 0.8);
+        int[] maxCellSizes = {10, 50, 200};
+        int[][] cells = new InertialFlowPartitioner(graph).partition(maxCellSizes);
+        Directory dir = new RAMDirectory();
+        CRPPartition partition = new CRPPartition(dir.create("crp_partition")).create(cells);
+        for (int level = 0; level < maxCellSizes.length; level++) {
+            int[] cellSizes = new int[partition.getCellCount(level)];
+            for (int node = 0; node < graph.getNodes(); node++) {
+                cellSizes[partition.getCell(level, node)]++;
+            }
+            for (int size : cellSizes) {
+                assertTrue(size > 0 && size <= maxCellSizes[level], "level " + level + ", cell size: " + size);
+            }
+        }
+        // every cell is contained in one cell of the level above
+        for (int level = 1; level < maxCellSizes.length; level++) {
+            Set<String> pairs = new HashSet<>();
+            Set<Integer> lowerCells = new HashSet<>();
+            for (int node = 0; node < graph.getNodes(); node++) {
+                pairs.add(partition.getCell(level - 1, node) + "_" + partition.getCell(level, node));
+                lowerCells.add(partition.getCell(level - 1, node));
+            }
+            assertEquals(lowerCells.size(), pairs.size());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new CRPPartition(dir.create("crp_partition_invalid"))
+                .create(new int[][]{{0, 0, 1}, {0, 1, 1}}));
+    }
+}
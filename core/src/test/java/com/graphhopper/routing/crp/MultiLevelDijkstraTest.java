@@ -0,0 +1,208 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.crp;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FlagEncoders;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.BBox;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiLevelDijkstraTest {
+    private final FlagEncoder encoder = FlagEncoders.createCar(new PMap().putObject("max_turn_costs", 10));
+    private final EncodingManager encodingManager = EncodingManager.create(encoder);
+    private final BaseGraph graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+    private final Weighting weighting = new FastestWeighting(encoder, new DefaultTurnCostProvider(encoder, graph.getTurnCostStorage(), 40));
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 4, 5})
+    public void randomGraph(long seed) {
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 300, 2.2, true, true,
+                encoder.getAccessEnc(), encoder.getAverageSpeedEnc(), null, 0.7, 0.8, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, encodingManager, encoder, 10, graph.getTurnCostStorage());
+        graph.freeze();
+        CRPCustomization customization = prepare(2, 8, 32, 128);
+        int refVisitedNodes = 0, visitedNodes = 0;
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Dijkstra refAlgo = new Dijkstra(graph, weighting, TraversalMode.EDGE_BASED);
+            Path refPath = refAlgo.calcPath(from, to);
+            MultiLevelDijkstra algo = new MultiLevelDijkstra(graph, customization);
+            Path path = algo.calcPath(from, to);
+            refVisitedNodes += refAlgo.getVisitedNodes();
+            visitedNodes += algo.getVisitedNodes();
+            String msg = "seed: " + seed + ", from: " + from + ", to: " + to;
+            assertEquals(refPath.isFound(), path.isFound(), msg);
+            if (!refPath.isFound())
+                continue;
+            assertEquals(refPath.getWeight(), path.getWeight(), 1.e-6, msg);
+            // the unpacked path must be a valid path in the base graph with the same weight
+            IntIndexedContainer nodes = path.calcNodes();
+            assertEquals(from, nodes.get(0), msg);
+            assertEquals(to, nodes.get(nodes.size() - 1), msg);
+            assertEquals(path.getWeight(), calcWeight(graph, weighting, path), 1.e-6, msg);
+        }
+        assertTrue(visitedNodes < refVisitedNodes, "the cliques should reduce the search space: " + visitedNodes + " vs. " + refVisitedNodes);
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3})
+    public void randomQueryGraph(long seed) {
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 300, 2.2, true, true,
+                encoder.getAccessEnc(), encoder.getAverageSpeedEnc(), null, 0.7, 0.8, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, encodingManager, encoder, 10, graph.getTurnCostStorage());
+        graph.freeze();
+        CRPCustomization customization = prepare(1, 8, 32, 128);
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        BBox bounds = graph.getBounds();
+        for (int i = 0; i < 100; i++) {
+            Snap fromSnap = index.findClosest(randomLat(rnd, bounds), randomLon(rnd, bounds), EdgeFilter.ALL_EDGES);
+            Snap toSnap = index.findClosest(randomLat(rnd, bounds), randomLon(rnd, bounds), EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, fromSnap, toSnap);
+            Weighting queryWeighting = queryGraph.wrapWeighting(weighting);
+            int from = fromSnap.getClosestNode();
+            int to = toSnap.getClosestNode();
+            Path refPath = new Dijkstra(queryGraph, queryWeighting, TraversalMode.EDGE_BASED).calcPath(from, to);
+            Path path = new MultiLevelDijkstra(queryGraph, customization).calcPath(from, to);
+            String msg = "seed: " + seed + ", from: " + from + ", to: " + to;
+            assertEquals(refPath.isFound(), path.isFound(), msg);
+            if (!refPath.isFound())
+                continue;
+            assertEquals(refPath.getWeight(), path.getWeight(), 1.e-6, msg);
+            IntIndexedContainer nodes = path.calcNodes();
+            assertEquals(from, nodes.get(0), msg);
+            assertEquals(to, nodes.get(nodes.size() - 1), msg);
+            assertEquals(path.getWeight(), calcWeight(queryGraph, queryWeighting, path), 1.e-6, msg);
+        }
+    }
+
+    @Test
+    public void loadExisting() {
+        Random rnd = new Random(123);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, true,
+                encoder.getAccessEnc(), encoder.getAverageSpeedEnc(), null, 0.7, 0.8, 0.8);
+        GHUtility.addRandomTurnCosts(graph, 123, encodingManager, encoder, 10, graph.getTurnCostStorage());
+        graph.freeze();
+        String location = "./target/tmp-crp";
+        Helper.removeDir(new File(location));
+        Directory dir = new RAMDirectory(location, true).create();
+        CRPPartition partition = new CRPPartition(dir.create("crp_partition"))
+                .create(new InertialFlowPartitioner(graph).partition(8, 32));
+        partition.flush();
+        CRPCustomization customization = new CRPCustomization(graph, weighting, partition, dir.create("crp_customization")).customize();
+        customization.flush();
+
+        dir = new RAMDirectory(location, true);
+        CRPPartition loadedPartition = new CRPPartition(dir.create("crp_partition"));
+        assertTrue(loadedPartition.loadExisting());
+        CRPCustomization loaded = new CRPCustomization(graph, weighting, loadedPartition, dir.create("crp_customization"));
+        assertTrue(loaded.loadExisting());
+        assertTrue(loaded.isCustomized());
+        for (int i = 0; i < 50; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path expected = new MultiLevelDijkstra(graph, customization).calcPath(from, to);
+            Path path = new MultiLevelDijkstra(graph, loaded).calcPath(from, to);
+            assertEquals(expected.isFound(), path.isFound());
+            assertEquals(expected.getWeight(), path.getWeight(), 1.e-6);
+            assertEquals(expected.calcNodes(), path.calcNodes());
+        }
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void customizeAgainAfterWeightChange() {
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(0, 1).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(1, 2).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(2, 3).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(1, 4).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(4, 5).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(5, 3).setDistance(100));
+        graph.freeze();
+        CRPPartition partition = new CRPPartition(new RAMDirectory().create("crp_partition"))
+                .create(new int[][]{{0, 0, 1, 2, 3, 3}});
+        CRPCustomization customization = new CRPCustomization(graph, weighting, partition, new RAMDirectory().create("crp_customization")).customize();
+        Path path = new MultiLevelDijkstra(graph, customization).calcPath(0, 3);
+        assertEquals(IntArrayList.from(0, 1, 2, 3), path.calcNodes());
+
+        GHUtility.setSpeed(5, true, true, encoder, graph.getEdgeIteratorState(1, 2));
+        customization.customize();
+        path = new MultiLevelDijkstra(graph, customization).calcPath(0, 3);
+        assertEquals(IntArrayList.from(0, 1, 4, 5, 3), path.calcNodes());
+    }
+
+    private CRPCustomization prepare(int threads, int... maxCellSizes) {
+        int[][] cells = new InertialFlowPartitioner(graph).partition(maxCellSizes);
+        CRPPartition partition = new CRPPartition(new RAMDirectory().create("crp_partition")).create(cells);
+        return new CRPCustomization(graph, weighting, partition, new RAMDirectory().create("crp_customization")).setThreads(threads).customize();
+    }
+
+    private static double randomLat(Random rnd, BBox bounds) {
+        return bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat);
+    }
+
+    private static double randomLon(Random rnd, BBox bounds) {
+        return bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon);
+    }
+
+    private static double calcWeight(Graph graph, Weighting weighting, Path path) {
+        IntIndexedContainer nodes = path.calcNodes();
+        double weight = 0;
+        int prevEdge = EdgeIterator.NO_EDGE;
+        for (int i = 0; i < path.getEdgeCount(); i++) {
+            int edge = path.getEdges().get(i);
+            weight += GHUtility.calcWeightWithTurnWeight(weighting, graph.getEdgeIteratorState(edge, nodes.get(i + 1)), false, prevEdge);
+            prevEdge = edge;
+        }
+        return weight;
+    }
+}
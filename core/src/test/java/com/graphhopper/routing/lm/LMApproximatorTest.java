@@ -29,10 +29,13 @@ import com.graphhopper.storage.RAMDirectory;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.PMap;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
 
 import java.util.Random;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class LMApproximatorTest {
@@ -43,6 +46,53 @@ public class LMApproximatorTest {
         run(seed);
     }
 
+    @Test
+    public void cachedActiveLandmarks() {
+        Directory dir = new RAMDirectory();
+        FlagEncoder encoder = FlagEncoders.createCar();
+        EncodingManager encodingManager = new EncodingManager.Builder().add(encoder).add(Subnetwork.create("car")).build();
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).setDir(dir).create();
+        GHUtility.buildRandomGraph(graph, new Random(123), 100, 2.2, true, true,
+                encoder.getAccessEnc(), encoder.getAverageSpeedEnc(), null, 0.7, 0.8, 0.8);
+        Weighting weighting = new FastestWeighting(encoder);
+        PrepareLandmarks lm = new PrepareLandmarks(dir, graph, encodingManager, new LMConfig("car", weighting), 16);
+        lm.setMaximumWeight(10000);
+        lm.doWork();
+        LandmarkStorage landmarkStorage = lm.getLandmarkStorage();
+
+        double[][] expected = new double[graph.getNodes()][];
+        landmarkStorage.setActiveLandmarkCacheSize(0);
+        for (int t = 0; t < graph.getNodes(); t++) {
+            expected[t] = approximateAll(graph, weighting, landmarkStorage, t);
+        }
+        // a small cache so that entries are also replaced, and every target is queried twice
+        landmarkStorage.setActiveLandmarkCacheSize(16);
+        for (int run = 0; run < 2; run++) {
+            for (int t = 0; t < graph.getNodes(); t++) {
+                assertArrayEquals(expected[t], approximateAll(graph, weighting, landmarkStorage, t), "target " + t);
+            }
+        }
+    }
+
+    private double[] approximateAll(BaseGraph graph, Weighting weighting, LandmarkStorage lms, int t) {
+        double[] result = new double[graph.getNodes() * 2];
+        for (int v = 0; v < graph.getNodes(); v++) {
+            for (boolean reverse : new boolean[]{false, true}) {
+                // a new approximator per source node so that every query chooses its active landmarks from scratch
+                LMApproximator approximator = new LMApproximator(graph, weighting, graph.getNodes(), lms, 8, lms.getFactor(), reverse);
+                approximator.setTo(t);
+                double weight;
+                try {
+                    weight = approximator.approximate(v);
+                } catch (ConnectionNotFoundException ex) {
+                    weight = -1;
+                }
+                result[2 * v + (reverse ? 1 : 0)] = weight;
+            }
+        }
+        return result;
+    }
+
     private void run(long seed) {
         Directory dir = new RAMDirectory();
         FlagEncoder encoder = FlagEncoders.createCar(new PMap("turn_costs=true"));
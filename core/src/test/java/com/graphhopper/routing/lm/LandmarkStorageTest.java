@@ -113,6 +113,35 @@ public class LandmarkStorageTest {
         assertFalse(lms.isInfinity(0));
     }
 
+    @Test
+    public void testGetWeights() {
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(0, 1).setDistance(40.1));
+        LandmarkStorage lms = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("c1", new FastestWeighting(encoder)), 4).
+                setMaximumWeight(LandmarkStorage.PRECISION);
+        lms._getInternalDA().create(2000);
+        // row of node 1 with 4 landmarks, every landmark has a 'from' and a 'to' short
+        long row = 16;
+        lms.setWeight(row, 3);
+        lms.setWeight(row + 2, 65000);
+        lms.setWeight(row + 4, 79999);
+        lms._getInternalDA().setShort(row + 6, (short) 65535);
+        lms.setWeight(row + 8, 0);
+        lms.setWeight(row + 10, 17);
+        lms._getInternalDA().setShort(row + 12, (short) 65535);
+        lms.setWeight(row + 14, 1);
+
+        int[] landmarkIndices = {3, 0, 2, 1};
+        int[] fromWeights = new int[4];
+        int[] toWeights = new int[4];
+        lms.getWeights(1, landmarkIndices, fromWeights, toWeights);
+        for (int i = 0; i < landmarkIndices.length; i++) {
+            assertEquals(lms.getFromWeight(landmarkIndices[i], 1), fromWeights[i]);
+            assertEquals(lms.getToWeight(landmarkIndices[i], 1), toWeights[i]);
+        }
+        assertEquals("[65534, 3, 0, 65534]", Arrays.toString(fromWeights));
+        assertEquals("[1, 65000, 17, 65534]", Arrays.toString(toWeights));
+    }
+
     @Test
     public void testWithSubnetworks() {
         // 0-1-2..4-5->6
@@ -0,0 +1,132 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FlagEncoders;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.graphhopper.routing.timedependent.SpeedProfileStorage.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpeedProfileStorageTest {
+    private static final String LOCATION = "./target/speed-profiles-test";
+    private final FlagEncoder encoder = FlagEncoders.createCar();
+    private final BaseGraph graph = new BaseGraph.Builder(EncodingManager.create(encoder)).create();
+
+    @BeforeEach
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(new File(LOCATION));
+    }
+
+    @Test
+    public void profilesAreDeduplicated() {
+        SpeedProfileStorage storage = new SpeedProfileStorage(new RAMDirectory()).create(4);
+        storage.setProfile(0, false, constant(50));
+        storage.setProfile(1, true, constant(50));
+        storage.setProfile(2, false, constant(120));
+        assertEquals(2, storage.getProfileCount());
+        assertEquals(1.2, storage.getMaxFactor(), 1.e-6);
+        assertEquals(0.5, storage.getFactor(0, false, 0), 1.e-6);
+        assertEquals(1, storage.getFactor(0, true, 0), 1.e-6);
+        assertEquals(0.5, storage.getFactor(1, true, 0), 1.e-6);
+        assertEquals(1, storage.getFactor(3, false, 0), 1.e-6);
+
+        assertThrows(IllegalArgumentException.class, () -> storage.setProfile(4, false, constant(50)));
+        assertThrows(IllegalArgumentException.class, () -> storage.setProfile(0, false, constant(0)));
+        assertThrows(IllegalArgumentException.class, () -> storage.setProfile(0, false, new int[SLOTS - 1]));
+    }
+
+    @Test
+    public void calcMillisAcrossSlots() {
+        EdgeIteratorState edge = GHUtility.setSpeed(60, true, true, encoder, graph.edge(0, 1).setDistance(1000));
+        SpeedProfileStorage storage = new SpeedProfileStorage(new RAMDirectory()).create(graph.getEdges());
+        int[] factors = constant(100);
+        // half the speed from 08:00 to 08:15
+        factors[32] = 50;
+        storage.setProfile(edge.getEdge(), false, factors);
+
+        long eight = 8 * 3600_000;
+        assertEquals(60_000, storage.calcMillis(edge, false, 60_000, 0), 1.e-6);
+        assertEquals(120_000, storage.calcMillis(edge, false, 60_000, eight), 1.e-6);
+        // the other direction has no profile
+        assertEquals(60_000, storage.calcMillis(graph.getEdgeIteratorState(edge.getEdge(), 0), false, 60_000, eight), 1.e-6);
+        assertEquals(120_000, storage.calcMillis(graph.getEdgeIteratorState(edge.getEdge(), 0), true, 60_000, eight), 1.e-6);
+        // 30s with full speed before 08:00 cover half of the edge, the other half takes 60s
+        assertEquals(90_000, storage.calcMillis(edge, false, 60_000, eight - 30_000), 1.e-6);
+        // 30s with half speed before 08:15 cover a quarter of the edge, the rest takes 45s
+        assertEquals(75_000, storage.calcMillis(edge, false, 60_000, eight + SLOT_MILLIS - 30_000), 1.e-6);
+        // the profile repeats every day
+        assertEquals(120_000, storage.calcMillis(edge, false, 60_000, eight + 3 * DAY_MILLIS), 1.e-6);
+    }
+
+    @Test
+    public void laterDepartureNeverArrivesEarlier() {
+        EdgeIteratorState edge = GHUtility.setSpeed(60, true, true, encoder, graph.edge(0, 1).setDistance(1000));
+        SpeedProfileStorage storage = new SpeedProfileStorage(new RAMDirectory()).create(graph.getEdges());
+        Random rnd = new Random(123);
+        int[] factors = new int[SLOTS];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            factors[slot] = 1 + rnd.nextInt(255);
+        }
+        storage.setProfile(edge.getEdge(), false, factors);
+        double prevArrival = -1;
+        for (long time = 0; time < DAY_MILLIS; time += 10_000) {
+            double arrival = time + storage.calcMillis(edge, false, 20 * 60_000, time);
+            assertTrue(arrival >= prevArrival, "departure: " + time);
+            prevArrival = arrival;
+        }
+    }
+
+    @Test
+    public void flushAndLoad() {
+        new File(LOCATION).mkdirs();
+        SpeedProfileStorage storage = new SpeedProfileStorage(new GHDirectory(LOCATION, DAType.RAM_STORE)).create(3);
+        storage.setProfile(2, true, constant(80));
+        storage.flush();
+        storage.close();
+
+        storage = new SpeedProfileStorage(new GHDirectory(LOCATION, DAType.RAM_STORE));
+        assertTrue(storage.loadExisting());
+        assertEquals(1, storage.getProfileCount());
+        assertEquals(0.8, storage.getFactor(2, true, 0), 1.e-6);
+        assertEquals(1, storage.getFactor(2, false, 0), 1.e-6);
+        storage.close();
+    }
+
+    private static int[] constant(int factor) {
+        int[] factors = new int[SLOTS];
+        Arrays.fill(factors, factor);
+        return factors;
+    }
+}
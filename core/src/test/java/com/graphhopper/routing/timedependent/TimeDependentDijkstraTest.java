@@ -0,0 +1,151 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.timedependent;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FlagEncoders;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.graphhopper.routing.timedependent.SpeedProfileStorage.SLOTS;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeDependentDijkstraTest {
+    private final FlagEncoder encoder = FlagEncoders.createCar(new PMap().putObject("max_turn_costs", 10));
+    private final EncodingManager encodingManager = EncodingManager.create(encoder);
+    private final BaseGraph graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+
+    @Test
+    public void rushHour() {
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(0, 1).setDistance(1000));
+        EdgeIteratorState edge = GHUtility.setSpeed(60, true, true, encoder, graph.edge(1, 2).setDistance(1000));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(2, 3).setDistance(1000));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(1, 4).setDistance(1000));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(4, 5).setDistance(1000));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(5, 3).setDistance(1000));
+        graph.freeze();
+        SpeedProfileStorage storage = new SpeedProfileStorage(new RAMDirectory()).create(graph.getEdges());
+        int[] factors = new int[SLOTS];
+        Arrays.fill(factors, 100);
+        // a quarter of the speed from 07:00 to 09:00
+        Arrays.fill(factors, 28, 36, 25);
+        storage.setProfile(edge.getEdge(), false, factors);
+        Weighting weighting = new FastestWeighting(encoder);
+
+        Path path = new TimeDependentDijkstra(graph, weighting, TraversalMode.NODE_BASED, storage, 3 * 3600_000).calcPath(0, 3);
+        assertEquals(IntArrayList.from(0, 1, 2, 3), path.calcNodes());
+        assertEquals(180_000, path.getTime());
+        path = new TimeDependentDijkstra(graph, weighting, TraversalMode.NODE_BASED, storage, 8 * 3600_000).calcPath(0, 3);
+        assertEquals(IntArrayList.from(0, 1, 4, 5, 3), path.calcNodes());
+        assertEquals(240_000, path.getTime());
+        assertEquals(240, path.getWeight(), 1.e-6);
+        // the other direction has no rush hour
+        path = new TimeDependentDijkstra(graph, weighting, TraversalMode.NODE_BASED, storage, 8 * 3600_000).calcPath(3, 0);
+        assertEquals(IntArrayList.from(3, 2, 1, 0), path.calcNodes());
+        // the rush hour ends before we reach the edge
+        path = new TimeDependentAStar(graph, weighting, TraversalMode.NODE_BASED, storage, 9 * 3600_000 - 60_000, encoder.getMaxSpeed()).calcPath(0, 3);
+        assertEquals(IntArrayList.from(0, 1, 2, 3), path.calcNodes());
+        assertEquals(180_000, path.getTime());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void randomGraph(boolean edgeBased) {
+        Random rnd = new Random(123);
+        GHUtility.buildRandomGraph(graph, rnd, 300, 2.2, true, true,
+                encoder.getAccessEnc(), encoder.getAverageSpeedEnc(), null, 0.7, 0.8, 0.8);
+        if (edgeBased)
+            GHUtility.addRandomTurnCosts(graph, rnd.nextLong(), encodingManager, encoder, 10, graph.getTurnCostStorage());
+        graph.freeze();
+        SpeedProfileStorage storage = new SpeedProfileStorage(new RAMDirectory()).create(graph.getEdges());
+        for (int edge = 0; edge < graph.getEdges(); edge++) {
+            if (rnd.nextBoolean())
+                continue;
+            int[] factors = new int[SLOTS];
+            for (int slot = 0; slot < SLOTS; slot++) {
+                factors[slot] = 20 + rnd.nextInt(130);
+            }
+            storage.setProfile(edge, rnd.nextBoolean(), factors);
+        }
+        Weighting weighting = edgeBased
+                ? new FastestWeighting(encoder, new DefaultTurnCostProvider(encoder, graph.getTurnCostStorage(), 40))
+                : new FastestWeighting(encoder);
+        TraversalMode traversalMode = edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
+        int visitedNodes = 0, aStarVisitedNodes = 0;
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            long departure = rnd.nextInt((int) SpeedProfileStorage.DAY_MILLIS);
+            String msg = "from: " + from + ", to: " + to + ", departure: " + departure;
+            TimeDependentDijkstra dijkstra = new TimeDependentDijkstra(graph, weighting, traversalMode, storage, departure);
+            Path path = dijkstra.calcPath(from, to);
+            TimeDependentAStar aStar = new TimeDependentAStar(graph, weighting, traversalMode, storage, departure, encoder.getMaxSpeed());
+            Path aStarPath = aStar.calcPath(from, to);
+            Path staticPath = new Dijkstra(graph, weighting, traversalMode).calcPath(from, to);
+            assertEquals(staticPath.isFound(), path.isFound(), msg);
+            assertEquals(staticPath.isFound(), aStarPath.isFound(), msg);
+            if (!path.isFound())
+                continue;
+            visitedNodes += dijkstra.getVisitedNodes();
+            aStarVisitedNodes += aStar.getVisitedNodes();
+            double time = calcTime(weighting, storage, path, departure);
+            assertEquals(time, path.getWeight() * 1000, 1.e-3, msg);
+            assertEquals(time, calcTime(weighting, storage, aStarPath, departure), 1.e-3, msg);
+            // the static path is not faster if it is driven at the same departure time
+            assertTrue(time <= calcTime(weighting, storage, staticPath, departure) + 1.e-3, msg);
+        }
+        assertTrue(aStarVisitedNodes < visitedNodes, aStarVisitedNodes + " vs. " + visitedNodes);
+    }
+
+    private double calcTime(Weighting weighting, SpeedProfileStorage storage, Path path, long departure) {
+        IntIndexedContainer nodes = path.calcNodes();
+        double time = 0;
+        int prevEdge = EdgeIterator.NO_EDGE;
+        for (int i = 0; i < path.getEdgeCount(); i++) {
+            int edge = path.getEdges().get(i);
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, nodes.get(i + 1));
+            if (weighting.hasTurnCosts() && prevEdge != EdgeIterator.NO_EDGE)
+                time += weighting.calcTurnMillis(prevEdge, state.getBaseNode(), edge);
+            time += storage.calcMillis(state, false, weighting.calcEdgeMillis(state, false), departure + time);
+            prevEdge = edge;
+        }
+        return time;
+    }
+}
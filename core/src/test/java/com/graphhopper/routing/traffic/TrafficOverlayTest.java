@@ -0,0 +1,132 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.traffic;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
+import com.graphhopper.routing.ch.NodeOrderingProvider;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FlagEncoders;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrafficOverlayTest {
+    private final FlagEncoder encoder = FlagEncoders.createCar();
+    private final BaseGraph graph = new BaseGraph.Builder(EncodingManager.create(encoder)).create();
+    private final Weighting weighting = new FastestWeighting(encoder);
+    private TrafficOverlay overlay;
+
+    @BeforeEach
+    public void setup() {
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(0, 1).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(1, 2).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(2, 3).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(1, 4).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(4, 5).setDistance(100));
+        GHUtility.setSpeed(60, true, true, encoder, graph.edge(5, 3).setDistance(100));
+        graph.freeze();
+        // the traffic does not change the shortcuts, so we use a node ordering that keeps both routes from 1 to 3
+        CHStorage chStorage = PrepareContractionHierarchies.fromGraph(graph, CHConfig.nodeBased("car", weighting))
+                .useFixedNodeOrdering(NodeOrderingProvider.fromArray(0, 1, 3, 2, 4, 5)).doWork().getCHStorage();
+        overlay = new TrafficOverlay(graph).addCHProfile("car", new RoutingCHGraphImpl(graph, chStorage, weighting));
+    }
+
+    @Test
+    public void oldSnapshotIsNotChanged() {
+        TrafficSnapshot old = overlay.getSnapshot();
+        assertEquals(IntArrayList.from(0, 1, 2, 3), calcCHPath(old, 0, 3).calcNodes());
+
+        TrafficSnapshot snapshot = overlay.update(Arrays.asList(new TrafficOverlay.SpeedUpdate(1, false, 10)));
+        assertEquals(1, snapshot.getVersion());
+        assertSame(snapshot, overlay.getSnapshot());
+        assertEquals(10, snapshot.getSpeed(1, false), 1.e-6);
+        assertTrue(Double.isNaN(snapshot.getSpeed(1, true)));
+        assertTrue(Double.isNaN(old.getSpeed(1, false)));
+
+        // only the direction with traffic is slower
+        assertEquals(IntArrayList.from(0, 1, 4, 5, 3), calcCHPath(snapshot, 0, 3).calcNodes());
+        assertEquals(IntArrayList.from(3, 2, 1, 0), calcCHPath(snapshot, 3, 0).calcNodes());
+        assertEquals(IntArrayList.from(0, 1, 2, 3), calcCHPath(old, 0, 3).calcNodes());
+
+        // the weighting of a snapshot agrees with its CH graph
+        Path path = new Dijkstra(graph, snapshot.wrap(weighting), TraversalMode.NODE_BASED).calcPath(0, 3);
+        assertEquals(path.getWeight(), calcCHPath(snapshot, 0, 3).getWeight(), 1.e-3);
+    }
+
+    @Test
+    public void updateAndReplace() {
+        overlay.update(Arrays.asList(new TrafficOverlay.SpeedUpdate(1, false, 10), new TrafficOverlay.SpeedUpdate(1, true, 10)));
+        // an update keeps the speeds of the other edges
+        TrafficSnapshot snapshot = overlay.update(Arrays.asList(new TrafficOverlay.SpeedUpdate(4, false, 0)));
+        assertEquals(10, snapshot.getSpeed(1, true), 1.e-6);
+        // a speed of zero closes the edge
+        assertEquals(IntArrayList.from(0, 1, 2, 3), calcCHPath(snapshot, 0, 3).calcNodes());
+        assertEquals(IntArrayList.from(3, 5, 4, 1, 0), calcCHPath(snapshot, 3, 0).calcNodes());
+
+        // replacing removes all other speeds
+        snapshot = overlay.replace(Arrays.asList(new TrafficOverlay.SpeedUpdate(2, true, 20)));
+        assertEquals(3, snapshot.getVersion());
+        assertTrue(Double.isNaN(snapshot.getSpeed(1, true)));
+        assertTrue(Double.isNaN(snapshot.getSpeed(4, false)));
+        assertEquals(IntArrayList.from(0, 1, 2, 3), calcCHPath(snapshot, 0, 3).calcNodes());
+        assertEquals(IntArrayList.from(3, 5, 4, 1, 0), calcCHPath(snapshot, 3, 0).calcNodes());
+
+        assertThrows(IllegalArgumentException.class, () -> overlay.update(Arrays.asList(new TrafficOverlay.SpeedUpdate(6, false, 10))));
+        assertThrows(IllegalStateException.class, () -> overlay.addCHProfile("car2", null));
+    }
+
+    @Test
+    public void readFeed(@TempDir java.nio.file.Path dir) throws IOException {
+        java.nio.file.Path file = dir.resolve("traffic.csv");
+        Files.write(file, Arrays.asList("# edge,fwd,bwd", "1,10,", "", "2, ,0", "4,30.5,40"), StandardCharsets.UTF_8);
+        List<TrafficOverlay.SpeedUpdate> updates = TrafficFeed.read(file);
+        assertEquals("[1 fwd: 10.0, 2 bwd: 0.0, 4 fwd: 30.5, 4 bwd: 40.0]", updates.toString());
+
+        new TrafficFeed(overlay, file).run();
+        TrafficSnapshot snapshot = overlay.getSnapshot();
+        assertEquals(1, snapshot.getVersion());
+        assertEquals(30.5, snapshot.getSpeed(4, false), 1.e-6);
+        assertEquals(IntArrayList.from(0, 1, 4, 5, 3), calcCHPath(snapshot, 0, 3).calcNodes());
+    }
+
+    private Path calcCHPath(TrafficSnapshot snapshot, int from, int to) {
+        return new CHRoutingAlgorithmFactory(snapshot.getCHGraphs().get("car")).createAlgo(new PMap()).calcPath(from, to);
+    }
+}
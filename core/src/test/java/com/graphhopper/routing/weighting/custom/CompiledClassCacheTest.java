@@ -0,0 +1,117 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledClassCacheTest {
+
+    @Test
+    public void concurrentRequestsCompileOnce() throws Exception {
+        CompiledClassCache cache = new CompiledClassCache(10, 1000);
+        AtomicInteger compilations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Class<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get("key", () -> {
+                    compilations.incrementAndGet();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return String.class;
+                })));
+            }
+            started.await();
+            release.countDown();
+            for (Future<Class<?>> future : futures) {
+                assertEquals(String.class, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, compilations.get());
+    }
+
+    @Test
+    public void failedCompilationIsNotCached() {
+        CompiledClassCache cache = new CompiledClassCache(10, 1000);
+        assertThrows(IllegalArgumentException.class, () -> cache.get("key", () -> {
+            throw new IllegalArgumentException("invalid");
+        }));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertEquals(String.class, cache.get("key", () -> String.class));
+    }
+
+    @Test
+    public void failedCompilationWithErrorIsNotCached() {
+        CompiledClassCache cache = new CompiledClassCache(10, 1000);
+        assertThrows(VerifyError.class, () -> cache.get("key", () -> {
+            throw new VerifyError("invalid bytecode");
+        }));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertEquals(String.class, cache.get("key", () -> String.class));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        CompiledClassCache cache = new CompiledClassCache(3, 1000);
+        cache.get("a", () -> String.class);
+        cache.get("b", () -> Integer.class);
+        cache.get("c", () -> Long.class);
+        // a is used again, so b is evicted first
+        cache.get("a", () -> fail("a must be cached"));
+        cache.get("d", () -> Double.class);
+        assertEquals(3, cache.size());
+        assertEquals(String.class, cache.get("a", () -> fail("a must be cached")));
+        AtomicInteger compilations = new AtomicInteger();
+        cache.get("b", () -> {
+            compilations.incrementAndGet();
+            return Integer.class;
+        });
+        assertEquals(1, compilations.get());
+    }
+
+    @Test
+    public void evictByWeight() {
+        CompiledClassCache cache = new CompiledClassCache(100, 10);
+        cache.get("aaaa", () -> String.class);
+        cache.get("bbbb", () -> Integer.class);
+        assertEquals(8, cache.getWeight());
+        cache.get("cccc", () -> Long.class);
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getWeight());
+    }
+}
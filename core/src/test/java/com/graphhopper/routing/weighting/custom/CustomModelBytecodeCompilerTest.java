@@ -0,0 +1,140 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FlagEncoders;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.JsonFeature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.graphhopper.json.Statement.*;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomModelBytecodeCompilerTest {
+
+    FlagEncoder encoder;
+    EncodingManager encodingManager;
+    BaseGraph graph;
+    List<EdgeIteratorState> edges = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        encoder = FlagEncoders.createCar();
+        encodingManager = new EncodingManager.Builder().add(encoder).add(new StringEncodedValue("country", 10))
+                .add(Lanes.create()).build();
+        graph = new BaseGraph.Builder(encodingManager).create();
+        EnumEncodedValue<RoadClass> roadClassEnc = encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        BooleanEncodedValue roundaboutEnc = encodingManager.getBooleanEncodedValue(Roundabout.KEY);
+        DecimalEncodedValue maxSpeedEnc = encodingManager.getDecimalEncodedValue(MaxSpeed.KEY);
+        IntEncodedValue lanesEnc = encodingManager.getIntEncodedValue(Lanes.KEY);
+        RoadClass[] roadClasses = {RoadClass.PRIMARY, RoadClass.SECONDARY, RoadClass.RESIDENTIAL, RoadClass.MOTORWAY};
+        for (int i = 0; i < 16; i++) {
+            EdgeIteratorState edge = graph.edge(i, i + 1).setDistance(100)
+                    .set(roadClassEnc, roadClasses[i % roadClasses.length])
+                    .set(roundaboutEnc, i % 3 == 0)
+                    .set(maxSpeedEnc, 10 * (i % 8), 5 * (i % 5))
+                    .set(lanesEnc, i % 5)
+                    .set(encoder.getAverageSpeedEnc(), 5 * (i % 12));
+            edge.set(encoder.getAccessEnc(), true, true);
+            edges.add(edge);
+        }
+    }
+
+    @Test
+    void sameResultsAsJanino() {
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("road_class == PRIMARY", MULTIPLY, 0.5));
+        customModel.addToPriority(ElseIf("road_class != MOTORWAY && roundabout", MULTIPLY, 0.7));
+        customModel.addToPriority(Else(MULTIPLY, 0.9));
+        customModel.addToPriority(If("!(roundabout || lanes >= 3) || max_speed < 25.5", MULTIPLY, 0.8));
+        customModel.addToPriority(If("30 > max_speed && true", LIMIT, 0.3));
+        customModel.addToSpeed(If("lanes == 2", LIMIT, 40));
+        customModel.addToSpeed(ElseIf("max_speed <= 20 || false", MULTIPLY, 0.5));
+        customModel.addToSpeed(If("car_average_speed > 30 && !(road_class == RESIDENTIAL)", MULTIPLY, 1.1));
+        customModel.addToSpeed(If("1 != lanes", LIMIT, 60));
+
+        Class<?> bytecodeClass = CustomModelParser.createClazz(customModel, encodingManager, encoder.getMaxSpeed(), true);
+        assertTrue(BytecodeCustomWeightingHelper.class.isAssignableFrom(bytecodeClass), bytecodeClass.getName());
+        CustomWeightingHelper bytecode = createHelper(bytecodeClass, customModel);
+        CustomWeightingHelper janino = createHelper(CustomModelParser.createClazz(customModel, encodingManager, encoder.getMaxSpeed(), false), customModel);
+        for (EdgeIteratorState edge : edges) {
+            for (EdgeIteratorState state : new EdgeIteratorState[]{edge, edge.detach(true)}) {
+                for (boolean reverse : new boolean[]{false, true}) {
+                    String msg = "edge " + state.getEdge() + ", reverse " + reverse;
+                    assertEquals(janino.getPriority(state, reverse), bytecode.getPriority(state, reverse), 1.e-6, msg);
+                    assertEquals(janino.getSpeed(state, reverse), bytecode.getSpeed(state, reverse), 1.e-6, msg);
+                }
+            }
+        }
+    }
+
+    @Test
+    void unsupportedConditions() {
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("in_area_1", MULTIPLY, 0.5));
+        customModel.getAreas().put("area_1", new JsonFeature("area_1", "Feature",
+                null, new GeometryFactory().createPolygon(new Coordinate[]{new Coordinate(1, 1), new Coordinate(1, 2),
+                new Coordinate(2, 2), new Coordinate(1, 1)}), null));
+        assertNull(CustomModelBytecodeCompiler.compile(customModel, encodingManager, encoder.getMaxSpeed()));
+        // Janino is still used for these custom models
+        assertFalse(BytecodeCustomWeightingHelper.class.isAssignableFrom(
+                CustomModelParser.createClazz(customModel, encodingManager, encoder.getMaxSpeed(), true)));
+
+        for (String condition : new String[]{"country == \"DEU\"", "max_speed > -5", "lanes * 2 > 3",
+                "edge.getDistance() > 50", "road_class == 0x1"}) {
+            customModel = new CustomModel();
+            customModel.addToSpeed(If(condition, MULTIPLY, 0.5));
+            assertNull(CustomModelBytecodeCompiler.compile(customModel, encodingManager, encoder.getMaxSpeed()), condition);
+        }
+    }
+
+    @Test
+    void noStatements() {
+        Class<?> clazz = CustomModelBytecodeCompiler.compile(new CustomModel(), encodingManager, 50);
+        assertNotNull(clazz);
+        CustomWeightingHelper helper = createHelper(clazz, new CustomModel());
+        assertEquals(50, helper.getSpeed(edges.get(11), false), 1.e-6);
+        EdgeIteratorState edge = edges.get(5);
+        assertEquals(25, helper.getSpeed(edge, false), 1.e-6);
+        assertEquals(25, helper.getSpeed(edge, true), 1.e-6);
+        assertEquals(1, helper.getPriority(edge, false), 1.e-6);
+    }
+
+    private CustomWeightingHelper createHelper(Class<?> clazz, CustomModel customModel) {
+        try {
+            CustomWeightingHelper helper = (CustomWeightingHelper) clazz.getDeclaredConstructor().newInstance();
+            helper.init(encodingManager, encoder.getAverageSpeedEnc(), null, customModel.getAreas());
+            return helper;
+        } catch (ReflectiveOperationException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+}
@@ -229,4 +229,20 @@ class CustomModelParserTest {
                 CustomModelParser.createWeightingParameters(customModel2, encodingManager,
                         avgSpeedEnc, encoder.getMaxSpeed(), null));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCacheKey() {
+        CustomModel customModel = new CustomModel().setDistanceInfluence(70);
+        customModel.addToPriority(If("road_class == PRIMARY", MULTIPLY, 0.5));
+        customModel.addToSpeed(If("road_class  ==   PRIMARY ", LIMIT, 100));
+        CustomModel other = new CustomModel().setDistanceInfluence(30);
+        other.addToPriority(If(" road_class == PRIMARY", MULTIPLY, 0.5));
+        other.addToSpeed(If("road_class == PRIMARY", LIMIT, 100));
+        // the distance influence and whitespace do not change the generated class
+        assertEquals(CustomModelParser.createCacheKey(customModel, 120, 1), CustomModelParser.createCacheKey(other, 120, 1));
+        assertNotEquals(CustomModelParser.createCacheKey(customModel, 120, 1), CustomModelParser.createCacheKey(other, 100, 1));
+
+        other.addToSpeed(Else(LIMIT, 80));
+        assertNotEquals(CustomModelParser.createCacheKey(customModel, 120, 1), CustomModelParser.createCacheKey(other, 120, 1));
+    }
+}
@@ -10,10 +10,13 @@ import com.graphhopper.routing.util.FlagEncoders;
 import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RAMDirectory;
 import com.graphhopper.util.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+
 import static com.graphhopper.json.Statement.*;
 import static com.graphhopper.json.Statement.Op.LIMIT;
 import static com.graphhopper.json.Statement.Op.MULTIPLY;
@@ -302,6 +305,40 @@ class CustomWeightingTest {
         assertEquals(10 / (80 * 0.7 / 3.6) * 1000, weighting.calcEdgeMillis(motorway, false), 1);
     }
 
+    @Test
+    public void memoizedSpeedAndPriority() {
+        EdgeIteratorState slow = graph.edge(0, 1).setDistance(1000).set(roadClassEnc, SECONDARY);
+        GHUtility.setSpeed(30, 60, carFE, slow);
+        EdgeIteratorState fast = graph.edge(2, 1).setDistance(1000).set(roadClassEnc, PRIMARY);
+        GHUtility.setSpeed(90, 100, carFE, fast);
+        EdgeIteratorState oneway = GHUtility.setSpeed(50, true, false, carFE, graph.edge(1, 3).setDistance(500)).set(roadClassEnc, PRIMARY);
+        EdgeIteratorState loop = GHUtility.setSpeed(20, true, true, carFE, graph.edge(3, 3).setDistance(100));
+        CustomModel model = new CustomModel().setDistanceInfluence(70).
+                addToPriority(If("road_class == SECONDARY", MULTIPLY, 0.5)).
+                addToSpeed(If("road_class == PRIMARY", LIMIT, 80));
+        CustomProfile profile = new CustomProfile("car").setCustomModel(model);
+        profile.setVehicle("car");
+        MemoizedSpeedAndPriority memoized = new MemoizedSpeedAndPriority(graph, new RAMDirectory(), profile);
+        memoized.prepare(carFE, encodingManager);
+
+        Weighting expected = createWeighting(model);
+        Weighting weighting = CustomModelParser.createWeighting(carFE, encodingManager, NO_TURN_COST_PROVIDER, memoized);
+        for (EdgeIteratorState edge : Arrays.asList(slow, fast, oneway, loop)) {
+            // the edge in storage direction and against it
+            for (EdgeIteratorState state : Arrays.asList(edge, graph.getEdgeIteratorState(edge.getEdge(), edge.getBaseNode()))) {
+                for (boolean reverse : new boolean[]{false, true}) {
+                    assertEquals(expected.calcEdgeWeight(state, reverse), weighting.calcEdgeWeight(state, reverse), 1.e-4);
+                    assertEquals(expected.calcEdgeMillis(state, reverse), weighting.calcEdgeMillis(state, reverse), 1);
+                }
+            }
+        }
+        assertEquals(Double.POSITIVE_INFINITY, weighting.calcEdgeWeight(oneway, true));
+        assertEquals(Double.POSITIVE_INFINITY, weighting.calcEdgeWeight(graph.getEdgeIteratorState(oneway.getEdge(), 1), false));
+        // edges that were added later are not memoized
+        EdgeIteratorState added = GHUtility.setSpeed(40, true, true, carFE, graph.edge(3, 4).setDistance(100));
+        assertEquals(expected.calcEdgeWeight(added, false), weighting.calcEdgeWeight(added, false), 1.e-6);
+    }
+
     private Weighting createWeighting(CustomModel vehicleModel) {
         return CustomModelParser.createWeighting(carFE, encodingManager, NO_TURN_COST_PROVIDER, vehicleModel);
     }
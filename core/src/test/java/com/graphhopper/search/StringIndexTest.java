@@ -1,6 +1,7 @@
 package com.graphhopper.search;
 
 import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.MMapDirectory;
 import com.graphhopper.storage.RAMDirectory;
 import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.RepeatedTest;
@@ -15,7 +16,7 @@ import static org.junit.jupiter.api.Assertions.*;
 public class StringIndexTest {
 
     private StringIndex create() {
-        return new StringIndex(new RAMDirectory(), 1000, -1).create(1000);
+        return new StringIndex(new RAMDirectory(), -1).create(1000);
     }
 
     Map<String, String> createMap(String... strings) {
@@ -122,6 +123,60 @@ public class StringIndexTest {
         assertEquals("{a=longer name, b=longer name}", index.getAll(cPointer).toString());
     }
 
+    @Test
+    public void storeEveryValueAndEntryOnce() {
+        StringIndex index = create();
+        long aPointer = index.add(createMap("name", "Main Street", "ref", "B 27"));
+        long bPointer = index.add(createMap("name", "Station Road"));
+        // the value is stored only once, no matter how many other values were added in between
+        for (int i = 0; i < 5000; i++) {
+            index.add(createMap("name", "street " + i));
+        }
+        long cPointer = index.add(createMap("name", "Main Street"));
+        long dPointer = index.add(createMap("name", "Other Street"));
+        assertEquals(cPointer + 1 + (2 + 4), dPointer);
+        assertEquals("Main Street", index.get(cPointer, "name"));
+
+        // an entry that was stored before is not stored again
+        assertEquals(aPointer, index.add(createMap("name", "Main Street", "ref", "B 27")));
+        assertEquals(bPointer, index.add(createMap("name", "Station Road")));
+        assertEquals("{name=Main Street, ref=B 27}", index.getAll(aPointer).toString());
+        long ePointer = index.add(createMap("name", "Main Street", "ref", "B 28"));
+        assertNotEquals(aPointer, ePointer);
+        assertEquals("{name=Main Street, ref=B 28}", index.getAll(ePointer).toString());
+    }
+
+    @Test
+    public void dictionariesAreStoredInTheDirectory() {
+        String location = "./target/stringindex-mmap";
+        Helper.removeDir(new File(location));
+        StringIndex index = new StringIndex(new MMapDirectory(location).create(), -1).create(1000);
+        long aPointer = index.add(createMap("name", "Main Street", "ref", "B 27"));
+        assertTrue(new File(location, "string_index_entry_dict_0").exists());
+        // the entries are compared independent of the order of their keys
+        assertEquals(aPointer, index.add(createMap("ref", "B 27", "name", "Main Street")));
+        assertNotEquals(aPointer, index.add(createMap("ref", "B 27", "name", "Main Street", "x", "")));
+        // the dictionaries are only needed while adding
+        index.flush();
+        assertFalse(new File(location, "string_index_entry_dict_0").exists());
+        assertFalse(new File(location, "string_index_value_dict_0").exists());
+        index.close();
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void failedAddDoesNotBreakDeduplication() {
+        StringIndex index = create();
+        index.throwExceptionIfTooLong = true;
+        String tooLong = String.join("", Collections.nCopies(300, "x"));
+        assertThrows(IllegalStateException.class, () -> index.add(createMap("name", "Main Street", "note", tooLong)));
+        long aPointer = index.add(createMap("name", "Other Street"));
+        long bPointer = index.add(createMap("name", "Main Street"));
+        assertEquals("Other Street", index.get(aPointer, "name"));
+        assertEquals("Main Street", index.get(bPointer, "name"));
+        assertEquals(bPointer, index.add(createMap("name", "Main Street")));
+    }
+
     @Test
     public void testNoErrorOnLargeName() {
         StringIndex index = create();
@@ -164,12 +219,12 @@ public class StringIndexTest {
         String location = "./target/stringindex-store";
         Helper.removeDir(new File(location));
 
-        StringIndex index = new StringIndex(new RAMDirectory(location, true).create(), 1000, -1).create(1000);
+        StringIndex index = new StringIndex(new RAMDirectory(location, true).create(), -1).create(1000);
         long pointer = index.add(createMap("", "test"));
         index.flush();
         index.close();
 
-        index = new StringIndex(new RAMDirectory(location, true), 1000, -1);
+        index = new StringIndex(new RAMDirectory(location, true), -1);
         assertTrue(index.loadExisting());
         assertEquals("test", index.get(pointer, ""));
         // make sure bytePointer is correctly set after loadExisting
@@ -185,7 +240,7 @@ public class StringIndexTest {
         String location = "./target/stringindex-store";
         Helper.removeDir(new File(location));
 
-        StringIndex index = new StringIndex(new RAMDirectory(location, true).create(), 1000, -1).create(1000);
+        StringIndex index = new StringIndex(new RAMDirectory(location, true).create(), -1).create(1000);
         long pointerA = index.add(createMap("c", "test value"));
         assertEquals(2, index.getKeys().size());
         long pointerB = index.add(createMap("a", "value", "b", "another value"));
@@ -194,7 +249,7 @@ public class StringIndexTest {
         index.flush();
         index.close();
 
-        index = new StringIndex(new RAMDirectory(location, true), 1000, -1);
+        index = new StringIndex(new RAMDirectory(location, true), -1);
         assertTrue(index.loadExisting());
         assertEquals("[, c, a, b]", index.getKeys().toString());
         assertEquals("test value", index.get(pointerA, "c"));
@@ -24,6 +24,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
@@ -55,6 +56,23 @@ public abstract class AbstractDirectoryTester {
         da1.close();
     }
 
+    @Test
+    public void testRemoveIfExists() {
+        Directory dir = createDir();
+        DataAccess da1 = dir.create("testing");
+        da1.create(100);
+        da1.flush();
+        dir.close();
+
+        // the stored data is removed even though the object was not created in this directory
+        Directory other = createDir();
+        other.removeIfExists("testing");
+        da = other.create("testing");
+        assertFalse(da.loadExisting());
+        other.removeIfExists("testing");
+        other.removeIfExists("unknown");
+    }
+
     @Test
     public void testNoErrorForDACreate() {
         Directory dir = createDir();
@@ -0,0 +1,120 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.ev.EnumEncodedValue;
+import com.graphhopper.routing.ev.RoadClass;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimplifiedRoadNetworkTest {
+    private static final String DIR = "./target/simplified-roads-test";
+
+    @AfterEach
+    public void tearDown() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    // 0-1-2-3 motorway "A1", 2-4 primary, 3-5 motorway "A2"
+    private BaseGraph createGraph(EncodingManager em, EnumEncodedValue<RoadClass> roadClassEnc) {
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50.0, 10.00);
+        na.setNode(1, 50.0, 10.01);
+        na.setNode(2, 50.0, 10.02);
+        na.setNode(3, 50.0, 10.03);
+        na.setNode(4, 50.01, 10.02);
+        na.setNode(5, 50.0, 10.04);
+        graph.edge(0, 1).setDistance(700).set(roadClassEnc, RoadClass.MOTORWAY).setName("A1");
+        graph.edge(1, 2).setDistance(700).set(roadClassEnc, RoadClass.MOTORWAY).setName("A1");
+        PointList pillars = new PointList();
+        pillars.add(50.0000001, 10.025);
+        graph.edge(2, 3).setDistance(700).set(roadClassEnc, RoadClass.MOTORWAY).setName("A1").setWayGeometry(pillars);
+        graph.edge(2, 4).setDistance(1100).set(roadClassEnc, RoadClass.PRIMARY).setName("B1");
+        graph.edge(3, 5).setDistance(700).set(roadClassEnc, RoadClass.MOTORWAY).setName("A2");
+        return graph;
+    }
+
+    private List<PointList> query(SimplifiedRoadNetwork roads, int zoom, List<Integer> edges) {
+        List<PointList> result = new ArrayList<>();
+        assertTrue(roads.query(zoom, SimplifiedRoadNetwork.tileX(10.02, zoom), SimplifiedRoadNetwork.tileY(50.0, zoom),
+                (edge, points) -> {
+                    edges.add(edge);
+                    result.add(points.clone(false));
+                }));
+        return result;
+    }
+
+    @Test
+    public void testMergeAndSimplify() {
+        EncodingManager em = EncodingManager.create("car");
+        EnumEncodedValue<RoadClass> roadClassEnc = em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        BaseGraph graph = createGraph(em, roadClassEnc);
+        SimplifiedRoadNetwork roads = new SimplifiedRoadNetwork(graph, new RAMDirectory());
+        roads.prepare(roadClassEnc, new int[]{13, 9});
+        assertEquals(13, roads.getMaxZoom());
+
+        // the primary road is not visible for zoom 9 and so node 2 is no junction: A1 is merged into one chain
+        List<Integer> edges = new ArrayList<>();
+        List<PointList> chains = query(roads, 10, edges);
+        assertEquals(2, chains.size());
+        assertEquals(2, chains.get(0).size(), chains.get(0).toString());
+        assertEquals(10.00, chains.get(0).getLon(0), 1e-6);
+        assertEquals(10.03, chains.get(0).getLon(1), 1e-6);
+        assertEquals("A1", graph.getEdgeIteratorState(edges.get(0), Integer.MIN_VALUE).getName());
+        assertEquals("A2", graph.getEdgeIteratorState(edges.get(1), Integer.MIN_VALUE).getName());
+
+        // for zoom 13 A1 is split at the junction with the primary road
+        edges.clear();
+        chains = query(roads, 13, edges);
+        assertEquals(4, chains.size());
+        assertEquals(1, edges.stream().filter(e -> graph.getEdgeIteratorState(e, Integer.MIN_VALUE).get(roadClassEnc) == RoadClass.PRIMARY).count());
+
+        // no zoom level below 9
+        assertFalse(roads.query(8, 0, 0, (edge, points) -> fail()));
+    }
+
+    @Test
+    public void testLoad() {
+        EncodingManager em = EncodingManager.create("car");
+        EnumEncodedValue<RoadClass> roadClassEnc = em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        BaseGraph graph = createGraph(em, roadClassEnc);
+        new File(DIR).mkdirs();
+        SimplifiedRoadNetwork roads = new SimplifiedRoadNetwork(graph, new RAMDirectory(DIR, true));
+        assertFalse(roads.loadExisting());
+        roads.prepare(roadClassEnc, new int[]{9});
+        roads.flush();
+        roads.close();
+
+        roads = new SimplifiedRoadNetwork(graph, new RAMDirectory(DIR, true));
+        assertTrue(roads.loadExisting());
+        assertArrayEquals(new int[]{9}, roads.getZooms());
+        List<Integer> edges = new ArrayList<>();
+        assertEquals(2, query(roads, 12, edges).size());
+        roads.close();
+    }
+}
@@ -102,6 +102,14 @@ public class GraphHopperGtfs extends GraphHopper {
         }
         gtfsStorage.setStopIndex(stopIndex);
         gtfsStorage.setPtGraph(ptGraph);
+        if (ghConfig.getBool("gtfs.raptor", false)) {
+            // the timetable is small compared to the graph and built from the stored feeds on every start
+            LOGGER.info("Creating timetable for RAPTOR");
+            final int maxTransferWalkTimeSeconds = ghConfig.getInt("gtfs.max_transfer_interpolation_walk_time_seconds", 120);
+            QueryGraph queryGraph = QueryGraph.create(getGraphHopperStorage().getBaseGraph(), Collections.emptyList());
+            Weighting transferWeighting = createWeighting(getProfile("foot"), new PMap());
+            gtfsStorage.setRaptorTimetable(RaptorTimetable.create(gtfsStorage, queryGraph, transferWeighting, maxTransferWalkTimeSeconds));
+        }
     }
 
     private void interpolateTransfers(HashMap<String, GtfsReader> readers, Map<String, Transfers> allTransfers) {
@@ -111,11 +119,13 @@ public class GraphHopperGtfs extends GraphHopper {
         QueryGraph queryGraph = QueryGraph.create(graphHopperStorage.getBaseGraph(), Collections.emptyList());
         Weighting transferWeighting = createWeighting(getProfile("foot"), new PMap());
         final GraphExplorer graphExplorer = new GraphExplorer(queryGraph, ptGraph, transferWeighting, getGtfsStorage(), RealtimeFeed.empty(), true, true, false, 5.0, false, 0);
+        // the searches run one after the other, so they can share their label storage
+        final LabelArena labelArena = new LabelArena();
         getGtfsStorage().getStationNodes().values().stream().distinct().map(n -> {
             int streetNode = Optional.ofNullable(gtfsStorage.getPtToStreet().get(n)).orElse(-1);
             return new Label.NodeId(streetNode, n);
         }).forEach(stationNode -> {
-            MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(graphExplorer, true, false, false, 0, new ArrayList<>());
+            MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(graphExplorer, true, false, false, 0, new ArrayList<>(), labelArena);
             router.setLimitStreetTime(Duration.ofSeconds(maxTransferWalkTimeSeconds).toMillis());
             for (Label label : router.calcLabels(stationNode, Instant.ofEpochMilli(0))) {
                 if (label.parent != null) {
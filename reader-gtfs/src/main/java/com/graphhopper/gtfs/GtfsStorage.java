@@ -40,6 +40,7 @@ public class GtfsStorage {
 	private static final Logger LOGGER = LoggerFactory.getLogger(GtfsStorage.class);
 	private LineIntIndex stopIndex;
 	private PtGraph ptGraph;
+	private RaptorTimetable raptorTimetable;
 
 	public void setStopIndex(LineIntIndex stopIndex) {
 		this.stopIndex = stopIndex;
@@ -57,6 +58,14 @@ public class GtfsStorage {
         this.ptGraph = ptGraph;
     }
 
+	public RaptorTimetable getRaptorTimetable() {
+		return raptorTimetable;
+	}
+
+	public void setRaptorTimetable(RaptorTimetable raptorTimetable) {
+		this.raptorTimetable = raptorTimetable;
+	}
+
 	public Map<Integer, int[]> getSkippedEdgesForTransfer() {
 		return skippedEdgesForTransfer;
 	}
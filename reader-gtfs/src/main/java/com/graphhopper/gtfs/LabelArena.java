@@ -0,0 +1,274 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * The labels of a {@link MultiCriteriaLabelSetting} search in parallel primitive arrays, indexed by label id.
+ * The Pareto set of every node is a linked list through the labels, and the labels in the open set are kept
+ * in an indexed binary heap so that dominated labels can be removed from it. A {@link Label} object is only
+ * created once a label is settled.
+ * <p>
+ * The arrays only grow, so an arena can be reused for many searches, one after the other. Starting a search
+ * ends the previous one.
+ */
+final class LabelArena {
+    static final int NO_LABEL = -1;
+    static final long NO_DEPARTURE_TIME = Long.MIN_VALUE;
+
+    interface LabelComparator {
+        int compare(int label1, int label2);
+    }
+
+    private int size;
+    private int search;
+    long[] currentTime;
+    GraphExplorer.MultiModalEdge[] edge;
+    int[] streetNode;
+    int[] ptNode;
+    int[] nTransfers;
+    long[] departureTime;
+    long[] streetTime;
+    long[] extraWeight;
+    long[] residualDelay;
+    boolean[] impossible;
+    int[] parent;
+    private int[] nextAtNode;
+    private int[] heapPosition;
+    private Label[] settled;
+
+    private int[] heap;
+    private int heapSize;
+    private final LongIntHashMap firstLabelAtNode = new LongIntHashMap();
+    private LabelComparator comparator;
+
+    LabelArena() {
+        this(1 << 10);
+    }
+
+    LabelArena(int initialCapacity) {
+        currentTime = new long[initialCapacity];
+        edge = new GraphExplorer.MultiModalEdge[initialCapacity];
+        streetNode = new int[initialCapacity];
+        ptNode = new int[initialCapacity];
+        nTransfers = new int[initialCapacity];
+        departureTime = new long[initialCapacity];
+        streetTime = new long[initialCapacity];
+        extraWeight = new long[initialCapacity];
+        residualDelay = new long[initialCapacity];
+        impossible = new boolean[initialCapacity];
+        parent = new int[initialCapacity];
+        nextAtNode = new int[initialCapacity];
+        heapPosition = new int[initialCapacity];
+        settled = new Label[initialCapacity];
+        heap = new int[initialCapacity];
+    }
+
+    /**
+     * Forgets all labels of the previous search, but keeps the memory.
+     *
+     * @return the id of the new search
+     */
+    int reset(LabelComparator comparator) {
+        this.comparator = comparator;
+        // release the references, so the edges and labels of the previous search can be collected
+        Arrays.fill(edge, 0, size, null);
+        Arrays.fill(settled, 0, size, null);
+        size = 0;
+        heapSize = 0;
+        firstLabelAtNode.clear();
+        return ++search;
+    }
+
+    void checkSearch(int search) {
+        if (search != this.search)
+            throw new IllegalStateException("The labels of this search were reset by another search");
+    }
+
+    int size() {
+        return size;
+    }
+
+    int add(long currentTime, GraphExplorer.MultiModalEdge edge, int streetNode, int ptNode, int nTransfers, long departureTime,
+            long streetTime, long extraWeight, long residualDelay, boolean impossible, int parent) {
+        if (size == this.currentTime.length)
+            grow();
+        int label = size++;
+        this.currentTime[label] = currentTime;
+        this.edge[label] = edge;
+        this.streetNode[label] = streetNode;
+        this.ptNode[label] = ptNode;
+        this.nTransfers[label] = nTransfers;
+        this.departureTime[label] = departureTime;
+        this.streetTime[label] = streetTime;
+        this.extraWeight[label] = extraWeight;
+        this.residualDelay[label] = residualDelay;
+        this.impossible[label] = impossible;
+        this.parent[label] = parent;
+        this.nextAtNode[label] = NO_LABEL;
+        this.heapPosition[label] = NO_LABEL;
+        this.settled[label] = null;
+        return label;
+    }
+
+    /**
+     * Drops the label that was added last, if it turned out to be dominated.
+     */
+    void removeLast(int label) {
+        if (label != size - 1 || heapPosition[label] != NO_LABEL)
+            throw new IllegalStateException("Only the last label can be removed, and only before it is inserted");
+        edge[label] = null;
+        size--;
+    }
+
+    private void grow() {
+        int capacity = currentTime.length * 2;
+        currentTime = Arrays.copyOf(currentTime, capacity);
+        edge = Arrays.copyOf(edge, capacity);
+        streetNode = Arrays.copyOf(streetNode, capacity);
+        ptNode = Arrays.copyOf(ptNode, capacity);
+        nTransfers = Arrays.copyOf(nTransfers, capacity);
+        departureTime = Arrays.copyOf(departureTime, capacity);
+        streetTime = Arrays.copyOf(streetTime, capacity);
+        extraWeight = Arrays.copyOf(extraWeight, capacity);
+        residualDelay = Arrays.copyOf(residualDelay, capacity);
+        impossible = Arrays.copyOf(impossible, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        nextAtNode = Arrays.copyOf(nextAtNode, capacity);
+        heapPosition = Arrays.copyOf(heapPosition, capacity);
+        settled = Arrays.copyOf(settled, capacity);
+    }
+
+    // Pareto sets
+
+    private static long nodeKey(int streetNode, int ptNode) {
+        return ((long) streetNode << 32) | (ptNode & 0xFFFFFFFFL);
+    }
+
+    int firstAtNode(int streetNode, int ptNode) {
+        return firstLabelAtNode.getOrDefault(nodeKey(streetNode, ptNode), NO_LABEL);
+    }
+
+    int nextAtNode(int label) {
+        return nextAtNode[label];
+    }
+
+    void addToNode(int label) {
+        long key = nodeKey(streetNode[label], ptNode[label]);
+        nextAtNode[label] = firstLabelAtNode.getOrDefault(key, NO_LABEL);
+        firstLabelAtNode.put(key, label);
+    }
+
+    /**
+     * Unlinks the label from the Pareto set of its node, previous is the label before it in the list or NO_LABEL.
+     */
+    void removeFromNode(int label, int previous) {
+        if (previous == NO_LABEL)
+            firstLabelAtNode.put(nodeKey(streetNode[label], ptNode[label]), nextAtNode[label]);
+        else
+            nextAtNode[previous] = nextAtNode[label];
+        Label settledLabel = settled[label];
+        if (settledLabel != null)
+            settledLabel.deleted = true;
+        if (heapPosition[label] != NO_LABEL)
+            removeFromHeap(label);
+    }
+
+    // settled labels
+
+    Label getSettled(int label) {
+        return settled[label];
+    }
+
+    void setSettled(int label, Label settledLabel) {
+        settled[label] = settledLabel;
+    }
+
+    // heap
+
+    boolean isHeapEmpty() {
+        return heapSize == 0;
+    }
+
+    void push(int label) {
+        if (heapSize == heap.length)
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        heap[heapSize] = label;
+        heapPosition[label] = heapSize;
+        heapSize++;
+        siftUp(heapSize - 1);
+    }
+
+    int poll() {
+        int label = heap[0];
+        removeFromHeap(label);
+        return label;
+    }
+
+    private void removeFromHeap(int label) {
+        int position = heapPosition[label];
+        heapPosition[label] = NO_LABEL;
+        heapSize--;
+        if (position == heapSize)
+            return;
+        int last = heap[heapSize];
+        heap[position] = last;
+        heapPosition[last] = position;
+        if (position > 0 && comparator.compare(last, heap[(position - 1) >>> 1]) < 0)
+            siftUp(position);
+        else
+            siftDown(position);
+    }
+
+    private void siftUp(int position) {
+        int label = heap[position];
+        while (position > 0) {
+            int parentPosition = (position - 1) >>> 1;
+            int parentLabel = heap[parentPosition];
+            if (comparator.compare(label, parentLabel) >= 0)
+                break;
+            heap[position] = parentLabel;
+            heapPosition[parentLabel] = position;
+            position = parentPosition;
+        }
+        heap[position] = label;
+        heapPosition[label] = position;
+    }
+
+    private void siftDown(int position) {
+        int label = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && comparator.compare(heap[child + 1], heap[child]) < 0)
+                child++;
+            if (comparator.compare(heap[child], label) >= 0)
+                break;
+            heap[position] = heap[child];
+            heapPosition[heap[child]] = position;
+            position = child;
+        }
+        heap[position] = label;
+        heapPosition[label] = position;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.gtfs;
 
+import java.lang.ref.SoftReference;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Consumer;
@@ -33,12 +34,12 @@ import java.util.function.Predicate;
  * @author Wesam Herbawi
  */
 public class MultiCriteriaLabelSetting {
+    // the labels of the searches of a thread, they can be collected if memory runs low
+    private static final ThreadLocal<SoftReference<LabelArena>> THREAD_ARENAS = new ThreadLocal<>();
 
-    private final Comparator<Label> queueComparator;
     private final List<Label> targetLabels;
     private long startTime;
-    private final Map<Label.NodeId, List<Label>> fromMap;
-    private final PriorityQueue<Label> fromHeap;
+    private final LabelArena arena;
     private final long maxProfileDuration;
     private final boolean reverse;
     private final boolean mindTransfers;
@@ -51,16 +52,34 @@ public class MultiCriteriaLabelSetting {
     private long limitStreetTime = Long.MAX_VALUE;
 
     public MultiCriteriaLabelSetting(GraphExplorer explorer, boolean reverse, boolean mindTransfers, boolean profileQuery, long maxProfileDuration, List<Label> solutions) {
+        this(explorer, reverse, mindTransfers, profileQuery, maxProfileDuration, solutions, threadArena());
+    }
+
+    /**
+     * The searches of a thread share their label storage, because the threads of a server answer one request after
+     * the other. A search must not be continued after the next search of the same thread started.
+     */
+    private static LabelArena threadArena() {
+        SoftReference<LabelArena> reference = THREAD_ARENAS.get();
+        LabelArena arena = reference == null ? null : reference.get();
+        if (arena == null) {
+            arena = new LabelArena();
+            THREAD_ARENAS.set(new SoftReference<>(arena));
+        }
+        return arena;
+    }
+
+    /**
+     * @param arena the label storage, which can be shared by searches that run one after the other
+     */
+    MultiCriteriaLabelSetting(GraphExplorer explorer, boolean reverse, boolean mindTransfers, boolean profileQuery, long maxProfileDuration, List<Label> solutions, LabelArena arena) {
         this.explorer = explorer;
         this.reverse = reverse;
         this.mindTransfers = mindTransfers;
         this.profileQuery = profileQuery;
         this.maxProfileDuration = maxProfileDuration;
         this.targetLabels = solutions;
-
-        queueComparator = new LabelComparator();
-        fromHeap = new PriorityQueue<>(queueComparator);
-        fromMap = new HashMap<>();
+        this.arena = arena;
     }
 
     public Iterable<Label> calcLabels(Label.NodeId from, Instant startTime) {
@@ -81,24 +100,24 @@ public class MultiCriteriaLabelSetting {
     }
 
     private class MultiCriteriaLabelSettingSpliterator extends Spliterators.AbstractSpliterator<Label> {
+        private final int search;
 
         MultiCriteriaLabelSettingSpliterator(Label.NodeId from) {
             super(0, 0);
-            Label label = new Label(startTime, null, from, 0, null, 0, 0L, 0, false, null);
-            ArrayList<Label> labels = new ArrayList<>(1);
-            labels.add(label);
-            fromMap.put(from, labels);
-            fromHeap.add(label);
+            search = arena.reset(MultiCriteriaLabelSetting.this::compare);
+            int label = arena.add(startTime, null, from.streetNode, from.ptNode, 0, LabelArena.NO_DEPARTURE_TIME, 0, 0L, 0, false, LabelArena.NO_LABEL);
+            arena.addToNode(label);
+            arena.push(label);
         }
 
         @Override
         public boolean tryAdvance(Consumer<? super Label> action) {
-            while (!fromHeap.isEmpty() && fromHeap.peek().deleted)
-                fromHeap.poll();
-            if (fromHeap.isEmpty()) {
+            arena.checkSearch(search);
+            if (arena.isHeapEmpty()) {
                 return false;
             } else {
-                Label label = fromHeap.poll();
+                int labelId = arena.poll();
+                Label label = settle(labelId);
                 action.accept(label);
                 for (GraphExplorer.MultiModalEdge edge : explorer.exploreEdgesAround(label)) {
                     long nextTime;
@@ -160,39 +179,80 @@ public class MultiCriteriaLabelSetting {
                             residualDelay = 0;
                         }
                     }
+                    Label.NodeId adjNode = edge.getAdjNode();
+                    long departureTime = firstPtDepartureTime != null ? firstPtDepartureTime : LabelArena.NO_DEPARTURE_TIME;
                     if (!reverse && edgeType == GtfsStorage.EdgeType.LEAVE_TIME_EXPANDED_NETWORK && residualDelay > 0) {
-                        Label newImpossibleLabelForDelayedTrip = new Label(nextTime, edge, edge.getAdjNode(), nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, true, label);
-                        insertIfNotDominated(newImpossibleLabelForDelayedTrip);
+                        insertIfNotDominated(arena.add(nextTime, edge, adjNode.streetNode, adjNode.ptNode, nTransfers, departureTime, walkTime, extraWeight, residualDelay, true, labelId));
                         nextTime += residualDelay;
                         residualDelay = 0;
-                        Label newLabel = new Label(nextTime, edge, edge.getAdjNode(), nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, impossible, label);
-                        insertIfNotDominated(newLabel);
-                    } else {
-                        Label newLabel = new Label(nextTime, edge, edge.getAdjNode(), nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, impossible, label);
-                        insertIfNotDominated(newLabel);
                     }
+                    insertIfNotDominated(arena.add(nextTime, edge, adjNode.streetNode, adjNode.ptNode, nTransfers, departureTime, walkTime, extraWeight, residualDelay, impossible, labelId));
                 }
                 return true;
             }
         }
     }
 
+    /**
+     * Creates the Label object for a label that leaves the open set. Its parent has been settled before.
+     */
+    private Label settle(int label) {
+        int parent = arena.parent[label];
+        long departureTime = arena.departureTime[label];
+        Label settled = new Label(arena.currentTime[label], arena.edge[label], new Label.NodeId(arena.streetNode[label], arena.ptNode[label]),
+                arena.nTransfers[label], departureTime != LabelArena.NO_DEPARTURE_TIME ? departureTime : null, arena.streetTime[label],
+                arena.extraWeight[label], arena.residualDelay[label], arena.impossible[label], parent != LabelArena.NO_LABEL ? arena.getSettled(parent) : null);
+        arena.setSettled(label, settled);
+        return settled;
+    }
 
-    void insertIfNotDominated(Label me) {
-        Predicate<Label> filter;
-        if (profileQuery && me.departureTime != null) {
-            filter = (targetLabel) -> (!reverse ? prc(me, targetLabel) : rprc(me, targetLabel));
-        } else {
-            filter = label -> true;
+    private void insertIfNotDominated(int me) {
+        boolean filter = profileQuery && arena.departureTime[me] != LabelArena.NO_DEPARTURE_TIME;
+        long myDepartureTime = arena.departureTime[me];
+        long myWeight = weight(me);
+        for (Label they : targetLabels) {
+            if ((!filter || isComparable(myDepartureTime, departureTime(they.departureTime))) && dominates(weight(they), they.nTransfers, they.streetTime, departureTime(they.departureTime), they.impossible,
+                    myWeight, arena.nTransfers[me], arena.streetTime[me], myDepartureTime, arena.impossible[me])) {
+                arena.removeLast(me);
+                return;
+            }
         }
-        if (isNotDominatedByAnyOf(me, targetLabels, filter)) {
-            List<Label> sptEntries = fromMap.computeIfAbsent(me.node, k -> new ArrayList<>(1));
-            if (isNotDominatedByAnyOf(me, sptEntries, filter)) {
-                removeDominated(me, sptEntries, filter);
-                sptEntries.add(me);
-                fromHeap.add(me);
+        int first = arena.firstAtNode(arena.streetNode[me], arena.ptNode[me]);
+        for (int they = first; they != LabelArena.NO_LABEL; they = arena.nextAtNode(they)) {
+            if ((!filter || isComparable(myDepartureTime, arena.departureTime[they])) && dominates(they, me)) {
+                arena.removeLast(me);
+                return;
             }
         }
+        int previous = LabelArena.NO_LABEL;
+        for (int they = first; they != LabelArena.NO_LABEL; ) {
+            int next = arena.nextAtNode(they);
+            if ((!filter || isComparable(myDepartureTime, arena.departureTime[they])) && dominates(me, they)) {
+                arena.removeFromNode(they, previous);
+            } else {
+                previous = they;
+            }
+            they = next;
+        }
+        arena.addToNode(me);
+        arena.push(me);
+    }
+
+    /**
+     * The primitive form of prc and rprc: in a profile query, a label only competes with labels that depart
+     * later (earlier for reverse searches) or at the end of the profile.
+     */
+    private boolean isComparable(long myDepartureTime, long theirDepartureTime) {
+        if (theirDepartureTime == LabelArena.NO_DEPARTURE_TIME)
+            return false;
+        if (!reverse)
+            return theirDepartureTime >= myDepartureTime || theirDepartureTime >= startTime + maxProfileDuration;
+        else
+            return theirDepartureTime <= myDepartureTime || theirDepartureTime <= startTime - maxProfileDuration;
+    }
+
+    private static long departureTime(Long departureTime) {
+        return departureTime != null ? departureTime : LabelArena.NO_DEPARTURE_TIME;
     }
 
     boolean rprc(Label me, Label they) {
@@ -223,26 +283,74 @@ public class MultiCriteriaLabelSetting {
     }
 
     private boolean dominates(Label me, Label they) {
-        if (weight(me) > weight(they))
+        return dominates(weight(me), me.nTransfers, me.streetTime, departureTime(me.departureTime), me.impossible,
+                weight(they), they.nTransfers, they.streetTime, departureTime(they.departureTime), they.impossible);
+    }
+
+    private boolean dominates(int me, int they) {
+        return dominates(weight(me), arena.nTransfers[me], arena.streetTime[me], arena.departureTime[me], arena.impossible[me],
+                weight(they), arena.nTransfers[they], arena.streetTime[they], arena.departureTime[they], arena.impossible[they]);
+    }
+
+    private boolean dominates(long myWeight, int myTransfers, long myStreetTime, long myDepartureTime, boolean meImpossible,
+                              long theirWeight, int theirTransfers, long theirStreetTime, long theirDepartureTime, boolean theyImpossible) {
+        if (myWeight > theirWeight)
             return false;
 
-        if (mindTransfers && me.nTransfers > they.nTransfers)
+        if (mindTransfers && myTransfers > theirTransfers)
             return false;
-        if (me.impossible && !they.impossible)
+        if (meImpossible && !theyImpossible)
             return false;
 
-        if (weight(me) < weight(they))
+        if (myWeight < theirWeight)
             return true;
-        if (mindTransfers && me.nTransfers < they.nTransfers)
+        if (mindTransfers && myTransfers < theirTransfers)
             return true;
 
-        return queueComparator.compare(me, they) <= 0;
+        return compare(myWeight, myTransfers, myStreetTime, myDepartureTime, meImpossible,
+                theirWeight, theirTransfers, theirStreetTime, theirDepartureTime, theyImpossible) <= 0;
+    }
+
+    /**
+     * The order of the open set: by weight, then number of transfers, street time, departure time and feasibility.
+     */
+    private int compare(int label1, int label2) {
+        return compare(weight(label1), arena.nTransfers[label1], arena.streetTime[label1], arena.departureTime[label1], arena.impossible[label1],
+                weight(label2), arena.nTransfers[label2], arena.streetTime[label2], arena.departureTime[label2], arena.impossible[label2]);
+    }
+
+    private int compare(long weight1, int nTransfers1, long streetTime1, long departureTime1, boolean impossible1,
+                        long weight2, int nTransfers2, long streetTime2, long departureTime2, boolean impossible2) {
+        int c = Long.compare(weight1, weight2);
+        if (c != 0)
+            return c;
+        c = Integer.compare(nTransfers1, nTransfers2);
+        if (c != 0)
+            return c;
+
+        c = Long.compare(streetTime1, streetTime2);
+        if (c != 0)
+            return c;
+
+        c = Long.compare(departureTimeKey(departureTime1), departureTimeKey(departureTime2));
+        if (c != 0)
+            return c;
+
+        return Integer.compare(impossible1 ? 1 : 0, impossible2 ? 1 : 0);
+    }
+
+    private long departureTimeKey(long departureTime) {
+        return departureTime != LabelArena.NO_DEPARTURE_TIME ? reverse ? departureTime : -departureTime : 0;
     }
 
     long weight(Label label) {
         return timeSinceStartTime(label) + (long) (label.nTransfers * betaTransfers) + (long) (label.streetTime * (betaStreetTime - 1.0)) + label.extraWeight;
     }
 
+    private long weight(int label) {
+        return (reverse ? -1 : 1) * (arena.currentTime[label] - startTime) + (long) (arena.nTransfers[label] * betaTransfers) + (long) (arena.streetTime[label] * (betaStreetTime - 1.0)) + arena.extraWeight[label];
+    }
+
     long timeSinceStartTime(Label label) {
         return (reverse ? -1 : 1) * (label.currentTime - startTime);
     }
@@ -258,28 +366,4 @@ public class MultiCriteriaLabelSetting {
     public void setLimitStreetTime(long limitStreetTime) {
         this.limitStreetTime = limitStreetTime;
     }
-
-    private class LabelComparator implements Comparator<Label> {
-
-        @Override
-        public int compare(Label o1, Label o2) {
-            int c = Long.compare(weight(o1), weight(o2));
-            if (c != 0)
-                return c;
-            c = Integer.compare(o1.nTransfers, o2.nTransfers);
-            if (c != 0)
-                return c;
-
-            c = Long.compare(o1.streetTime, o2.streetTime);
-            if (c != 0)
-                return c;
-
-            c = Long.compare(o1.departureTime != null ? reverse ? o1.departureTime : -o1.departureTime : 0, o2.departureTime != null ? reverse ? o2.departureTime : -o2.departureTime : 0);
-            if (c != 0)
-                return c;
-
-            c = Integer.compare(o1.impossible ? 1 : 0, o2.impossible ? 1 : 0);
-            return c;
-        }
-    }
 }
@@ -103,6 +103,20 @@ public final class PtRouterImpl implements PtRouter {
             return new PtRouterImpl(config, translationMap, graphHopperStorage, locationIndex, gtfsStorage, RealtimeFeed.fromProtobuf(graphHopperStorage, gtfsStorage, this.transfers, realtimeFeeds), new PathDetailsBuilderFactory());
         }
 
+        /**
+         * Applies the given feed message on top of the previous realtime feed, only the changed trips are
+         * applied again.
+         */
+        public RealtimeFeed updateRealtimeFeed(RealtimeFeed previous, GtfsRealtime.FeedMessage realtimeFeed) {
+            Map<String, GtfsRealtime.FeedMessage> realtimeFeeds = new HashMap<>();
+            realtimeFeeds.put("gtfs_0", realtimeFeed);
+            return RealtimeFeed.update(graphHopperStorage, gtfsStorage, this.transfers, previous, realtimeFeeds);
+        }
+
+        public PtRouter createWith(RealtimeFeed realtimeFeed) {
+            return new PtRouterImpl(config, translationMap, graphHopperStorage, locationIndex, gtfsStorage, realtimeFeed, new PathDetailsBuilderFactory());
+        }
+
         public PtRouter createWithoutRealtimeFeed() {
             return new PtRouterImpl(config, translationMap, graphHopperStorage, locationIndex, gtfsStorage, RealtimeFeed.empty(), new PathDetailsBuilderFactory());
         }
@@ -0,0 +1,327 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Stop;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.Trip;
+import com.graphhopper.config.Profile;
+import com.graphhopper.routing.DefaultWeightingFactory;
+import com.graphhopper.routing.WeightingFactory;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import javax.inject.Inject;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Public transit router that answers departure time queries with {@link Raptor} on the static timetable
+ * instead of a label-setting search on the time-expanded graph. Only the access and egress walks are
+ * searched on the graph. Arrive-by queries, and all queries while realtime updates are active, are
+ * answered by {@link PtRouterImpl}. Boarding penalties per route type are not taken into account.
+ */
+public final class PtRouterRaptorImpl implements PtRouter {
+
+    private static final int MAX_ROUNDS = 8;
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final GraphHopperConfig config;
+    private final TranslationMap translationMap;
+    private final GraphHopperStorage graphHopperStorage;
+    private final LocationIndex locationIndex;
+    private final GtfsStorage gtfsStorage;
+    private final PtGraph ptGraph;
+    private final RealtimeFeed realtimeFeed;
+    private final PathDetailsBuilderFactory pathDetailsBuilderFactory;
+    private final WeightingFactory weightingFactory;
+    private final PtRouter fallback;
+
+    @Inject
+    public PtRouterRaptorImpl(GraphHopperConfig config, TranslationMap translationMap, GraphHopperStorage graphHopperStorage, LocationIndex locationIndex, GtfsStorage gtfsStorage, RealtimeFeed realtimeFeed, PathDetailsBuilderFactory pathDetailsBuilderFactory) {
+        this.config = config;
+        this.weightingFactory = new DefaultWeightingFactory(graphHopperStorage.getBaseGraph(), graphHopperStorage.getEncodingManager());
+        this.translationMap = translationMap;
+        this.graphHopperStorage = graphHopperStorage;
+        this.locationIndex = locationIndex;
+        this.gtfsStorage = gtfsStorage;
+        this.ptGraph = gtfsStorage.getPtGraph();
+        this.realtimeFeed = realtimeFeed;
+        this.pathDetailsBuilderFactory = pathDetailsBuilderFactory;
+        this.fallback = new PtRouterImpl(config, translationMap, graphHopperStorage, locationIndex, gtfsStorage, realtimeFeed, pathDetailsBuilderFactory);
+    }
+
+    @Override
+    public GHResponse route(Request request) {
+        if (request.isArriveBy() || !realtimeFeed.isEmpty() || gtfsStorage.getRaptorTimetable() == null)
+            return fallback.route(request);
+        return new RequestHandler(request).route();
+    }
+
+    public static class Factory {
+        private final GraphHopperConfig config;
+        private final TranslationMap translationMap;
+        private final GraphHopperStorage graphHopperStorage;
+        private final LocationIndex locationIndex;
+        private final GtfsStorage gtfsStorage;
+
+        public Factory(GraphHopperConfig config, TranslationMap translationMap, GraphHopperStorage graphHopperStorage, LocationIndex locationIndex, GtfsStorage gtfsStorage) {
+            this.config = config;
+            this.translationMap = translationMap;
+            this.graphHopperStorage = graphHopperStorage;
+            this.locationIndex = locationIndex;
+            this.gtfsStorage = gtfsStorage;
+        }
+
+        public PtRouter createWithoutRealtimeFeed() {
+            return new PtRouterRaptorImpl(config, translationMap, graphHopperStorage, locationIndex, gtfsStorage, RealtimeFeed.empty(), new PathDetailsBuilderFactory());
+        }
+    }
+
+    private class RequestHandler {
+        private final int limitSolutions;
+        private final long maxProfileDuration;
+        private final Instant initialTime;
+        private final boolean profileQuery;
+        private final boolean ignoreTransfers;
+        private final double betaTransfers;
+        private final double betaStreetTime;
+        private final double walkSpeedKmH;
+        private final int blockedRouteTypes;
+        private final GHLocation enter;
+        private final GHLocation exit;
+        private final Translation translation;
+        private final List<String> requestedPathDetails;
+        private final long limitTripTime;
+        private final long limitStreetTime;
+        private final RaptorTimetable timetable;
+
+        private final GHResponse response = new GHResponse();
+        private final GeometryFactory geometryFactory = new GeometryFactory();
+        private QueryGraph queryGraph;
+        private int visitedNodes;
+
+        private final EdgeFilter accessSnapFilter;
+        private final Weighting accessWeighting;
+        private final EdgeFilter egressSnapFilter;
+        private final Weighting egressWeighting;
+
+        RequestHandler(Request request) {
+            profileQuery = request.isProfileQuery();
+            ignoreTransfers = Optional.ofNullable(request.getIgnoreTransfers()).orElse(request.isProfileQuery());
+            betaTransfers = request.getBetaTransfers();
+            betaStreetTime = request.getBetaStreetTime();
+            limitSolutions = Optional.ofNullable(request.getLimitSolutions()).orElse(profileQuery ? 50 : ignoreTransfers ? 1 : Integer.MAX_VALUE);
+            initialTime = request.getEarliestDepartureTime();
+            maxProfileDuration = request.getMaxProfileDuration().toMillis();
+            walkSpeedKmH = request.getWalkSpeedKmH();
+            blockedRouteTypes = request.getBlockedRouteTypes();
+            translation = translationMap.getWithFallBack(request.getLocale());
+            enter = request.getPoints().get(0);
+            exit = request.getPoints().get(1);
+            limitTripTime = request.getLimitTripTime() != null ? request.getLimitTripTime().toMillis() : Long.MAX_VALUE;
+            limitStreetTime = request.getLimitStreetTime() != null ? request.getLimitStreetTime().toMillis() : Long.MAX_VALUE;
+            requestedPathDetails = request.getPathDetails();
+            timetable = gtfsStorage.getRaptorTimetable();
+            Profile accessProfile = config.getProfiles().stream().filter(p -> p.getName().equals(request.getAccessProfile())).findFirst().get();
+            accessWeighting = weightingFactory.createWeighting(accessProfile, new PMap(), false);
+            accessSnapFilter = new DefaultSnapFilter(new FastestWeighting(graphHopperStorage.getEncodingManager().getEncoder(accessProfile.getVehicle())), graphHopperStorage.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(accessProfile.getVehicle())));
+            Profile egressProfile = config.getProfiles().stream().filter(p -> p.getName().equals(request.getEgressProfile())).findFirst().get();
+            egressWeighting = weightingFactory.createWeighting(egressProfile, new PMap(), false);
+            egressSnapFilter = new DefaultSnapFilter(new FastestWeighting(graphHopperStorage.getEncodingManager().getEncoder(egressProfile.getVehicle())), graphHopperStorage.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(egressProfile.getVehicle())));
+        }
+
+        GHResponse route() {
+            StopWatch stopWatch = new StopWatch().start();
+            PtLocationSnapper.Result result = new PtLocationSnapper(graphHopperStorage, locationIndex, gtfsStorage).snapAll(Arrays.asList(enter, exit), Arrays.asList(accessSnapFilter, egressSnapFilter));
+            queryGraph = result.queryGraph;
+            response.addDebugInfo("idLookup:" + stopWatch.stop().getSeconds() + "s");
+
+            stopWatch = new StopWatch().start();
+            Label.NodeId startNode = result.nodes.get(0);
+            Label.NodeId destNode = result.nodes.get(1);
+            IntIntHashMap accessTimes = new IntIntHashMap();
+            IntObjectHashMap<Label> accessLabels = new IntObjectHashMap<>();
+            Label walkSolution = findAccessStops(startNode, destNode, accessTimes, accessLabels);
+            IntIntHashMap egressTimes = new IntIntHashMap();
+            IntObjectHashMap<Label> egressLabels = new IntObjectHashMap<>();
+            findEgressStops(startNode, destNode, egressTimes, egressLabels);
+
+            int maxArrival = limitTripTime == Long.MAX_VALUE ? Raptor.INFINITY : (int) Math.min(Raptor.INFINITY, limitTripTime / 1000);
+            int profileDuration = (int) Math.min(Integer.MAX_VALUE, maxProfileDuration / 1000);
+            int daysAfterQuery = profileQuery ? 1 + (profileDuration + SECONDS_PER_DAY - 1) / SECONDS_PER_DAY : 1;
+            Raptor raptor = new Raptor(timetable, initialTime, MAX_ROUNDS, blockedRouteTypes, maxArrival, daysAfterQuery);
+            List<Raptor.Journey> journeys = profileQuery ? raptor.routeProfile(accessTimes, egressTimes, profileDuration) : raptor.route(accessTimes, egressTimes);
+            visitedNodes += raptor.getVisitedStops();
+            journeys = selectJourneys(journeys, egressTimes, walkSolution);
+            response.addDebugInfo("routing:" + stopWatch.stop().getSeconds() + "s");
+
+            TripFromLabel tripFromLabel = new TripFromLabel(queryGraph, graphHopperStorage.getEncodingManager(), gtfsStorage, realtimeFeed, pathDetailsBuilderFactory, walkSpeedKmH);
+            for (Raptor.Journey journey : journeys) {
+                response.add(createResponsePath(tripFromLabel, journey, accessLabels.get(journey.accessStop), egressLabels.get(journey.egressStop), result.points));
+            }
+            if (walkSolution != null && (profileQuery || !ignoreTransfers || journeys.isEmpty())) {
+                List<Trip.Leg> legs = new ArrayList<>();
+                legs.add(tripFromLabel.createWalkLeg(Label.getTransitions(walkSolution, false), queryGraph, accessWeighting, translation, requestedPathDetails));
+                ResponsePath responsePath = tripFromLabel.createResponsePath(translation, result.points, legs);
+                responsePath.setRouteWeight(responsePath.getTime() * betaStreetTime);
+                response.add(responsePath);
+            }
+            response.getAll().sort(Comparator.comparingDouble(ResponsePath::getTime));
+            response.getHints().putObject("visited_nodes.sum", visitedNodes);
+            response.getHints().putObject("visited_nodes.average", visitedNodes);
+            if (response.getAll().isEmpty()) {
+                response.addError(new ConnectionNotFoundException("No route found", Collections.emptyMap()));
+            }
+            return response;
+        }
+
+        /**
+         * Like the label-setting router, drops journeys that walking alone beats and keeps only the earliest
+         * arrival if transfers are ignored.
+         */
+        private List<Raptor.Journey> selectJourneys(List<Raptor.Journey> journeys, IntIntHashMap egressTimes, Label walkSolution) {
+            int walkDuration = walkSolution == null ? Raptor.INFINITY : (int) ((walkSolution.currentTime - initialTime.toEpochMilli()) / 1000);
+            List<Raptor.Journey> result = new ArrayList<>();
+            for (Raptor.Journey journey : journeys) {
+                int arrival = journey.arrivalAtEgressStop + egressTimes.get(journey.egressStop);
+                if (walkSolution != null && arrival - journey.departure >= walkDuration)
+                    continue;
+                if (!profileQuery && ignoreTransfers && !result.isEmpty()) {
+                    Raptor.Journey previous = result.get(0);
+                    if (previous.arrivalAtEgressStop + egressTimes.get(previous.egressStop) <= arrival)
+                        continue;
+                    result.clear();
+                }
+                result.add(journey);
+            }
+            return result.size() > limitSolutions ? result.subList(0, limitSolutions) : result;
+        }
+
+        private Label findAccessStops(Label.NodeId startNode, Label.NodeId destNode, IntIntHashMap accessTimes, IntObjectHashMap<Label> accessLabels) {
+            GraphExplorer graphExplorer = new GraphExplorer(queryGraph, ptGraph, accessWeighting, gtfsStorage, realtimeFeed, false, true, false, walkSpeedKmH, false, blockedRouteTypes);
+            MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(graphExplorer, false, false, false, maxProfileDuration, new ArrayList<>());
+            router.setBetaStreetTime(betaStreetTime);
+            router.setLimitStreetTime(limitStreetTime);
+            for (Label label : router.calcLabels(startNode, initialTime)) {
+                visitedNodes++;
+                if (label.node.equals(destNode)) {
+                    return label;
+                } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
+                    GtfsStorage.PlatformDescriptor platform = label.edge.getPlatformDescriptor();
+                    addStop(timetable.getStopIndex(platform.feed_id, platform.stop_id), label.currentTime - initialTime.toEpochMilli(), label.parent, accessTimes, accessLabels);
+                }
+            }
+            return null;
+        }
+
+        private void findEgressStops(Label.NodeId startNode, Label.NodeId destNode, IntIntHashMap egressTimes, IntObjectHashMap<Label> egressLabels) {
+            GraphExplorer graphExplorer = new GraphExplorer(queryGraph, ptGraph, egressWeighting, gtfsStorage, realtimeFeed, true, true, false, walkSpeedKmH, false, blockedRouteTypes);
+            MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(graphExplorer, true, false, false, maxProfileDuration, new ArrayList<>());
+            router.setBetaStreetTime(betaStreetTime);
+            router.setLimitStreetTime(limitStreetTime);
+            for (Label label : router.calcLabels(destNode, initialTime)) {
+                visitedNodes++;
+                if (label.node.equals(startNode)) {
+                    return;
+                } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
+                    GtfsStorage.PlatformDescriptor platform = label.edge.getPlatformDescriptor();
+                    addStop(timetable.getStopIndex(platform.feed_id, platform.stop_id), initialTime.toEpochMilli() - label.currentTime, label.parent, egressTimes, egressLabels);
+                }
+            }
+        }
+
+        private void addStop(int stop, long millis, Label streetLabel, IntIntHashMap times, IntObjectHashMap<Label> labels) {
+            if (stop < 0)
+                return;
+            // round up, so we never miss a connection because of the walk
+            int seconds = (int) ((millis + 999) / 1000);
+            if (!times.containsKey(stop) || seconds < times.get(stop)) {
+                times.put(stop, seconds);
+                labels.put(stop, streetLabel);
+            }
+        }
+
+        private ResponsePath createResponsePath(TripFromLabel tripFromLabel, Raptor.Journey journey, Label accessLabel, Label egressLabel, PointList waypoints) {
+            long queryTime = initialTime.toEpochMilli();
+            List<Trip.Leg> legs = new ArrayList<>();
+            if (accessLabel.parent != null)
+                legs.add(tripFromLabel.createWalkLeg(Label.getTransitions(accessLabel, false), queryGraph, accessWeighting, translation, requestedPathDetails));
+            for (Raptor.Leg leg : journey.legs) {
+                if (leg.trip >= 0) {
+                    legs.add(createPtLeg(leg));
+                } else {
+                    int[] edges = timetable.transferEdges[leg.footpath];
+                    if (edges != null)
+                        legs.add(tripFromLabel.createTransferLeg(edges, accessWeighting, queryTime + leg.departure * 1000L, translation, requestedPathDetails));
+                }
+            }
+            if (egressLabel.parent != null)
+                legs.add(tripFromLabel.createWalkLeg(Label.getTransitions(egressLabel, true), queryGraph, egressWeighting, translation, requestedPathDetails));
+            ResponsePath responsePath = tripFromLabel.createResponsePath(translation, waypoints, legs);
+            // like the label-setting router, the travel time includes waiting at the origin
+            responsePath.setTime(legs.get(legs.size() - 1).getArrivalTime().getTime() - queryTime);
+            responsePath.setRouteWeight(responsePath.getTime() + betaTransfers * Math.max(0, responsePath.getNumChanges()));
+            return responsePath;
+        }
+
+        private Trip.PtLeg createPtLeg(Raptor.Leg leg) {
+            int pattern = timetable.tripPatterns[leg.trip];
+            String feedId = timetable.feedIds.get(timetable.patternFeeds[pattern]);
+            GTFSFeed feed = gtfsStorage.getGtfsFeeds().get(feedId);
+            long dayMillis = initialTime.toEpochMilli() + leg.dayOffset * 1000L;
+            List<Trip.Stop> stops = new ArrayList<>();
+            for (int position = leg.boardPosition; position <= leg.alightPosition; position++) {
+                Stop stop = feed.stops.get(timetable.stopIds[timetable.getPatternStop(pattern, position)]);
+                Date arrival = position == leg.boardPosition ? null : new Date(dayMillis + timetable.getArrival(leg.trip, position) * 1000L);
+                Date departure = position == leg.alightPosition ? null : new Date(dayMillis + timetable.getDeparture(leg.trip, position) * 1000L);
+                stops.add(new Trip.Stop(stop.stop_id, stop.stop_name, geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat)),
+                        arrival, arrival, null, false, departure, departure, null, false));
+            }
+            double distance = 0;
+            for (int i = 1; i < stops.size(); i++) {
+                Coordinate from = stops.get(i - 1).geometry.getCoordinate();
+                Coordinate to = stops.get(i).geometry.getCoordinate();
+                distance += DistanceCalcEarth.DIST_EARTH.calcDist(from.y, from.x, to.y, to.x);
+            }
+            String tripId = timetable.tripIds[leg.trip];
+            return new Trip.PtLeg(feedId, leg.inSameVehicleAsPrevious, tripId, timetable.tripRouteIds[leg.trip],
+                    Optional.ofNullable(feed.trips.get(tripId)).map(t -> t.trip_headsign).orElse("extra"),
+                    stops, distance, (leg.arrival - leg.departure) * 1000L,
+                    geometryFactory.createLineString(stops.stream().map(s -> s.geometry.getCoordinate()).toArray(Coordinate[]::new)));
+        }
+    }
+
+}
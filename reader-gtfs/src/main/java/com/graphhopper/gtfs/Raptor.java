@@ -0,0 +1,524 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntMap;
+import com.carrotsearch.hppc.cursors.IntIntCursor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Round-based public transit routing (RAPTOR, Delling et al.) on a {@link RaptorTimetable}. Round k finds the
+ * earliest arrival at every stop with k vehicle trips, so the journeys found are Pareto-optimal with respect to
+ * arrival time and number of trips. Profile queries run the search for every departure from the access stops
+ * within the profile duration, latest first, and keep the labels between the runs (rRAPTOR). Staying seated from a
+ * trip to the next trip of its block happens within the round of the boarded trip, so it is not counted as a trip.
+ * <p>
+ * All times are in seconds since the departure time of the query. Instances are not thread safe and
+ * are meant to be used for a single query.
+ */
+final class Raptor {
+    static final int INFINITY = Integer.MAX_VALUE;
+
+    private static final byte ACCESS = 1;
+    private static final byte RIDE = 2;
+    private static final byte TRANSFER = 3;
+    private static final byte INHERITED = 4;
+
+    private final RaptorTimetable timetable;
+    private final int maxRounds;
+    private final int blockedRouteTypes;
+    private final int maxArrival;
+    // a trip instance is trip * dayCount + (day - firstDay), where day is relative to the date of the query
+    private final int firstDay;
+    private final int dayCount;
+    // seconds from the query to midnight of day (firstDay + d) in the time zone z: dayOffsets[z][d]
+    private final int[][] dayOffsets;
+    private final long[] queryEpochDays;
+
+    private final int[][] arrival;
+    private final int[][] ready;
+    private final byte[][] kind;
+    // for RIDE: the trip instance and the positions in its pattern, for TRANSFER: the footpath
+    private final int[][] trip;
+    // for RIDE: the boarded trip instance, which differs from trip if the passenger stayed seated in its block
+    private final int[][] firstTrip;
+    private final int[][] boardPosition;
+    private final int[][] alightPosition;
+    private final int[][] footpath;
+    private final int[] targetArrival;
+    private final BitSet marked;
+    private final BitSet nextMarked;
+    private final int[] patternScanStart;
+    // (trip, day, first trip instance, board position) of the rides that reached the last stop of their trip
+    private final IntArrayList seatedRides = new IntArrayList();
+    private int visitedStops;
+
+    /**
+     * @param maxArrival the latest arrival time we are interested in, used for pruning
+     */
+    Raptor(RaptorTimetable timetable, Instant departureTime, int maxRounds, int blockedRouteTypes, int maxArrival, int daysAfterQuery) {
+        this.timetable = timetable;
+        this.maxRounds = maxRounds;
+        this.blockedRouteTypes = blockedRouteTypes;
+        this.maxArrival = maxArrival;
+        // trips that run past midnight can still be on their way from the day before
+        this.firstDay = -1;
+        this.dayCount = daysAfterQuery + 2;
+        this.dayOffsets = new int[timetable.zones.size()][dayCount];
+        this.queryEpochDays = new long[timetable.zones.size()];
+        for (int z = 0; z < timetable.zones.size(); z++) {
+            ZoneId zoneId = timetable.zones.get(z);
+            LocalDate queryDate = departureTime.atZone(zoneId).toLocalDate();
+            queryEpochDays[z] = queryDate.toEpochDay();
+            for (int d = 0; d < dayCount; d++) {
+                long midnight = queryDate.plusDays(firstDay + d).atStartOfDay(zoneId).toEpochSecond();
+                dayOffsets[z][d] = (int) (midnight - departureTime.getEpochSecond());
+            }
+        }
+        int stopCount = timetable.stopCount;
+        arrival = new int[maxRounds + 1][stopCount];
+        ready = new int[maxRounds + 1][stopCount];
+        kind = new byte[maxRounds + 1][stopCount];
+        trip = new int[maxRounds + 1][stopCount];
+        firstTrip = new int[maxRounds + 1][stopCount];
+        boardPosition = new int[maxRounds + 1][stopCount];
+        alightPosition = new int[maxRounds + 1][stopCount];
+        footpath = new int[maxRounds + 1][stopCount];
+        for (int k = 0; k <= maxRounds; k++) {
+            Arrays.fill(arrival[k], INFINITY);
+            Arrays.fill(ready[k], INFINITY);
+        }
+        targetArrival = new int[maxRounds + 1];
+        Arrays.fill(targetArrival, INFINITY);
+        marked = new BitSet(stopCount);
+        nextMarked = new BitSet(stopCount);
+        patternScanStart = new int[timetable.patternCount];
+        Arrays.fill(patternScanStart, -1);
+    }
+
+    /**
+     * A journey from an access stop to an egress stop. The legs alternate between rides and footpaths, times
+     * are in seconds since the departure time of the query.
+     */
+    static class Journey {
+        final int accessStop;
+        final int egressStop;
+        final int departure;
+        final int arrivalAtEgressStop;
+        final List<Leg> legs;
+
+        Journey(int accessStop, int egressStop, int departure, int arrivalAtEgressStop, List<Leg> legs) {
+            this.accessStop = accessStop;
+            this.egressStop = egressStop;
+            this.departure = departure;
+            this.arrivalAtEgressStop = arrivalAtEgressStop;
+            this.legs = legs;
+        }
+
+        int getRides() {
+            return (int) legs.stream().filter(l -> l.trip >= 0 && !l.inSameVehicleAsPrevious).count();
+        }
+    }
+
+    static class Leg {
+        // -1 for a footpath
+        final int trip;
+        // the offset of the service day of the trip, in seconds since the departure time of the query
+        final int dayOffset;
+        final int boardPosition;
+        final int alightPosition;
+        // -1 for a ride
+        final int footpath;
+        final int departure;
+        final int arrival;
+        // true if the passenger stayed seated from the trip of the previous leg, which is in the same block
+        final boolean inSameVehicleAsPrevious;
+
+        Leg(int trip, int dayOffset, int boardPosition, int alightPosition, int footpath, int departure, int arrival, boolean inSameVehicleAsPrevious) {
+            this.trip = trip;
+            this.dayOffset = dayOffset;
+            this.boardPosition = boardPosition;
+            this.alightPosition = alightPosition;
+            this.footpath = footpath;
+            this.departure = departure;
+            this.arrival = arrival;
+            this.inSameVehicleAsPrevious = inSameVehicleAsPrevious;
+        }
+    }
+
+    int getVisitedStops() {
+        return visitedStops;
+    }
+
+    /**
+     * @param accessTimes the walking time from the origin to the access stops
+     * @param egressTimes the walking time from the egress stops to the destination
+     * @return the Pareto set of journeys, ordered by number of rides
+     */
+    List<Journey> route(IntIntMap accessTimes, IntIntMap egressTimes) {
+        List<Journey> journeys = new ArrayList<>();
+        run(accessTimes, 0, egressTimes, journeys);
+        return journeys;
+    }
+
+    /**
+     * @return the journeys for all departures within the given time span, each one Pareto-optimal for its departure
+     * time, ordered by departure time
+     */
+    List<Journey> routeProfile(IntIntMap accessTimes, IntIntMap egressTimes, int profileDuration) {
+        // all departures from the access stops are the points in time where the result can change
+        IntArrayList departures = new IntArrayList();
+        for (IntIntCursor access : accessTimes) {
+            for (int i = timetable.stopPatternsStart[access.key]; i < timetable.stopPatternsStart[access.key + 1]; i++) {
+                int pattern = timetable.stopPatterns[i];
+                int position = timetable.stopPatternPositions[i];
+                if (isBlocked(pattern))
+                    continue;
+                int zone = timetable.patternZones[pattern];
+                for (int t = timetable.patternTripsStart[pattern]; t < timetable.patternTripsStart[pattern + 1]; t++) {
+                    for (int d = 0; d < dayCount; d++) {
+                        int departure = dayOffsets[zone][d] + timetable.getDeparture(t, position) - access.value;
+                        if (departure >= 0 && departure <= profileDuration && isValid(t, d))
+                            departures.add(departure);
+                    }
+                }
+            }
+        }
+        // the best journey at the end of the time span may depart after it
+        departures.add(profileDuration);
+        int[] sorted = departures.toArray();
+        Arrays.sort(sorted);
+        List<Journey> journeys = new ArrayList<>();
+        int previous = -1;
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            if (sorted[i] == previous)
+                continue;
+            previous = sorted[i];
+            run(accessTimes, sorted[i], egressTimes, journeys);
+        }
+        journeys.sort(Comparator.comparingInt((Journey j) -> j.departure).thenComparingInt(Journey::getRides));
+        return journeys;
+    }
+
+    private void run(IntIntMap accessTimes, int departure, IntIntMap egressTimes, List<Journey> journeys) {
+        marked.clear();
+        for (IntIntCursor access : accessTimes) {
+            int time = departure + access.value;
+            if (time < arrival[0][access.key]) {
+                arrival[0][access.key] = time;
+                ready[0][access.key] = time;
+                kind[0][access.key] = ACCESS;
+                marked.set(access.key);
+            }
+        }
+        relaxFootpaths(0);
+        for (int k = 1; k <= maxRounds && !marked.isEmpty(); k++) {
+            inheritFromPreviousRound(k);
+            int bound = Math.min(targetArrival[k], maxArrival);
+            scanPatterns(k, bound);
+            relaxFootpaths(k);
+
+            int bestEgressStop = -1;
+            int best = targetArrival[k];
+            for (IntIntCursor egress : egressTimes) {
+                if (arrival[k][egress.key] != INFINITY && kind[k][egress.key] != INHERITED) {
+                    int time = arrival[k][egress.key] + egress.value;
+                    if (time < best && time <= maxArrival) {
+                        best = time;
+                        bestEgressStop = egress.key;
+                    }
+                }
+            }
+            if (bestEgressStop >= 0) {
+                targetArrival[k] = best;
+                Journey journey = extractJourney(accessTimes, k, bestEgressStop);
+                if (journey != null)
+                    journeys.add(journey);
+            }
+        }
+    }
+
+    private void inheritFromPreviousRound(int k) {
+        if (targetArrival[k - 1] < targetArrival[k])
+            targetArrival[k] = targetArrival[k - 1];
+        for (int s = 0; s < timetable.stopCount; s++) {
+            if (arrival[k - 1][s] < arrival[k][s]) {
+                arrival[k][s] = arrival[k - 1][s];
+                ready[k][s] = ready[k - 1][s];
+                kind[k][s] = INHERITED;
+            }
+        }
+    }
+
+    private void scanPatterns(int k, int bound) {
+        IntArrayList patterns = new IntArrayList();
+        for (int s = marked.nextSetBit(0); s >= 0; s = marked.nextSetBit(s + 1)) {
+            for (int i = timetable.stopPatternsStart[s]; i < timetable.stopPatternsStart[s + 1]; i++) {
+                int pattern = timetable.stopPatterns[i];
+                int position = timetable.stopPatternPositions[i];
+                if (patternScanStart[pattern] < 0) {
+                    patterns.add(pattern);
+                    patternScanStart[pattern] = position;
+                } else if (position < patternScanStart[pattern]) {
+                    patternScanStart[pattern] = position;
+                }
+            }
+        }
+        marked.clear();
+        nextMarked.clear();
+        for (int p = 0; p < patterns.size(); p++) {
+            int pattern = patterns.get(p);
+            int start = patternScanStart[pattern];
+            patternScanStart[pattern] = -1;
+            if (isBlocked(pattern))
+                continue;
+            int stopCount = timetable.patternStopsStart[pattern + 1] - timetable.patternStopsStart[pattern];
+            int zone = timetable.patternZones[pattern];
+            int currentTrip = -1;
+            int currentDay = -1;
+            int boardPos = -1;
+            for (int position = start; position < stopCount; position++) {
+                int stop = timetable.getPatternStop(pattern, position);
+                visitedStops++;
+                if (currentTrip >= 0) {
+                    int time = dayOffsets[zone][currentDay] + timetable.getArrival(currentTrip, position);
+                    if (time < arrival[k][stop] && time < bound) {
+                        arrival[k][stop] = time;
+                        ready[k][stop] = time + timetable.stopChangeTimes[stop];
+                        kind[k][stop] = RIDE;
+                        trip[k][stop] = currentTrip * dayCount + currentDay;
+                        firstTrip[k][stop] = trip[k][stop];
+                        boardPosition[k][stop] = boardPos;
+                        alightPosition[k][stop] = position;
+                        nextMarked.set(stop);
+                    }
+                    if (position == stopCount - 1 && timetable.tripBlockNext[currentTrip] >= 0)
+                        seatedRides.add(currentTrip, currentDay, currentTrip * dayCount + currentDay, boardPos);
+                }
+                int readyTime = ready[k - 1][stop];
+                if (readyTime != INFINITY && timetable.hasRouteChangeTimes(stop))
+                    readyTime = readyTimeForRoute(k - 1, stop, timetable.patternRoutes[pattern]);
+                if (readyTime != INFINITY && (currentTrip < 0 || readyTime <= dayOffsets[zone][currentDay] + timetable.getDeparture(currentTrip, position))) {
+                    int bestDeparture = currentTrip < 0 ? INFINITY : dayOffsets[zone][currentDay] + timetable.getDeparture(currentTrip, position);
+                    for (int d = 0; d < dayCount; d++) {
+                        int t = earliestTrip(pattern, position, readyTime - dayOffsets[zone][d], d);
+                        if (t >= 0) {
+                            int departure = dayOffsets[zone][d] + timetable.getDeparture(t, position);
+                            if (departure < bestDeparture) {
+                                bestDeparture = departure;
+                                currentTrip = t;
+                                currentDay = d;
+                                boardPos = position;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        // the list grows while we stay seated along the block
+        for (int i = 0; i < seatedRides.size(); i += 4) {
+            staySeated(k, bound, seatedRides.get(i), seatedRides.get(i + 1), seatedRides.get(i + 2), seatedRides.get(i + 3));
+        }
+        seatedRides.clear();
+        marked.or(nextMarked);
+    }
+
+    /**
+     * Continues the ride from the last stop of the given trip with the next trip of its block on the same day,
+     * without a change time and within the same round.
+     */
+    private void staySeated(int k, int bound, int fromTrip, int day, int firstTripInstance, int boardPos) {
+        int fromPattern = timetable.tripPatterns[fromTrip];
+        int arrivalTime = dayOffsets[timetable.patternZones[fromPattern]][day]
+                + timetable.getArrival(fromTrip, timetable.getStopCount(fromPattern) - 1);
+        int next = nextTripInBlock(fromTrip, day);
+        if (next < 0)
+            return;
+        int pattern = timetable.tripPatterns[next];
+        int offset = dayOffsets[timetable.patternZones[pattern]][day];
+        if (isBlocked(pattern) || offset + timetable.getDeparture(next, 0) < arrivalTime)
+            return;
+        int stopCount = timetable.getStopCount(pattern);
+        for (int position = 1; position < stopCount; position++) {
+            int stop = timetable.getPatternStop(pattern, position);
+            visitedStops++;
+            int time = offset + timetable.getArrival(next, position);
+            if (time >= bound)
+                return;
+            if (time < arrival[k][stop]) {
+                arrival[k][stop] = time;
+                ready[k][stop] = time + timetable.stopChangeTimes[stop];
+                kind[k][stop] = RIDE;
+                trip[k][stop] = next * dayCount + day;
+                firstTrip[k][stop] = firstTripInstance;
+                boardPosition[k][stop] = boardPos;
+                alightPosition[k][stop] = position;
+                nextMarked.set(stop);
+            }
+        }
+        if (timetable.tripBlockNext[next] >= 0)
+            seatedRides.add(next, day, firstTripInstance, boardPos);
+    }
+
+    /**
+     * @return the next trip of the block of the given trip that runs on the given day, or -1. Like the block
+     * transfers of the time-expanded graph, this does not have to start at the last stop of the given trip.
+     */
+    private int nextTripInBlock(int t, int day) {
+        int next = timetable.tripBlockNext[t];
+        while (next >= 0 && !isValid(next, day))
+            next = timetable.tripBlockNext[next];
+        return next;
+    }
+
+    private int readyTimeForRoute(int k, int stop, int route) {
+        int round = k;
+        while (kind[round][stop] == INHERITED)
+            round--;
+        if (kind[round][stop] != RIDE)
+            return ready[k][stop];
+        int fromRoute = timetable.patternRoutes[timetable.tripPatterns[trip[round][stop] / dayCount]];
+        return arrival[k][stop] + timetable.getChangeTime(stop, fromRoute, route);
+    }
+
+    private void relaxFootpaths(int k) {
+        nextMarked.clear();
+        for (int s = marked.nextSetBit(0); s >= 0; s = marked.nextSetBit(s + 1)) {
+            if (kind[k][s] != RIDE && kind[k][s] != ACCESS)
+                continue;
+            for (int i = timetable.transfersStart[s]; i < timetable.transfersStart[s + 1]; i++) {
+                int target = timetable.transferTargets[i];
+                int time = arrival[k][s] + timetable.transferTimes[i];
+                if (time < arrival[k][target] && time < maxArrival) {
+                    arrival[k][target] = time;
+                    ready[k][target] = time;
+                    kind[k][target] = TRANSFER;
+                    footpath[k][target] = i;
+                    nextMarked.set(target);
+                }
+            }
+        }
+        marked.or(nextMarked);
+    }
+
+    /**
+     * @return the first trip of the pattern that departs at the given position not before the given time on
+     * the given day, or -1
+     */
+    private int earliestTrip(int pattern, int position, int time, int day) {
+        int from = timetable.patternTripsStart[pattern];
+        int to = timetable.patternTripsStart[pattern + 1];
+        // the trips of a pattern don't overtake each other, so their departures are sorted at every stop
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timetable.getDeparture(mid, position) < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        for (int t = lo; t < to; t++) {
+            if (isValid(t, day))
+                return t;
+        }
+        return -1;
+    }
+
+    private boolean isValid(int t, int day) {
+        int pattern = timetable.tripPatterns[t];
+        int feed = timetable.patternFeeds[pattern];
+        long serviceDay = queryEpochDays[timetable.patternZones[pattern]] + firstDay + day - timetable.feedStartEpochDays[feed];
+        return serviceDay >= 0 && serviceDay <= Integer.MAX_VALUE && timetable.serviceDays[timetable.tripServices[t]].get((int) serviceDay);
+    }
+
+    private boolean isBlocked(int pattern) {
+        return (blockedRouteTypes & (1 << timetable.patternRouteTypes[pattern])) != 0;
+    }
+
+    private Journey extractJourney(IntIntMap accessTimes, int round, int egressStop) {
+        LinkedList<Leg> legs = new LinkedList<>();
+        int k = round;
+        int stop = egressStop;
+        int arrivalAtEgressStop = arrival[round][egressStop];
+        // every round adds a ride and at most one footpath
+        for (int steps = 0; steps <= 3 * round + 2; steps++) {
+            switch (kind[k][stop]) {
+                case ACCESS:
+                    if (k != 0)
+                        return null;
+                    return new Journey(stop, egressStop, arrival[0][stop] - accessTimes.get(stop), arrivalAtEgressStop, legs);
+                case INHERITED:
+                    k--;
+                    break;
+                case TRANSFER: {
+                    int f = footpath[k][stop];
+                    int from = findFootpathSource(f);
+                    legs.addFirst(new Leg(-1, 0, -1, -1, f, arrival[k][from], arrival[k][stop], false));
+                    stop = from;
+                    break;
+                }
+                case RIDE: {
+                    int lastTrip = trip[k][stop] / dayCount;
+                    int d = trip[k][stop] % dayCount;
+                    int t = firstTrip[k][stop] / dayCount;
+                    int board = boardPosition[k][stop];
+                    // the boarded trip and the trips of its block we stayed seated in
+                    List<Leg> ride = new ArrayList<>();
+                    for (int position = board; t != lastTrip; position = 0) {
+                        ride.add(createRideLeg(t, d, position, timetable.getStopCount(timetable.tripPatterns[t]) - 1, !ride.isEmpty()));
+                        t = nextTripInBlock(t, d);
+                        if (t < 0)
+                            return null;
+                    }
+                    ride.add(createRideLeg(t, d, ride.isEmpty() ? board : 0, alightPosition[k][stop], !ride.isEmpty()));
+                    legs.addAll(0, ride);
+                    stop = timetable.getPatternStop(timetable.tripPatterns[firstTrip[k][stop] / dayCount], board);
+                    k--;
+                    break;
+                }
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    private Leg createRideLeg(int t, int d, int board, int alight, boolean inSameVehicleAsPrevious) {
+        int offset = dayOffsets[timetable.patternZones[timetable.tripPatterns[t]]][d];
+        return new Leg(t, offset, board, alight, -1, offset + timetable.getDeparture(t, board), offset + timetable.getArrival(t, alight), inSameVehicleAsPrevious);
+    }
+
+    private int findFootpathSource(int footpath) {
+        // transfersStart is sorted, so the source is the last stop whose footpaths start at or before this one
+        int lo = 0, hi = timetable.stopCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (timetable.transfersStart[mid] <= footpath)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.procedures.IntObjectProcedure;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.*;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * The static schedule of all feeds in flat arrays, as needed by the round-based {@link Raptor} search.
+ * <p>
+ * Trips that serve the same stops in the same order (and belong to the same route) are grouped into
+ * patterns. The trips of a pattern are sorted by departure and never overtake each other, so that the earliest
+ * trip that can be boarded at a stop can be found via binary search. Frequency-based trips are expanded into
+ * one trip per departure, like in the time-expanded graph. Footpaths between stops come from transfers.txt
+ * and, like the interpolated transfers of the time-expanded graph, from walking between nearby stations.
+ * Of the route-specific transfer rules, only those between routes at the same stop are taken into account,
+ * trip-specific rules are ignored. Like the block transfers of the time-expanded graph, passengers stay seated
+ * from a trip to the next trip of its block that runs on the same day.
+ */
+public final class RaptorTimetable {
+    private static final Logger logger = LoggerFactory.getLogger(RaptorTimetable.class);
+
+    // stops
+    final int stopCount;
+    final String[] stopFeedIds;
+    final String[] stopIds;
+    // the minimum time between arriving at a stop with one trip and departing with another one
+    final int[] stopChangeTimes;
+    // stops with route-specific change times: (from route, to route, time) triples, -1 matches every route
+    private final IntObjectHashMap<int[]> routeChangeTimes;
+    private final Map<GtfsStorage.FeedIdWithStopId, Integer> stopIndex;
+
+    // the stops of pattern p are patternStops[patternStopsStart[p]] .. patternStops[patternStopsStart[p + 1] - 1]
+    final int patternCount;
+    final int[] patternStopsStart;
+    final int[] patternStops;
+    // the trips of pattern p are patternTripsStart[p] .. patternTripsStart[p + 1] - 1, sorted by departure
+    final int[] patternTripsStart;
+    final int[] patternRoutes;
+    final int[] patternRouteTypes;
+    final int[] patternZones;
+    final int[] patternFeeds;
+
+    // the arrival at the i-th stop of trip t is tripTimes[tripTimesStart[t] + 2 * i], the departure follows it
+    final int[] tripTimesStart;
+    final int[] tripTimes;
+    final int[] tripPatterns;
+    final int[] tripServices;
+    final String[] tripIds;
+    final String[] tripRouteIds;
+    // the start time of frequency-based trips, or -1
+    final int[] tripStartTimes;
+    // the next trip of the same block by departure, regardless of its service days, or -1
+    final int[] tripBlockNext;
+
+    // the stops served by pattern stopPatterns[i] at position stopPatternPositions[i], for i in stopPatternsStart[s] ..
+    final int[] stopPatternsStart;
+    final int[] stopPatterns;
+    final int[] stopPatternPositions;
+
+    // footpaths from stop s are transfersStart[s] .. transfersStart[s + 1] - 1
+    final int[] transfersStart;
+    final int[] transferTargets;
+    final int[] transferTimes;
+    // the street edge keys of a footpath, or null if it is a transfer from transfers.txt
+    final int[][] transferEdges;
+
+    final List<ZoneId> zones;
+    final List<String> feedIds;
+    // days since the start of its feed on which a service is active
+    final BitSet[] serviceDays;
+    final long[] feedStartEpochDays;
+
+    private RaptorTimetable(Builder b) {
+        stopCount = b.stopFeedIds.size();
+        stopFeedIds = b.stopFeedIds.toArray(new String[0]);
+        stopIds = b.stopIds.toArray(new String[0]);
+        stopChangeTimes = b.stopChangeTimes.toArray();
+        stopIndex = b.stopIndex;
+        routeChangeTimes = new IntObjectHashMap<>();
+        b.routeChangeTimes.forEach((IntObjectProcedure<IntArrayList>) (stop, rules) -> routeChangeTimes.put(stop, rules.toArray()));
+
+        zones = b.zones;
+        feedIds = b.feedIds;
+        serviceDays = b.serviceDays.toArray(new BitSet[0]);
+        feedStartEpochDays = b.feedStartEpochDays.stream().mapToLong(Long::longValue).toArray();
+
+        List<Builder.TripSchedule> trips = new ArrayList<>();
+        IntArrayList patternStopsStart = new IntArrayList(), patternStops = new IntArrayList(), patternTripsStart = new IntArrayList(),
+                patternRoutes = new IntArrayList(), patternRouteTypes = new IntArrayList(), patternZones = new IntArrayList(), patternFeeds = new IntArrayList();
+        for (Map.Entry<Builder.PatternKey, List<Builder.TripSchedule>> entry : b.tripsByPattern.entrySet()) {
+            List<Builder.TripSchedule> sorted = entry.getValue();
+            sorted.sort(Comparator.comparingInt(t -> t.times[1]));
+            // split into patterns without overtaking
+            List<List<Builder.TripSchedule>> fifoPatterns = new ArrayList<>();
+            for (Builder.TripSchedule trip : sorted) {
+                List<Builder.TripSchedule> target = null;
+                for (List<Builder.TripSchedule> fifoPattern : fifoPatterns) {
+                    if (!overtakes(fifoPattern.get(fifoPattern.size() - 1), trip)) {
+                        target = fifoPattern;
+                        break;
+                    }
+                }
+                if (target == null) {
+                    target = new ArrayList<>();
+                    fifoPatterns.add(target);
+                }
+                target.add(trip);
+            }
+            for (List<Builder.TripSchedule> fifoPattern : fifoPatterns) {
+                int pattern = patternStopsStart.size();
+                patternStopsStart.add(patternStops.size());
+                patternStops.add(entry.getKey().stops);
+                patternTripsStart.add(trips.size());
+                Builder.TripSchedule first = fifoPattern.get(0);
+                patternRoutes.add(first.route);
+                patternRouteTypes.add(first.routeType);
+                patternZones.add(first.zone);
+                patternFeeds.add(first.feed);
+                for (Builder.TripSchedule trip : fifoPattern) {
+                    trip.pattern = pattern;
+                    trips.add(trip);
+                }
+            }
+        }
+        patternCount = patternStopsStart.size();
+        patternStopsStart.add(patternStops.size());
+        patternTripsStart.add(trips.size());
+        this.patternStopsStart = patternStopsStart.toArray();
+        this.patternStops = patternStops.toArray();
+        this.patternTripsStart = patternTripsStart.toArray();
+        this.patternRoutes = patternRoutes.toArray();
+        this.patternRouteTypes = patternRouteTypes.toArray();
+        this.patternZones = patternZones.toArray();
+        this.patternFeeds = patternFeeds.toArray();
+
+        tripTimesStart = new int[trips.size()];
+        tripPatterns = new int[trips.size()];
+        tripServices = new int[trips.size()];
+        tripStartTimes = new int[trips.size()];
+        tripIds = new String[trips.size()];
+        tripRouteIds = new String[trips.size()];
+        tripBlockNext = new int[trips.size()];
+        IntArrayList tripTimes = new IntArrayList();
+        for (int t = 0; t < trips.size(); t++) {
+            Builder.TripSchedule trip = trips.get(t);
+            trip.index = t;
+            tripTimesStart[t] = tripTimes.size();
+            tripTimes.add(trip.times);
+            tripPatterns[t] = trip.pattern;
+            tripServices[t] = trip.service;
+            tripStartTimes[t] = trip.startTime;
+            tripIds[t] = trip.tripId;
+            tripRouteIds[t] = trip.routeId;
+        }
+        this.tripTimes = tripTimes.toArray();
+        Arrays.fill(tripBlockNext, -1);
+        for (List<Builder.TripSchedule> block : b.blocks.values()) {
+            block.sort(Comparator.comparingInt(t -> t.times[1]));
+            for (int i = 1; i < block.size(); i++) {
+                tripBlockNext[block.get(i - 1).index] = block.get(i).index;
+            }
+        }
+
+        // stop -> (pattern, position)
+        int[] counts = new int[stopCount + 1];
+        for (int p = 0; p < patternCount; p++) {
+            for (int i = this.patternStopsStart[p]; i < this.patternStopsStart[p + 1]; i++) {
+                counts[this.patternStops[i]]++;
+            }
+        }
+        stopPatternsStart = prefixSums(counts);
+        stopPatterns = new int[this.patternStops.length];
+        stopPatternPositions = new int[this.patternStops.length];
+        int[] next = Arrays.copyOf(stopPatternsStart, stopCount);
+        for (int p = 0; p < patternCount; p++) {
+            for (int i = this.patternStopsStart[p]; i < this.patternStopsStart[p + 1]; i++) {
+                int idx = next[this.patternStops[i]]++;
+                stopPatterns[idx] = p;
+                stopPatternPositions[idx] = i - this.patternStopsStart[p];
+            }
+        }
+
+        // footpaths
+        counts = new int[stopCount + 1];
+        for (Builder.Footpath footpath : b.footpaths.values()) {
+            counts[footpath.from]++;
+        }
+        transfersStart = prefixSums(counts);
+        transferTargets = new int[b.footpaths.size()];
+        transferTimes = new int[b.footpaths.size()];
+        transferEdges = new int[b.footpaths.size()][];
+        next = Arrays.copyOf(transfersStart, stopCount);
+        for (Builder.Footpath footpath : b.footpaths.values()) {
+            int idx = next[footpath.from]++;
+            transferTargets[idx] = footpath.to;
+            transferTimes[idx] = footpath.time;
+            transferEdges[idx] = footpath.edges;
+        }
+    }
+
+    private static int[] prefixSums(int[] counts) {
+        int[] result = new int[counts.length];
+        int sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            result[i] = sum;
+            sum += counts[i];
+        }
+        return result;
+    }
+
+    private static boolean overtakes(Builder.TripSchedule earlier, Builder.TripSchedule later) {
+        for (int i = 0; i < earlier.times.length; i++) {
+            if (later.times[i] < earlier.times[i])
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the given stop or -1 if it is not served by any trip
+     */
+    int getStopIndex(String feedId, String stopId) {
+        Integer stop = stopIndex.get(new GtfsStorage.FeedIdWithStopId(feedId, stopId));
+        return stop == null ? -1 : stop;
+    }
+
+    boolean hasRouteChangeTimes(int stop) {
+        return routeChangeTimes.containsKey(stop);
+    }
+
+    /**
+     * @return the change time at the stop between the two routes, from the most specific rule
+     */
+    int getChangeTime(int stop, int fromRoute, int toRoute) {
+        int[] rules = routeChangeTimes.get(stop);
+        if (rules == null)
+            return stopChangeTimes[stop];
+        int time = stopChangeTimes[stop];
+        int bestScore = -1;
+        for (int i = 0; i < rules.length; i += 3) {
+            if (rules[i] >= 0 && rules[i] != fromRoute || rules[i + 1] >= 0 && rules[i + 1] != toRoute)
+                continue;
+            int score = (rules[i] >= 0 ? 1 : 0) + (rules[i + 1] >= 0 ? 1 : 0);
+            if (score > bestScore) {
+                bestScore = score;
+                time = rules[i + 2];
+            }
+        }
+        return time;
+    }
+
+    int getPatternStop(int pattern, int position) {
+        return patternStops[patternStopsStart[pattern] + position];
+    }
+
+    int getArrival(int trip, int position) {
+        return tripTimes[tripTimesStart[trip] + 2 * position];
+    }
+
+    int getDeparture(int trip, int position) {
+        return tripTimes[tripTimesStart[trip] + 2 * position + 1];
+    }
+
+    int getStopCount(int pattern) {
+        return patternStopsStart[pattern + 1] - patternStopsStart[pattern];
+    }
+
+    int getTripCount() {
+        return tripIds.length;
+    }
+
+    public static RaptorTimetable create(GtfsStorage gtfsStorage, Graph graph, Weighting footWeighting, int maxTransferWalkTimeSeconds) {
+        Builder builder = new Builder();
+        gtfsStorage.getGtfsFeeds().forEach(builder::addFeed);
+        builder.addGtfsTransfers(gtfsStorage);
+        builder.addWalkingTransfers(gtfsStorage, graph, footWeighting, maxTransferWalkTimeSeconds);
+        RaptorTimetable timetable = new RaptorTimetable(builder);
+        logger.info("Created timetable with {} stops, {} patterns, {} trips and {} footpaths", timetable.stopCount, timetable.patternCount,
+                timetable.getTripCount(), timetable.transferTargets.length);
+        return timetable;
+    }
+
+    private static class Builder {
+        final List<String> stopFeedIds = new ArrayList<>();
+        final List<String> stopIds = new ArrayList<>();
+        final IntArrayList stopChangeTimes = new IntArrayList();
+        final Map<GtfsStorage.FeedIdWithStopId, Integer> stopIndex = new HashMap<>();
+        final Map<List<String>, Integer> routeIndex = new HashMap<>();
+        final IntObjectHashMap<IntArrayList> routeChangeTimes = new IntObjectHashMap<>();
+        final Map<PatternKey, List<TripSchedule>> tripsByPattern = new LinkedHashMap<>();
+        final Map<List<String>, List<TripSchedule>> blocks = new HashMap<>();
+        final Map<Long, Footpath> footpaths = new LinkedHashMap<>();
+        final List<ZoneId> zones = new ArrayList<>();
+        final List<String> feedIds = new ArrayList<>();
+        final List<BitSet> serviceDays = new ArrayList<>();
+        final List<Long> feedStartEpochDays = new ArrayList<>();
+
+        int stop(String feedId, String stopId) {
+            return stopIndex.computeIfAbsent(new GtfsStorage.FeedIdWithStopId(feedId, stopId), key -> {
+                stopFeedIds.add(feedId);
+                stopIds.add(stopId);
+                stopChangeTimes.add(0);
+                return stopIds.size() - 1;
+            });
+        }
+
+        int route(String feedId, String routeId) {
+            return routeIndex.computeIfAbsent(Arrays.asList(feedId, routeId), key -> routeIndex.size());
+        }
+
+        int zone(ZoneId zoneId) {
+            int zone = zones.indexOf(zoneId);
+            if (zone < 0) {
+                zones.add(zoneId);
+                zone = zones.size() - 1;
+            }
+            return zone;
+        }
+
+        void addFeed(String feedId, GTFSFeed feed) {
+            int feedIndex = feedIds.size();
+            feedIds.add(feedId);
+            LocalDate startDate = feed.getStartDate();
+            LocalDate endDate = feed.getEndDate();
+            feedStartEpochDays.add(startDate.toEpochDay());
+            Map<String, Integer> services = new HashMap<>();
+            for (Trip trip : feed.trips.values()) {
+                Route route = feed.routes.get(trip.route_id);
+                Agency agency = route.agency_id != null ? feed.agency.get(route.agency_id) : null;
+                if (agency == null)
+                    agency = feed.agency.values().iterator().next();
+                int zone = zone(ZoneId.of(agency.agency_timezone));
+                int service = services.computeIfAbsent(trip.service_id, serviceId -> {
+                    Service s = feed.services.get(serviceId);
+                    BitSet validOnDay = new BitSet();
+                    for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                        if (s.activeOn(date))
+                            validOnDay.set((int) (date.toEpochDay() - startDate.toEpochDay()));
+                    }
+                    serviceDays.add(validOnDay);
+                    return serviceDays.size() - 1;
+                });
+                List<StopTime> stopTimes = new ArrayList<>();
+                try {
+                    feed.getInterpolatedStopTimesForTrip(trip.trip_id).forEach(stopTimes::add);
+                } catch (GTFSFeed.FirstAndLastStopsDoNotHaveTimes e) {
+                    throw new RuntimeException(e);
+                }
+                if (stopTimes.size() < 2)
+                    continue;
+                IntArrayList stops = new IntArrayList(stopTimes.size());
+                for (StopTime stopTime : stopTimes) {
+                    stops.add(stop(feedId, stopTime.stop_id));
+                }
+                PatternKey key = new PatternKey(feedIndex, trip.route_id, stops.toArray());
+                List<TripSchedule> patternTrips = tripsByPattern.computeIfAbsent(key, k -> new ArrayList<>());
+                Collection<Frequency> frequencies = feed.getFrequencies(trip.trip_id);
+                if (frequencies.isEmpty()) {
+                    TripSchedule schedule = new TripSchedule(trip, route, route(feedId, trip.route_id), stopTimes, 0, -1, service, zone, feedIndex);
+                    patternTrips.add(schedule);
+                    // staying seated between the expanded departures of frequency-based blocks is not supported
+                    if (trip.block_id != null)
+                        blocks.computeIfAbsent(Arrays.asList(feedId, trip.block_id), k -> new ArrayList<>()).add(schedule);
+                } else {
+                    for (Frequency frequency : frequencies) {
+                        for (int time = frequency.start_time; time < frequency.end_time; time += frequency.headway_secs) {
+                            patternTrips.add(new TripSchedule(trip, route, route(feedId, trip.route_id), stopTimes, time, time, service, zone, feedIndex));
+                        }
+                    }
+                }
+            }
+        }
+
+        void addGtfsTransfers(GtfsStorage gtfsStorage) {
+            gtfsStorage.getGtfsFeeds().forEach((feedId, feed) -> {
+                for (Transfer transfer : feed.transfers.values()) {
+                    if (transfer.transfer_type != 0 && transfer.transfer_type != 2)
+                        continue;
+                    if (transfer.from_trip_id != null || transfer.to_trip_id != null)
+                        continue;
+                    boolean routeSpecific = transfer.from_route_id != null || transfer.to_route_id != null;
+                    for (String fromStopId : platforms(feed, transfer.from_stop_id)) {
+                        for (String toStopId : platforms(feed, transfer.to_stop_id)) {
+                            Integer from = stopIndex.get(new GtfsStorage.FeedIdWithStopId(feedId, fromStopId));
+                            Integer to = stopIndex.get(new GtfsStorage.FeedIdWithStopId(feedId, toStopId));
+                            if (from == null || to == null)
+                                continue;
+                            int time = transfer.transfer_type == 2 ? transfer.min_transfer_time : 0;
+                            if (routeSpecific) {
+                                if (from.equals(to)) {
+                                    IntArrayList rules = routeChangeTimes.get(from);
+                                    if (rules == null) {
+                                        rules = new IntArrayList();
+                                        routeChangeTimes.put(from, rules);
+                                    }
+                                    rules.add(transfer.from_route_id == null ? -1 : route(feedId, transfer.from_route_id),
+                                            transfer.to_route_id == null ? -1 : route(feedId, transfer.to_route_id), time);
+                                }
+                            } else if (from.equals(to)) {
+                                stopChangeTimes.set(from, time);
+                            } else {
+                                footpaths.put(footpathKey(from, to), new Footpath(from, to, time, null));
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        private static List<String> platforms(GTFSFeed feed, String stopId) {
+            Stop stop = feed.stops.get(stopId);
+            if (stop == null || stop.location_type != 1)
+                return Collections.singletonList(stopId);
+            List<String> result = new ArrayList<>();
+            for (Stop platform : feed.stops.values()) {
+                if (platform.location_type == 0 && stopId.equals(platform.parent_station))
+                    result.add(platform.stop_id);
+            }
+            return result;
+        }
+
+        /**
+         * Like GraphHopperGtfs.interpolateTransfers: walk backwards from every station and connect the stops
+         * that we can reach, unless transfers.txt already contains a transfer between them.
+         */
+        void addWalkingTransfers(GtfsStorage gtfsStorage, Graph graph, Weighting footWeighting, int maxTransferWalkTimeSeconds) {
+            Map<Integer, List<Integer>> stopsByStationNode = new HashMap<>();
+            gtfsStorage.getStationNodes().forEach((feedIdWithStopId, stationNode) -> {
+                Integer stop = stopIndex.get(feedIdWithStopId);
+                if (stop != null)
+                    stopsByStationNode.computeIfAbsent(stationNode, n -> new ArrayList<>()).add(stop);
+            });
+            PtGraph ptGraph = gtfsStorage.getPtGraph();
+            GraphExplorer graphExplorer = new GraphExplorer(graph, ptGraph, footWeighting, gtfsStorage, RealtimeFeed.empty(), true, true, false, 5.0, false, 0);
+            LabelArena labelArena = new LabelArena();
+            stopsByStationNode.forEach((stationNode, toStops) -> {
+                int streetNode = Optional.ofNullable(gtfsStorage.getPtToStreet().get(stationNode)).orElse(-1);
+                MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(graphExplorer, true, false, false, 0, new ArrayList<>(), labelArena);
+                router.setLimitStreetTime(Duration.ofSeconds(maxTransferWalkTimeSeconds).toMillis());
+                for (Label label : router.calcLabels(new Label.NodeId(streetNode, stationNode), Instant.ofEpochMilli(0))) {
+                    if (label.parent == null || label.edge.getType() != GtfsStorage.EdgeType.EXIT_PT)
+                        continue;
+                    GtfsStorage.PlatformDescriptor fromPlatform = label.edge.getPlatformDescriptor();
+                    Integer from = stopIndex.get(new GtfsStorage.FeedIdWithStopId(fromPlatform.feed_id, fromPlatform.stop_id));
+                    if (from == null)
+                        continue;
+                    int[] edges = Label.getTransitions(label.parent, true).stream().filter(t -> t.edge != null)
+                            .mapToInt(t -> graph.getEdgeIteratorState(t.edge.getId(), t.label.node.streetNode).getEdgeKey())
+                            .toArray();
+                    int time = (int) (label.streetTime / 1000L);
+                    for (int to : toStops) {
+                        if (to == from)
+                            continue;
+                        long key = footpathKey(from, to);
+                        Footpath existing = footpaths.get(key);
+                        if (existing == null || existing.edges != null && existing.time > time)
+                            footpaths.put(key, new Footpath(from, to, time, edges.length > 0 ? edges : null));
+                    }
+                }
+            });
+        }
+
+        static long footpathKey(int from, int to) {
+            return ((long) from << 32) | (to & 0xFFFFFFFFL);
+        }
+
+        static class Footpath {
+            final int from, to, time;
+            final int[] edges;
+
+            Footpath(int from, int to, int time, int[] edges) {
+                this.from = from;
+                this.to = to;
+                this.time = time;
+                this.edges = edges;
+            }
+        }
+
+        static class PatternKey {
+            final int feed;
+            final String routeId;
+            final int[] stops;
+
+            PatternKey(int feed, String routeId, int[] stops) {
+                this.feed = feed;
+                this.routeId = routeId;
+                this.stops = stops;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof PatternKey)) return false;
+                PatternKey other = (PatternKey) o;
+                return feed == other.feed && routeId.equals(other.routeId) && Arrays.equals(stops, other.stops);
+            }
+
+            @Override
+            public int hashCode() {
+                return 31 * (31 * feed + routeId.hashCode()) + Arrays.hashCode(stops);
+            }
+        }
+
+        static class TripSchedule {
+            final String tripId;
+            final String routeId;
+            final int route;
+            final int routeType;
+            final int[] times;
+            final int startTime;
+            final int service;
+            final int zone;
+            final int feed;
+            int pattern;
+            int index;
+
+            TripSchedule(Trip trip, Route route, int routeIndex, List<StopTime> stopTimes, int offset, int startTime, int service, int zone, int feed) {
+                this.tripId = trip.trip_id;
+                this.routeId = trip.route_id;
+                this.route = routeIndex;
+                this.routeType = route.route_type;
+                this.startTime = startTime;
+                this.service = service;
+                this.zone = zone;
+                this.feed = feed;
+                this.times = new int[2 * stopTimes.size()];
+                for (int i = 0; i < stopTimes.size(); i++) {
+                    times[2 * i] = stopTimes.get(i).arrival_time + offset;
+                    times[2 * i + 1] = stopTimes.get(i).departure_time + offset;
+                }
+            }
+        }
+    }
+}
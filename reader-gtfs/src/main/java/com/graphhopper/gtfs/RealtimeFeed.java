@@ -21,6 +21,8 @@ package com.graphhopper.gtfs;
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntLongHashMap;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.procedures.IntProcedure;
 import com.conveyal.gtfs.GTFSFeed;
 import com.conveyal.gtfs.model.Frequency;
 import com.conveyal.gtfs.model.StopTime;
@@ -46,126 +48,265 @@ import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate
 import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SKIPPED;
 import static java.time.temporal.ChronoUnit.DAYS;
 
+/**
+ * An immutable snapshot of the realtime overlay on top of the static pt graph. Every trip update of the
+ * realtime feeds contributes its own overlay (blocked edges, delays and additional edges), so that a new
+ * snapshot can be derived from the previous one by recomputing only the trips whose update changed. Readers
+ * never see a snapshot while it is being built.
+ */
 public class RealtimeFeed {
     private static final Logger logger = LoggerFactory.getLogger(RealtimeFeed.class);
+    // ids of additional nodes and edges keep increasing from one snapshot to the next, start over before they overflow
+    private static final int MAX_ADDITIONAL_ID = Integer.MAX_VALUE / 2;
     private final IntHashSet blockedEdges;
     private final IntLongHashMap delaysForBoardEdges;
     private final IntLongHashMap delaysForAlightEdges;
-    private final List<PtGraph.PtEdge> additionalEdges;
+    private final IntObjectHashMap<List<PtGraph.PtEdge>> additionalEdgesByBaseNode;
+    private final IntObjectHashMap<List<PtGraph.PtEdge>> additionalBackEdgesByAdjNode;
+    private final Map<GtfsRealtime.TripDescriptor, GtfsRealtime.TripUpdate> tripUpdates;
+    private final Map<TripKey, TripOverlay> tripOverlays;
+    private final int nextEdge;
+    private final int nextNode;
     public final Map<String, GtfsRealtime.FeedMessage> feedMessages;
 
-    private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, IntHashSet blockedEdges,
-                         IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges) {
+    private RealtimeFeed() {
+        this.feedMessages = Collections.emptyMap();
+        this.tripOverlays = Collections.emptyMap();
+        this.nextEdge = 0;
+        this.nextNode = 0;
+        blockedEdges = new IntHashSet();
+        delaysForBoardEdges = new IntLongHashMap();
+        delaysForAlightEdges = new IntLongHashMap();
+        additionalEdgesByBaseNode = new IntObjectHashMap<>();
+        additionalBackEdgesByAdjNode = new IntObjectHashMap<>();
+        tripUpdates = new HashMap<>();
+    }
+
+    /**
+     * Derives the lookup tables from the ones of the previous snapshot: only the contributions of the trip
+     * overlays that were dropped or replaced are removed, and only the new overlays are added. The edge lists
+     * per node are copied when they are touched, the previous snapshot is never modified.
+     */
+    private RealtimeFeed(RealtimeFeed previous, Map<String, GtfsRealtime.FeedMessage> feedMessages, Map<TripKey, TripOverlay> tripOverlays, int nextEdge, int nextNode) {
         this.feedMessages = feedMessages;
-        this.blockedEdges = blockedEdges;
-        this.delaysForBoardEdges = delaysForBoardEdges;
-        this.delaysForAlightEdges = delaysForAlightEdges;
-        this.additionalEdges = additionalEdges;
+        this.tripOverlays = tripOverlays;
+        this.nextEdge = nextEdge;
+        this.nextNode = nextNode;
+        blockedEdges = previous.blockedEdges.clone();
+        delaysForBoardEdges = previous.delaysForBoardEdges.clone();
+        delaysForAlightEdges = previous.delaysForAlightEdges.clone();
+        additionalEdgesByBaseNode = previous.additionalEdgesByBaseNode.clone();
+        additionalBackEdgesByAdjNode = previous.additionalBackEdgesByAdjNode.clone();
+        tripUpdates = new HashMap<>(previous.tripUpdates);
+        IntHashSet copiedBaseNodes = new IntHashSet();
+        IntHashSet copiedAdjNodes = new IntHashSet();
+        List<TripKey> removedTrips = new ArrayList<>();
+        // the edges of an overlay are not shared with other overlays: blocked and delayed edges belong to the
+        // trip of the overlay and additional edges get fresh ids, so removing them does not affect other trips
+        previous.tripOverlays.forEach((tripKey, overlay) -> {
+            if (tripOverlays.get(tripKey) == overlay)
+                return;
+            overlay.blockedEdges.forEach((IntProcedure) blockedEdges::remove);
+            delaysForBoardEdges.removeAll(overlay.delaysForBoardEdges.keys());
+            delaysForAlightEdges.removeAll(overlay.delaysForAlightEdges.keys());
+            for (PtGraph.PtEdge edge : overlay.additionalEdges) {
+                removeEdge(additionalEdgesByBaseNode, copiedBaseNodes, edge.getBaseNode(), edge.getId());
+                removeEdge(additionalBackEdgesByAdjNode, copiedAdjNodes, edge.getAdjNode(), edge.getId());
+            }
+            if (tripUpdates.remove(tripKey.tripDescriptor, overlay.tripUpdate))
+                removedTrips.add(tripKey);
+        });
+        tripOverlays.forEach((tripKey, overlay) -> {
+            if (previous.tripOverlays.get(tripKey) == overlay)
+                return;
+            blockedEdges.addAll(overlay.blockedEdges);
+            delaysForBoardEdges.putAll(overlay.delaysForBoardEdges);
+            delaysForAlightEdges.putAll(overlay.delaysForAlightEdges);
+            for (PtGraph.PtEdge edge : overlay.additionalEdges) {
+                editableEdgeList(additionalEdgesByBaseNode, copiedBaseNodes, edge.getBaseNode()).add(edge);
+                editableEdgeList(additionalBackEdgesByAdjNode, copiedAdjNodes, edge.getAdjNode()).add(new PtGraph.PtEdge(edge.getId(), edge.getAdjNode(), edge.getBaseNode(), edge.getAttrs()));
+            }
+            tripUpdates.putIfAbsent(tripKey.tripDescriptor, overlay.tripUpdate);
+        });
+        // another feed can still have an unchanged update for the trip of a removed one
+        for (TripKey removed : removedTrips) {
+            if (tripUpdates.containsKey(removed.tripDescriptor))
+                continue;
+            for (String feedId : feedMessages.keySet()) {
+                TripOverlay overlay = tripOverlays.get(new TripKey(feedId, removed.tripDescriptor));
+                if (overlay != null) {
+                    tripUpdates.put(removed.tripDescriptor, overlay.tripUpdate);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static List<PtGraph.PtEdge> editableEdgeList(IntObjectHashMap<List<PtGraph.PtEdge>> edgesByNode, IntHashSet copiedNodes, int node) {
+        List<PtGraph.PtEdge> edges = edgesByNode.get(node);
+        if (edges == null) {
+            edges = new ArrayList<>(2);
+            edgesByNode.put(node, edges);
+            copiedNodes.add(node);
+        } else if (copiedNodes.add(node)) {
+            // the list still belongs to the previous snapshot
+            edges = new ArrayList<>(edges);
+            edgesByNode.put(node, edges);
+        }
+        return edges;
+    }
+
+    private static void removeEdge(IntObjectHashMap<List<PtGraph.PtEdge>> edgesByNode, IntHashSet copiedNodes, int node, int edgeId) {
+        if (!edgesByNode.containsKey(node))
+            return;
+        List<PtGraph.PtEdge> edges = editableEdgeList(edgesByNode, copiedNodes, node);
+        edges.removeIf(e -> e.getId() == edgeId);
+        if (edges.isEmpty())
+            edgesByNode.remove(node);
     }
 
     public static RealtimeFeed empty() {
-        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList());
+        return new RealtimeFeed();
+    }
+
+    /**
+     * @return true if no trip is changed by this feed, so the static schedule applies as it is
+     */
+    public boolean isEmpty() {
+        return tripOverlays.isEmpty();
     }
 
     public static RealtimeFeed fromProtobuf(GraphHopperStorage graphHopperStorage, GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
-        final IntHashSet blockedEdges = new IntHashSet();
-        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
-        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
-        final LinkedList<PtGraph.PtEdge> additionalEdges = new LinkedList<>();
-        final GtfsReader.PtGraphOut overlayGraph = new GtfsReader.PtGraphOut() {
-            int nextEdge = staticGtfs.getPtGraph().getEdgeCount();
-            int nextNode = staticGtfs.getPtGraph().getNodeCount();
+        return update(graphHopperStorage, staticGtfs, transfers, empty(), feedMessages);
+    }
+
+    /**
+     * Creates the snapshot for the given feed messages. The overlay of a trip is taken over from the previous
+     * snapshot if its trip update (and the service day) did not change, only new or changed trips are applied
+     * to the pt graph again. Trips missing from a feed message are dropped unless the message is
+     * DIFFERENTIAL, in which case only entities marked as deleted are removed.
+     */
+    public static RealtimeFeed update(GraphHopperStorage graphHopperStorage, GtfsStorage staticGtfs, Map<String, Transfers> transfers, RealtimeFeed previous, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
+        if (previous.nextEdge > MAX_ADDITIONAL_ID || previous.nextNode > MAX_ADDITIONAL_ID)
+            previous = empty();
+        final PtGraph ptGraph = staticGtfs.getPtGraph();
+        final int[] nextIds = {Math.max(previous.nextEdge, ptGraph.getEdgeCount()), Math.max(previous.nextNode, ptGraph.getNodeCount())};
+        final Map<TripKey, TripOverlay> tripOverlays = new LinkedHashMap<>();
+        int reused = 0, applied = 0;
+        for (Map.Entry<String, GtfsRealtime.FeedMessage> entry : feedMessages.entrySet()) {
+            String feedKey = entry.getKey();
+            GtfsRealtime.FeedMessage feedMessage = entry.getValue();
+            GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
+            ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
+            Instant timestamp = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp());
+            LocalDate dateToChange = timestamp.atZone(timezone).toLocalDate(); //FIXME
+            if (feedMessage.getHeader().getIncrementality() == GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL) {
+                previous.tripOverlays.forEach((tripKey, overlay) -> {
+                    if (tripKey.feedId.equals(feedKey))
+                        tripOverlays.put(tripKey, overlay);
+                });
+            }
+            for (GtfsRealtime.FeedEntity feedEntity : feedMessage.getEntityList()) {
+                if (!feedEntity.hasTripUpdate())
+                    continue;
+                GtfsRealtime.TripUpdate tripUpdate = feedEntity.getTripUpdate();
+                TripKey tripKey = new TripKey(feedKey, normalize(tripUpdate.getTrip()));
+                if (feedEntity.getIsDeleted()) {
+                    tripOverlays.remove(tripKey);
+                    continue;
+                }
+                TripOverlay overlay = previous.tripOverlays.get(tripKey);
+                if (overlay != null && overlay.day.equals(dateToChange) && overlay.tripUpdate.equals(tripUpdate)) {
+                    reused++;
+                } else {
+                    overlay = createTripOverlay(graphHopperStorage, staticGtfs, transfers.get(feedKey), feedKey, feed, timezone, dateToChange, tripUpdate, nextIds);
+                    applied++;
+                }
+                tripOverlays.put(tripKey, overlay);
+            }
+        }
+        logger.debug("Realtime update: {} trips applied, {} unchanged trips reused", applied, reused);
+        return new RealtimeFeed(previous, feedMessages, tripOverlays, nextIds[0], nextIds[1]);
+    }
 
+    private static TripOverlay createTripOverlay(GraphHopperStorage graphHopperStorage, GtfsStorage staticGtfs, Transfers transfers, String feedKey, GTFSFeed feed,
+                                                 ZoneId timezone, LocalDate dateToChange, GtfsRealtime.TripUpdate tripUpdate, int[] nextIds) {
+        final TripOverlay overlay = new TripOverlay(tripUpdate, dateToChange);
+        final GtfsReader.PtGraphOut overlayGraph = new GtfsReader.PtGraphOut() {
             @Override
             public int createEdge(int src, int dest, PtEdgeAttributes attrs) {
-                int edgeId = nextEdge++;
-                additionalEdges.add(new PtGraph.PtEdge(edgeId, src, dest, attrs));
+                int edgeId = nextIds[0]++;
+                overlay.additionalEdges.add(new PtGraph.PtEdge(edgeId, src, dest, attrs));
                 return edgeId;
             }
 
             @Override
             public int createNode() {
-                return nextNode++;
+                return nextIds[1]++;
             }
 
         };
-
-        feedMessages.forEach((feedKey, feedMessage) -> {
-            GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
-            ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
-            PtGraph ptGraphNodesAndEdges = staticGtfs.getPtGraph();
-            final GtfsReader gtfsReader = new GtfsReader(feedKey, graphHopperStorage, ptGraphNodesAndEdges, overlayGraph, staticGtfs, null, transfers.get(feedKey), null);
-            Instant timestamp = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp());
-            LocalDate dateToChange = timestamp.atZone(timezone).toLocalDate(); //FIXME
-            BitSet validOnDay = new BitSet();
-            LocalDate startDate = feed.getStartDate();
-            validOnDay.set((int) DAYS.between(startDate, dateToChange));
-            feedMessage.getEntityList().stream()
-                    .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                    .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                    .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED)
-                    .forEach(tripUpdate -> {
-                        Collection<Frequency> frequencies = feed.getFrequencies(tripUpdate.getTrip().getTripId());
-                        int timeOffset = (tripUpdate.getTrip().hasStartTime() && !frequencies.isEmpty()) ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : 0;
-                        final int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
-                        final int[] leaveEdges = findLeaveEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
-                        if (boardEdges == null || leaveEdges == null) {
-                            logger.warn("Trip not found: {}", tripUpdate.getTrip());
-                            return;
-                        }
-                        tripUpdate.getStopTimeUpdateList().stream()
-                                .filter(stopTimeUpdate -> stopTimeUpdate.getScheduleRelationship() == SKIPPED)
-                                .mapToInt(GtfsRealtime.TripUpdate.StopTimeUpdate::getStopSequence)
-                                .forEach(skippedStopSequenceNumber -> {
-                                    blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
-                                    blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
-                                });
-                        GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(feed, tripUpdate);
-                        tripWithStopTimes.stopTimes.forEach(stopTime -> {
-                            if (stopTime.stop_sequence > leaveEdges.length - 1) {
-                                logger.warn("Stop sequence number too high {} vs {}", stopTime.stop_sequence, leaveEdges.length);
-                                return;
-                            }
-                            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence));
-                            int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
-                            delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
-                            int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
-                            if (departureDelay > 0) {
-                                int boardEdge = boardEdges[stopTime.stop_sequence];
-                                int departureNode = ptGraphNodesAndEdges.edge(boardEdge).getAdjNode();
-                                int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, tripUpdate.getTrip(), stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, validOnDay);
-                                delaysForBoardEdges.put(delayedBoardEdge, departureDelay * 1000);
-                            }
-                        });
-                    });
-            feedMessage.getEntityList().stream()
-                    .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                    .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                    .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED)
-                    .forEach(tripUpdate -> {
-                        Trip trip = new Trip();
-                        trip.trip_id = tripUpdate.getTrip().getTripId();
-                        trip.route_id = tripUpdate.getTrip().getRouteId();
-                        final List<StopTime> stopTimes = tripUpdate.getStopTimeUpdateList().stream()
-                                .map(stopTimeUpdate -> {
-                                    final StopTime stopTime = new StopTime();
-                                    stopTime.stop_sequence = stopTimeUpdate.getStopSequence();
-                                    stopTime.stop_id = stopTimeUpdate.getStopId();
-                                    stopTime.trip_id = trip.trip_id;
-                                    final ZonedDateTime arrival_time = Instant.ofEpochSecond(stopTimeUpdate.getArrival().getTime()).atZone(timezone);
-                                    stopTime.arrival_time = (int) Duration.between(arrival_time.truncatedTo(ChronoUnit.DAYS), arrival_time).getSeconds();
-                                    final ZonedDateTime departure_time = Instant.ofEpochSecond(stopTimeUpdate.getArrival().getTime()).atZone(timezone);
-                                    stopTime.departure_time = (int) Duration.between(departure_time.truncatedTo(ChronoUnit.DAYS), departure_time).getSeconds();
-                                    return stopTime;
-                                })
-                                .collect(Collectors.toList());
-                        GtfsReader.TripWithStopTimes tripWithStopTimes = new GtfsReader.TripWithStopTimes(trip, stopTimes, validOnDay, Collections.emptySet(), Collections.emptySet());
-                        gtfsReader.addTrip(timezone, 0, new ArrayList<>(), tripWithStopTimes, tripUpdate.getTrip());
+        PtGraph ptGraphNodesAndEdges = staticGtfs.getPtGraph();
+        final GtfsReader gtfsReader = new GtfsReader(feedKey, graphHopperStorage, ptGraphNodesAndEdges, overlayGraph, staticGtfs, null, transfers, null);
+        BitSet validOnDay = new BitSet();
+        LocalDate startDate = feed.getStartDate();
+        validOnDay.set((int) DAYS.between(startDate, dateToChange));
+        GtfsRealtime.TripDescriptor.ScheduleRelationship scheduleRelationship = tripUpdate.getTrip().getScheduleRelationship();
+        if (scheduleRelationship == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED) {
+            Collection<Frequency> frequencies = feed.getFrequencies(tripUpdate.getTrip().getTripId());
+            int timeOffset = (tripUpdate.getTrip().hasStartTime() && !frequencies.isEmpty()) ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : 0;
+            final int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
+            final int[] leaveEdges = findLeaveEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
+            if (boardEdges == null || leaveEdges == null) {
+                logger.warn("Trip not found: {}", tripUpdate.getTrip());
+                return overlay;
+            }
+            tripUpdate.getStopTimeUpdateList().stream()
+                    .filter(stopTimeUpdate -> stopTimeUpdate.getScheduleRelationship() == SKIPPED)
+                    .mapToInt(GtfsRealtime.TripUpdate.StopTimeUpdate::getStopSequence)
+                    .forEach(skippedStopSequenceNumber -> {
+                        overlay.blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
+                        overlay.blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
                     });
-            gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
-        });
-
-        return new RealtimeFeed(feedMessages, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges);
+            GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(feed, tripUpdate);
+            tripWithStopTimes.stopTimes.forEach(stopTime -> {
+                if (stopTime.stop_sequence > leaveEdges.length - 1) {
+                    logger.warn("Stop sequence number too high {} vs {}", stopTime.stop_sequence, leaveEdges.length);
+                    return;
+                }
+                final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence));
+                int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
+                overlay.delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
+                int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
+                if (departureDelay > 0) {
+                    int boardEdge = boardEdges[stopTime.stop_sequence];
+                    int departureNode = ptGraphNodesAndEdges.edge(boardEdge).getAdjNode();
+                    int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, tripUpdate.getTrip(), stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, validOnDay);
+                    overlay.delaysForBoardEdges.put(delayedBoardEdge, departureDelay * 1000);
+                }
+            });
+        } else if (scheduleRelationship == GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED) {
+            Trip trip = new Trip();
+            trip.trip_id = tripUpdate.getTrip().getTripId();
+            trip.route_id = tripUpdate.getTrip().getRouteId();
+            final List<StopTime> stopTimes = tripUpdate.getStopTimeUpdateList().stream()
+                    .map(stopTimeUpdate -> {
+                        final StopTime stopTime = new StopTime();
+                        stopTime.stop_sequence = stopTimeUpdate.getStopSequence();
+                        stopTime.stop_id = stopTimeUpdate.getStopId();
+                        stopTime.trip_id = trip.trip_id;
+                        final ZonedDateTime arrival_time = Instant.ofEpochSecond(stopTimeUpdate.getArrival().getTime()).atZone(timezone);
+                        stopTime.arrival_time = (int) Duration.between(arrival_time.truncatedTo(ChronoUnit.DAYS), arrival_time).getSeconds();
+                        final ZonedDateTime departure_time = Instant.ofEpochSecond(stopTimeUpdate.getArrival().getTime()).atZone(timezone);
+                        stopTime.departure_time = (int) Duration.between(departure_time.truncatedTo(ChronoUnit.DAYS), departure_time).getSeconds();
+                        return stopTime;
+                    })
+                    .collect(Collectors.toList());
+            GtfsReader.TripWithStopTimes tripWithStopTimes = new GtfsReader.TripWithStopTimes(trip, stopTimes, validOnDay, Collections.emptySet(), Collections.emptySet());
+            gtfsReader.addTrip(timezone, 0, new ArrayList<>(), tripWithStopTimes, tripUpdate.getTrip());
+        }
+        gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
+        return overlay;
     }
 
     private static int[] findLeaveEdgesForTrip(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
@@ -263,8 +404,15 @@ public class RealtimeFeed {
         return blockedEdges.contains(edgeId);
     }
 
-    List<PtGraph.PtEdge> getAdditionalEdges() {
-        return additionalEdges;
+    List<PtGraph.PtEdge> getAdditionalEdgesFrom(int node) {
+        return additionalEdgesByBaseNode.getOrDefault(node, Collections.emptyList());
+    }
+
+    /**
+     * @return the additional edges ending at the given node, already reversed
+     */
+    List<PtGraph.PtEdge> getAdditionalBackEdgesTo(int node) {
+        return additionalBackEdgesByAdjNode.getOrDefault(node, Collections.emptyList());
     }
 
     public Optional<GtfsReader.TripWithStopTimes> getTripUpdate(GTFSFeed staticFeed, GtfsRealtime.TripDescriptor tripDescriptor, Instant boardTime) {
@@ -273,13 +421,8 @@ public class RealtimeFeed {
             if (!isThisRealtimeUpdateAboutThisLineRun(boardTime)) {
                 return Optional.empty();
             } else {
-                GtfsRealtime.TripDescriptor normalizedTripDescriptor = normalize(tripDescriptor);
-                return feedMessages.values().stream().flatMap(feedMessage -> feedMessage.getEntityList().stream()
-                        .filter(e -> e.hasTripUpdate())
-                        .map(e -> e.getTripUpdate())
-                        .filter(tu -> normalize(tu.getTrip()).equals(normalizedTripDescriptor))
-                        .map(tu -> toTripWithStopTimes(staticFeed, tu)))
-                        .findFirst();
+                GtfsRealtime.TripUpdate tripUpdate = tripUpdates.get(normalize(tripDescriptor));
+                return tripUpdate == null ? Optional.empty() : Optional.of(toTripWithStopTimes(staticFeed, tripUpdate));
             }
         } catch (RuntimeException e) {
             feedMessages.forEach((name, feed) -> {
@@ -435,4 +578,44 @@ public class RealtimeFeed {
         }
     }
 
+    private static final class TripKey {
+        final String feedId;
+        final GtfsRealtime.TripDescriptor tripDescriptor;
+
+        TripKey(String feedId, GtfsRealtime.TripDescriptor tripDescriptor) {
+            this.feedId = feedId;
+            this.tripDescriptor = tripDescriptor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TripKey)) return false;
+            TripKey other = (TripKey) o;
+            return feedId.equals(other.feedId) && tripDescriptor.equals(other.tripDescriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * feedId.hashCode() + tripDescriptor.hashCode();
+        }
+    }
+
+    /**
+     * The part of the overlay that results from a single trip update
+     */
+    private static final class TripOverlay {
+        final GtfsRealtime.TripUpdate tripUpdate;
+        final LocalDate day;
+        final IntArrayList blockedEdges = new IntArrayList();
+        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
+        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
+        final List<PtGraph.PtEdge> additionalEdges = new ArrayList<>();
+
+        TripOverlay(GtfsRealtime.TripUpdate tripUpdate, LocalDate day) {
+            this.tripUpdate = tripUpdate;
+            this.day = day;
+        }
+    }
+
 }
@@ -81,7 +81,14 @@ class TripFromLabel {
         for (int i = 0; i < partitions.size(); i++) {
             legs.addAll(parsePartitionToLegs(partitions.get(i), queryGraph, encodedValueLookup, i == partitions.size() - 1 ? egressWeighting : accessWeighting, tr, requestedPathDetails));
         }
+        return createResponsePath(tr, waypoints, legs);
+    }
 
+    /**
+     * Assembles a path from legs, no matter which router found them. Access and egress walk legs are moved
+     * next to the first and last transit leg.
+     */
+    ResponsePath createResponsePath(Translation tr, PointList waypoints, List<Trip.Leg> legs) {
         if (legs.size() > 1 && legs.get(0) instanceof Trip.WalkLeg) {
             final Trip.WalkLeg accessLeg = (Trip.WalkLeg) legs.get(0);
             legs.set(0, new Trip.WalkLeg(accessLeg.departureLocation, new Date(legs.get(1).getDepartureTime().getTime() - (accessLeg.getArrivalTime().getTime() - accessLeg.getDepartureTime().getTime())),
@@ -371,49 +378,59 @@ class TripFromLabel {
                         feedId = edge.getPlatformDescriptor().feed_id;
                         int[] skippedEdgesForTransfer = gtfsStorage.getSkippedEdgesForTransfer().get(edge.getId());
                         if (skippedEdgesForTransfer != null) {
-                            List<Trip.Leg> legs = parsePartitionToLegs(transferPath(skippedEdgesForTransfer, weighting, path.get(i - 1).label.currentTime), graph, encodedValueLookup, weighting, tr, requestedPathDetails);
-                            result.add(legs.get(0));
+                            result.add(createTransferLeg(skippedEdgesForTransfer, weighting, path.get(i - 1).label.currentTime, tr, requestedPathDetails));
                         }
                     }
                 }
             }
             return result;
         } else {
-            InstructionList instructions = new InstructionList(tr);
-            InstructionsFromEdges instructionsFromEdges = new InstructionsFromEdges(graph,
-                    weighting, encodedValueLookup, instructions);
-            int prevEdgeId = -1;
-            for (int i = 1; i < path.size(); i++) {
-                if (path.get(i).edge.getType() != GtfsStorage.EdgeType.HIGHWAY) {
-                    throw new IllegalStateException("Got a transit edge where I think I must be on a road.");
-                }
-                EdgeIteratorState edge = graph.getEdgeIteratorState(path.get(i).edge.getId(), path.get(i).label.node.streetNode);
-                instructionsFromEdges.next(edge, i, prevEdgeId);
-                prevEdgeId = edge.getEdge();
-            }
-            instructionsFromEdges.finish();
+            return Collections.singletonList(createWalkLeg(path, graph, weighting, tr, requestedPathDetails));
+        }
+    }
 
-            Path pathh = new Path(graph);
-            for (Label.Transition transition : path) {
-                if (transition.edge != null)
-                    pathh.addEdge(transition.edge.getId());
+    Trip.WalkLeg createWalkLeg(List<Label.Transition> path, Graph graph, Weighting weighting, Translation tr, List<String> requestedPathDetails) {
+        InstructionList instructions = new InstructionList(tr);
+        InstructionsFromEdges instructionsFromEdges = new InstructionsFromEdges(graph,
+                weighting, encodedValueLookup, instructions);
+        int prevEdgeId = -1;
+        for (int i = 1; i < path.size(); i++) {
+            if (path.get(i).edge.getType() != GtfsStorage.EdgeType.HIGHWAY) {
+                throw new IllegalStateException("Got a transit edge where I think I must be on a road.");
             }
-            pathh.setFromNode(path.get(0).label.node.streetNode);
-            pathh.setEndNode(path.get(path.size() - 1).label.node.streetNode);
-            pathh.setFound(true);
-            Map<String, List<PathDetail>> pathDetails = PathDetailsFromEdges.calcDetails(pathh, encodedValueLookup, weighting, requestedPathDetails, pathDetailsBuilderFactory, 0);
-
-            final Instant departureTime = Instant.ofEpochMilli(path.get(0).label.currentTime);
-            final Instant arrivalTime = Instant.ofEpochMilli(path.get(path.size() - 1).label.currentTime);
-            return Collections.singletonList(new Trip.WalkLeg(
-                    "Walk",
-                    Date.from(departureTime),
-                    lineStringFromInstructions(instructions),
-                    edges(path).mapToDouble(edgeLabel -> edgeLabel.getDistance()).sum(),
-                    instructions,
-                    pathDetails,
-                    Date.from(arrivalTime)));
+            EdgeIteratorState edge = graph.getEdgeIteratorState(path.get(i).edge.getId(), path.get(i).label.node.streetNode);
+            instructionsFromEdges.next(edge, i, prevEdgeId);
+            prevEdgeId = edge.getEdge();
+        }
+        instructionsFromEdges.finish();
+
+        Path pathh = new Path(graph);
+        for (Label.Transition transition : path) {
+            if (transition.edge != null)
+                pathh.addEdge(transition.edge.getId());
         }
+        pathh.setFromNode(path.get(0).label.node.streetNode);
+        pathh.setEndNode(path.get(path.size() - 1).label.node.streetNode);
+        pathh.setFound(true);
+        Map<String, List<PathDetail>> pathDetails = PathDetailsFromEdges.calcDetails(pathh, encodedValueLookup, weighting, requestedPathDetails, pathDetailsBuilderFactory, 0);
+
+        final Instant departureTime = Instant.ofEpochMilli(path.get(0).label.currentTime);
+        final Instant arrivalTime = Instant.ofEpochMilli(path.get(path.size() - 1).label.currentTime);
+        return new Trip.WalkLeg(
+                "Walk",
+                Date.from(departureTime),
+                lineStringFromInstructions(instructions),
+                edges(path).mapToDouble(edgeLabel -> edgeLabel.getDistance()).sum(),
+                instructions,
+                pathDetails,
+                Date.from(arrivalTime));
+    }
+
+    /**
+     * The walk leg of a transfer between two stops, starting at the given time.
+     */
+    Trip.WalkLeg createTransferLeg(int[] skippedEdgesForTransfer, Weighting weighting, long currentTime, Translation tr, List<String> requestedPathDetails) {
+        return createWalkLeg(transferPath(skippedEdgesForTransfer, weighting, currentTime), graph, weighting, tr, requestedPathDetails);
     }
 
     private List<Label.Transition> transferPath(int[] skippedEdgesForTransfer, Weighting accessEgressWeighting, long currentTime) {
@@ -0,0 +1,224 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper;
+
+import com.graphhopper.config.Profile;
+import com.graphhopper.gtfs.*;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.TranslationMap;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.graphhopper.gtfs.GtfsHelper.time;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RaptorIT {
+
+    private static final String GRAPH_LOC = "target/RaptorIT";
+    private static PtRouter ptRouter;
+    private static PtRouter labelSettingPtRouter;
+    private static final ZoneId zoneId = ZoneId.of("America/Los_Angeles");
+    private static GraphHopperGtfs graphHopperGtfs;
+
+    @BeforeAll
+    public static void init() {
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", GRAPH_LOC);
+        ghConfig.putObject("gtfs.file", "files/sample-feed");
+        ghConfig.putObject("gtfs.raptor", true);
+        ghConfig.setProfiles(Arrays.asList(
+                new Profile("foot").setVehicle("foot").setWeighting("fastest"),
+                new Profile("car").setVehicle("car").setWeighting("fastest")));
+        Helper.removeDir(new File(GRAPH_LOC));
+        graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+        ptRouter = new PtRouterRaptorImpl.Factory(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getGraphHopperStorage(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage())
+                .createWithoutRealtimeFeed();
+        labelSettingPtRouter = new PtRouterImpl.Factory(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getGraphHopperStorage(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage())
+                .createWithoutRealtimeFeed();
+    }
+
+    @AfterAll
+    public static void close() {
+        graphHopperGtfs.close();
+    }
+
+    @Test
+    public void testRoute1() {
+        Request ghRequest = new Request(Arrays.asList(
+                new GHStationLocation("NADAV"),
+                new GHStationLocation("NANAA")),
+                LocalDateTime.of(2007, 1, 1, 0, 0, 0).atZone(zoneId).toInstant());
+        ghRequest.setIgnoreTransfers(true);
+        GHResponse route = ptRouter.route(ghRequest);
+        assertFalse(route.hasErrors());
+        assertEquals(1, route.getAll().size());
+        assertEquals(time(6, 49), route.getBest().getTime(), "Expected travel time == scheduled arrival time");
+        Trip.PtLeg leg = (Trip.PtLeg) route.getBest().getLegs().get(0);
+        assertEquals("NADAV", leg.stops.get(0).stop_id);
+        assertEquals("NANAA", leg.stops.get(leg.stops.size() - 1).stop_id);
+    }
+
+    @Test
+    public void testNoSolutionIfIDontLikeBusses() {
+        Request ghRequest = new Request(Arrays.asList(
+                new GHStationLocation("NADAV"),
+                new GHStationLocation("NANAA")),
+                LocalDateTime.of(2007, 1, 1, 7, 44).atZone(zoneId).toInstant());
+        ghRequest.setBlockedRouteTypes(8);
+        GHResponse response = ptRouter.route(ghRequest);
+        assertTrue(response.getAll().isEmpty(), "When I block busses, there is no solution");
+    }
+
+    @Test
+    public void testRoute5() {
+        Request ghRequest = new Request(Arrays.asList(
+                new GHStationLocation("STAGECOACH"),
+                new GHStationLocation("BULLFROG")),
+                LocalDateTime.of(2007, 1, 1, 0, 0).atZone(zoneId).toInstant());
+        GHResponse route = ptRouter.route(ghRequest);
+
+        assertFalse(route.hasErrors(), route.toString());
+        assertEquals(time(8, 10), route.getBest().getTime(), "Expected travel time == scheduled travel time");
+        assertEquals("STBA", (((Trip.PtLeg) route.getBest().getLegs().get(0)).trip_id), "Using expected route");
+        assertEquals("AB1", (((Trip.PtLeg) route.getBest().getLegs().get(1)).trip_id), "Using expected route");
+        assertEquals(1, route.getBest().getNumChanges());
+        assertEquals(250, route.getBest().getFare().multiply(BigDecimal.valueOf(100)).intValue(), "Paid expected fare");
+    }
+
+    @Test
+    public void testWeekendRouteWorksOnlyOnWeekend() {
+        Request ghRequest = new Request(Arrays.asList(
+                new GHStationLocation("BEATTY_AIRPORT"),
+                new GHStationLocation("AMV")),
+                LocalDateTime.of(2007, 1, 6, 0, 0).atZone(zoneId).toInstant());
+        GHResponse route = ptRouter.route(ghRequest);
+        assertFalse(route.getAll().isEmpty());
+        assertEquals(time(9, 0), route.getBest().getTime(), "Expected travel time == scheduled travel time");
+        assertEquals("AAMV1", (((Trip.PtLeg) route.getBest().getLegs().get(0)).trip_id), "Using expected trip");
+    }
+
+    @Test
+    public void testBlockTrips() {
+        Request ghRequest = new Request(Arrays.asList(
+                new GHStationLocation("BEATTY_AIRPORT"),
+                new GHStationLocation("FUR_CREEK_RES")),
+                LocalDateTime.of(2007, 1, 1, 8, 0).atZone(zoneId).toInstant());
+        ResponsePath path = ptRouter.route(ghRequest).getBest();
+        assertEquals(time(1, 20), path.getTime(), "Expected travel time == scheduled travel time");
+        assertEquals(0, path.getNumChanges());
+        assertEquals(2, path.getLegs().size());
+        assertEquals("AB1", ((Trip.PtLeg) path.getLegs().get(0)).trip_id);
+        assertEquals("BFC1", ((Trip.PtLeg) path.getLegs().get(1)).trip_id);
+        assertFalse(((Trip.PtLeg) path.getLegs().get(0)).isInSameVehicleAsPrevious);
+        assertTrue(((Trip.PtLeg) path.getLegs().get(1)).isInSameVehicleAsPrevious);
+        assertEquals(1, path.getInstructions().stream().filter(i -> i.getSign() == Instruction.PT_START_TRIP).count());
+        // the legs are as long as the beeline between their stops
+        for (Trip.Leg leg : path.getLegs()) {
+            Trip.PtLeg ptLeg = (Trip.PtLeg) leg;
+            Trip.Stop first = ptLeg.stops.get(0), last = ptLeg.stops.get(ptLeg.stops.size() - 1);
+            assertEquals(DistanceCalcEarth.DIST_EARTH.calcDist(first.geometry.getY(), first.geometry.getX(), last.geometry.getY(), last.geometry.getX()),
+                    leg.getDistance(), 1);
+        }
+        assertEquals(path.getLegs().stream().mapToDouble(Trip.Leg::getDistance).sum(), path.getDistance(), 1.e-6);
+    }
+
+    @Test
+    public void testBlockWithComplicatedValidityIntersections() {
+        Request ghRequest = new Request(Arrays.asList(
+                new GHStationLocation("BEATTY_AIRPORT"),
+                new GHStationLocation("AMV")),
+                LocalDateTime.of(2007, 1, 1, 18, 0).atZone(zoneId).toInstant());
+        ResponsePath mondayTrip = ptRouter.route(ghRequest).getBest();
+        assertEquals(0, mondayTrip.getNumChanges());
+        assertEquals(Arrays.asList("FUNNY_BLOCK_AB1", "FUNNY_BLOCK_BFC1", "FUNNY_BLOCK_FCAMV1"),
+                mondayTrip.getLegs().stream().map(l -> ((Trip.PtLeg) l).trip_id).collect(Collectors.toList()));
+        assertTrue(((Trip.PtLeg) mondayTrip.getLegs().get(1)).isInSameVehicleAsPrevious);
+        assertTrue(((Trip.PtLeg) mondayTrip.getLegs().get(2)).isInSameVehicleAsPrevious);
+
+        // on Sundays the second trip of the block does not run
+        ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 7, 18, 0).atZone(zoneId).toInstant());
+        ResponsePath sundayTrip = ptRouter.route(ghRequest).getBest();
+        assertEquals(0, sundayTrip.getNumChanges());
+        assertEquals(Arrays.asList("FUNNY_BLOCK_AB1", "FUNNY_BLOCK_FCAMV1"),
+                sundayTrip.getLegs().stream().map(l -> ((Trip.PtLeg) l).trip_id).collect(Collectors.toList()));
+        assertTrue(((Trip.PtLeg) sundayTrip.getLegs().get(1)).isInSameVehicleAsPrevious);
+    }
+
+    @Test
+    public void testRoute1ProfileEarliestArrival() {
+        Request ghRequest = new Request(Arrays.asList(
+                new GHStationLocation("NADAV"),
+                new GHStationLocation("NANAA")),
+                LocalDateTime.of(2007, 1, 1, 6, 0).atZone(zoneId).toInstant());
+        ghRequest.setProfileQuery(true);
+        ghRequest.setIgnoreTransfers(true);
+        ghRequest.setLimitSolutions(Integer.MAX_VALUE);
+        ghRequest.setMaxProfileDuration(Duration.ofHours(4));
+
+        GHResponse response = ptRouter.route(ghRequest);
+        List<LocalTime> actualDepartureTimes = response.getAll().stream()
+                .map(path -> LocalTime.from(path.getLegs().get(0).getDepartureTime().toInstant().atZone(zoneId)))
+                .sorted()
+                .collect(Collectors.toList());
+        List<LocalTime> expectedDepartureTimes = Stream.of(
+                "06:44", "07:14", "07:44", "08:14", "08:44", "08:54", "09:04", "09:14", "09:24", "09:34", "09:44", "09:54", "10:04")
+                .map(LocalTime::parse)
+                .collect(Collectors.toList());
+        assertEquals(expectedDepartureTimes, actualDepartureTimes);
+    }
+
+    @Test
+    public void testSameEarliestArrivalAsLabelSetting() {
+        List<String> stops = Arrays.asList("FUR_CREEK_RES", "BEATTY_AIRPORT", "BULLFROG", "STAGECOACH", "NADAV", "NANAA", "DADAN", "EMSI", "AMV");
+        for (LocalDateTime departureTime : Arrays.asList(LocalDateTime.of(2007, 1, 1, 0, 0), LocalDateTime.of(2007, 1, 1, 8, 30), LocalDateTime.of(2007, 1, 6, 10, 0))) {
+            for (String from : stops) {
+                for (String to : stops) {
+                    if (from.equals(to))
+                        continue;
+                    Request ghRequest = new Request(Arrays.asList(new GHStationLocation(from), new GHStationLocation(to)), departureTime.atZone(zoneId).toInstant());
+                    ghRequest.setIgnoreTransfers(true);
+                    GHResponse expected = labelSettingPtRouter.route(ghRequest);
+                    GHResponse actual = ptRouter.route(ghRequest);
+                    String message = from + " -> " + to + " at " + departureTime;
+                    assertEquals(expected.getAll().isEmpty(), actual.getAll().isEmpty(), message);
+                    if (!expected.getAll().isEmpty()) {
+                        assertEquals(expected.getBest().getTime(), actual.getBest().getTime(), message);
+                    }
+                }
+            }
+        }
+    }
+
+}
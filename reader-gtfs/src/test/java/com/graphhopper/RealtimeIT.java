@@ -23,6 +23,7 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.gtfs.GraphHopperGtfs;
 import com.graphhopper.gtfs.PtRouter;
 import com.graphhopper.gtfs.PtRouterImpl;
+import com.graphhopper.gtfs.RealtimeFeed;
 import com.graphhopper.gtfs.Request;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.TranslationMap;
@@ -111,6 +112,60 @@ public class RealtimeIT {
         assertTrue(((Trip.PtLeg) impossibleAlternative.getLegs().get(0)).stops.get(0).departureCancelled);
     }
 
+    @Test
+    public void testIncrementalUpdate() {
+        final double FROM_LAT = 36.914893, FROM_LON = -116.76821; // NADAV stop
+        final double TO_LAT = 36.914944, TO_LON = -116.761472; // NANAA stop
+        Request ghRequest = new Request(
+                FROM_LAT, FROM_LON,
+                TO_LAT, TO_LON
+        );
+        ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007,1,1,6,44).atZone(zoneId).toInstant());
+
+        final GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                .setGtfsRealtimeVersion("1")
+                .setTimestamp(ZonedDateTime.of(LocalDate.of(2007,1,1), LocalTime.of(0,0), zoneId).toEpochSecond()));
+        feedMessageBuilder.addEntityBuilder()
+                .setId("1")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setStopSequence(3)
+                .setScheduleRelationship(SKIPPED);
+        RealtimeFeed realtimeFeed = graphHopperFactory.updateRealtimeFeed(RealtimeFeed.empty(), feedMessageBuilder.build());
+        assertTrue(graphHopperFactory.createWith(realtimeFeed).route(ghRequest).getAll().stream().anyMatch(p -> p.isImpossible()));
+
+        // a differential update about another trip keeps the skipped stop
+        final GtfsRealtime.FeedMessage.Builder differentialBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        differentialBuilder.setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                .setGtfsRealtimeVersion("1")
+                .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL)
+                .setTimestamp(ZonedDateTime.of(LocalDate.of(2007,1,1), LocalTime.of(0,1), zoneId).toEpochSecond()));
+        differentialBuilder.addEntityBuilder()
+                .setId("2")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY1").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setScheduleRelationship(SCHEDULED)
+                .setStopSequence(2)
+                .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(0).build());
+        realtimeFeed = graphHopperFactory.updateRealtimeFeed(realtimeFeed, differentialBuilder.build());
+        assertTrue(graphHopperFactory.createWith(realtimeFeed).route(ghRequest).getAll().stream().anyMatch(p -> p.isImpossible()));
+
+        // ..until the update is deleted
+        differentialBuilder.clearEntity();
+        differentialBuilder.addEntityBuilder()
+                .setId("1")
+                .setIsDeleted(true)
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"));
+        realtimeFeed = graphHopperFactory.updateRealtimeFeed(realtimeFeed, differentialBuilder.build());
+        GHResponse response = graphHopperFactory.createWith(realtimeFeed).route(ghRequest);
+        assertTrue(response.getAll().stream().noneMatch(p -> p.isImpossible()));
+        assertEquals(time(0, 5), response.getBest().getTime(), 0.1);
+    }
+
     @Test
     public void testHeavyDelayWhereWeShouldTakeOtherTripInstead() {
         final double FROM_LAT = 36.914893, FROM_LON = -116.76821; // NADAV stop
@@ -210,6 +210,13 @@ public class Measurement {
                 if (!blockAreaStr.isEmpty())
                     measureRouting(hopper, new QuerySettings("routing_block_area", count / 20, isCH, isLM).
                             withInstructions().blockArea(blockAreaStr));
+                if (hopper.getSpeedProfiles() != null) {
+                    // the time-dependent routing uses a unidirectional A*, so we compare it with the static one
+                    measureRouting(hopper, new QuerySettings("routing_astar", count / 20, isCH, isLM).
+                            algorithm(Algorithms.ASTAR));
+                    measureRouting(hopper, new QuerySettings("routing_td", count / 20, isCH, isLM).
+                            departureTime(args.getString("measurement.departure_time", "08:00")));
+                }
             }
 
             if (hopper.getLMPreparationHandler().isEnabled()) {
@@ -362,7 +369,7 @@ public class Measurement {
         final boolean ch, lm;
         int activeLandmarks = -1;
         boolean withInstructions, withPointHints, sod, edgeBased, simplify, pathDetails, alternative;
-        String blockArea;
+        String blockArea, algorithm, departureTime;
         int points = 2;
 
         QuerySettings(String prefix, int count, boolean isCH, boolean isLM) {
@@ -421,6 +428,16 @@ public class Measurement {
             blockArea = str;
             return this;
         }
+
+        QuerySettings algorithm(String algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        QuerySettings departureTime(String departureTime) {
+            this.departureTime = departureTime;
+            return this;
+        }
     }
 
     private void printGraphDetails(BaseGraph g, String vehicleStr) {
@@ -606,6 +623,11 @@ public class Measurement {
 
             if (querySettings.alternative)
                 req.setAlgorithm(ALT_ROUTE);
+            else if (querySettings.algorithm != null)
+                req.setAlgorithm(querySettings.algorithm);
+
+            if (querySettings.departureTime != null)
+                req.getHints().putObject(Parameters.Routing.DEPARTURE_TIME, querySettings.departureTime);
 
             if (querySettings.pathDetails)
                 req.setPathDetails(Arrays.asList(Parameters.Details.AVERAGE_SPEED, Parameters.Details.EDGE_ID, Parameters.Details.STREET_NAME));
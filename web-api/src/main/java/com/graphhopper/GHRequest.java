@@ -43,6 +43,7 @@ public class GHRequest {
     private List<String> curbsides = new ArrayList<>();
     private List<String> snapPreventions = new ArrayList<>();
     private List<String> pathDetails = new ArrayList<>();
+    private List<String> fields = new ArrayList<>();
     private String algo = "";
     private Locale locale = Locale.US;
     private CustomModel customModel;
@@ -223,6 +224,27 @@ public class GHRequest {
         return this.pathDetails;
     }
 
+    /**
+     * Restricts the response to the specified fields of every path, e.g. distance and time. Then for example the
+     * instructions, path details or points are not calculated if they are not among them. An empty list means all
+     * fields.
+     */
+    public GHRequest setFields(List<String> fields) {
+        this.fields = fields;
+        return this;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return true if the specified field is requested, i.e. if it is one of the fields or all fields are requested
+     */
+    public boolean isFieldRequested(String field) {
+        return fields.isEmpty() || fields.contains(field);
+    }
+
     @Override
     public String toString() {
         String res = "";
@@ -239,6 +261,9 @@ public class GHRequest {
         if (!pathDetails.isEmpty())
             res += " (PathDetails: " + pathDetails + ")";
 
+        if (!fields.isEmpty())
+            res += " (Fields: " + fields + ")";
+
         if (!hints.isEmpty())
             res += " (Hints:" + hints + ")";
 
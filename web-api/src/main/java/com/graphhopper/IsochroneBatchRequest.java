@@ -0,0 +1,147 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request object to calculate the isochrones of many points with the same profile and limit, see
+ * IsochroneBatchResource. The points are given as [longitude,latitude] arrays. Like for a GHRequest the unknown
+ * properties end up in the hints, e.g. block_area.
+ */
+public class IsochroneBatchRequest {
+    private String profile;
+    private List<GHPoint> points = new ArrayList<>();
+    private int buckets = 1;
+    private boolean reverseFlow;
+    private long timeLimit = 600;
+    private long distanceLimit = -1;
+    private long weightLimit = -1;
+    private double tolerance;
+    private CustomModel customModel;
+    private final PMap hints = new PMap();
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public IsochroneBatchRequest setProfile(String profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public List<GHPoint> getPoints() {
+        return points;
+    }
+
+    public IsochroneBatchRequest setPoints(List<GHPoint> points) {
+        this.points = points;
+        return this;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public IsochroneBatchRequest setBuckets(int buckets) {
+        this.buckets = buckets;
+        return this;
+    }
+
+    public boolean isReverseFlow() {
+        return reverseFlow;
+    }
+
+    public IsochroneBatchRequest setReverseFlow(boolean reverseFlow) {
+        this.reverseFlow = reverseFlow;
+        return this;
+    }
+
+    /**
+     * @return the time limit in seconds, only used if neither a distance nor a weight limit is set
+     */
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    public IsochroneBatchRequest setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+        return this;
+    }
+
+    /**
+     * @return the distance limit in meters, or -1
+     */
+    public long getDistanceLimit() {
+        return distanceLimit;
+    }
+
+    public IsochroneBatchRequest setDistanceLimit(long distanceLimit) {
+        this.distanceLimit = distanceLimit;
+        return this;
+    }
+
+    /**
+     * @return the weight limit, or -1
+     */
+    public long getWeightLimit() {
+        return weightLimit;
+    }
+
+    public IsochroneBatchRequest setWeightLimit(long weightLimit) {
+        this.weightLimit = weightLimit;
+        return this;
+    }
+
+    /**
+     * @return the tolerance of the triangulation in meters
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public IsochroneBatchRequest setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public CustomModel getCustomModel() {
+        return customModel;
+    }
+
+    public IsochroneBatchRequest setCustomModel(CustomModel customModel) {
+        this.customModel = customModel;
+        return this;
+    }
+
+    public PMap getHints() {
+        return hints;
+    }
+
+    @JsonAnySetter
+    public IsochroneBatchRequest putHint(String fieldName, Object value) {
+        this.hints.putObject(fieldName, value);
+        return this;
+    }
+}
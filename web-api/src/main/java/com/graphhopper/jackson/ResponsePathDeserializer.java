@@ -171,9 +171,11 @@ public class ResponsePathDeserializer extends JsonDeserializer<ResponsePath> {
             responsePath.setPointsOrder(list);
         }
 
-        double distance = path.get("distance").asDouble();
-        long time = path.get("time").asLong();
-        responsePath.setDistance(distance).setTime(time);
+        // both can be missing if the request specified the fields of the response
+        if (path.has("distance"))
+            responsePath.setDistance(path.get("distance").asDouble());
+        if (path.has("time"))
+            responsePath.setTime(path.get("time").asLong());
         return responsePath;
     }
 
@@ -24,10 +24,12 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.Parameters;
 import com.graphhopper.util.PointList;
 
 import java.text.NumberFormat;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -86,7 +88,30 @@ public class ResponsePathSerializer {
         sb.append((char) (num));
     }
 
+    /**
+     * The fields of every path in the response, which can be selected via {@link Parameters.Routing#FIELDS}.
+     */
+    public static final List<String> PATH_FIELDS = Arrays.asList("distance", "weight", "time", "transfers", "description",
+            "points_encoded", "bbox", "points", "instructions", "legs", "details", "ascend", "descend", "snapped_waypoints", "fare");
+
+    /**
+     * @throws IllegalArgumentException if one of the fields is not in {@link #PATH_FIELDS}
+     */
+    public static void checkFields(List<String> fields) {
+        for (String field : fields) {
+            if (!PATH_FIELDS.contains(field))
+                throw new IllegalArgumentException("Unknown field '" + field + "' in " + Parameters.Routing.FIELDS + ", available: " + PATH_FIELDS);
+        }
+    }
+
     public static ObjectNode jsonObject(GHResponse ghRsp, boolean enableInstructions, boolean calcPoints, boolean enableElevation, boolean pointsEncoded, float took) {
+        return jsonObject(ghRsp, enableInstructions, calcPoints, enableElevation, pointsEncoded, took, Collections.emptyList());
+    }
+
+    /**
+     * @param fields the fields of every path that should be written, all fields if empty
+     */
+    public static ObjectNode jsonObject(GHResponse ghRsp, boolean enableInstructions, boolean calcPoints, boolean enableElevation, boolean pointsEncoded, float took, List<String> fields) {
         ObjectNode json = JsonNodeFactory.instance.objectNode();
         json.putPOJO("hints", ghRsp.getHints().toMap());
         final ObjectNode info = json.putObject("info");
@@ -95,30 +120,46 @@ public class ResponsePathSerializer {
         ArrayNode jsonPathList = json.putArray("paths");
         for (ResponsePath p : ghRsp.getAll()) {
             ObjectNode jsonPath = jsonPathList.addObject();
-            jsonPath.put("distance", Helper.round(p.getDistance(), 3));
-            jsonPath.put("weight", Helper.round6(p.getRouteWeight()));
-            jsonPath.put("time", p.getTime());
-            jsonPath.put("transfers", p.getNumChanges());
-            if (!p.getDescription().isEmpty()) {
+            if (isRequested(fields, "distance"))
+                jsonPath.put("distance", Helper.round(p.getDistance(), 3));
+            if (isRequested(fields, "weight"))
+                jsonPath.put("weight", Helper.round6(p.getRouteWeight()));
+            if (isRequested(fields, "time"))
+                jsonPath.put("time", p.getTime());
+            if (isRequested(fields, "transfers"))
+                jsonPath.put("transfers", p.getNumChanges());
+            if (!p.getDescription().isEmpty() && isRequested(fields, "description")) {
                 jsonPath.putPOJO("description", p.getDescription());
             }
             if (calcPoints) {
-                jsonPath.put("points_encoded", pointsEncoded);
-                jsonPath.putPOJO("bbox", p.calcBBox2D());
-                jsonPath.putPOJO("points", pointsEncoded ? encodePolyline(p.getPoints(), enableElevation, 1e5) : p.getPoints().toLineString(enableElevation));
-                if (enableInstructions) {
+                if (isRequested(fields, "points_encoded"))
+                    jsonPath.put("points_encoded", pointsEncoded);
+                if (isRequested(fields, "bbox"))
+                    jsonPath.putPOJO("bbox", p.calcBBox2D());
+                if (isRequested(fields, "points"))
+                    jsonPath.putPOJO("points", pointsEncoded ? encodePolyline(p.getPoints(), enableElevation, 1e5) : p.getPoints().toLineString(enableElevation));
+                if (enableInstructions && isRequested(fields, "instructions")) {
                     jsonPath.putPOJO("instructions", p.getInstructions());
                 }
-                jsonPath.putPOJO("legs", p.getLegs());
-                jsonPath.putPOJO("details", p.getPathDetails());
-                jsonPath.put("ascend", p.getAscend());
-                jsonPath.put("descend", p.getDescend());
+                if (isRequested(fields, "legs"))
+                    jsonPath.putPOJO("legs", p.getLegs());
+                if (isRequested(fields, "details"))
+                    jsonPath.putPOJO("details", p.getPathDetails());
+                if (isRequested(fields, "ascend"))
+                    jsonPath.put("ascend", p.getAscend());
+                if (isRequested(fields, "descend"))
+                    jsonPath.put("descend", p.getDescend());
             }
-            jsonPath.putPOJO("snapped_waypoints", pointsEncoded ? encodePolyline(p.getWaypoints(), enableElevation, 1e5) : p.getWaypoints().toLineString(enableElevation));
-            if (p.getFare() != null) {
+            if (isRequested(fields, "snapped_waypoints"))
+                jsonPath.putPOJO("snapped_waypoints", pointsEncoded ? encodePolyline(p.getWaypoints(), enableElevation, 1e5) : p.getWaypoints().toLineString(enableElevation));
+            if (p.getFare() != null && isRequested(fields, "fare")) {
                 jsonPath.put("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
             }
         }
         return json;
     }
+
+    private static boolean isRequested(List<String> fields, String field) {
+        return fields.isEmpty() || fields.contains(field);
+    }
 }
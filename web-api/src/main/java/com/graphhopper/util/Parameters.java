@@ -66,6 +66,18 @@ public class Parameters {
             public static final String MAX_WEIGHT = ALT_ROUTE + ".max_weight_factor";
 
             public static final String MAX_SHARE = ALT_ROUTE + ".max_share_factor";
+
+            /**
+             * the time budget in milliseconds for the alternative route search with CH. No further via-node
+             * candidates are checked after it is used up.
+             */
+            public static final String MAX_TIME_MS = ALT_ROUTE + ".max_time_ms";
+            public static final String INIT_MAX_TIME_MS = ROUTING_INIT_PREFIX + MAX_TIME_MS;
+            /**
+             * the number of threads that check the via-node candidates of the alternative route search with CH, 1
+             * means no concurrency
+             */
+            public static final String INIT_THREADS = ROUTING_INIT_PREFIX + ALT_ROUTE + ".threads";
         }
 
         public static final class AStar {
@@ -97,11 +109,20 @@ public class Parameters {
         public static final String U_TURN_COSTS = "u_turn_costs";
         public static final String MAX_VISITED_NODES = "max_visited_nodes";
         public static final String INIT_MAX_VISITED_NODES = ROUTING_INIT_PREFIX + "max_visited_nodes";
+        /**
+         * the number of threads that calculate the legs of a route with via points, 1 means no concurrency
+         */
+        public static final String INIT_VIA_LEG_THREADS = ROUTING_INIT_PREFIX + "via_leg_threads";
         /**
          * if true the response will contain turn instructions
          */
         public static final String INSTRUCTIONS = "instructions";
         public static final String INIT_INSTRUCTIONS = ROUTING_INIT_PREFIX + "instructions";
+        /**
+         * the fields of every path in the response, e.g. distance,time,bbox. Only what is needed for them is calculated.
+         * All fields are returned if this is empty.
+         */
+        public static final String FIELDS = "fields";
         /**
          * if true the response will contain a point list
          */
@@ -118,6 +139,11 @@ public class Parameters {
          * https://github.com/graphhopper/graphhopper/blob/master/docs/core/routing.md#heading
          */
         public static final String PASS_THROUGH = "pass_through";
+        /**
+         * the departure time for time-dependent routing with speed profiles, e.g. 2022-03-01T08:15 or 08:15. Only the
+         * local time of the day is used.
+         */
+        public static final String DEPARTURE_TIME = "departure_time";
         public static final String POINT_HINT = "point_hint";
         public static final String CURBSIDE = "curbside";
         public static final String FORCE_CURBSIDE = "force_curbside";
@@ -177,6 +203,17 @@ public class Parameters {
         public static final String COUNT = PREPARE + "landmarks";
     }
 
+    /**
+     * Properties for routing with the cliques of Customizable Route Planning (CRP)
+     */
+    public static final class CRP {
+        public static final String PREPARE = "prepare.crp.";
+        /**
+         * This property name in HintsMap configures at runtime if CRP routing should be ignored.
+         */
+        public static final String DISABLE = "crp.disable";
+    }
+
     /**
      * Properties for non-CH routing
      */
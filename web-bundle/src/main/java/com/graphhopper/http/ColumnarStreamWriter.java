@@ -0,0 +1,194 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a table as a stream of column batches in a compact little-endian binary format, similar to the Arrow IPC
+ * stream format but without its schema and metadata overhead:
+ * <pre>
+ * header: "GHCOL" (5 bytes), version (1 byte), column count (int32),
+ *         per column: name length (int32), UTF-8 name, type (1 byte, see {@link Type#id})
+ * batch:  row count (int32), per column: validity bitmap (1 bit per row, least significant bit first,
+ *         (rows + 7) / 8 bytes) followed by the values. Fixed width columns have rows * width bytes, string columns
+ *         have rows + 1 int32 offsets into the UTF-8 bytes that follow.
+ * end:    row count 0 (int32)
+ * </pre>
+ * The value of a null entry is zero, or an empty string. The values of a batch are collected in one buffer per
+ * column, which is written to the stream as it is.
+ */
+public class ColumnarStreamWriter {
+
+    public enum Type {
+        INT(0, 4), LONG(1, 8), DOUBLE(2, 8), BOOLEAN(3, 1), STRING(4, 0);
+
+        public final byte id;
+        final int width;
+
+        Type(int id, int width) {
+            this.id = (byte) id;
+            this.width = width;
+        }
+    }
+
+    private static final byte[] MAGIC = "GHCOL".getBytes(StandardCharsets.US_ASCII);
+    private static final byte VERSION = 1;
+
+    private final OutputStream out;
+    private final Type[] types;
+    private final int batchSize;
+    private final ByteBuffer[] values;
+    private final byte[][] validity;
+    // only for string columns: the offsets are kept in values and the UTF-8 bytes here
+    private final ByteBuffer[] strings;
+    private final ByteBuffer intBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    private int rows;
+
+    public ColumnarStreamWriter(OutputStream out, List<String> names, List<Type> types, int batchSize) throws IOException {
+        if (names.size() != types.size())
+            throw new IllegalArgumentException("Every column needs a type, names: " + names + ", types: " + types);
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be positive, but was: " + batchSize);
+        this.out = out;
+        this.types = types.toArray(new Type[0]);
+        this.batchSize = batchSize;
+        this.values = new ByteBuffer[types.size()];
+        this.validity = new byte[types.size()][(batchSize + 7) / 8];
+        this.strings = new ByteBuffer[types.size()];
+        for (int col = 0; col < this.types.length; col++) {
+            Type type = this.types[col];
+            if (type == Type.STRING) {
+                values[col] = ByteBuffer.allocate(4 * (batchSize + 1)).order(ByteOrder.LITTLE_ENDIAN);
+                strings[col] = ByteBuffer.allocate(16 * batchSize);
+            } else {
+                values[col] = ByteBuffer.allocate(type.width * batchSize).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeInt(names.size());
+        for (int col = 0; col < names.size(); col++) {
+            byte[] name = names.get(col).getBytes(StandardCharsets.UTF_8);
+            writeInt(name.length);
+            out.write(name);
+            out.write(this.types[col].id);
+        }
+    }
+
+    public void setInt(int col, int value) {
+        check(col, Type.INT);
+        values[col].putInt(rows * 4, value);
+        setValid(col);
+    }
+
+    public void setLong(int col, long value) {
+        check(col, Type.LONG);
+        values[col].putLong(rows * 8, value);
+        setValid(col);
+    }
+
+    public void setDouble(int col, double value) {
+        check(col, Type.DOUBLE);
+        values[col].putDouble(rows * 8, value);
+        setValid(col);
+    }
+
+    public void setBoolean(int col, boolean value) {
+        check(col, Type.BOOLEAN);
+        values[col].put(rows, (byte) (value ? 1 : 0));
+        setValid(col);
+    }
+
+    public void setString(int col, String value) {
+        check(col, Type.STRING);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = strings[col];
+        if (buffer.remaining() < bytes.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes.length));
+            buffer.flip();
+            larger.put(buffer);
+            strings[col] = buffer = larger;
+        }
+        buffer.put(bytes);
+        setValid(col);
+    }
+
+    /**
+     * Finishes the current row. The columns that were not set in this row are null.
+     */
+    public void endRow() throws IOException {
+        rows++;
+        for (int col = 0; col < types.length; col++) {
+            if (types[col] == Type.STRING)
+                values[col].putInt(rows * 4, strings[col].position());
+        }
+        if (rows == batchSize)
+            writeBatch();
+    }
+
+    /**
+     * Writes the remaining rows and the end of the stream, but does not close the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (rows > 0)
+            writeBatch();
+        writeInt(0);
+        out.flush();
+    }
+
+    private void writeBatch() throws IOException {
+        writeInt(rows);
+        for (int col = 0; col < types.length; col++) {
+            out.write(validity[col], 0, (rows + 7) / 8);
+            if (types[col] == Type.STRING) {
+                out.write(values[col].array(), 0, 4 * (rows + 1));
+                out.write(strings[col].array(), 0, strings[col].position());
+                strings[col].clear();
+            } else {
+                out.write(values[col].array(), 0, types[col].width * rows);
+                // null entries must be zero in the next batch as well
+                Arrays.fill(values[col].array(), (byte) 0);
+            }
+            Arrays.fill(validity[col], (byte) 0);
+        }
+        rows = 0;
+    }
+
+    private void setValid(int col) {
+        validity[col][rows >> 3] |= 1 << (rows & 7);
+    }
+
+    private void check(int col, Type type) {
+        if (types[col] != type)
+            throw new IllegalArgumentException("Column " + col + " is of type " + types[col] + ", not " + type);
+    }
+
+    private void writeInt(int value) throws IOException {
+        intBuffer.putInt(0, value);
+        out.write(intBuffer.array(), 0, 4);
+    }
+}
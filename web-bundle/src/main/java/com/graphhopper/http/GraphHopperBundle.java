@@ -42,6 +42,7 @@ import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
 import javax.inject.Inject;
+import java.util.concurrent.ExecutorService;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
@@ -229,6 +230,14 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        // the contours of the buckets of one isochrone request are computed concurrently
+        int isochroneThreads = configuration.getGraphHopperConfiguration().getInt("isochrone.threads", Runtime.getRuntime().availableProcessors());
+        final ExecutorService isochroneExecutor = environment.lifecycle().executorService("isochrone-%d")
+                .minThreads(isochroneThreads).maxThreads(isochroneThreads).build();
+        // the points of /isochrone-batch requests get their own threads, so that a large batch does not hold up the others
+        int isochroneBatchThreads = configuration.getGraphHopperConfiguration().getInt("isochrone.batch_threads", Math.max(1, isochroneThreads / 2));
+        final ExecutorService isochroneBatchExecutor = environment.lifecycle().executorService("isochrone-batch-%d")
+                .minThreads(isochroneBatchThreads).maxThreads(isochroneBatchThreads).build();
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
@@ -236,6 +245,9 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
                 bind(graphHopper).to(GraphHopper.class);
 
                 bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
+                bind(new IsochroneCache(configuration.getGraphHopperConfiguration().getInt("isochrone.cache_size_mb", 50) * 1024L * 1024L)).to(IsochroneCache.class);
+                bind(isochroneExecutor).to(ExecutorService.class).named("isochroneExecutor");
+                bind(isochroneBatchExecutor).to(ExecutorService.class).named("isochroneBatchExecutor");
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
                 bindFactory(HasElevation.class).to(Boolean.class).named("hasElevation");
@@ -251,6 +263,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(RouteResource.class);
         environment.jersey().register(IsochroneResource.class);
+        environment.jersey().register(IsochroneBatchResource.class);
         environment.jersey().register(MapMatchingResource.class);
         if (configuration.getGraphHopperConfiguration().has("gtfs.file")) {
             // These are pt-specific implementations of /route and /isochrone, but the same API.
@@ -261,6 +274,8 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
                 protected void configure() {
                     if (configuration.getGraphHopperConfiguration().getBool("gtfs.free_walk", false)) {
                         bind(PtRouterFreeWalkImpl.class).to(PtRouter.class);
+                    } else if (configuration.getGraphHopperConfiguration().getBool("gtfs.raptor", false)) {
+                        bind(PtRouterRaptorImpl.class).to(PtRouter.class);
                     } else {
                         bind(PtRouterImpl.class).to(PtRouter.class);
                     }
@@ -0,0 +1,140 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.graphhopper.isochrone.algorithm.Triangulator;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint3D;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the triangulated shortest path trees of recent isochrone requests, so that a request for the same snapped
+ * origin that only differs in the number of buckets or in full_geometry is just another contouring pass.
+ * Entries are evicted in least recently used order once their estimated size exceeds the configured maximum. The
+ * entries of older traffic snapshots are removed as soon as a key with a newer traffic version arrives.
+ */
+public class IsochroneCache {
+
+    // a triangulation edge is four JTS QuadEdges, our wrapper and its share of the vertices and coordinates
+    private static final int BYTES_PER_EDGE = 200;
+
+    private final Cache<Key, Triangulator.Result> cache;
+    private volatile int trafficVersion;
+
+    public IsochroneCache(long maxSizeInBytes) {
+        this.cache = maxSizeInBytes > 0 ? CacheBuilder.newBuilder()
+                .maximumWeight(maxSizeInBytes)
+                .weigher((Key key, Triangulator.Result result) -> (int) Math.min(Integer.MAX_VALUE, (long) result.seedEdges.size() * BYTES_PER_EDGE))
+                .build() : null;
+    }
+
+    /**
+     * @return the cached triangulation for the given key, or the one that is calculated by the given supplier
+     */
+    public Triangulator.Result get(Key key, Supplier<Triangulator.Result> triangulate) {
+        if (cache == null)
+            return triangulate.get();
+        if (key.trafficVersion > trafficVersion)
+            removeOlderTrafficVersions(key.trafficVersion);
+        try {
+            return cache.get(key, triangulate::get);
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            // e.g. an IllegalArgumentException for too few points should reach the client as before
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private synchronized void removeOlderTrafficVersions(int version) {
+        if (version <= trafficVersion)
+            return;
+        trafficVersion = version;
+        cache.asMap().keySet().removeIf(k -> k.trafficVersion < version);
+    }
+
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    /**
+     * Everything the triangulated shortest path tree depends on: the snapped origin, the profile and hints, the
+     * version of the traffic snapshot, the direction, the limit and the tolerance of the triangulation.
+     */
+    public static final class Key {
+        private final int edge;
+        private final int wayIndex;
+        private final Snap.Position position;
+        private final double lat;
+        private final double lon;
+        private final String profile;
+        private final int trafficVersion;
+        private final boolean reverseFlow;
+        private final String limitType;
+        private final double limit;
+        private final double tolerance;
+        private final Map<String, Object> hints;
+
+        /**
+         * @param trafficVersion the version of the traffic snapshot, it must be read before the weighting is created,
+         *                       so that a cached result is never older than the version of its key
+         * @param hints          the request hints without the parameters that only influence the contouring
+         */
+        public Key(Snap snap, String profile, int trafficVersion, boolean reverseFlow, String limitType, double limit, double tolerance, PMap hints) {
+            this.edge = snap.getClosestEdge().getEdge();
+            this.wayIndex = snap.getWayIndex();
+            this.position = snap.getSnappedPosition();
+            GHPoint3D snappedPoint = snap.getSnappedPoint();
+            this.lat = snappedPoint.lat;
+            this.lon = snappedPoint.lon;
+            this.profile = profile;
+            this.trafficVersion = trafficVersion;
+            this.reverseFlow = reverseFlow;
+            this.limitType = limitType;
+            this.limit = limit;
+            this.tolerance = tolerance;
+            this.hints = hints.toMap();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return edge == key.edge && wayIndex == key.wayIndex && position == key.position
+                    && Double.compare(lat, key.lat) == 0 && Double.compare(lon, key.lon) == 0
+                    && trafficVersion == key.trafficVersion && reverseFlow == key.reverseFlow && Double.compare(limit, key.limit) == 0
+                    && Double.compare(tolerance, key.tolerance) == 0 && profile.equals(key.profile)
+                    && limitType.equals(key.limitType) && hints.equals(key.hints);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(edge, wayIndex, position, lat, lon, profile, trafficVersion, reverseFlow, limitType, limit, tolerance, hints);
+        }
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.mvt;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a Mapbox vector tile (specification version 2) directly into protobuf bytes. Coordinates are projected
+ * straight into the integer tile space, lines are clipped against the tile with Cohen-Sutherland and property keys
+ * and values are interned once per layer. In contrast to the JtsAdapter/MvtLayerBuild pipeline no intermediate
+ * geometry, user data map or feature objects are created per feature.
+ * <p>
+ * Usage: call {@link Layer#startFeature()}, add the geometry, then the properties and finally
+ * {@link Layer#endFeature()}. Features without geometry inside the tile are dropped. As interned properties are
+ * kept even if the feature is dropped, properties should only be added if {@link Layer#hasGeometry()} is true.
+ * <p>
+ * This class is not thread-safe, create one instance per tile.
+ */
+public class VectorTileEncoder {
+    private static final int WIRE_VARINT = 0, WIRE_FIXED64 = 1, WIRE_LEN = 2;
+    private static final int CMD_MOVE_TO = 1, CMD_LINE_TO = 2;
+    private static final int GEOM_POINT = 1, GEOM_LINESTRING = 2;
+    // outcodes of the Cohen-Sutherland algorithm
+    private static final int INSIDE = 0, LEFT = 1, RIGHT = 2, BOTTOM = 4, TOP = 8;
+
+    private final int extent;
+    private final double minLon, maxLat, xScale, yScale;
+    private final List<Layer> layers = new ArrayList<>(2);
+    // the clipped segment, stored in fields to avoid allocations
+    private double clipX0, clipY0, clipX1, clipY1;
+
+    /**
+     * @param bbox   the area of the tile in WGS84 degrees
+     * @param extent the size of the tile in tile coordinates, usually 4096
+     */
+    public VectorTileEncoder(BBox bbox, int extent) {
+        if (!bbox.isValid())
+            throw new IllegalArgumentException("Invalid bbox " + bbox);
+        if (extent <= 0)
+            throw new IllegalArgumentException("extent must be positive but was " + extent);
+        this.extent = extent;
+        this.minLon = bbox.minLon;
+        this.maxLat = bbox.maxLat;
+        this.xScale = extent / (bbox.maxLon - bbox.minLon);
+        this.yScale = extent / (bbox.maxLat - bbox.minLat);
+    }
+
+    public Layer addLayer(String name) {
+        Layer layer = new Layer(name);
+        layers.add(layer);
+        return layer;
+    }
+
+    public byte[] toByteArray() {
+        int size = 0;
+        for (Layer layer : layers) {
+            int layerSize = layer.size();
+            size += 1 + varintSize(layerSize) + layerSize;
+        }
+        ProtobufBuffer out = new ProtobufBuffer(size);
+        for (Layer layer : layers) {
+            out.writeTag(3, WIRE_LEN);
+            out.writeVarint(layer.size());
+            layer.writeTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    double toTileX(double lon) {
+        return (lon - minLon) * xScale;
+    }
+
+    double toTileY(double lat) {
+        // the y-axis of the tile points downwards
+        return (maxLat - lat) * yScale;
+    }
+
+    private int outCode(double x, double y) {
+        int code = INSIDE;
+        if (x < 0)
+            code |= LEFT;
+        else if (x > extent)
+            code |= RIGHT;
+        if (y < 0)
+            code |= BOTTOM;
+        else if (y > extent)
+            code |= TOP;
+        return code;
+    }
+
+    /**
+     * Clips the segment against the tile and stores the result in clipX0, clipY0, clipX1 and clipY1.
+     *
+     * @return false if the segment is completely outside of the tile
+     */
+    private boolean clip(double x0, double y0, double x1, double y1) {
+        int code0 = outCode(x0, y0);
+        int code1 = outCode(x1, y1);
+        while (true) {
+            if ((code0 | code1) == 0) {
+                clipX0 = x0;
+                clipY0 = y0;
+                clipX1 = x1;
+                clipY1 = y1;
+                return true;
+            }
+            if ((code0 & code1) != 0)
+                return false;
+
+            int code = code0 != 0 ? code0 : code1;
+            double x, y;
+            if ((code & TOP) != 0) {
+                x = x0 + (x1 - x0) * (extent - y0) / (y1 - y0);
+                y = extent;
+            } else if ((code & BOTTOM) != 0) {
+                x = x0 + (x1 - x0) * (0 - y0) / (y1 - y0);
+                y = 0;
+            } else if ((code & RIGHT) != 0) {
+                y = y0 + (y1 - y0) * (extent - x0) / (x1 - x0);
+                x = extent;
+            } else {
+                y = y0 + (y1 - y0) * (0 - x0) / (x1 - x0);
+                x = 0;
+            }
+            if (code == code0) {
+                x0 = x;
+                y0 = y;
+                code0 = outCode(x0, y0);
+            } else {
+                x1 = x;
+                y1 = y;
+                code1 = outCode(x1, y1);
+            }
+        }
+    }
+
+    public class Layer {
+        private final String name;
+        private final ProtobufBuffer features = new ProtobufBuffer(1024);
+        private final ProtobufBuffer keys = new ProtobufBuffer(64);
+        private final ProtobufBuffer values = new ProtobufBuffer(256);
+        private final ObjectIntHashMap<String> keyIndices = new ObjectIntHashMap<>();
+        private final ObjectIntHashMap<String> stringValueIndices = new ObjectIntHashMap<>();
+        private final LongIntHashMap doubleValueIndices = new LongIntHashMap();
+        private final LongIntHashMap longValueIndices = new LongIntHashMap();
+        private final int[] booleanValueIndices = {-1, -1};
+        private int valueCount;
+
+        // state of the current feature, reused for all features
+        private final ProtobufBuffer feature = new ProtobufBuffer(256);
+        private final IntArrayList tags = new IntArrayList();
+        private final IntArrayList geometry = new IntArrayList();
+        private int geometryType;
+        private int cursorX, cursorY;
+        private int partStart, partCursorX, partCursorY, lineToIndex, lineToCount;
+        private boolean hasPending;
+        private int pendingX, pendingY;
+        private int pointHeaderIndex = -1;
+
+        private Layer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void startFeature() {
+            tags.elementsCount = 0;
+            geometry.elementsCount = 0;
+            geometryType = 0;
+            cursorX = 0;
+            cursorY = 0;
+            pointHeaderIndex = -1;
+        }
+
+        /**
+         * @return true if the current feature has some geometry inside of the tile
+         */
+        public boolean hasGeometry() {
+            return !geometry.isEmpty();
+        }
+
+        /**
+         * Writes the current feature to this layer.
+         *
+         * @return false if the feature was dropped as it has no geometry inside of the tile
+         */
+        public boolean endFeature() {
+            if (geometry.isEmpty())
+                return false;
+
+            feature.clear();
+            if (!tags.isEmpty()) {
+                feature.writeTag(2, WIRE_LEN);
+                feature.writePackedInts(tags);
+            }
+            feature.writeTag(3, WIRE_VARINT);
+            feature.writeVarint(geometryType);
+            feature.writeTag(4, WIRE_LEN);
+            feature.writePackedInts(geometry);
+
+            features.writeTag(2, WIRE_LEN);
+            features.writeVarint(feature.size);
+            features.write(feature);
+            return true;
+        }
+
+        public void addPoint(double lat, double lon) {
+            checkGeometryType(GEOM_POINT);
+            long x = Math.round(toTileX(lon));
+            long y = Math.round(toTileY(lat));
+            if (x < 0 || x > extent || y < 0 || y > extent)
+                return;
+
+            if (pointHeaderIndex < 0) {
+                pointHeaderIndex = geometry.size();
+                geometry.add(0);
+            }
+            int count = (geometry.size() - pointHeaderIndex - 1) / 2 + 1;
+            geometry.set(pointHeaderIndex, command(CMD_MOVE_TO, count));
+            addDelta((int) x, (int) y);
+        }
+
+        /**
+         * Adds the specified line from (lat1, lon1) to (lat2, lon2) to the current feature.
+         */
+        public void addLine(double lat1, double lon1, double lat2, double lon2) {
+            checkGeometryType(GEOM_LINESTRING);
+            double x0 = toTileX(lon1), y0 = toTileY(lat1);
+            double x1 = toTileX(lon2), y1 = toTileY(lat2);
+            if (addClippedSegment(false, x0, y0, x1, y1))
+                endPart();
+        }
+
+        /**
+         * Adds the specified points as line string to the current feature. If the line leaves and re-enters the tile
+         * several parts are created, i.e. the feature becomes a multi line string.
+         */
+        public void addLineString(PointList pointList) {
+            checkGeometryType(GEOM_LINESTRING);
+            if (pointList.size() < 2)
+                return;
+
+            boolean open = false;
+            double x0 = toTileX(pointList.getLon(0)), y0 = toTileY(pointList.getLat(0));
+            for (int i = 1; i < pointList.size(); i++) {
+                double x1 = toTileX(pointList.getLon(i)), y1 = toTileY(pointList.getLat(i));
+                open = addClippedSegment(open, x0, y0, x1, y1);
+                x0 = x1;
+                y0 = y1;
+            }
+            if (open)
+                endPart();
+        }
+
+        /**
+         * @return true if the part is still open after this segment, i.e. the segment ends inside of the tile
+         */
+        private boolean addClippedSegment(boolean open, double x0, double y0, double x1, double y1) {
+            if (!clip(x0, y0, x1, y1)) {
+                if (open)
+                    endPart();
+                return false;
+            }
+
+            if (!open || clipX0 != x0 || clipY0 != y0) {
+                if (open)
+                    endPart();
+                startPart((int) Math.round(clipX0), (int) Math.round(clipY0));
+            }
+            addVertex((int) Math.round(clipX1), (int) Math.round(clipY1));
+            if (clipX1 != x1 || clipY1 != y1) {
+                // the segment leaves the tile
+                endPart();
+                return false;
+            }
+            return true;
+        }
+
+        private void startPart(int x, int y) {
+            partStart = geometry.size();
+            partCursorX = cursorX;
+            partCursorY = cursorY;
+            geometry.add(command(CMD_MOVE_TO, 1));
+            addDelta(x, y);
+            lineToIndex = geometry.size();
+            geometry.add(0);
+            lineToCount = 0;
+            hasPending = false;
+        }
+
+        private void addVertex(int x, int y) {
+            if (hasPending) {
+                if (x == pendingX && y == pendingY)
+                    return;
+                long dx1 = pendingX - cursorX, dy1 = pendingY - cursorY;
+                long dx2 = x - pendingX, dy2 = y - pendingY;
+                // skip the pending vertex if it lies on the straight line from the cursor to the new vertex
+                if (dx1 * dy2 - dy1 * dx2 != 0 || dx1 * dx2 + dy1 * dy2 <= 0)
+                    flushPending();
+            } else if (x == cursorX && y == cursorY) {
+                return;
+            }
+            hasPending = true;
+            pendingX = x;
+            pendingY = y;
+        }
+
+        private void flushPending() {
+            addDelta(pendingX, pendingY);
+            lineToCount++;
+            hasPending = false;
+        }
+
+        private void endPart() {
+            if (hasPending)
+                flushPending();
+            if (lineToCount == 0) {
+                // the part collapsed into a single point
+                geometry.elementsCount = partStart;
+                cursorX = partCursorX;
+                cursorY = partCursorY;
+            } else {
+                geometry.set(lineToIndex, command(CMD_LINE_TO, lineToCount));
+            }
+        }
+
+        private void addDelta(int x, int y) {
+            geometry.add(zigZag(x - cursorX));
+            geometry.add(zigZag(y - cursorY));
+            cursorX = x;
+            cursorY = y;
+        }
+
+        private void checkGeometryType(int type) {
+            if (geometryType != 0 && geometryType != type)
+                throw new IllegalStateException("Cannot mix geometry types in one feature");
+            geometryType = type;
+        }
+
+        /**
+         * Adds the property to the current feature. Supported are String, Boolean and Number values, where Float and
+         * Double are stored as double and all other numbers as signed integer. null values are ignored.
+         */
+        public void addProperty(String key, Object value) {
+            if (value == null)
+                return;
+            if (value instanceof String)
+                addProperty(key, (String) value);
+            else if (value instanceof Boolean)
+                addProperty(key, (boolean) (Boolean) value);
+            else if (value instanceof Double || value instanceof Float)
+                addProperty(key, ((Number) value).doubleValue());
+            else if (value instanceof Number)
+                addProperty(key, ((Number) value).longValue());
+            else
+                addProperty(key, value.toString());
+        }
+
+        public void addProperty(String key, String value) {
+            if (value == null)
+                return;
+            int index = stringValueIndices.getOrDefault(value, -1);
+            if (index < 0) {
+                index = valueCount++;
+                stringValueIndices.put(value, index);
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                values.writeTag(4, WIRE_LEN);
+                values.writeVarint(1 + varintSize(bytes.length) + bytes.length);
+                values.writeTag(1, WIRE_LEN);
+                values.writeVarint(bytes.length);
+                values.write(bytes);
+            }
+            addTag(key, index);
+        }
+
+        public void addProperty(String key, double value) {
+            long bits = Double.doubleToLongBits(value);
+            int index = doubleValueIndices.getOrDefault(bits, -1);
+            if (index < 0) {
+                index = valueCount++;
+                doubleValueIndices.put(bits, index);
+                values.writeTag(4, WIRE_LEN);
+                values.writeVarint(1 + 8);
+                values.writeTag(3, WIRE_FIXED64);
+                values.writeFixed64(bits);
+            }
+            addTag(key, index);
+        }
+
+        public void addProperty(String key, long value) {
+            int index = longValueIndices.getOrDefault(value, -1);
+            if (index < 0) {
+                index = valueCount++;
+                longValueIndices.put(value, index);
+                long zigZag = (value << 1) ^ (value >> 63);
+                values.writeTag(4, WIRE_LEN);
+                values.writeVarint(1 + varintSize(zigZag));
+                values.writeTag(6, WIRE_VARINT);
+                values.writeVarint(zigZag);
+            }
+            addTag(key, index);
+        }
+
+        public void addProperty(String key, boolean value) {
+            int slot = value ? 1 : 0;
+            int index = booleanValueIndices[slot];
+            if (index < 0) {
+                index = valueCount++;
+                booleanValueIndices[slot] = index;
+                values.writeTag(4, WIRE_LEN);
+                values.writeVarint(2);
+                values.writeTag(7, WIRE_VARINT);
+                values.writeVarint(slot);
+            }
+            addTag(key, index);
+        }
+
+        private void addTag(String key, int valueIndex) {
+            int keyIndex = keyIndices.getOrDefault(key, -1);
+            if (keyIndex < 0) {
+                keyIndex = keyIndices.size();
+                keyIndices.put(key, keyIndex);
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                keys.writeTag(3, WIRE_LEN);
+                keys.writeVarint(bytes.length);
+                keys.write(bytes);
+            }
+            tags.add(keyIndex);
+            tags.add(valueIndex);
+        }
+
+        private int nameSize() {
+            int len = name.getBytes(StandardCharsets.UTF_8).length;
+            return 1 + varintSize(len) + len;
+        }
+
+        int size() {
+            // name, features, keys, values, extent (field 5) and version (field 15)
+            return nameSize() + features.size + keys.size + values.size + 1 + varintSize(extent) + 1 + 1;
+        }
+
+        void writeTo(ProtobufBuffer out) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            out.writeTag(1, WIRE_LEN);
+            out.writeVarint(bytes.length);
+            out.write(bytes);
+            out.write(features);
+            out.write(keys);
+            out.write(values);
+            out.writeTag(5, WIRE_VARINT);
+            out.writeVarint(extent);
+            out.writeTag(15, WIRE_VARINT);
+            out.writeVarint(2);
+        }
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * A minimal growable byte buffer for the protobuf wire format.
+     */
+    static class ProtobufBuffer {
+        private byte[] bytes;
+        private int size;
+
+        ProtobufBuffer(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void writeTag(int field, int wireType) {
+            writeVarint((field << 3) | wireType);
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeFixed64(long value) {
+            ensureCapacity(8);
+            for (int i = 0; i < 8; i++) {
+                bytes[size++] = (byte) value;
+                value >>>= 8;
+            }
+        }
+
+        /**
+         * Writes the length prefixed, packed representation of the unsigned integers.
+         */
+        void writePackedInts(IntArrayList ints) {
+            int len = 0;
+            for (int i = 0; i < ints.elementsCount; i++) {
+                len += varintSize(ints.buffer[i] & 0xFFFFFFFFL);
+            }
+            writeVarint(len);
+            for (int i = 0; i < ints.elementsCount; i++) {
+                writeVarint(ints.buffer[i] & 0xFFFFFFFFL);
+            }
+        }
+
+        void write(byte[] other) {
+            ensureCapacity(other.length);
+            System.arraycopy(other, 0, bytes, size, other.length);
+            size += other.length;
+        }
+
+        void write(ProtobufBuffer other) {
+            ensureCapacity(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+
+        byte[] toByteArray() {
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -47,12 +47,12 @@ import static com.graphhopper.util.Parameters.Routing.*;
 public class DistanceMatrixResource {
 
     private final ProfileResolver profileResolver;
-    private final Router router;
+    private final GraphHopper graphHopper;
 
     @Inject
     public DistanceMatrixResource(GraphHopper graphHopper, ProfileResolver profileResolver) {
         this.profileResolver = profileResolver;
-        this.router = graphHopper.createRouter();
+        this.graphHopper = graphHopper;
     }
 
     public double getDistanceFor(List<com.graphhopper.routing.Path> paths) {
@@ -86,7 +86,8 @@ public class DistanceMatrixResource {
         long[][] etaMatrix = new long[request.getOrigins().size()][request.getDestinations().size()];
 
 
-        // Create solver.
+        // Create solver, the router uses the current traffic snapshot for all paths of the matrix.
+        Router router = graphHopper.createRouter();
         Router.Solver solver = router.createAndInitSolver(getGhRequestObj());
 
         // Create origin and destination point list.
@@ -0,0 +1,175 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.IsochroneBatchRequest;
+import com.graphhopper.config.Profile;
+import com.graphhopper.isochrone.algorithm.IsochroneBatch;
+import com.graphhopper.isochrone.algorithm.Triangulator;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.FiniteWeightFilter;
+import com.graphhopper.routing.weighting.BlockAreaWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomProfile;
+import com.graphhopper.storage.GraphEdgeIdFinder;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.JsonFeature;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.StopWatch;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static com.graphhopper.resources.IsochroneResource.degreesFromMeters;
+import static com.graphhopper.routing.util.TraversalMode.EDGE_BASED;
+import static com.graphhopper.routing.util.TraversalMode.NODE_BASED;
+
+/**
+ * Calculates the isochrones of many points in one request, e.g. the service areas of all stores of a chain. The
+ * points are snapped together and explored concurrently, and the GeoJSON features are streamed in the order they
+ * are finished. Every feature has the index of its point and its bucket in the properties, a point that could not
+ * be handled gets a feature with an error instead. The isochrones always have the full geometry.
+ * <p>
+ * The points are explored by their own executor, see isochrone.batch_threads, so that large batches do not delay the
+ * other isochrone requests. The number of points is limited by isochrone.batch_max_points.
+ */
+@Path("isochrone-batch")
+public class IsochroneBatchResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(IsochroneBatchResource.class);
+    private static final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+    private final GraphHopper graphHopper;
+    private final Triangulator triangulator;
+    private final ExecutorService executor;
+    private final int maxPoints;
+
+    @Inject
+    public IsochroneBatchResource(GraphHopperConfig config, GraphHopper graphHopper, Triangulator triangulator,
+                                  @Named("isochroneBatchExecutor") ExecutorService executor) {
+        this.graphHopper = graphHopper;
+        this.triangulator = triangulator;
+        this.executor = executor;
+        this.maxPoints = config.getInt("isochrone.batch_max_points", 1000);
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull IsochroneBatchRequest request) {
+        if (Helper.isEmpty(request.getProfile()))
+            throw new IllegalArgumentException("The 'profile' parameter is required");
+        Profile profile = graphHopper.getProfile(request.getProfile());
+        if (profile == null)
+            throw new IllegalArgumentException("The requested profile '" + request.getProfile() + "' does not exist");
+        if (request.getPoints().isEmpty())
+            throw new IllegalArgumentException("At least one point is required");
+        if (request.getPoints().size() > maxPoints)
+            throw new IllegalArgumentException("Too many points: " + request.getPoints().size() + ", the maximum is " + maxPoints);
+        if (request.getBuckets() < 1 || request.getBuckets() > 20)
+            throw new IllegalArgumentException("buckets must be between 1 and 20, but was: " + request.getBuckets());
+
+        if (request.getCustomModel() != null && !(profile instanceof CustomProfile))
+            throw new IllegalArgumentException("The requested profile '" + profile.getName() + "' cannot be used with `custom_model`, because it has weighting=" + profile.getWeighting());
+        PMap hints = new PMap(request.getHints());
+        if (request.getCustomModel() != null && hints.has(Parameters.Routing.BLOCK_AREA))
+            throw new IllegalArgumentException("When using `custom_model` do not use `block_area`. Use `areas` in the custom model instead");
+        hints.putObject(CustomModel.KEY, request.getCustomModel());
+        Weighting weighting = graphHopper.createWeighting(profile, hints);
+        if (hints.has(Parameters.Routing.BLOCK_AREA)) {
+            GraphEdgeIdFinder.BlockArea blockArea = GraphEdgeIdFinder.createBlockArea(graphHopper.getGraphHopperStorage(),
+                    graphHopper.getLocationIndex(), request.getPoints(), hints, new FiniteWeightFilter(weighting));
+            weighting = new BlockAreaWeighting(weighting, blockArea);
+        }
+        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profile.getName()));
+        IsochroneBatch batch = new IsochroneBatch(graphHopper.getGraphHopperStorage(), graphHopper.getLocationIndex(), weighting,
+                new DefaultSnapFilter(weighting, inSubnetworkEnc), profile.isTurnCosts() ? EDGE_BASED : NODE_BASED, triangulator, executor).
+                setReverseFlow(request.isReverseFlow()).
+                setBuckets(request.getBuckets()).
+                setTolerance(degreesFromMeters(request.getTolerance()));
+        if (request.getWeightLimit() > 0)
+            batch.setWeightLimit(request.getWeightLimit());
+        else if (request.getDistanceLimit() > 0)
+            batch.setDistanceLimit(request.getDistanceLimit());
+        else if (request.getTimeLimit() > 0)
+            batch.setTimeLimit(request.getTimeLimit() * 1000d);
+        else
+            throw new IllegalArgumentException("One of time_limit, distance_limit or weight_limit must be positive");
+
+        StreamingOutput out = output -> {
+            StopWatch sw = new StopWatch().start();
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                generator.writeStartObject();
+                generator.writeStringField("type", "FeatureCollection");
+                generator.writeObjectField("copyrights", ResponsePathSerializer.COPYRIGHTS);
+                generator.writeArrayFieldStart("features");
+                batch.calculate(request.getPoints(), result -> {
+                    try {
+                        if (result.error != null) {
+                            Map<String, Object> properties = new HashMap<>();
+                            properties.put("point_index", result.index);
+                            properties.put("error", result.error);
+                            generator.writeObject(new JsonFeature(null, "Feature", null, null, properties));
+                        }
+                        for (int bucket = 0; bucket < result.isochrones.size(); bucket++) {
+                            MultiPolygon isochrone = result.isochrones.get(bucket);
+                            Map<String, Object> properties = new HashMap<>();
+                            properties.put("point_index", result.index);
+                            properties.put("bucket", bucket);
+                            generator.writeObject(new JsonFeature(null, "Feature", null, isochrone, properties));
+                        }
+                        // the client gets every point as soon as it is ready
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            logger.info("took: " + sw.stop().getSeconds() + ", points: " + request.getPoints().size());
+        };
+        return Response.ok(out).type(MediaType.APPLICATION_JSON).build();
+    }
+}
@@ -5,14 +5,19 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
+import com.graphhopper.http.IsochroneCache;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
+import com.graphhopper.isochrone.algorithm.PooledShortestPathTree;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.isochrone.algorithm.ShortestPathTreeCH;
 import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.routing.ProfileResolver;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.traffic.TrafficOverlay;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.FiniteWeightFilter;
 import com.graphhopper.routing.util.TraversalMode;
@@ -20,6 +25,7 @@ import com.graphhopper.routing.weighting.BlockAreaWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphEdgeIdFinder;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
@@ -29,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
@@ -40,6 +47,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
+import java.util.concurrent.ExecutorService;
 import java.util.function.ToDoubleFunction;
 
 import static com.graphhopper.resources.IsochroneResource.ResponseType.geojson;
@@ -56,12 +64,17 @@ public class IsochroneResource {
     private final GraphHopper graphHopper;
     private final Triangulator triangulator;
     private final ProfileResolver profileResolver;
+    private final IsochroneCache isochroneCache;
+    private final ExecutorService executor;
 
     @Inject
-    public IsochroneResource(GraphHopper graphHopper, Triangulator triangulator, ProfileResolver profileResolver) {
+    public IsochroneResource(GraphHopper graphHopper, Triangulator triangulator, ProfileResolver profileResolver, IsochroneCache isochroneCache,
+                             @Named("isochroneExecutor") ExecutorService executor) {
         this.graphHopper = graphHopper;
         this.triangulator = triangulator;
         this.profileResolver = profileResolver;
+        this.isochroneCache = isochroneCache;
+        this.executor = executor;
     }
 
     public enum ResponseType {json, geojson}
@@ -83,7 +96,9 @@ public class IsochroneResource {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
-        hintsMap.putObject(Parameters.CH.DISABLE, true);
+        // isochrones use a shortest path tree on the graph, unless CH is explicitly requested
+        boolean disableCH = hintsMap.getBool(Parameters.CH.DISABLE, true);
+        hintsMap.putObject(Parameters.CH.DISABLE, disableCH);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
         if (Helper.isEmpty(profileName)) {
             profileName = profileResolver.resolveProfile(hintsMap).getName();
@@ -96,6 +111,9 @@ public class IsochroneResource {
             throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
         LocationIndex locationIndex = graphHopper.getLocationIndex();
         Graph graph = graphHopper.getGraphHopperStorage();
+        // the weighting and the CH graph use the traffic snapshot of this version or a newer one
+        TrafficOverlay trafficOverlay = graphHopper.getTrafficOverlay();
+        int trafficVersion = trafficOverlay == null ? 0 : trafficOverlay.getSnapshot().getVersion();
         Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
         BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
         if (hintsMap.has(Parameters.Routing.BLOCK_AREA)) {
@@ -108,20 +126,36 @@ public class IsochroneResource {
             throw new IllegalArgumentException("Point not found:" + point);
         QueryGraph queryGraph = QueryGraph.create(graph, snap);
         TraversalMode traversalMode = profile.isTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+        ShortestPathTree shortestPathTree;
+        if (disableCH) {
+            shortestPathTree = new PooledShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+        } else {
+            RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profileName);
+            if (chGraph == null)
+                throw new IllegalArgumentException("Cannot find CH preparation for the requested profile: '" + profileName + "'");
+            if (traversalMode.isEdgeBased())
+                throw new IllegalArgumentException("Isochrones with CH are only supported for profiles without turn costs");
+            if (hintsMap.has(Parameters.Routing.BLOCK_AREA))
+                throw new IllegalArgumentException("The '" + Parameters.Routing.BLOCK_AREA + "' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`.");
+            shortestPathTree = new ShortestPathTreeCH(new QueryRoutingCHGraph(chGraph, queryGraph), reverseFlow);
+        }
 
         double limit;
+        String limitType;
         ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
         if (weightLimit.orElseThrow(() -> new IllegalArgumentException("query param weight_limit is not a number.")) > 0) {
             limit = weightLimit.getAsLong();
+            limitType = "weight";
             shortestPathTree.setWeightLimit(limit + Math.max(limit * 0.14, 2_000));
             fz = l -> l.weight;
         } else if (distanceLimitInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
             limit = distanceLimitInMeter.getAsLong();
+            limitType = "distance";
             shortestPathTree.setDistanceLimit(limit + Math.max(limit * 0.14, 2_000));
             fz = l -> l.distance;
         } else {
             limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
+            limitType = "time";
             shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
             fz = l -> l.time;
         }
@@ -131,13 +165,16 @@ public class IsochroneResource {
             zs.add((i + 1) * delta);
         }
 
-        Triangulator.Result result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
+        // the buckets and the output format only change the contouring, so the triangulation can be shared between them
+        PMap cacheHints = new PMap(hintsMap).remove("point").remove("buckets").remove("full_geometry").remove("type");
+        IsochroneCache.Key cacheKey = new IsochroneCache.Key(snap, profileName, trafficVersion, reverseFlow, limitType, limit, toleranceInMeter, cacheHints);
+        Triangulator.Result result = isochroneCache.get(cacheKey,
+                () -> triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter)));
 
         ContourBuilder contourBuilder = new ContourBuilder(result.triangulation);
+        logger.info("Building contours z={}", zs);
         ArrayList<Geometry> isochrones = new ArrayList<>();
-        for (Double z : zs) {
-            logger.info("Building contour z={}", z);
-            MultiPolygon isochrone = contourBuilder.computeIsoline(z, result.seedEdges);
+        for (MultiPolygon isochrone : contourBuilder.computeIsolines(zs, result.seedEdges, executor)) {
             if (fullGeometry) {
                 isochrones.add(isochrone);
             } else {
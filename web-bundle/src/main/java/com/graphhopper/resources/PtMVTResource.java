@@ -6,16 +6,10 @@ import com.graphhopper.GraphHopper;
 import com.graphhopper.gtfs.GtfsStorage;
 import com.graphhopper.gtfs.PtGraph;
 import com.graphhopper.matching.MatchResult;
+import com.graphhopper.mvt.VectorTileEncoder;
+import com.graphhopper.storage.SimplifiedRoadNetwork;
 import com.graphhopper.util.Parameters;
 import com.graphhopper.util.shapes.BBox;
-import com.wdtinc.mapbox_vector_tile.VectorTile;
-import com.wdtinc.mapbox_vector_tile.adapt.jts.JtsAdapter;
-import com.wdtinc.mapbox_vector_tile.adapt.jts.TileGeomResult;
-import com.wdtinc.mapbox_vector_tile.adapt.jts.UserDataKeyValueMapConverter;
-import com.wdtinc.mapbox_vector_tile.build.MvtLayerBuild;
-import com.wdtinc.mapbox_vector_tile.build.MvtLayerParams;
-import com.wdtinc.mapbox_vector_tile.build.MvtLayerProps;
-import org.locationtech.jts.geom.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,8 +22,6 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -43,7 +35,6 @@ public class PtMVTResource {
     private final GraphHopper graphHopper;
     private final GtfsStorage gtfsStorage;
     private final Map<ByteString, MatchResult> openLRCache = new ConcurrentHashMap<>();
-    private final GeometryFactory geometryFactory = new GeometryFactory();
 
     @Inject
     public PtMVTResource(GraphHopper graphHopper, GtfsStorage gtfsStorage) throws IOException {
@@ -62,47 +53,24 @@ public class PtMVTResource {
             @PathParam("y") int yInfo,
             @QueryParam(Parameters.Details.PATH_DETAILS) List<String> pathDetails) {
 
-        Coordinate nw = num2deg(xInfo, yInfo, zInfo);
-        Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
-        BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
-        if (!bbox.isValid())
-            throw new IllegalStateException("Invalid bbox " + bbox);
-
-        List<Geometry> features = new ArrayList<>();
+        BBox bbox = SimplifiedRoadNetwork.tileToBBox(xInfo, yInfo, zInfo);
+        VectorTileEncoder encoder = new VectorTileEncoder(bbox, 4096);
+        VectorTileEncoder.Layer layer = encoder.addLayer("stops");
         gtfsStorage.getStopIndex().query(bbox, edgeId -> {
             for (PtGraph.PtEdge ptEdge : gtfsStorage.getPtGraph().backEdgesAround(edgeId)) {
                 if (ptEdge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
                     GtfsStorage.PlatformDescriptor fromPlatformDescriptor = ptEdge.getAttrs().platformDescriptor;
                     Stop stop = gtfsStorage.getGtfsFeeds().get(fromPlatformDescriptor.feed_id).stops.get(fromPlatformDescriptor.stop_id);
-                    Map<String, Object> properties = new HashMap<>(2);
-                    properties.put("feed_id", fromPlatformDescriptor.feed_id);
-                    properties.put("stop_id", fromPlatformDescriptor.stop_id);
-                    Point feature = geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat));
-                    feature.setUserData(properties);
-                    features.add(feature);
+                    layer.startFeature();
+                    layer.addPoint(stop.stop_lat, stop.stop_lon);
+                    if (!layer.hasGeometry())
+                        continue;
+                    layer.addProperty("feed_id", fromPlatformDescriptor.feed_id);
+                    layer.addProperty("stop_id", fromPlatformDescriptor.stop_id);
+                    layer.endFeature();
                 }
             }
         });
-        VectorTile.Tile.Builder mvtBuilder = VectorTile.Tile.newBuilder();
-        mvtBuilder.addLayers(createLayer(new Envelope(se, nw), new MvtLayerParams(256, 4096), features, "stops"));
-        return Response.ok(mvtBuilder.build().toByteArray(), PBF).build();
-    }
-
-    private VectorTile.Tile.Layer createLayer(Envelope tileEnvelope, MvtLayerParams layerParams, List<Geometry> locationReferences, String layerName) {
-        final VectorTile.Tile.Layer.Builder roadsLayerBuilder = MvtLayerBuild.newLayerBuilder(layerName, layerParams);
-        TileGeomResult tileGeom = JtsAdapter.createTileGeom(locationReferences, tileEnvelope, geometryFactory, layerParams, geometry -> true);
-        final MvtLayerProps roadsLayerProps = new MvtLayerProps();
-        roadsLayerBuilder.addAllFeatures(JtsAdapter.toFeatures(tileGeom.mvtGeoms, roadsLayerProps, new UserDataKeyValueMapConverter()));
-        MvtLayerBuild.writeProps(roadsLayerBuilder, roadsLayerProps);
-        return roadsLayerBuilder.build();
-    }
-
-    Coordinate num2deg(int xInfo, int yInfo, int zoom) {
-        double n = Math.pow(2, zoom);
-        double lonDeg = xInfo / n * 360.0 - 180.0;
-        // unfortunately latitude numbers goes from north to south
-        double latRad = Math.atan(Math.sinh(Math.PI * (1 - 2 * yInfo / n)));
-        double latDeg = Math.toDegrees(latRad);
-        return new Coordinate(lonDeg, latDeg);
+        return Response.ok(encoder.toByteArray(), PBF).build();
     }
 }
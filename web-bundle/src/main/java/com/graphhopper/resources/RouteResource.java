@@ -37,6 +37,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -87,6 +89,7 @@ public class RouteResource {
             @QueryParam(CURBSIDE) List<String> curbsides,
             @QueryParam(SNAP_PREVENTION) List<String> snapPreventions,
             @QueryParam(PATH_DETAILS) List<String> pathDetails,
+            @QueryParam(FIELDS) List<String> fieldParams,
             @QueryParam("heading") @NotNull List<Double> headings,
             @QueryParam("gpx.route") @DefaultValue("true") boolean withRoute /* default to false for the route part in next API version, see #437 */,
             @QueryParam("gpx.track") @DefaultValue("true") boolean withTrack,
@@ -96,6 +99,10 @@ public class RouteResource {
         List<GHPoint> points = pointParams.stream().map(AbstractParam::get).collect(toList());
         boolean writeGPX = "gpx".equalsIgnoreCase(type);
         instructions = writeGPX || instructions;
+        // fields=distance,time is the same as fields=distance&fields=time, GPX is always complete
+        List<String> fields = writeGPX ? Collections.emptyList() : fieldParams.stream()
+                .flatMap(f -> Arrays.stream(f.split(","))).map(String::trim).filter(f -> !f.isEmpty()).collect(toList());
+        ResponsePathSerializer.checkFields(fields);
         if (enableElevation && !hasElevation)
             throw new IllegalArgumentException("Elevation not supported!");
 
@@ -118,6 +125,7 @@ public class RouteResource {
                 setCurbsides(curbsides).
                 setSnapPreventions(snapPreventions).
                 setPathDetails(pathDetails).
+                setFields(fields).
                 getHints().
                 putObject(CALC_POINTS, calcPoints).
                 putObject(INSTRUCTIONS, instructions).
@@ -149,7 +157,7 @@ public class RouteResource {
                             header("X-GH-Took", "" + Math.round(took)).
                             build()
                     :
-                    Response.ok(ResponsePathSerializer.jsonObject(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took)).
+                    Response.ok(ResponsePathSerializer.jsonObject(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took, fields)).
                             header("X-GH-Took", "" + Math.round(took)).
                             type(MediaType.APPLICATION_JSON).
                             build();
@@ -174,6 +182,7 @@ public class RouteResource {
                 throw new IllegalArgumentException("The 'profile' parameter is required when you use the `custom_model` parameter");
         }
         errorIfLegacyParameters(request.getHints());
+        ResponsePathSerializer.checkFields(request.getFields());
         GHResponse ghResponse = graphHopper.route(request);
         boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
         boolean enableElevation = request.getHints().getBool("elevation", false);
@@ -201,7 +210,7 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().size()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
-            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took)).
+            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took, request.getFields())).
                     header("X-GH-Took", "" + Math.round(took)).
                     type(MediaType.APPLICATION_JSON).
                     build();
@@ -2,7 +2,9 @@ package com.graphhopper.resources;
 
 import com.graphhopper.GraphHopper;
 import com.graphhopper.config.Profile;
+import com.graphhopper.http.ColumnarStreamWriter;
 import com.graphhopper.http.GHPointParam;
+import com.graphhopper.isochrone.algorithm.PooledShortestPathTree;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
 import com.graphhopper.routing.ProfileResolver;
 import com.graphhopper.routing.ev.*;
@@ -27,13 +29,12 @@ import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.*;
 import java.util.*;
 
 import static com.graphhopper.resources.RouteResource.errorIfLegacyParameters;
@@ -42,7 +43,8 @@ import static com.graphhopper.routing.util.TraversalMode.EDGE_BASED;
 import static com.graphhopper.routing.util.TraversalMode.NODE_BASED;
 
 /**
- * This resource provides the entire shortest path tree as response. In a simple CSV format discussed at #1577.
+ * This resource provides the entire shortest path tree as response. In a simple CSV format discussed at #1577, or
+ * with "Accept: application/octet-stream" in the columnar binary format of {@link ColumnarStreamWriter}.
  */
 @Path("spt")
 public class SPTResource {
@@ -71,9 +73,10 @@ public class SPTResource {
     // Annotating this as application/json because errors come out as json, and
     // IllegalArgumentExceptions are not mapped to a fixed mediatype, because in RouteResource, it could be GPX.
     @GET
-    @Produces({"text/csv", "application/json"})
+    @Produces({"text/csv", "application/json", MediaType.APPLICATION_OCTET_STREAM})
     public Response doGet(
             @Context UriInfo uriInfo,
+            @Context HttpHeaders headers,
             @QueryParam("profile") String profileName,
             @QueryParam("reverse_flow") @DefaultValue("false") boolean reverseFlow,
             @QueryParam("point") @NotNull GHPointParam point,
@@ -109,7 +112,7 @@ public class SPTResource {
         QueryGraph queryGraph = QueryGraph.create(graph, snap);
         NodeAccess nodeAccess = queryGraph.getNodeAccess();
         TraversalMode traversalMode = profile.isTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+        ShortestPathTree shortestPathTree = new PooledShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
 
         if (distanceInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
             shortestPathTree.setDistanceLimit(distanceInMeter.getAsLong());
@@ -134,6 +137,11 @@ public class SPTResource {
                 pathDetails.put(col, encodingManager.getEncodedValue(col, EncodedValue.class));
         }
 
+        if (headers.getAcceptableMediaTypes().stream().anyMatch(m -> !m.isWildcardSubtype() && m.isCompatible(MediaType.APPLICATION_OCTET_STREAM_TYPE))) {
+            StreamingOutput out = binaryOutput(columns, pathDetails, queryGraph, shortestPathTree, snap.getClosestNode(), reverseFlow, sw, uriInfo);
+            return Response.ok(out).type(MediaType.APPLICATION_OCTET_STREAM).build();
+        }
+
         StreamingOutput out = output -> {
             try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, Helper.UTF_CS))) {
                 StringBuilder sb = new StringBuilder();
@@ -237,6 +245,139 @@ public class SPTResource {
         return Response.ok(out).type("text/csv").build();
     }
 
+    /**
+     * Writes the columns in the binary format of {@link ColumnarStreamWriter}. Unlike the CSV output the coordinates
+     * and distances are not rounded, and the values that are not available, like the previous node of the start
+     * or the edge id and edge properties of a start node without edge, are null where the CSV writes -1 or nothing.
+     */
+    private StreamingOutput binaryOutput(List<String> columns, Map<String, EncodedValue> pathDetails, QueryGraph queryGraph,
+                                         ShortestPathTree shortestPathTree, int startNode, boolean reverseFlow, StopWatch sw, UriInfo uriInfo) {
+        List<ColumnarStreamWriter.Type> types = new ArrayList<>(columns.size());
+        for (String col : columns) {
+            types.add(getColumnType(col, pathDetails.get(col)));
+        }
+        NodeAccess na = queryGraph.getNodeAccess();
+        return output -> {
+            ColumnarStreamWriter writer = new ColumnarStreamWriter(new BufferedOutputStream(output), columns, types, 4096);
+            shortestPathTree.search(startNode, label -> {
+                ShortestPathTree.IsoLabel prev = label.parent;
+                EdgeIteratorState edge = null;
+                boolean edgeFetched = false;
+                for (int col = 0; col < columns.size(); col++) {
+                    switch (columns.get(col)) {
+                        case "node_id":
+                            writer.setInt(col, label.node);
+                            continue;
+                        case "prev_node_id":
+                            if (prev != null)
+                                writer.setInt(col, prev.node);
+                            continue;
+                        case "edge_id":
+                            if (EdgeIterator.Edge.isValid(label.edge))
+                                writer.setInt(col, label.edge);
+                            continue;
+                        case "prev_edge_id":
+                            if (prev != null && EdgeIterator.Edge.isValid(prev.edge))
+                                writer.setInt(col, prev.edge);
+                            continue;
+                        case "distance":
+                            writer.setDouble(col, label.distance);
+                            continue;
+                        case "prev_distance":
+                            if (prev != null)
+                                writer.setDouble(col, prev.distance);
+                            continue;
+                        case "time":
+                            writer.setLong(col, label.time);
+                            continue;
+                        case "prev_time":
+                            if (prev != null)
+                                writer.setLong(col, prev.time);
+                            continue;
+                        case "longitude":
+                            writer.setDouble(col, na.getLon(label.node));
+                            continue;
+                        case "prev_longitude":
+                            if (prev != null)
+                                writer.setDouble(col, na.getLon(prev.node));
+                            continue;
+                        case "latitude":
+                            writer.setDouble(col, na.getLat(label.node));
+                            continue;
+                        case "prev_latitude":
+                            if (prev != null)
+                                writer.setDouble(col, na.getLat(prev.node));
+                            continue;
+                    }
+
+                    if (!edgeFetched) {
+                        edgeFetched = true;
+                        if (EdgeIterator.Edge.isValid(label.edge))
+                            edge = queryGraph.getEdgeIteratorState(label.edge, label.node);
+                    }
+                    if (edge == null)
+                        continue;
+
+                    EncodedValue ev = pathDetails.get(columns.get(col));
+                    if (ev instanceof DecimalEncodedValue) {
+                        DecimalEncodedValue dev = (DecimalEncodedValue) ev;
+                        writer.setDouble(col, reverseFlow ? edge.getReverse(dev) : edge.get(dev));
+                    } else if (ev instanceof EnumEncodedValue) {
+                        EnumEncodedValue eev = (EnumEncodedValue) ev;
+                        writer.setString(col, (reverseFlow ? edge.getReverse(eev) : edge.get(eev)).toString());
+                    } else if (ev instanceof BooleanEncodedValue) {
+                        BooleanEncodedValue eev = (BooleanEncodedValue) ev;
+                        writer.setBoolean(col, reverseFlow ? edge.getReverse(eev) : edge.get(eev));
+                    } else if (ev instanceof IntEncodedValue) {
+                        IntEncodedValue eev = (IntEncodedValue) ev;
+                        writer.setInt(col, reverseFlow ? edge.getReverse(eev) : edge.get(eev));
+                    } else {
+                        // street_name, the other columns were rejected by getColumnType
+                        writer.setString(col, edge.getName());
+                    }
+                }
+                try {
+                    writer.endRow();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            writer.finish();
+            logger.info("took: " + sw.stop().getSeconds() + ", visited nodes:" + shortestPathTree.getVisitedNodes() + ", " + uriInfo.getQueryParameters());
+        };
+    }
+
+    private static ColumnarStreamWriter.Type getColumnType(String col, EncodedValue ev) {
+        switch (col) {
+            case "node_id":
+            case "prev_node_id":
+            case "edge_id":
+            case "prev_edge_id":
+                return ColumnarStreamWriter.Type.INT;
+            case "time":
+            case "prev_time":
+                return ColumnarStreamWriter.Type.LONG;
+            case "distance":
+            case "prev_distance":
+            case "longitude":
+            case "prev_longitude":
+            case "latitude":
+            case "prev_latitude":
+                return ColumnarStreamWriter.Type.DOUBLE;
+            case Parameters.Details.STREET_NAME:
+                return ColumnarStreamWriter.Type.STRING;
+        }
+        if (ev instanceof DecimalEncodedValue)
+            return ColumnarStreamWriter.Type.DOUBLE;
+        if (ev instanceof EnumEncodedValue)
+            return ColumnarStreamWriter.Type.STRING;
+        if (ev instanceof BooleanEncodedValue)
+            return ColumnarStreamWriter.Type.BOOLEAN;
+        if (ev instanceof IntEncodedValue)
+            return ColumnarStreamWriter.Type.INT;
+        throw new IllegalArgumentException("Unknown property " + col);
+    }
+
     private IsoLabelWithCoordinates isoLabelWithCoordinates(NodeAccess na, ShortestPathTree.IsoLabel label) {
         double lat = na.getLat(label.node);
         double lon = na.getLon(label.node);
@@ -0,0 +1,144 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.mvt;
+
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import com.wdtinc.mapbox_vector_tile.VectorTile;
+import com.wdtinc.mapbox_vector_tile.adapt.jts.MvtReader;
+import com.wdtinc.mapbox_vector_tile.adapt.jts.TagKeyValueMapConverter;
+import com.wdtinc.mapbox_vector_tile.adapt.jts.model.JtsLayer;
+import com.wdtinc.mapbox_vector_tile.adapt.jts.model.JtsMvt;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorTileEncoderTest {
+
+    // results in a tile of 100x100 if the extent is 100
+    private final BBox bbox = new BBox(10, 11, 50, 51);
+
+    private JtsLayer read(byte[] bytes, String name) throws IOException {
+        JtsMvt mvt = MvtReader.loadMvt(new ByteArrayInputStream(bytes), new GeometryFactory(), new TagKeyValueMapConverter());
+        return mvt.getLayer(name);
+    }
+
+    @Test
+    public void testLineString() throws IOException {
+        VectorTileEncoder encoder = new VectorTileEncoder(bbox, 100);
+        VectorTileEncoder.Layer layer = encoder.addLayer("roads");
+        PointList pl = new PointList();
+        pl.add(50.9, 10.1);
+        pl.add(50.5, 10.1);
+        // collinear point is skipped
+        pl.add(50.5, 10.3);
+        pl.add(50.5, 10.5);
+        layer.startFeature();
+        layer.addLineString(pl);
+        assertTrue(layer.hasGeometry());
+        layer.addProperty("name", "main street");
+        layer.addProperty("max_speed", 50.0);
+        layer.addProperty("lanes", 2);
+        layer.addProperty("toll", false);
+        assertTrue(layer.endFeature());
+
+        JtsLayer jtsLayer = read(encoder.toByteArray(), "roads");
+        assertEquals(100, jtsLayer.getExtent());
+        assertEquals(1, jtsLayer.getGeometries().size());
+        Geometry geometry = jtsLayer.getGeometries().iterator().next();
+        assertTrue(geometry instanceof LineString);
+        assertArrayEquals(new Coordinate[]{new Coordinate(10, 10), new Coordinate(10, 50), new Coordinate(50, 50)},
+                geometry.getCoordinates());
+
+        Map<?, ?> map = (Map<?, ?>) geometry.getUserData();
+        assertEquals("main street", map.get("name"));
+        assertEquals(50.0, map.get("max_speed"));
+        assertEquals(2L, map.get("lanes"));
+        assertEquals(false, map.get("toll"));
+    }
+
+    @Test
+    public void testClipping() throws IOException {
+        VectorTileEncoder encoder = new VectorTileEncoder(bbox, 100);
+        VectorTileEncoder.Layer layer = encoder.addLayer("roads");
+
+        // completely outside
+        layer.startFeature();
+        layer.addLine(52, 10.5, 52, 10.6);
+        assertFalse(layer.hasGeometry());
+        assertFalse(layer.endFeature());
+
+        // leaves and re-enters the tile => two parts
+        PointList pl = new PointList();
+        pl.add(50.5, 10.5);
+        pl.add(50.5, 11.5);
+        pl.add(50.7, 11.5);
+        pl.add(50.7, 10.5);
+        layer.startFeature();
+        layer.addLineString(pl);
+        assertTrue(layer.endFeature());
+
+        JtsLayer jtsLayer = read(encoder.toByteArray(), "roads");
+        assertEquals(1, jtsLayer.getGeometries().size());
+        Geometry geometry = jtsLayer.getGeometries().iterator().next();
+        assertTrue(geometry instanceof MultiLineString);
+        assertEquals(2, geometry.getNumGeometries());
+        assertArrayEquals(new Coordinate[]{new Coordinate(50, 50), new Coordinate(100, 50)},
+                geometry.getGeometryN(0).getCoordinates());
+        assertArrayEquals(new Coordinate[]{new Coordinate(100, 30), new Coordinate(50, 30)},
+                geometry.getGeometryN(1).getCoordinates());
+    }
+
+    @Test
+    public void testInternedProperties() throws IOException {
+        VectorTileEncoder encoder = new VectorTileEncoder(bbox, 100);
+        VectorTileEncoder.Layer layer = encoder.addLayer("stops");
+        for (int i = 0; i < 10; i++) {
+            layer.startFeature();
+            layer.addPoint(50.1 + i * 0.05, 10.5);
+            layer.addProperty("feed_id", "gtfs_0");
+            layer.addProperty("stop_id", "" + (i % 2));
+            assertTrue(layer.endFeature());
+        }
+        // outside of tile
+        layer.startFeature();
+        layer.addPoint(49, 10.5);
+        assertFalse(layer.endFeature());
+
+        byte[] bytes = encoder.toByteArray();
+        VectorTile.Tile tile = VectorTile.Tile.parseFrom(bytes);
+        assertEquals(1, tile.getLayersCount());
+        VectorTile.Tile.Layer pbLayer = tile.getLayers(0);
+        assertEquals(2, pbLayer.getVersion());
+        assertEquals(10, pbLayer.getFeaturesCount());
+        assertEquals(2, pbLayer.getKeysCount());
+        assertEquals(3, pbLayer.getValuesCount());
+
+        List<Geometry> points = new ArrayList<>(read(bytes, "stops").getGeometries());
+        assertEquals(10, points.size());
+        assertEquals(new Coordinate(50, 90), points.get(0).getCoordinate());
+        assertEquals("1", ((Map<?, ?>) points.get(1).getUserData()).get("stop_id"));
+    }
+}
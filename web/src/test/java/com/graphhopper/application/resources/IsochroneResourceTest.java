@@ -22,8 +22,12 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.Profile;
+import com.graphhopper.routing.weighting.custom.CustomProfile;
+import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.JsonFeature;
 import com.graphhopper.util.JsonFeatureCollection;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
@@ -36,10 +40,12 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Polygon;
 
+import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
 import static com.graphhopper.util.Parameters.Routing.BLOCK_AREA;
@@ -56,11 +62,14 @@ public class IsochroneResourceTest {
                 putObject("graph.flag_encoders", "car|turn_costs=true").
                 putObject("datareader.file", "../core/files/andorra.osm.pbf").
                 putObject("graph.location", DIR).
+                putObject("isochrone.batch_max_points", 5).
                 setProfiles(Arrays.asList(
                         new Profile("fast_car").setVehicle("car").setWeighting("fastest").setTurnCosts(true),
                         new Profile("short_car").setVehicle("car").setWeighting("shortest").setTurnCosts(true),
-                        new Profile("fast_car_no_turn_restrictions").setVehicle("car").setWeighting("fastest").setTurnCosts(false)
+                        new Profile("fast_car_no_turn_restrictions").setVehicle("car").setWeighting("fastest").setTurnCosts(false),
+                        new CustomProfile("custom_car").setCustomModel(new CustomModel()).setVehicle("car").setTurnCosts(true)
                 ));
+        config.getGraphHopperConfiguration().setCHProfiles(Collections.singletonList(new CHProfile("fast_car_no_turn_restrictions")));
         return config;
     }
 
@@ -94,6 +103,65 @@ public class IsochroneResourceTest {
         assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
     }
 
+    @Test
+    public void requestBatch() {
+        String body = "{\"profile\": \"fast_car\", \"time_limit\": 300, \"buckets\": 2, " +
+                "\"points\": [[1.573792, 42.531073], [0.0, 0.0], [1.521692, 42.510071]]}";
+        Response rsp = clientTarget(app, "/isochrone-batch").request().post(Entity.json(body));
+        assertEquals(200, rsp.getStatus());
+        JsonFeatureCollection featureCollection = rsp.readEntity(JsonFeatureCollection.class);
+        assertEquals(5, featureCollection.getFeatures().size());
+        Geometry polygon0 = null, polygon1 = null;
+        for (JsonFeature feature : featureCollection.getFeatures()) {
+            int pointIndex = ((Number) feature.getProperty("point_index")).intValue();
+            if (pointIndex == 1) {
+                assertNull(feature.getGeometry());
+                assertTrue(feature.getProperty("error").toString().startsWith("Point not found"), feature.getProperty("error").toString());
+            } else if (pointIndex == 0) {
+                int bucket = ((Number) feature.getProperty("bucket")).intValue();
+                if (bucket == 0)
+                    polygon0 = feature.getGeometry();
+                else
+                    polygon1 = feature.getGeometry();
+            }
+        }
+        // same point and limit as in requestByTimeLimit
+        assertTrue(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.587224, 42.5386))));
+        assertFalse(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertTrue(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
+    }
+
+    @Test
+    public void requestBatchWithCustomModel() {
+        String body = "{\"profile\": \"custom_car\", \"time_limit\": 300, " +
+                "\"custom_model\": {\"speed\": [{\"if\": \"true\", \"limit_to\": 5}]}, " +
+                "\"points\": [[1.573792, 42.531073]]}";
+        Response rsp = clientTarget(app, "/isochrone-batch").request().post(Entity.json(body));
+        assertEquals(200, rsp.getStatus());
+        JsonFeatureCollection featureCollection = rsp.readEntity(JsonFeatureCollection.class);
+        assertEquals(1, featureCollection.getFeatures().size());
+        Geometry polygon = featureCollection.getFeatures().get(0).getGeometry();
+        // the point is reached within 300s in requestBatch, but not at 5km/h
+        assertFalse(polygon.contains(geometryFactory.createPoint(new Coordinate(1.587224, 42.5386))));
+
+        body = "{\"profile\": \"fast_car\", \"time_limit\": 300, " +
+                "\"custom_model\": {\"speed\": [{\"if\": \"true\", \"limit_to\": 5}]}, " +
+                "\"points\": [[1.573792, 42.531073]]}";
+        rsp = clientTarget(app, "/isochrone-batch").request().post(Entity.json(body));
+        assertEquals(400, rsp.getStatus());
+        assertTrue(rsp.readEntity(JsonNode.class).get("message").asText().contains("cannot be used with `custom_model`"));
+    }
+
+    @Test
+    public void requestBatchTooManyPoints() {
+        String body = "{\"profile\": \"fast_car\", \"time_limit\": 300, \"points\": [" +
+                String.join(",", Collections.nCopies(6, "[1.573792, 42.531073]")) + "]}";
+        Response rsp = clientTarget(app, "/isochrone-batch").request().post(Entity.json(body));
+        assertEquals(400, rsp.getStatus());
+        assertTrue(rsp.readEntity(JsonNode.class).get("message").asText().contains("Too many points: 6, the maximum is 5"));
+    }
+
     @Test
     public void requestByTimeLimitNoTurnRestrictions() {
         Response rsp = clientTarget(app, "/isochrone")
@@ -116,6 +184,42 @@ public class IsochroneResourceTest {
         assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
     }
 
+    @Test
+    public void requestByTimeLimitWithCH() {
+        Response rsp = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car_no_turn_restrictions")
+                .queryParam("ch.disable", false)
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 5 * 60)
+                .queryParam("buckets", 2)
+                .queryParam("type", "geojson")
+                .request().buildGet().invoke();
+        assertEquals(200, rsp.getStatus());
+        JsonFeatureCollection featureCollection = rsp.readEntity(JsonFeatureCollection.class);
+
+        assertEquals(2, featureCollection.getFeatures().size());
+        Geometry polygon0 = featureCollection.getFeatures().get(0).getGeometry();
+        Geometry polygon1 = featureCollection.getFeatures().get(1).getGeometry();
+
+        assertTrue(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.587224, 42.5386))));
+        assertFalse(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+
+        assertTrue(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
+    }
+
+    @Test
+    public void requestWithCHForProfileWithoutCH() {
+        Response rsp = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car")
+                .queryParam("ch.disable", false)
+                .queryParam("point", "42.531073,1.573792")
+                .request().buildGet().invoke();
+        assertEquals(400, rsp.getStatus());
+        String error = rsp.readEntity(String.class);
+        assertTrue(error.contains("Cannot find CH preparation for the requested profile: 'fast_car'"), error);
+    }
+
     @Test
     public void requestByDistanceLimit() {
         Response rsp = clientTarget(app, "/isochrone")
@@ -163,6 +267,23 @@ public class IsochroneResourceTest {
         assertTrue(weightLimitPolygon.equalsTopo(distanceLimitPolygon));
     }
 
+    @Test
+    public void requestSameTreeWithDifferentBuckets() {
+        WebTarget commonTarget = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 10 * 60)
+                .queryParam("type", "geojson");
+
+        // the second request only contours the cached triangulation again
+        JsonFeatureCollection twoBuckets = commonTarget.queryParam("buckets", 2).request().buildGet().invoke().readEntity(JsonFeatureCollection.class);
+        JsonFeatureCollection oneBucket = commonTarget.queryParam("buckets", 1).request().buildGet().invoke().readEntity(JsonFeatureCollection.class);
+
+        assertEquals(2, twoBuckets.getFeatures().size());
+        assertEquals(1, oneBucket.getFeatures().size());
+        assertTrue(oneBucket.getFeatures().get(0).getGeometry().equalsTopo(twoBuckets.getFeatures().get(1).getGeometry()));
+    }
+
     @Test
     public void requestReverseFlow() {
         Response rsp = clientTarget(app, "/isochrone")
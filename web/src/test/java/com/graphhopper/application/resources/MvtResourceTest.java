@@ -61,6 +61,7 @@ public class MvtResourceTest {
                 putObject("graph.flag_encoders", "car").
                 putObject("graph.encoded_values", "road_class,road_environment,max_speed,surface").
                 putObject("prepare.min_network_size", 0).
+                putObject("prepare.simplified_roads.zooms", "9,12").
                 putObject("datareader.file", "../core/files/andorra.osm.pbf").
                 putObject("graph.location", DIR).
                 setProfiles(Collections.singletonList(new Profile("car").setVehicle("car").setWeighting("fastest")));
@@ -107,6 +108,22 @@ public class MvtResourceTest {
         assertEquals("primary", attributes(geometry).get("road_class"));
     }
 
+    @Test
+    public void testSimplifiedRoads() throws IOException {
+        final Response response = clientTarget(app, "/mvt/12/2065/1512.mvt?details=road_class").request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        InputStream is = response.readEntity(InputStream.class);
+        JtsMvt result = MvtReader.loadMvt(is, new GeometryFactory(), new TagKeyValueMapConverter());
+        JtsLayer layer = result.getLayer("roads");
+        assertTrue(layer.getGeometries().size() > 0);
+        // only the important roads are included for this zoom
+        for (Geometry geometry : layer.getGeometries()) {
+            String roadClass = (String) attributes(geometry).get("road_class");
+            assertTrue(roadClass.equals("motorway") || roadClass.equals("trunk") || roadClass.equals("primary")
+                    || roadClass.equals("secondary"), roadClass);
+        }
+    }
+
     private Map<String, Object> attributes(Geometry g) {
         return (Map<String, Object>) g.getUserData();
     }
@@ -141,6 +141,32 @@ public class RouteResourceTest {
         assertFalse(response.readEntity(JsonNode.class).get("info").has("errors"));
     }
 
+    @Test
+    public void testFields() {
+        Response response = clientTarget(app, "/route?profile=my_car&point=42.554851,1.536198&point=42.510071,1.548128" +
+                "&fields=distance,time&fields=bbox").request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        JsonNode path = response.readEntity(JsonNode.class).get("paths").get(0);
+        List<String> names = new ArrayList<>();
+        path.fieldNames().forEachRemaining(names::add);
+        assertEquals(Arrays.asList("distance", "time", "bbox"), names);
+        double distance = path.get("distance").asDouble();
+        assertTrue(distance > 9000, "distance wasn't correct:" + distance);
+        assertTrue(distance < 9500, "distance wasn't correct:" + distance);
+
+        String jsonStr = "{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]], \"fields\": [\"time\"] }";
+        response = clientTarget(app, "/route").request().post(Entity.json(jsonStr));
+        assertEquals(200, response.getStatus());
+        path = response.readEntity(JsonNode.class).get("paths").get(0);
+        assertEquals(1, path.size());
+        assertTrue(path.get("time").asLong() > 0);
+
+        response = clientTarget(app, "/route?profile=my_car&point=42.554851,1.536198&point=42.510071,1.548128" +
+                "&fields=distance,geometry").request().buildGet().invoke();
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Unknown field 'geometry'"));
+    }
+
     @Test
     public void testBasicNavigationQuery() {
         Response response = clientTarget(app, "/navigate/directions/v5/gh/driving/1.537174,42.507145;1.539116,42.511368?" +
@@ -31,8 +31,13 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -101,6 +106,81 @@ public class SPTResourceTest {
         assertEquals("1948,2276,263,13495,262", lines[3]);
     }
 
+    @Test
+    public void requestBinary() {
+        String query = "/spt?profile=car_with_turncosts&point=42.531073,1.573792&time_limit=300&columns=prev_node_id,edge_id,node_id,time,distance,road_class";
+        String[] lines = clientTarget(app, query).request().buildGet().invoke().readEntity(String.class).split("\n");
+        Response rsp = clientTarget(app, query).request(MediaType.APPLICATION_OCTET_STREAM).buildGet().invoke();
+        assertEquals(200, rsp.getStatus());
+        assertEquals(MediaType.APPLICATION_OCTET_STREAM_TYPE, rsp.getMediaType());
+        ByteBuffer buffer = ByteBuffer.wrap(rsp.readEntity(byte[].class)).order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[5];
+        buffer.get(magic);
+        assertEquals("GHCOL", new String(magic, StandardCharsets.US_ASCII));
+        assertEquals(1, buffer.get());
+        assertEquals(6, buffer.getInt());
+        List<String> names = new ArrayList<>();
+        byte[] types = new byte[6];
+        for (int col = 0; col < 6; col++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            names.add(new String(name, StandardCharsets.UTF_8));
+            types[col] = buffer.get();
+        }
+        assertEquals(lines[0], String.join(",", names));
+        // int, int, int, long, double, string
+        assertArrayEquals(new byte[]{0, 0, 0, 1, 2, 4}, types);
+
+        int line = 1;
+        int rows;
+        while ((rows = buffer.getInt()) > 0) {
+            List<String[]> batch = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                batch.add(new String[6]);
+            }
+            for (int col = 0; col < 6; col++) {
+                byte[] validity = new byte[(rows + 7) / 8];
+                buffer.get(validity);
+                int[] offsets = new int[rows + 1];
+                if (types[col] == 4) {
+                    for (int row = 0; row <= rows; row++) {
+                        offsets[row] = buffer.getInt();
+                    }
+                }
+                int stringStart = buffer.position();
+                for (int row = 0; row < rows; row++) {
+                    boolean valid = (validity[row >> 3] & (1 << (row & 7))) != 0;
+                    String value;
+                    if (types[col] == 0) {
+                        value = String.valueOf(buffer.getInt());
+                    } else if (types[col] == 1) {
+                        value = String.valueOf(buffer.getLong());
+                    } else if (types[col] == 2) {
+                        value = String.valueOf(Math.round(buffer.getDouble()));
+                    } else {
+                        value = new String(buffer.array(), stringStart + offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+                    }
+                    batch.get(row)[col] = valid ? value : "null";
+                }
+                if (types[col] == 4)
+                    buffer.position(stringStart + offsets[rows]);
+            }
+            for (String[] row : batch) {
+                String[] expected = lines[line++].split(",", -1);
+                // the start has no previous node and no edge, the CSV writes -1 for the ids and nothing for the edge properties
+                if (line == 2) {
+                    assertEquals("-1,-1", expected[0] + "," + expected[1]);
+                    assertEquals("", expected[5]);
+                    expected[0] = expected[1] = expected[5] = "null";
+                }
+                assertEquals(String.join(",", expected), String.join(",", row), "line " + (line - 1));
+            }
+        }
+        assertEquals(lines.length, line);
+        assertFalse(buffer.hasRemaining());
+    }
+
     @Test
     public void requestDetails() {
         Response rsp = clientTarget(app, "/spt?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&columns=street_name,road_class,max_speed").request().buildGet().invoke();